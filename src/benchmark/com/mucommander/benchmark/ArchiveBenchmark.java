@@ -0,0 +1,147 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmark;
+
+import com.github.stephenc.javaisotools.iso9660.ISO9660Directory;
+import com.github.stephenc.javaisotools.iso9660.ISO9660File;
+import com.github.stephenc.javaisotools.iso9660.ISO9660RootDirectory;
+import com.github.stephenc.javaisotools.iso9660.impl.CreateISO;
+import com.github.stephenc.javaisotools.iso9660.impl.ISO9660Config;
+import com.github.stephenc.javaisotools.iso9660.impl.ISOImageFileHandler;
+import com.mucommander.commons.file.AbstractArchiveFile;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ArchiveEntryIterator;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.SimpleFileAttributes;
+import com.mucommander.commons.file.archiver.ArchiveFormat;
+import com.mucommander.commons.file.archiver.Archiver;
+import com.mucommander.commons.file.impl.iso.IsoArchiveFile;
+import com.mucommander.commons.file.impl.tar.TarArchiveFile;
+import com.mucommander.commons.file.impl.zip.ZipArchiveFile;
+import com.mucommander.commons.io.StreamUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the listing of the entries of ZIP, TAR and ISO archives.
+ *
+ * @author Oleg Trifonov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ArchiveBenchmark {
+
+    @Param({"zip", "tar", "iso"})
+    private String format;
+
+    @Param({"2000"})
+    private int entriesCount;
+
+    private File folder;
+    private File archive;
+
+    @Setup
+    public void setUp() throws Exception {
+        folder = BenchmarkUtils.createFolder(entriesCount, 100, 256);
+        archive = File.createTempFile("trolcommander-benchmark", '.' + format);
+        if ("iso".equals(format)) {
+            createIso();
+        } else {
+            createArchive("zip".equals(format) ? ArchiveFormat.ZIP : ArchiveFormat.TAR);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkUtils.delete(folder);
+        archive.delete();
+    }
+
+    /**
+     * Reads the entries of the archive from scratch, as done when the archive is browsed for the first time or after
+     * it has changed. The archive implementation is created explicitly, so that it doesn't depend on the registered
+     * archive formats.
+     */
+    @Benchmark
+    public int listEntries() throws IOException {
+        AbstractFile file = FileFactory.getFile(archive.getAbsolutePath());
+        AbstractArchiveFile archiveFile;
+        if ("zip".equals(format)) {
+            archiveFile = new ZipArchiveFile(file);
+        } else if ("tar".equals(format)) {
+            archiveFile = new TarArchiveFile(file);
+        } else {
+            archiveFile = new IsoArchiveFile(file);
+        }
+        int count = 0;
+        ArchiveEntryIterator iterator = archiveFile.getEntryIterator();
+        try {
+            while (iterator.nextEntry() != null) {
+                count++;
+            }
+        } finally {
+            iterator.close();
+        }
+        return count;
+    }
+
+
+    private void createArchive(ArchiveFormat archiveFormat) throws IOException {
+        Archiver archiver = Archiver.getArchiver(FileFactory.getFile(archive.getAbsolutePath()), archiveFormat);
+        try {
+            for (File subFolder : folder.listFiles()) {
+                archiver.createEntry(subFolder.getName() + '/', new SimpleFileAttributes(FileFactory.getFile(subFolder.getAbsolutePath())));
+                for (File file : subFolder.listFiles()) {
+                    AbstractFile entryFile = FileFactory.getFile(file.getAbsolutePath());
+                    OutputStream out = archiver.createEntry(subFolder.getName() + '/' + file.getName(), new SimpleFileAttributes(entryFile));
+                    try (InputStream in = new FileInputStream(file)) {
+                        StreamUtils.copyStream(in, out);
+                    }
+                }
+            }
+            archiver.postProcess();
+        } finally {
+            archiver.close();
+        }
+    }
+
+    private void createIso() throws Exception {
+        ISO9660RootDirectory root = new ISO9660RootDirectory();
+        for (File subFolder : folder.listFiles()) {
+            ISO9660Directory directory = new ISO9660Directory(subFolder.getName());
+            for (File file : subFolder.listFiles()) {
+                directory.addFile(new ISO9660File(file));
+            }
+            root.addDirectory(directory);
+        }
+        ISO9660Config config = new ISO9660Config();
+        config.allowASCII(false);
+        config.setInterchangeLevel(1);
+        config.restrictDirDepthTo8(true);
+        config.setVolumeID("BENCHMARK");
+        config.forceDotDelimiter(true);
+        new CreateISO(new ISOImageFileHandler(archive), root).process(config, null, null, null);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Fixtures shared by the benchmarks.
+ *
+ * @author Oleg Trifonov
+ */
+final class BenchmarkUtils {
+
+    private BenchmarkUtils() {}
+
+    /**
+     * Creates a temporary folder filled with files of random names and sizes, spread among sub-folders.
+     *
+     * @param filesCount number of files to create
+     * @param filesPerFolder number of files of each sub-folder, the files are created in the folder itself if
+     * <code>filesPerFolder</code> is not less than <code>filesCount</code>
+     * @param maxFileSize maximum size of the files, in bytes
+     * @return the created folder
+     * @throws IOException if a file couldn't be created
+     */
+    static File createFolder(int filesCount, int filesPerFolder, int maxFileSize) throws IOException {
+        File root = Files.createTempDirectory("trolcommander-benchmark").toFile();
+        Random random = new Random(filesCount);
+        byte[] data = randomBytes(maxFileSize, random);
+        File folder = root;
+        for (int i = 0; i < filesCount; i++) {
+            if (filesPerFolder < filesCount && i % filesPerFolder == 0) {
+                folder = new File(root, "folder" + i / filesPerFolder);
+                if (!folder.mkdir()) {
+                    throw new IOException("Can't create " + folder);
+                }
+            }
+            File file = new File(folder, "File " + Integer.toString(random.nextInt(1000000), 36) + '_' + i + ".dat");
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(data, 0, random.nextInt(maxFileSize + 1));
+            }
+            file.setLastModified(1400000000000L + random.nextInt(1000000) * 1000L);
+        }
+        return root;
+    }
+
+    /**
+     * Returns an array of random bytes.
+     *
+     * @param length length of the array
+     * @param random the generator of the bytes
+     * @return the random bytes
+     */
+    static byte[] randomBytes(int length, Random random) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Deletes the given file and, if it's a folder, all its content.
+     *
+     * @param file the file to delete
+     */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmark;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.CachedFile;
+import com.mucommander.commons.file.util.FileComparator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the sort of the files of a folder, like the file table does.
+ *
+ * @author Oleg Trifonov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileComparatorBenchmark {
+
+    @Param({"1000", "10000"})
+    private int filesCount;
+
+    @Param({"0", "1"})
+    private int criterion;
+
+    private File folder;
+    private AbstractFile[] files;
+    private int[] indexes;
+    private FileComparator comparator;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = BenchmarkUtils.createFolder(filesCount, filesCount, 1024);
+        AbstractFile[] children = FileFactory.getFile(folder.getAbsolutePath()).ls();
+        files = new AbstractFile[children.length];
+        for (int i = 0; i < children.length; i++) {
+            files[i] = new CachedFile(children[i], true);
+        }
+        indexes = new int[files.length];
+        comparator = new FileComparator(criterion, true, true, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkUtils.delete(folder);
+    }
+
+    @Benchmark
+    public AbstractFile[] sortWithComparator() {
+        AbstractFile[] sorted = files.clone();
+        Arrays.sort(sorted, comparator);
+        return sorted;
+    }
+
+    @Benchmark
+    public int[] sortIndexes() {
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        comparator.sort(files, indexes);
+        return indexes;
+    }
+}
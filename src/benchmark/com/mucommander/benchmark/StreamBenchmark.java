@@ -0,0 +1,87 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmark;
+
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.SinkOutputStream;
+import com.mucommander.commons.io.StreamUtils;
+import org.openjdk.jmh.annotations.*;
+import ru.trolsoft.utils.search.BytesSearchPattern;
+import ru.trolsoft.utils.search.InputStreamSource;
+import ru.trolsoft.utils.search.SearchException;
+import ru.trolsoft.utils.search.SearchUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the stream copy, the buffer pool and the search of bytes in a stream.
+ *
+ * @author Oleg Trifonov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StreamBenchmark {
+
+    @Param({"8388608"})
+    private int dataSize;
+
+    private byte[] data;
+    private byte[] pattern;
+    private final OutputStream sink = new SinkOutputStream();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        data = BenchmarkUtils.randomBytes(dataSize, random);
+        // The pattern is found at the end of the data only
+        pattern = new byte[16];
+        System.arraycopy(data, dataSize - pattern.length, pattern, 0, pattern.length);
+    }
+
+    @Benchmark
+    public long copyStream() throws FileTransferException {
+        return StreamUtils.copyStream(new ByteArrayInputStream(data), sink);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] bufferPoolGetRelease() {
+        byte[] buffer = BufferPool.getByteArray();
+        BufferPool.releaseByteArray(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] bufferPoolGetReleaseContended() {
+        byte[] buffer = BufferPool.getByteArray();
+        BufferPool.releaseByteArray(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public long searchIndexOf() throws SearchException {
+        return SearchUtils.indexOf(new InputStreamSource(new ByteArrayInputStream(data)), new BytesSearchPattern(pattern));
+    }
+}
@@ -28,6 +28,7 @@ import com.mucommander.command.Command;
 import com.mucommander.command.CommandManager;
 import com.mucommander.command.CommandType;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.connection.ConnectionPool;
 import com.mucommander.commons.file.icon.impl.SwingFileIconProvider;
 import com.mucommander.commons.file.impl.ftp.FTPProtocolProvider;
 import com.mucommander.commons.file.impl.smb.SMBProtocolProvider;
@@ -35,6 +36,7 @@ import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.conf.TcConfigurations;
 import com.mucommander.conf.TcPreference;
 import com.mucommander.conf.TcPreferences;
+import com.mucommander.conf.TcPreferencesAPI;
 import com.mucommander.extension.ExtensionManager;
 import com.mucommander.profiler.Profiler;
 import com.mucommander.shell.ShellHistoryManager;
@@ -89,6 +91,8 @@ public class TrolCommander {
     private static boolean isLaunching = true;
     /** Launch lock. */
     private static final Object LAUNCH_LOCK = new Object();
+    /** Measures the time from the start of the application to the display of the main window */
+    private static volatile Profiler.Span loadingSpan;
 
 
     /**
@@ -252,6 +256,12 @@ public class TrolCommander {
             // The math.max(1.0f, ...) part is to workaround a bug which cause(d) this value to be set to 0.0 in the configuration file.
             FileIcons.setScaleFactor(Math.max(1.0f, TcConfigurations.getPreferences().getVariable(TcPreference.TABLE_ICON_SCALE, TcPreferences.DEFAULT_TABLE_ICON_SCALE)));
             FileIcons.setSystemIconsPolicy(TcConfigurations.getPreferences().getVariable(TcPreference.USE_SYSTEM_FILE_ICONS, TcPreferences.DEFAULT_USE_SYSTEM_FILE_ICONS));
+
+            TcPreferencesAPI preferences = TcConfigurations.getPreferences();
+            ConnectionPool.setMaxConnectionsPerRealm(preferences.getVariable(TcPreference.MAX_CONNECTIONS_PER_REALM, TcPreferences.DEFAULT_MAX_CONNECTIONS_PER_REALM));
+            ConnectionPool.setMinIdleConnectionsPerRealm(preferences.getVariable(TcPreference.MIN_IDLE_CONNECTIONS_PER_REALM, TcPreferences.DEFAULT_MIN_IDLE_CONNECTIONS_PER_REALM));
+            ConnectionPool.setMaxIdleConnectionsPerRealm(preferences.getVariable(TcPreference.MAX_IDLE_CONNECTIONS_PER_REALM, TcPreferences.DEFAULT_MAX_IDLE_CONNECTIONS_PER_REALM));
+            ConnectionPool.setAcquireTimeout(preferences.getVariable(TcPreference.CONNECTION_ACQUIRE_TIMEOUT, TcPreferences.DEFAULT_CONNECTION_ACQUIRE_TIMEOUT));
         }
     }
 
@@ -365,7 +375,7 @@ public class TrolCommander {
                 WindowManager.createNewMainFrame(mainFrameBuilder);                                 // !!!!
             }
             Profiler.stop("launcher.create-window");
-            Profiler.stop("loading");
+            loadingSpan.end();
             Profiler.print();
             Profiler.hide("launcher.");
         }
@@ -807,7 +817,7 @@ public class TrolCommander {
         }
 
         Profiler.start("init");
-        Profiler.start("loading");
+        loadingSpan = Profiler.begin("loading");
 
         getLogger().info("Current OS family: {}", OsFamily.getCurrent());
 
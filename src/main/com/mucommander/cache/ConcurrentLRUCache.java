@@ -0,0 +1,446 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe LRU cache implementation which approximates the LRU order with the CLOCK (second chance) algorithm.
+ *
+ * <p>Items are stored in a <code>ConcurrentHashMap</code> and {@link #get(Object) get()} doesn't take any lock: it
+ * only marks the item as recently used. Keys are distributed among segments, each one holding a share of the capacity
+ * and its own lock, which is taken by {@link #add(Object, Object, long) add()} only. When a segment is full, its items
+ * are visited in insertion order and the first one that hasn't been used since the last visit is removed.
+ *
+ * <p>Items having a time-to-live are put in a hashed timer wheel, which is advanced by <code>get()</code> and
+ * <code>add()</code> calls: only the items whose expiration is due are visited.
+ *
+ * @author Oleg Trifonov
+ */
+public class ConcurrentLRUCache<K, V> extends LRUCache<K, V> {
+
+    /** Maximum number of segments */
+    private static final int MAX_SEGMENTS = 16;
+
+    /** Minimal capacity of a segment, smaller caches have less segments */
+    private static final int MIN_SEGMENT_CAPACITY = 32;
+
+    /** Number of buckets of the timer wheel, must be a power of two */
+    private static final int WHEEL_SIZE = 256;
+
+    /** Duration of a timer wheel tick in milliseconds */
+    private static final long TICK_MS = 100;
+
+    private final Map<K, Node<K, V>> map = new ConcurrentHashMap<>();
+
+    private final Segment<K, V>[] segments;
+
+    /** Timer wheel buckets, guarded by {@link #wheelLock} */
+    private final List<Node<K, V>>[] wheel;
+
+    private final ReentrantLock wheelLock = new ReentrantLock();
+
+    /** Last tick processed by the timer wheel */
+    private volatile long wheelTick;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    public ConcurrentLRUCache(int capacity) {
+        super(capacity);
+        int nbSegments = 1;
+        while (nbSegments < MAX_SEGMENTS && nbSegments * 2 * MIN_SEGMENT_CAPACITY <= capacity) {
+            nbSegments *= 2;
+        }
+        segments = newSegments(nbSegments);
+        for (int i = 0; i < nbSegments; i++) {
+            segments[i] = new Segment<>(capacity / nbSegments + (i < capacity % nbSegments ? 1 : 0));
+        }
+        wheel = newWheel(WHEEL_SIZE);
+        wheelTick = System.currentTimeMillis() / TICK_MS;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] newSegments(int length) {
+        return (Segment<K, V>[])new Segment<?, ?>[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> List<Node<K, V>>[] newWheel(int length) {
+        return (List<Node<K, V>>[])new List<?>[length];
+    }
+
+
+    /**
+     * Returns a String representation of this cache.
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder(super.toString()).
+                append(" size=").append(map.size()).
+                append(" capacity=").append(capacity).
+                append(" segments=").append(segments.length).append('\n');
+
+        int i = 0;
+        for (Node<K, V> node : map.values()) {
+            sb.append(i++).append("-key=").append(node.key).append(" value=").append(node.value).
+                    append(" expirationDate=").append(node.expiration == Long.MAX_VALUE ? null : node.expiration).append('\n');
+        }
+        sb.append("nbCacheHits=").append(hits.sum()).append(" nbCacheMisses=").append(misses.sum()).
+                append(" nbEvictions=").append(evictions.sum()).append('\n');
+
+        return sb.toString();
+    }
+
+
+    @Override
+    public V get(K key) {
+        long now = System.currentTimeMillis();
+        advanceWheel(now);
+
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        // The timer wheel may not have removed the item yet
+        if (node.expiration < now) {
+            misses.increment();
+            remove(node);
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+
+    @Override
+    public void add(K key, V value) {
+        add(key, value, -1);
+    }
+
+
+    @Override
+    public void add(K key, V value, long timeToLive) {
+        long now = System.currentTimeMillis();
+        advanceWheel(now);
+
+        Node<K, V> node = new Node<>(key, value, timeToLive == -1 ? Long.MAX_VALUE : now + timeToLive);
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock();
+        try {
+            Node<K, V> old = map.put(key, node);
+            if (old != null) {
+                // The replaced node stays in the clock until it is visited
+                old.removed = true;
+                segment.size--;
+            }
+            segment.clock.addLast(node);
+            segment.size++;
+            while (segment.size > segment.capacity) {
+                evict(segment);
+            }
+            // Don't let removed nodes accumulate in the clock
+            if (segment.clock.size() > 2 * segment.capacity + MIN_SEGMENT_CAPACITY) {
+                segment.clock.removeIf(n -> n.removed);
+            }
+        } finally {
+            segment.unlock();
+        }
+
+        if (node.expiration != Long.MAX_VALUE) {
+            schedule(node);
+        }
+    }
+
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+
+    @Override
+    public void clearAll() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+        }
+        try {
+            for (Node<K, V> node : map.values()) {
+                node.removed = true;
+            }
+            map.clear();
+            for (Segment<K, V> segment : segments) {
+                segment.clock.clear();
+                segment.size = 0;
+            }
+        } finally {
+            for (Segment<K, V> segment : segments) {
+                segment.unlock();
+            }
+        }
+        wheelLock.lock();
+        try {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = null;
+            }
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+
+    @Override
+    public int getHitCount() {
+        return (int)hits.sum();
+    }
+
+
+    @Override
+    public int getMissCount() {
+        return (int)misses.sum();
+    }
+
+
+    /**
+     * Returns the number of items that have been removed to make room for new ones since this cache was created.
+     * Expired items are not counted.
+     *
+     * @return the number of items evicted since this cache was created
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+
+    /**
+     * Removes the next item of the segment's clock that hasn't been used since the clock's hand last visited it.
+     * Must be called with the segment's lock held.
+     */
+    private void evict(Segment<K, V> segment) {
+        Node<K, V> node;
+        while ((node = segment.clock.pollFirst()) != null) {
+            if (node.removed) {
+                continue;
+            }
+            if (node.referenced) {
+                // Second chance
+                node.referenced = false;
+                segment.clock.addLast(node);
+                continue;
+            }
+            map.remove(node.key, node);
+            node.removed = true;
+            segment.size--;
+            evictions.increment();
+            return;
+        }
+    }
+
+
+    /**
+     * Removes the given node from the cache, if it is still there.
+     */
+    private void remove(Node<K, V> node) {
+        Segment<K, V> segment = segmentFor(node.key);
+        segment.lock();
+        try {
+            if (!node.removed && map.remove(node.key, node)) {
+                node.removed = true;
+                segment.size--;
+            }
+        } finally {
+            segment.unlock();
+        }
+    }
+
+
+    /**
+     * Puts the given node in the timer wheel bucket of its expiration. The bucket is the one of the first tick not
+     * before the expiration, so that the node has expired when its bucket is processed.
+     */
+    private void schedule(Node<K, V> node) {
+        wheelLock.lock();
+        try {
+            addToWheel(node);
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+
+    private void addToWheel(Node<K, V> node) {
+        int bucket = (int)(((node.expiration + TICK_MS - 1) / TICK_MS) & (WHEEL_SIZE - 1));
+        List<Node<K, V>> nodes = wheel[bucket];
+        if (nodes == null) {
+            nodes = new ArrayList<>();
+            wheel[bucket] = nodes;
+        }
+        nodes.add(node);
+    }
+
+
+    /**
+     * Processes the timer wheel buckets up to the current tick and removes the expired items. Nothing is done if
+     * another thread is already doing it.
+     */
+    private void advanceWheel(long now) {
+        long tick = now / TICK_MS;
+        if (tick <= wheelTick || !wheelLock.tryLock()) {
+            return;
+        }
+        List<Node<K, V>> expired = null;
+        try {
+            long from = Math.max(wheelTick + 1, tick - WHEEL_SIZE + 1);
+            for (long t = from; t <= tick; t++) {
+                int bucket = (int)(t & (WHEEL_SIZE - 1));
+                List<Node<K, V>> nodes = wheel[bucket];
+                if (nodes == null) {
+                    continue;
+                }
+                wheel[bucket] = null;
+                for (Node<K, V> node : nodes) {
+                    if (node.removed) {
+                        continue;
+                    }
+                    if (node.expiration <= now) {
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(node);
+                    } else {
+                        // Expires in a later turn of the wheel
+                        addToWheel(node);
+                    }
+                }
+            }
+            wheelTick = tick;
+        } finally {
+            wheelLock.unlock();
+        }
+        if (expired != null) {
+            for (Node<K, V> node : expired) {
+                remove(node);
+            }
+        }
+    }
+
+
+    //////////////////
+    // Test methods //
+    //////////////////
+
+    /**
+     * Tests this LRUCache for corruption and throws a RuntimeException if something is wrong.
+     */
+    @Override
+    protected void testCorruption() throws RuntimeException {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock();
+            try {
+                if (segment.size > segment.capacity) {
+                    throw new RuntimeException("cache corrupted: segment size " + segment.size + " exceeds its capacity " + segment.capacity);
+                }
+                int live = 0;
+                for (Iterator<Node<K, V>> it = segment.clock.iterator(); it.hasNext(); ) {
+                    Node<K, V> node = it.next();
+                    if (!node.removed) {
+                        live++;
+                        if (map.get(node.key) != node) {
+                            throw new RuntimeException("cache corrupted: value could not be found for key=" + node.key);
+                        }
+                    }
+                }
+                if (live != segment.size) {
+                    throw new RuntimeException("cache corrupted: segment size " + segment.size + " doesn't match its items " + live);
+                }
+                size += live;
+            } finally {
+                segment.unlock();
+            }
+        }
+        if (size != map.size()) {
+            throw new RuntimeException("cache corrupted: size " + map.size() + " doesn't match the segments' " + size);
+        }
+    }
+
+
+    /**
+     * A cached item.
+     */
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        /** Expiration date, <code>Long.MAX_VALUE</code> if the item doesn't expire */
+        private final long expiration;
+        /** Set when the item is used, cleared when the clock's hand passes over it */
+        private volatile boolean referenced;
+        /** Set when the item has been removed from the cache */
+        private volatile boolean removed;
+
+        private Node(K key, V value, long expiration) {
+            this.key = key;
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+
+
+    /**
+     * A share of the cache's capacity with its own lock and clock.
+     */
+    private static final class Segment<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        /** Items in insertion order, may contain removed items */
+        private final ArrayDeque<Node<K, V>> clock = new ArrayDeque<>();
+        /** Number of items of the segment that have not been removed */
+        private int size;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private void lock() {
+            lock.lock();
+        }
+
+        private void unlock() {
+            lock.unlock();
+        }
+    }
+}
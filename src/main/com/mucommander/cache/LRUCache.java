@@ -139,7 +139,7 @@ public abstract class LRUCache<K, V> {
      * @param key key
      * @param value value
      */
-    public synchronized void add(K key, V value) {
+    public void add(K key, V value) {
         add(key, value, -1);
     }
 	
@@ -175,7 +175,7 @@ public abstract class LRUCache<K, V> {
         LRUCache<Integer, Integer> cache;
         /*
         // Simple test case
-        cache = new FastLRUCache(3);
+        cache = new ConcurrentLRUCache(3);
 
         cache.add("orange", "ORANGE");
         System.out.println(cache.toString());
@@ -205,7 +205,7 @@ public abstract class LRUCache<K, V> {
 
         // Stress test to see if everything looks OK after a few thousand iterations
         int capacity = 1000;
-        cache = new FastLRUCache<>(capacity);
+        cache = new ConcurrentLRUCache<>(capacity);
         Random random = new Random();
         for (int i=0; i<100000; i++) {
             // 50% chance to add a new element with a random value and expiration date (50% chance for no expiration date)
@@ -25,12 +25,12 @@ import com.mucommander.commons.file.impl.ProxyFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
 import java.util.WeakHashMap;
 
 /**
@@ -54,9 +54,10 @@ import java.util.WeakHashMap;
  * <p>The first time one of the <code>ls()</code> methods is called to list the archive's contents,
  * {@link #getEntryIterator()} is called to retrieve a list of *all* the entries contained by the archive, not only the
  * ones at the top level but also the ones nested one of several levels below. Using this list of entries, it creates
- * a tree to map the structure of the archive and list the content of any particular directory within the archive.
- * This tree is recreated (<code>getEntryIterator()</code> is called again) only if the archive file has changed, i.e.
- * if its date has changed since the tree was created.
+ * an {@link ArchiveEntryIndex} to map the structure of the archive and list the content of any particular directory
+ * within the archive. This index is recreated (<code>getEntryIterator()</code> is called again) only if the archive
+ * file has changed, i.e. if its date has changed since the index was created. The index is immutable, so that several
+ * threads can list the same archive concurrently.
  *
  * <p>Files returned by the <code>ls()</code> are {@link AbstractArchiveEntryFile} instances which use an {@link ArchiveEntry}
  * object to retrieve the entry's attributes. In turn, these <code>AbstractArchiveEntryFile</code> instances query the
@@ -80,17 +81,20 @@ import java.util.WeakHashMap;
 public abstract class AbstractArchiveFile extends ProxyFile {
     private static Logger logger;
 
-    /** Archive entries tree */
-    private ArchiveEntryTree entryTreeRoot;
+    /** Archive entries index, replaced as a whole when entries change */
+    private volatile ArchiveEntryIndex entryIndex;
 
-    /** Date this file had when the entries tree was created. Used to detect if the archive file has changed and entries
+    /** Date this file had when the entries index was created. Used to detect if the archive file has changed and entries
      * need to be reloaded */
-    private long entryTreeDate;
+    private volatile long entryIndexDate;
+
+    /** Lock held while the entries index is created or modified */
+    private final Object entryIndexLock = new Object();
 
     /** Caches {@link AbstractArchiveEntryFile} instances so that there is only one AbstractArchiveEntryFile
      * corresponding to the same entry at any given time, to avoid attribute inconsistencies. The key is the
-     * corresponding ArchiveEntry. */
-    private WeakHashMap<ArchiveEntry, AbstractArchiveEntryFile> archiveEntryFiles;
+     * corresponding ArchiveEntry. Accesses are synchronized on the map. */
+    private volatile Map<ArchiveEntry, AbstractArchiveEntryFile> archiveEntryFiles;
 
     /**
      * Creates an AbstractArchiveFile on top of the given file.
@@ -102,29 +106,29 @@ public abstract class AbstractArchiveFile extends ProxyFile {
     }
 
     /**
-     * Creates the entries tree, used by {@link #ls(AbstractArchiveEntryFile , com.mucommander.commons.file.filter.FilenameFilter, com.mucommander.commons.file.filter.FileFilter)}
-     * to quickly list the contents of an archive's subfolder.
+     * Creates the entries index, used by {@link #ls(AbstractArchiveEntryFile , com.mucommander.commons.file.filter.FilenameFilter, com.mucommander.commons.file.filter.FileFilter)}
+     * to quickly list the contents of an archive's subfolder. Must be called with {@link #entryIndexLock} held.
      *
      * @throws IOException if an error occurred while retrieving this archive's entries
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    private void createEntriesTree() throws IOException {
-        // TODO: this method is not thread-safe and needs to be synchronized
-        ArchiveEntryTree treeRoot = new ArchiveEntryTree();
-        archiveEntryFiles = new WeakHashMap<>();
+    private void createEntriesIndex() throws IOException {
+        ArchiveEntryIndex.Builder builder = new ArchiveEntryIndex.Builder();
 
         long start = System.currentTimeMillis();
         ArchiveEntryIterator entries = getEntryIterator();
         try {
             ArchiveEntry entry;
             while ((entry = entries.nextEntry()) != null) {
-                treeRoot.addArchiveEntry(entry);
+                builder.add(entry);
             }
+            ArchiveEntryIndex index = builder.build();
 
-            getLogger().info("entries tree created in "+(System.currentTimeMillis()-start)+" ms");
+            getLogger().info("entries index of " + index.size() + " nodes created in " + (System.currentTimeMillis() - start) + " ms");
 
-            this.entryTreeRoot = treeRoot;
+            this.archiveEntryFiles = new WeakHashMap<>();
+            this.entryIndex = index;
             declareEntriesTreeUpToDate();
         }
         finally {
@@ -137,70 +141,76 @@ public abstract class AbstractArchiveFile extends ProxyFile {
     }
 
     /**
-     * Checks if the entries tree exists and if this file hasn't been modified since the tree was last created.
-     * If any of those 2 conditions isn't met, the entries tree is (re)created.
+     * Checks if the entries index exists and if this file hasn't been modified since the index was last created.
+     * If any of those 2 conditions isn't met, the entries index is (re)created.
      *
-     * @throws IOException if an error occurred while creating the tree
+     * @return the up-to-date entries index
+     * @throws IOException if an error occurred while creating the index
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    private void checkEntriesTree() throws IOException {
-        if (this.entryTreeRoot == null || getLastModifiedDate() != this.entryTreeDate) {
-            createEntriesTree();
+    private ArchiveEntryIndex checkEntriesTree() throws IOException {
+        ArchiveEntryIndex index = this.entryIndex;
+        if (index != null && getLastModifiedDate() == this.entryIndexDate) {
+            return index;
+        }
+        synchronized (entryIndexLock) {
+            // The index may have been created by another thread in the meantime
+            if (this.entryIndex == null || getLastModifiedDate() != this.entryIndexDate) {
+                createEntriesIndex();
+            }
+            return this.entryIndex;
         }
     }
 
     /**
-     * Declares the entries tree up-to-date by setting the current tree date to the archive file's.
+     * Declares the entries index up-to-date by setting the current index date to the archive file's.
      * This method should be called by {@link AbstractRWArchiveFile} implementations when the archive file has been
-     * modified and the entries propagated in the tree, to avoid the tree from being automatically re-created when
+     * modified and the entries propagated in the index, to avoid the index from being automatically re-created when
      * {@link #checkEntriesTree()} is called.
      */
     protected void declareEntriesTreeUpToDate() {
-        this.entryTreeDate = getLastModifiedDate();
+        this.entryIndexDate = getLastModifiedDate();
     }
 
     /**
-     * Adds the given {@link ArchiveEntry} to the entries tree. This method will create the tree if it doesn't already
+     * Adds the given {@link ArchiveEntry} to the entries index. This method will create the index if it doesn't already
      * exist, or re-create it if the archive file has changed since it was last created.
      *
-     * @param entry the ArchiveEntry to add to the tree
-     * @throws IOException if an error occurred while creating the entries tree
+     * @param entry the ArchiveEntry to add to the index
+     * @throws IOException if an error occurred while creating the entries index
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
     protected void addToEntriesTree(ArchiveEntry entry) throws IOException {
-        checkEntriesTree();
-        entryTreeRoot.addArchiveEntry(entry);
+        synchronized (entryIndexLock) {
+            this.entryIndex = checkEntriesTree().withEntry(entry);
+        }
     }
 
     /**
-     * Removes the given {@link ArchiveEntry} from the entries tree. This method will create the tree if it doesn't
+     * Removes the given {@link ArchiveEntry} from the entries index. This method will create the index if it doesn't
      * already exist, or re-create it if the archive file has changed since it was last created.
      *
-     * @param entry the ArchiveEntry to remove from the tree
-     * @throws IOException if an error occurred while creating the entries tree
+     * @param entry the ArchiveEntry to remove from the index
+     * @throws IOException if an error occurred while creating the entries index
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
     protected void removeFromEntriesTree(ArchiveEntry entry) throws IOException {
-        checkEntriesTree();
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
-
-        if(entryNode!=null) {
-            DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
-            parentNode.remove(entryNode);
+        synchronized (entryIndexLock) {
+            this.entryIndex = checkEntriesTree().withoutEntry(entry.getPath());
         }
     }
 
     /**
-     * Returns the {@link ArchiveEntryTree} instance corresponding to the root of the archive entry tree.
-     * The returned value can be <code>null</code> if the tree hasn't been intialized yet.
+     * Returns the {@link ArchiveEntryIndex} of this archive's entries.
+     * The returned value can be <code>null</code> if the index hasn't been intialized yet.
      *
-     * @return the ArchiveEntryTree instance corresponding to the root of the archive entry tree
+     * @return the index of this archive's entries
      */
-    ArchiveEntryTree getArchiveEntryTree() {
-        return entryTreeRoot;
+    ArchiveEntryIndex getArchiveEntryIndex() {
+        return entryIndex;
     }
 
     /**
@@ -210,14 +220,14 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     protected AbstractFile[] ls(AbstractArchiveEntryFile entryFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();        
+        // Make sure the entries index is created and up-to-date
+        ArchiveEntryIndex index = checkEntriesTree();
 
         if (!entryFile.isBrowsable()) {
             throw new IOException();
         }
 
-        DefaultMutableTreeNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
+        ArchiveEntryIndex.Node matchNode = index.findNode(entryFile.getEntry().getPath());
         if (matchNode == null) {
             throw new IOException();
         }
@@ -226,28 +236,28 @@ public abstract class AbstractArchiveFile extends ProxyFile {
     }
 
     /**
-     * Returns the contents (direct children) of the specified tree node.
+     * Returns the contents (direct children) of the specified index node.
      *
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    private AbstractFile[] ls(DefaultMutableTreeNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
+    private AbstractFile[] ls(ArchiveEntryIndex.Node node, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException {
         AbstractFile[] files;
-        int nbChildren = treeNode.getChildCount();
+        int nbChildren = node.getChildCount();
 
         // No FilenameFilter, create entry files and store them directly into an array
         if(filenameFilter==null) {
             files = new AbstractFile[nbChildren];
 
             for(int c=0; c<nbChildren; c++) {
-                files[c] = getArchiveEntryFile((ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject()), parentFile);
+                files[c] = getArchiveEntryFile(node.getChild(c).getEntry(), parentFile);
             }
         }
-        // Use provided FilenameFilter and temporarily store created entry files that match the filter in a Vector
+        // Use provided FilenameFilter and temporarily store created entry files that match the filter in a list
         else {
-            List<AbstractFile> filesV = new Vector<>();
+            List<AbstractFile> filesV = new ArrayList<>();
             for(int c=0; c<nbChildren; c++) {
-                ArchiveEntry entry = (ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject());
+                ArchiveEntry entry = node.getChild(c).getEntry();
                 if(!filenameFilter.accept(entry.getName()))
                     continue;
 
@@ -281,30 +291,33 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Cache AbstractArchiveEntryFile instances so that there is only one AbstractArchiveEntryFile corresponding to 
         // the same entry at any given time, to avoid attribute inconsistencies.
 
-        AbstractArchiveEntryFile entryFile = archiveEntryFiles.get(entry);
-        if (entryFile == null) {
-            FileURL archiveURL = getURL();
-            FileURL entryURL = (FileURL)archiveURL.clone();
-            entryURL.setPath(addTrailingSeparator(archiveURL.getPath()) + entryPath);
-
-            // create an RO and RW entry file, depending on whether this archive file is RO or RW
-            entryFile = this instanceof AbstractRWArchiveFile
-                ?new RWArchiveEntryFile(
-                  entryURL,
-                  this,
-                  entry
-                )
-                :new ROArchiveEntryFile(
+        Map<ArchiveEntry, AbstractArchiveEntryFile> entryFiles = archiveEntryFiles;
+        synchronized (entryFiles) {
+            AbstractArchiveEntryFile entryFile = entryFiles.get(entry);
+            if (entryFile == null) {
+                FileURL archiveURL = getURL();
+                FileURL entryURL = (FileURL)archiveURL.clone();
+                entryURL.setPath(addTrailingSeparator(archiveURL.getPath()) + entryPath);
+
+                // create an RO and RW entry file, depending on whether this archive file is RO or RW
+                entryFile = this instanceof AbstractRWArchiveFile
+                    ?new RWArchiveEntryFile(
                       entryURL,
                       this,
                       entry
-                );
+                    )
+                    :new ROArchiveEntryFile(
+                          entryURL,
+                          this,
+                          entry
+                    );
 
-            entryFile.setParent(parentFile);
+                entryFile.setParent(parentFile);
 
-            archiveEntryFiles.put(entry, entryFile);
+                entryFiles.put(entry, entryFile);
+            }
+            return FileFactory.wrapArchive(entryFile);
         }
-        return FileFactory.wrapArchive(entryFile);
     }
 
 
@@ -338,16 +351,16 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     public AbstractFile getArchiveEntryFile(String entryPath) throws IOException {
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();
+        // Make sure the entries index is created and up-to-date
+        ArchiveEntryIndex index = checkEntriesTree();
 
         // Todo: check if that's really necessary / if there is a way to remove this
         entryPath = entryPath.replace(File.separatorChar, ArchiveEntry.SEPARATOR_CHAR);
 
-        // Find the entry node corresponding to the given path
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entryPath);
+        // Find the entry node corresponding to the given path, and the nodes of its parents
+        ArchiveEntryIndex.Node[] entryNodes = index.findNodePath(entryPath);
 
-        if(entryNode==null) {
+        if(entryNodes==null) {
             int depth = ArchiveEntry.getDepth(entryPath);
 
             AbstractFile parentFile;
@@ -368,24 +381,32 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             return getArchiveEntryFile(new ArchiveEntry(entryPath, false, 0, 0, false), parentFile);
         }
 
-        return getArchiveEntryFile(entryNode);
+        // Resolve the files of the entry's parents from the top-level folder down, the root is this archive
+        AbstractFile file = this;
+        for (ArchiveEntryIndex.Node node : entryNodes) {
+            file = getArchiveEntryFile(node.getEntry(), file);
+        }
+        return file;
     }
 
     /**
-     * Creates and returns an {@link AbstractFile} instance corresponding to the given entry node.
-     * This method recurses to resolve the entry's parent file.
+     * Returns an iterator of {@link ArchiveEntry} that iterates through all the entries of this archive, like
+     * {@link #getEntryIterator()}, to be used by a caller that intends to read the given entries in the iterator's
+     * order by passing the iterator to {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}.
+     * Implementations for which reading entries one by one is costly, for instance because the entries are compressed
+     * together, may take advantage of knowing the entries in advance to read them all in a single pass.
      *
-     * @param entryNode tree node corresponding to the entry for which to return a file
-     * @return an {@link AbstractFile} instance corresponding to the given entry node
+     * <p>This implementation simply returns {@link #getEntryIterator()}.
+     *
+     * @param entriesToRead the entries that the caller intends to read, entries that end up not being read are allowed
+     * @return an iterator of {@link ArchiveEntry} that iterates through all the entries of this archive
+     * @throws IOException if an error occurred while reading the archive, either because the archive is corrupt or
+     * because of an I/O error
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
      */
-    private AbstractFile getArchiveEntryFile(DefaultMutableTreeNode entryNode) throws IOException {
-        DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
-        return getArchiveEntryFile(
-                (ArchiveEntry)entryNode.getUserObject(),
-                parentNode==entryTreeRoot
-                    ?this
-                    :getArchiveEntryFile(parentNode)
-        );
+    public ArchiveEntryIterator getEntryIterator(List<ArchiveEntry> entriesToRead) throws IOException {
+        return getEntryIterator();
     }
 
     
@@ -474,10 +495,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         if(!isArchive())
             return super.ls();
 
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();
+        // Make sure the entries index is created and up-to-date
+        ArchiveEntryIndex index = checkEntriesTree();
 
-        return ls(entryTreeRoot, this, null, null);
+        return ls(index.getRoot(), this, null, null);
     }
 
     /**
@@ -497,10 +518,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         if (!isArchive())
             return super.ls(filter);
 
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();
+        // Make sure the entries index is created and up-to-date
+        ArchiveEntryIndex index = checkEntriesTree();
 
-        return ls(entryTreeRoot, this, filter, null);
+        return ls(index.getRoot(), this, filter, null);
     }
 
     /**
@@ -520,10 +541,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             return super.ls(filter);
         }
 
-        // Make sure the entries tree is created and up-to-date
-        checkEntriesTree();
+        // Make sure the entries index is created and up-to-date
+        ArchiveEntryIndex index = checkEntriesTree();
 
-        return ls(entryTreeRoot, this, null, filter);
+        return ls(index.getRoot(), this, null, filter);
     }
 
     // Note: do not override #isDirectory() to always return true, as AbstractArchiveFile instances may be created when
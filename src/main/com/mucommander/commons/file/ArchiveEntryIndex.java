@@ -0,0 +1,424 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of the entries of an archive, organized the way they are inside the archive.
+ *
+ * <p>Each folder {@link Node} holds its children in an array sorted by name, so that a child is looked up by binary
+ * search and listing a folder doesn't allocate anything but the returned files. The root node has no entry.
+ * Parent folders that have no entry of their own in the archive are given a directory entry.
+ *
+ * <p>An index is never modified once built, it can be read by several threads at the same time.
+ * {@link #withEntry(ArchiveEntry)} and {@link #withoutEntry(String)} return a new index that shares all its nodes
+ * with this one except those on the path of the added or removed entry: only the children arrays of the entry's
+ * ancestors are copied.
+ *
+ * @author Oleg Trifonov
+ */
+final class ArchiveEntryIndex {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /** Root of the archive, it has no entry */
+    private final Node root;
+
+    /** Number of nodes, including the root */
+    private final int size;
+
+
+    private ArchiveEntryIndex(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of nodes in this index, including the root.
+     *
+     * @return the number of nodes in this index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the root node of this index, which has no entry.
+     *
+     * @return the root node of this index
+     */
+    Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Finds the node of the specified entry path, <code>null</code> if there is no such entry.
+     *
+     * <p>Important note: the given path's separator character must be '/' and the path must be relative to the
+     * archive's root, i.e. not start with a leading '/', otherwise the entry will not be found. Trailing separators
+     * are ignored when paths are compared, for example the path 'temp' will match the entry 'temp/'.
+     *
+     * @param entryPath the path to the entry to look up in this index
+     * @return the node of the entry, the root for an empty path, <code>null</code> if not found
+     */
+    Node findNode(String entryPath) {
+        Node[] nodes = findNodePath(entryPath);
+        if (nodes == null) {
+            return null;
+        }
+        return nodes.length == 0 ? root : nodes[nodes.length - 1];
+    }
+
+    /**
+     * Finds the nodes of the specified entry path and of all its parent folders, see {@link #findNode(String)}.
+     *
+     * @param entryPath the path to the entry to look up in this index
+     * @return the nodes from the top-level folder down to the entry, an empty array for an empty path,
+     * <code>null</code> if not found
+     */
+    Node[] findNodePath(String entryPath) {
+        List<Node> nodes = new ArrayList<>(4);
+        Node node = root;
+        int len = entryPath.length();
+        int start = 0;
+        while (start < len) {
+            int end = entryPath.indexOf(ArchiveEntry.SEPARATOR_CHAR, start);
+            if (end < 0) {
+                end = len;
+            }
+            if (end > start) {
+                int child = node.findChild(entryPath, start, end);
+                if (child < 0) {
+                    return null;
+                }
+                node = node.children[child];
+                nodes.add(node);
+            }
+            start = end + 1;
+        }
+        return nodes.toArray(new Node[nodes.size()]);
+    }
+
+    /**
+     * Returns a new index containing the entries of this one and the given entry, which replaces any entry with the
+     * same path.
+     *
+     * @param entry the entry to add
+     * @return a new index containing the given entry
+     */
+    ArchiveEntryIndex withEntry(ArchiveEntry entry) {
+        String path = entry.getPath();
+        int[] nbAdded = new int[1];
+        Node newRoot = insert(root, entry, path, 0, nameEnd(path), nbAdded);
+        // the entry has to exist
+        entry.setExists(true);
+        return newRoot == root ? this : new ArchiveEntryIndex(newRoot, size + nbAdded[0]);
+    }
+
+    /**
+     * Returns a copy of the given node with the entry whose path is <code>path.substring(0, end)</code> inserted
+     * below it, <code>start</code> being the offset of the first name to look up in the node's children.
+     */
+    private static Node insert(Node node, ArchiveEntry entry, String path, int start, int end, int[] nbAdded) {
+        while (start < end && path.charAt(start) == ArchiveEntry.SEPARATOR_CHAR) {
+            start++;
+        }
+        if (start >= end) {
+            return node;
+        }
+        int slash = path.indexOf(ArchiveEntry.SEPARATOR_CHAR, start);
+        boolean last = slash < 0 || slash >= end;
+        int nameEnd = last ? end : slash;
+        int index = node.findChild(path, start, nameEnd);
+        if (index >= 0) {
+            Node child = node.children[index];
+            child = last ? new Node(entry, path, start, child.children) : insert(child, entry, path, nameEnd + 1, end, nbAdded);
+            return node.withChild(index, child);
+        }
+        Node child;
+        if (last) {
+            child = new Node(entry, path, start, NO_CHILDREN);
+        } else {
+            // create a directory entry for a parent folder, it may be replaced later by the folder's own entry
+            String folderPath = path.substring(0, nameEnd + 1);
+            Node folder = new Node(new ArchiveEntry(folderPath, true, entry.getLastModifiedDate(), 0, true), folderPath, start, NO_CHILDREN);
+            child = insert(folder, entry, path, nameEnd + 1, end, nbAdded);
+        }
+        nbAdded[0]++;
+        return node.withInsertedChild(-index - 1, child);
+    }
+
+    /**
+     * Returns a new index containing the entries of this one except the one with the given path and, if it is a
+     * folder, its children.
+     *
+     * @param entryPath the path of the entry to remove
+     * @return a new index without the given entry, this index if it doesn't contain the entry
+     */
+    ArchiveEntryIndex withoutEntry(String entryPath) {
+        Node[] nodes = findNodePath(entryPath);
+        if (nodes == null || nodes.length == 0) {
+            return this;
+        }
+        Node removed = nodes[nodes.length - 1];
+        // Copy the ancestors, from the removed node's parent up to the root
+        Node node = null;
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            Node parent = i == 0 ? root : nodes[i - 1];
+            int index = parent.indexOf(nodes[i]);
+            node = node == null ? parent.withoutChild(index) : parent.withChild(index, node);
+        }
+        return new ArchiveEntryIndex(node, size - removed.countNodes());
+    }
+
+    /**
+     * Returns the end of the name in the given path, excluding a trailing separator.
+     */
+    private static int nameEnd(String path) {
+        int len = path.length();
+        return len > 0 && path.charAt(len - 1) == ArchiveEntry.SEPARATOR_CHAR ? len - 1 : len;
+    }
+
+
+    /**
+     * A node of the index: an entry and, if it is a folder, its children.
+     */
+    static final class Node {
+        /** Entry of this node, <code>null</code> for the root */
+        private final ArchiveEntry entry;
+
+        /** Path of the entry when the node was created, the node's name is the last element of it */
+        private final String path;
+
+        /** Offset of the node's name in its path */
+        private final int nameOffset;
+
+        /** Children sorted by name */
+        private final Node[] children;
+
+        private Node(ArchiveEntry entry, String path, int nameOffset, Node[] children) {
+            this.entry = entry;
+            this.path = path;
+            this.nameOffset = nameOffset;
+            this.children = children;
+        }
+
+        /**
+         * Returns the entry of this node, <code>null</code> for the root.
+         *
+         * @return the entry of this node
+         */
+        ArchiveEntry getEntry() {
+            return entry;
+        }
+
+        /**
+         * Returns the number of children of this node.
+         *
+         * @return the number of children of this node
+         */
+        int getChildCount() {
+            return children.length;
+        }
+
+        /**
+         * Returns a child of this node, children are sorted by name.
+         *
+         * @param index index of the child, between <code>0</code> and <code>getChildCount() - 1</code>
+         * @return the child
+         */
+        Node getChild(int index) {
+            return children[index];
+        }
+
+        /**
+         * Finds the child whose name is <code>s.substring(start, end)</code>, returns its index or
+         * <code>-(insertion point) - 1</code> if there is none.
+         */
+        private int findChild(String s, int start, int end) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = children[mid].compareName(s, start, end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * Compares the name of this node with <code>s.substring(start, end)</code>, the same way as
+         * {@link String#compareTo(String)} would.
+         */
+        private int compareName(String s, int start, int end) {
+            int nameEnd = nameEnd(path);
+            int len1 = nameEnd - nameOffset;
+            int len2 = end - start;
+            int lim = Math.min(len1, len2);
+            for (int i = 0; i < lim; i++) {
+                char c1 = path.charAt(nameOffset + i);
+                char c2 = s.charAt(start + i);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            return len1 - len2;
+        }
+
+        private int indexOf(Node child) {
+            return findChild(child.path, child.nameOffset, nameEnd(child.path));
+        }
+
+        private Node withChild(int index, Node child) {
+            Node[] newChildren = children.clone();
+            newChildren[index] = child;
+            return new Node(entry, path, nameOffset, newChildren);
+        }
+
+        private Node withInsertedChild(int index, Node child) {
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newChildren[index] = child;
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            return new Node(entry, path, nameOffset, newChildren);
+        }
+
+        private Node withoutChild(int index) {
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            return new Node(entry, path, nameOffset, newChildren);
+        }
+
+        /**
+         * Returns the number of nodes of the subtree rooted at this node.
+         */
+        private int countNodes() {
+            int count = 1;
+            for (Node child : children) {
+                count += child.countNodes();
+            }
+            return count;
+        }
+    }
+
+
+    /**
+     * Collects the entries of an archive and builds an index of them. Entries are organized as they are added,
+     * an entry replaces the previous one with the same path.
+     */
+    static final class Builder {
+        /** Nodes by path, without trailing separator */
+        private final Map<String, BuilderNode> nodes = new HashMap<>();
+
+        private final BuilderNode root = new BuilderNode(null, "", 0);
+
+        /**
+         * Adds the given entry to the index, creating parent folder entries as necessary.
+         *
+         * @param entry the entry to add
+         */
+        void add(ArchiveEntry entry) {
+            String path = entry.getPath();
+            int end = nameEnd(path);
+            BuilderNode parent = root;
+            int start = 0;
+            while (start < end) {
+                int slash = path.indexOf(ArchiveEntry.SEPARATOR_CHAR, start);
+                boolean last = slash < 0 || slash >= end;
+                int nameEnd = last ? end : slash;
+                if (nameEnd > start) {
+                    String key = path.substring(0, nameEnd);
+                    BuilderNode node = nodes.get(key);
+                    if (node == null) {
+                        node = new BuilderNode(path.substring(start, nameEnd), last ? path : path.substring(0, nameEnd + 1), start);
+                        // create a directory entry for a parent folder, it may be replaced later by the folder's own entry
+                        node.entry = last ? entry : new ArchiveEntry(node.path, true, entry.getLastModifiedDate(), 0, true);
+                        parent.addChild(node);
+                        nodes.put(key, node);
+                    } else if (last) {
+                        node.entry = entry;
+                        node.path = path;
+                    }
+                    parent = node;
+                }
+                if (last) {
+                    break;
+                }
+                start = slash + 1;
+            }
+            // the entry has to exist
+            entry.setExists(true);
+        }
+
+        /**
+         * Builds the index of the entries added so far.
+         *
+         * @return the index of the entries added so far
+         */
+        ArchiveEntryIndex build() {
+            return new ArchiveEntryIndex(root.toNode(), nodes.size() + 1);
+        }
+    }
+
+    /**
+     * A node of the index being built.
+     */
+    private static final class BuilderNode {
+        private final String name;
+        private final int nameOffset;
+        private String path;
+        private ArchiveEntry entry;
+        private List<BuilderNode> children;
+
+        private BuilderNode(String name, String path, int nameOffset) {
+            this.name = name;
+            this.path = path;
+            this.nameOffset = nameOffset;
+        }
+
+        private void addChild(BuilderNode child) {
+            if (children == null) {
+                children = new ArrayList<>(4);
+            }
+            children.add(child);
+        }
+
+        private Node toNode() {
+            if (children == null) {
+                return new Node(entry, path, nameOffset, NO_CHILDREN);
+            }
+            children.sort((n1, n2) -> n1.name.compareTo(n2.name));
+            Node[] nodes = new Node[children.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = children.get(i).toNode();
+            }
+            return new Node(entry, path, nameOffset, nodes);
+        }
+    }
+}
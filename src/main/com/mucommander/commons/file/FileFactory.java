@@ -21,6 +21,7 @@ package com.mucommander.commons.file;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.mucommander.commons.file.impl.avrdude.AvrdudeProtocolProvider;
 import org.slf4j.Logger;
@@ -97,7 +98,7 @@ public class FileFactory {
     private static ArchiveFormatProvider[] archiveFormatProviders;
 
     /** Contains a FilePool instance for each registered scheme */
-    private static final Map<String, FilePool> FILE_POOL_MAP = new HashMap<>();
+    private static final Map<String, FilePool> FILE_POOL_MAP = new ConcurrentHashMap<>();
 
     /** System temp directory */
     private static final AbstractFile TEMP_DIRECTORY;
@@ -262,6 +263,17 @@ public class FileFactory {
         return protocolProviders.get(protocol.toLowerCase());
     }
 
+    /**
+     * Returns the pool of the file instances of the specified protocol, which gives access to its hit rate and
+     * number of live entries, or <code>null</code> if the protocol is not registered.
+     *
+     * @param  protocol identifier of the protocol whose file pool should be retrieved.
+     * @return the pool of the file instances of the specified protocol, or <code>null</code> if none.
+     */
+    public static FilePool getFilePool(String protocol) {
+        return FILE_POOL_MAP.get(protocol.toLowerCase());
+    }
+
     /**
      * Returns <code>true</code> if the given protocol has a registered {@link ProtocolProvider}.
      *
@@ -490,6 +502,11 @@ public class FileFactory {
             // trailing slash insensitive (e.g. '/root' and '/root/' URLS are one and the same)
             AbstractFile file = filePool.get(fileURL);
             if (file != null) {
+                // Attributes read by the listing that created a local file are meant for the caller of ls() only
+                AbstractFile localFile = file.getTopAncestor();
+                if (localFile instanceof LocalFile) {
+                    ((LocalFile)localFile).discardListingAttributes();
+                }
                 return file;
             }
         }
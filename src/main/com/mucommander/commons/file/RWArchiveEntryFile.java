@@ -3,7 +3,6 @@ package com.mucommander.commons.file;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.CounterOutputStream;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -91,9 +90,9 @@ public class RWArchiveEntryFile extends AbstractArchiveEntryFile {
 
         // Throw an IOException if this entry is a non-empty directory
         if (isDirectory()) {
-            ArchiveEntryTree tree = rwArchiveFile.getArchiveEntryTree();
-            if (tree != null) {
-                DefaultMutableTreeNode node = tree.findEntryNode(entry.getPath());
+            ArchiveEntryIndex index = rwArchiveFile.getArchiveEntryIndex();
+            if (index != null) {
+                ArchiveEntryIndex.Node node = index.findNode(entry.getPath());
                 if (node != null && node.getChildCount() > 0) {
                     throw new IOException();
                 }
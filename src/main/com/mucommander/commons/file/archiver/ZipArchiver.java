@@ -25,6 +25,8 @@ class ZipArchiver extends Archiver {
         super(outputStream);
 
         this.zos = new ZipOutputStream(outputStream);
+        // Deflate large entries on all cores
+        zos.setThreads(Runtime.getRuntime().availableProcessors());
     }
 
 
@@ -1,9 +1,20 @@
 package com.mucommander.commons.file.connection;
 
+import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,110 +24,160 @@ import com.mucommander.commons.file.FileURL;
 
 
 /**
+ * Pool of {@link ConnectionHandler} instances, shared by the files of a protocol.
+ *
+ * <p>Connection handlers are grouped by realm and credentials, each group having its own lock and a fair queue of
+ * threads waiting for one of its handlers to be released, so that realms don't contend with each other. A single
+ * scheduled executor keeps connections alive, closes the ones that have been inactive for too long and the idle ones
+ * exceeding {@link #setMaxIdleConnectionsPerRealm(int) the maximum}.
+ *
+ * <p>Usage statistics are returned by {@link #getStatistics()}.
+ *
  * @see com.mucommander.commons.file.connection.ConnectionHandler
  * @author Maxence Bernard
  */
-public class ConnectionPool implements Runnable {
+public class ConnectionPool {
     private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
 
-    /** Singleton instance */
-    private static final ConnectionPool instance = new ConnectionPool();
+    /** Handlers grouped by realm and credentials */
+    private final static Map<RealmKey, RealmPool> pools = new ConcurrentHashMap<>();
 
-    /** List of registered ConnectionHandler */
-    private final static List<ConnectionHandler> connectionHandlers = new ArrayList<>();
+    /** Keeps connections alive, closes expired connections and starts pre-warmed ones */
+    private final static ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "ConnectionPool");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    /** The thread that monitors connections, null if there currently is no registered ConnectionHandler */
-    private static Thread monitorThread;
+    /** True once the monitor task has been scheduled */
+    private static volatile boolean monitorStarted;
 
-    /** Controls how of often the thread monitor checks connections */
-    private final static int MONITOR_SLEEP_PERIOD = 1000;
+    /** Controls how of often the monitor checks connections */
+    private final static int MONITOR_PERIOD = 1000;
+
+    /** Default maximum number of simultaneous connections per realm/credentials combo */
+    public final static int DEFAULT_MAX_CONNECTIONS_PER_REALM = 4;
+
+    /** Default maximum time to wait for a connection to be released, in milliseconds */
+    public final static long DEFAULT_ACQUIRE_TIMEOUT = 60000;
 
     /** Maximum number of simultaneous connections per realm/credentials combo */
-    private final static int MAX_CONNECTIONS_PER_REALM = 4;
+    private static volatile int maxConnectionsPerRealm = DEFAULT_MAX_CONNECTIONS_PER_REALM;
 
+    /** Number of idle connections per realm/credentials combo that are not closed on inactivity */
+    private static volatile int minIdleConnectionsPerRealm = 0;
 
-    public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
-        FileURL realm = url.getRealm();
+    /** Maximum number of idle connections per realm/credentials combo, the extra ones are closed by the monitor */
+    private static volatile int maxIdleConnectionsPerRealm = DEFAULT_MAX_CONNECTIONS_PER_REALM;
 
-        while(true) {
-            synchronized(connectionHandlers) {      // Ensures that monitor thread is not currently changing the list while we access it
-                Credentials urlCredentials = url.getCredentials();
-                int matchingConnHandlers = 0;
+    /** Maximum time to wait for a connection to be released, in milliseconds. A transfer may hold a connection for
+     * a long time, waiting threads give up after this delay rather than closing a connection that is in use */
+    private static volatile long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
 
+    private final static LongAdder acquireCount = new LongAdder();
+    private final static LongAdder acquireNanos = new LongAdder();
+    private final static LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+    private final static LongAdder waitCount = new LongAdder();
+    private final static LongAdder timeoutCount = new LongAdder();
+    private final static LongAdder createdCount = new LongAdder();
+    private final static LongAdder closedCount = new LongAdder();
+    private final static AtomicInteger waitingThreads = new AtomicInteger();
+
+
+    public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
+        long start = System.nanoTime();
+        RealmPool pool = getRealmPool(url);
+        ReentrantLock lock = pool.lock;
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
+            throw new InterruptedIOException();
+        }
+        try {
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(acquireTimeout);
+            boolean waited = false;
+            while (true) {
                 // Try and find an appropriate existing ConnectionHandler
-                //for (ConnectionHandler connHandler : connectionHandlers) {
-                for (Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext(); ) {
-                    ConnectionHandler connHandler = it.next();
-                	// ConnectionHandler must match the realm and credentials and must not be locked
-                	if (connHandler.equals(realm, urlCredentials)) {
-                		matchingConnHandlers++;
-                		synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
-                			if (!connHandler.isLocked()) {
-                				// Try to acquire lock if a lock was requested
-                				if (!acquireLock || connHandler.acquireLock()) {
-                					LOGGER.info("returning ConnectionHandler {}, realm = {}", connHandler, realm);
-
-                					// Update last activity timestamp to now
-                					connHandler.updateLastActivityTimestamp();
-
-                					return connHandler;
-                				}
-                			}
-                		}
-                	}
-                    
-                    if (matchingConnHandlers == MAX_CONNECTIONS_PER_REALM) {
-                        LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
-                        try {
-                            // Wait for a ConnectionHandler to be released or removed from the pool
-                            final int timeout = 5000;
-                            long t0 = System.currentTimeMillis();
-                            connectionHandlers.wait(timeout);      // relinquishes the lock on connectionHandlers
-                            if (System.currentTimeMillis() - t0 > timeout) {
-                                connHandler.closeConnection();
-                                it.remove();
-                                throw new InterruptedIOException();
-                            }
-                            break;
-                        } catch(InterruptedException e) {
-                            LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
-                            connHandler.closeConnection();
-                            it.remove();
-
-                            throw new InterruptedIOException();
+                for (ConnectionHandler connHandler : pool.handlers) {
+                    synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
+                        // Try to acquire lock if a lock was requested
+                        if (!connHandler.isLocked() && (!acquireLock || connHandler.acquireLock())) {
+                            LOGGER.debug("returning ConnectionHandler {}, realm = {}", connHandler, pool.key.realm);
+
+                            // Update last activity timestamp to now
+                            connHandler.updateLastActivityTimestamp();
+                            recordAcquire(start);
+                            return connHandler;
                         }
                     }
                 }
 
-                if (matchingConnHandlers == MAX_CONNECTIONS_PER_REALM) {
-                    continue;
+                if (pool.handlers.size() < maxConnectionsPerRealm) {
+                    // No suitable ConnectionHandler found, create a new one
+                    ConnectionHandler connHandler = addConnectionHandler(pool, connectionHandlerFactory, url, acquireLock);
+                    recordAcquire(start);
+                    return connHandler;
                 }
 
-                // No suitable ConnectionHandler found, create a new one
-                ConnectionHandler connHandler = connectionHandlerFactory.createConnectionHandler(url);
-
-                // Acquire lock if a lock was requested
-                if (acquireLock) {
-                    connHandler.acquireLock();
+                LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    timeoutCount.increment();
+                    LOGGER.info("Timed out while waiting on a connection for {}", url);
+                    throw new InterruptedIOException("Timed out while waiting on a connection");
                 }
-
-                LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
-
-                // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
-                connectionHandlers.add(0, connHandler);// insertElementAt(connHandler, 0);
-
-                // Start monitor thread if it is not currently running (if there previously was no registered ConnectionHandler)
-                if (monitorThread == null) {
-                    LOGGER.info("starting monitor thread");
-                    monitorThread = new Thread(instance);
-                    monitorThread.start();
+                if (!waited) {
+                    waited = true;
+                    waitCount.increment();
+                }
+                waitingThreads.incrementAndGet();
+                try {
+                    // Wait for a ConnectionHandler to be released or removed from the pool
+                    pool.available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
+                    throw new InterruptedIOException();
+                } finally {
+                    waitingThreads.decrementAndGet();
                 }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                // Update last activity timestamp to now
-                connHandler.updateLastActivityTimestamp();
 
-                return connHandler;
+    /**
+     * Creates connection handlers for the given URL until the given number of handlers exists for its realm, and
+     * starts their connection in background, so that they are ready when needed.
+     *
+     * @param connectionHandlerFactory the factory of the connection handlers
+     * @param url the URL of the server to connect to
+     * @param nbConnections the number of connections to open, at most the maximum number of connections per realm
+     */
+    public static void prewarm(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, int nbConnections) {
+        RealmPool pool = getRealmPool(url);
+        List<ConnectionHandler> created = new ArrayList<>();
+        pool.lock.lock();
+        try {
+            while (pool.handlers.size() < Math.min(nbConnections, maxConnectionsPerRealm)) {
+                // Handlers are locked until they are connected
+                created.add(addConnectionHandler(pool, connectionHandlerFactory, url, true));
             }
+        } finally {
+            pool.lock.unlock();
+        }
+        for (final ConnectionHandler connHandler : created) {
+            executor.execute(() -> {
+                try {
+                    connHandler.checkConnection();
+                } catch (IOException e) {
+                    LOGGER.info("Could not pre-warm connection {}", connHandler, e);
+                } finally {
+                    connHandler.releaseLock();
+                }
+            });
         }
     }
 
@@ -129,163 +190,461 @@ public class ConnectionPool implements Runnable {
      * @return a list of registered ConnectionHandler instances
      */
     public static List<ConnectionHandler> getConnectionHandlersSnapshot() {
-        synchronized (connectionHandlers) {
-            connectionHandlers.removeIf(connectionHandler -> !connectionHandler.isConnected());
-            return new ArrayList<>(connectionHandlers);
+        List<ConnectionHandler> snapshot = new ArrayList<>();
+        for (RealmPool pool : pools.values()) {
+            pool.lock.lock();
+            try {
+                for (Iterator<ConnectionHandler> it = pool.handlers.iterator(); it.hasNext(); ) {
+                    ConnectionHandler connHandler = it.next();
+                    if (connHandler.isLocked() || connHandler.isConnected()) {
+                        snapshot.add(connHandler);
+                    } else {
+                        it.remove();
+                        pool.available.signal();
+                    }
+                }
+            } finally {
+                pool.lock.unlock();
+            }
         }
+        return snapshot;
     }
-    
-//    /**
-//     * Returns the ConnectionHandler instance located at the given position in the list.
-//     */
-//    private static ConnectionHandler getConnectionHandlerAt(int i) {
-//        return connectionHandlers.get(i);
-//    }
 
     /**
      * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionHandler</code> that a
      * <code>ConnectionHandler</code> has been released.
+     *
+     * @param connHandler the released handler
+     */
+    static void notifyConnectionHandlerLockReleased(ConnectionHandler connHandler) {
+        RealmPool pool = pools.get(new RealmKey(connHandler.getRealm(), connHandler.getCredentials()));
+        if (pool == null) {
+            return;
+        }
+        pool.lock.lock();
+        try {
+            // Notify the first thread waiting for a ConnectionHandler to be released
+            pool.available.signal();
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+
+    /**
+     * Sets the maximum number of simultaneous connections per realm and credentials. Threads requesting a connection
+     * when the maximum is reached wait for a connection to be released.
+     *
+     * @param maxConnections the maximum number of connections per realm
      */
-    static void notifyConnectionHandlerLockReleased() {
-        synchronized (connectionHandlers) {
-            // Notify any thread waiting for a ConnectionHandler to be released
-            connectionHandlers.notify();
+    public static void setMaxConnectionsPerRealm(int maxConnections) {
+        maxConnectionsPerRealm = Math.max(1, maxConnections);
+    }
+
+    public static int getMaxConnectionsPerRealm() {
+        return maxConnectionsPerRealm;
+    }
+
+    /**
+     * Sets the number of idle connections per realm and credentials that are kept open when they reach their
+     * 'close on inactivity' period.
+     *
+     * @param minIdleConnections the minimum number of idle connections per realm
+     */
+    public static void setMinIdleConnectionsPerRealm(int minIdleConnections) {
+        minIdleConnectionsPerRealm = Math.max(0, minIdleConnections);
+    }
+
+    public static int getMinIdleConnectionsPerRealm() {
+        return minIdleConnectionsPerRealm;
+    }
+
+    /**
+     * Sets the maximum number of idle connections per realm and credentials, the extra ones are closed.
+     *
+     * @param maxIdleConnections the maximum number of idle connections per realm
+     */
+    public static void setMaxIdleConnectionsPerRealm(int maxIdleConnections) {
+        maxIdleConnectionsPerRealm = Math.max(0, maxIdleConnections);
+    }
+
+    public static int getMaxIdleConnectionsPerRealm() {
+        return maxIdleConnectionsPerRealm;
+    }
+
+    /**
+     * Sets the maximum time to wait for a connection to be released when the maximum number of connections is reached,
+     * after which {@link #getConnectionHandler(ConnectionHandlerFactory, FileURL, boolean)} throws an
+     * <code>InterruptedIOException</code>.
+     *
+     * @param timeout the timeout in milliseconds
+     */
+    public static void setAcquireTimeout(long timeout) {
+        acquireTimeout = timeout;
+    }
+
+    public static long getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+
+    /**
+     * Returns the current usage statistics of the pool.
+     *
+     * @return a snapshot of the usage statistics
+     */
+    public static Statistics getStatistics() {
+        int inUse = 0;
+        int idle = 0;
+        for (RealmPool pool : pools.values()) {
+            pool.lock.lock();
+            try {
+                for (ConnectionHandler connHandler : pool.handlers) {
+                    if (connHandler.isLocked()) {
+                        inUse++;
+                    } else {
+                        idle++;
+                    }
+                }
+            } finally {
+                pool.lock.unlock();
+            }
+        }
+        return new Statistics(inUse, idle, waitingThreads.get(), acquireCount.sum(), acquireNanos.sum(),
+                maxAcquireNanos.get(), waitCount.sum(), timeoutCount.sum(), createdCount.sum(), closedCount.sum());
+    }
+
+
+    private static RealmPool getRealmPool(FileURL url) {
+        return pools.computeIfAbsent(new RealmKey(url.getRealm(), url.getCredentials()), RealmPool::new);
+    }
+
+    /**
+     * Creates a handler and adds it to the given pool, must be called with the pool's lock held.
+     */
+    private static ConnectionHandler addConnectionHandler(RealmPool pool, ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) {
+        ConnectionHandler connHandler = connectionHandlerFactory.createConnectionHandler(url);
+
+        // Acquire lock if a lock was requested
+        if (acquireLock) {
+            connHandler.acquireLock();
+        }
+
+        LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
+
+        // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
+        pool.handlers.add(0, connHandler);
+        createdCount.increment();
+
+        startMonitor();
+
+        // Update last activity timestamp to now
+        connHandler.updateLastActivityTimestamp();
+
+        return connHandler;
+    }
+
+    private static void recordAcquire(long start) {
+        long nanos = System.nanoTime() - start;
+        acquireCount.increment();
+        acquireNanos.add(nanos);
+        maxAcquireNanos.accumulate(nanos);
+    }
+
+    private static void startMonitor() {
+        if (!monitorStarted) {
+            synchronized (ConnectionPool.class) {
+                if (!monitorStarted) {
+                    LOGGER.info("starting monitor");
+                    executor.scheduleWithFixedDelay(ConnectionPool::monitor, MONITOR_PERIOD, MONITOR_PERIOD, TimeUnit.MILLISECONDS);
+                    monitorStarted = true;
+                }
+            }
         }
     }
 
+
     /**
      * Monitors connections and periodically:
      * <ul>
      *   <li>keeps connections alive
      *   <li>closes and removes connections that have expired
+     *   <li>closes and removes the idle connections exceeding the maximum
      * </ul>
      */
-    public void run() {
-
-        while (monitorThread != null) {        // Thread will be interrupted by CloseConnectionThread if there are no more ConnectionHandler
-            long now = System.currentTimeMillis();
+    private static void monitor() {
+        long now = System.currentTimeMillis();
+        for (RealmPool pool : pools.values()) {
+            pool.lock.lock();
+            try {
+                monitor(pool, now);
+            } catch (RuntimeException e) {
+                LOGGER.info("Error while monitoring connections", e);
+            } finally {
+                pool.lock.unlock();
+            }
+        }
+    }
 
-            synchronized(connectionHandlers) {      // Ensures that getConnectionHandler is not currently changing the list while we access it
-                for (Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext();) {
-                    final ConnectionHandler connHandler = it.next();
+    /**
+     * Monitors the connections of a realm, must be called with the pool's lock held.
+     */
+    private static void monitor(RealmPool pool, long now) {
+        int idle = 0;
+        for (ConnectionHandler connHandler : pool.handlers) {
+            if (!connHandler.isLocked()) {
+                idle++;
+            }
+        }
+        // Handlers are sorted from the most recently added, the oldest idle ones are closed first
+        for (int i = pool.handlers.size() - 1; i >= 0; i--) {
+            final ConnectionHandler connHandler = pool.handlers.get(i);
 
-                    synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it
-                        // Do not touch ConnectionHandler if it is currently locked
-                        if (connHandler.isLocked()) {
-                            continue;
-                        }
+            synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it
+                // Do not touch ConnectionHandler if it is currently locked
+                if (connHandler.isLocked()) {
+                    continue;
+                }
 
-                        // Remove ConnectionHandler instance from the list of registered ConnectionHandler
-                        // if it is not connected
-                        if (!connHandler.isConnected()) {
-                            LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
+                // Remove ConnectionHandler instance from the list of registered ConnectionHandler
+                // if it is not connected
+                if (!connHandler.isConnected()) {
+                    LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
 
-                            it.remove();
-                            // Notify any thread waiting for a ConnectionHandler to be released
-                            connectionHandlers.notify();
+                    pool.handlers.remove(i);
+                    idle--;
+                    // Notify any thread waiting for a ConnectionHandler to be released
+                    pool.available.signal();
 
-                            continue;       // Skips close on inactivity and keep alive checks
-                        }
+                    continue;       // Skips close on inactivity and keep alive checks
+                }
 
-                        long lastUsed = connHandler.getLastActivityTimestamp();
+                long lastUsed = connHandler.getLastActivityTimestamp();
 
-                        // If time-to-live has been reached without any connection activity, remove ConnectionHandler
-                        // from the list of registered ConnectionHandler and close the connection in a separate thread
-                        long closePeriod = connHandler.getCloseOnInactivityPeriod();
-                        if (closePeriod != -1 && now - lastUsed > closePeriod*1000) {
-                            LOGGER.info("Removing timed-out ConnectionHandler {}",connHandler);
+                // If time-to-live has been reached without any connection activity, or if there are too many idle
+                // connections, remove ConnectionHandler and close the connection asynchronously
+                long closePeriod = connHandler.getCloseOnInactivityPeriod();
+                boolean expired = closePeriod != -1 && now - lastUsed > closePeriod*1000 && idle > minIdleConnectionsPerRealm;
+                if (expired || idle > maxIdleConnectionsPerRealm) {
+                    LOGGER.info("Removing {} ConnectionHandler {}", expired ? "timed-out" : "idle", connHandler);
 
-                            it.remove();
-                            // Notify any thread waiting for a ConnectionHandler to be released
-                            connectionHandlers.notify();
+                    pool.handlers.remove(i);
+                    idle--;
+                    // Notify any thread waiting for a ConnectionHandler to be released
+                    pool.available.signal();
 
-                            // Close connection in a separate thread as it could lock this thread
-                            new CloseConnectionThread(connHandler).start();
+                    // Close connection asynchronously as it could lock this thread
+                    executor.execute(() -> closeConnection(connHandler));
 
-                            continue;       // Skips keep alive check
-                        }
+                    continue;       // Skips keep alive check
+                }
 
-                        // If keep-alive period has been reached without any connection activity or a keep alive,
-                        // keep connection alive in a separate thread
-                        long keepAlivePeriod = connHandler.getKeepAlivePeriod();
-                        if (keepAlivePeriod != -1 && now-Math.max(lastUsed, connHandler.getLastKeepAliveTimestamp()) > keepAlivePeriod*1000) {
-                            // Update last keep alive timestamp to now
-                            connHandler.updateLastKeepAliveTimestamp();
+                // If keep-alive period has been reached without any connection activity or a keep alive,
+                // keep connection alive asynchronously
+                long keepAlivePeriod = connHandler.getKeepAlivePeriod();
+                if (keepAlivePeriod != -1 && now-Math.max(lastUsed, connHandler.getLastKeepAliveTimestamp()) > keepAlivePeriod*1000) {
+                    // Update last keep alive timestamp to now
+                    connHandler.updateLastKeepAliveTimestamp();
 
-                            // Keep connection alive in a separate thread as it could lock this thread
-                            new KeepAliveConnectionThread(connHandler).start();
-                        }
-                    }
+                    // Keep connection alive asynchronously as it could lock this thread
+                    executor.execute(() -> keepAlive(connHandler));
                 }
+            }
+        }
+    }
 
-                // Stop monitor thread if there are no more ConnectionHandler
-                if (connectionHandlers.isEmpty()) {
-                    LOGGER.info("No more ConnectionHandler, stopping monitor thread");
-                    monitorThread = null;
-                }
+    /**
+     * Closes a ConnectionHandler's connection that has been removed from the pool.
+     */
+    private static void closeConnection(ConnectionHandler connHandler) {
+        // Try to close connection, only if it is connected
+        if (connHandler.isConnected()) {
+            LOGGER.info("Closing connection held by {}", connHandler);
+            connHandler.closeConnection();
+        }
+        closedCount.increment();
+    }
+
+    /**
+     * Keeps alive a ConnectionHandler's connection. If the connection is not currently
+     * active, {@link com.mucommander.commons.file.connection.ConnectionHandler#keepAlive()} will not be called.
+     */
+    private static void keepAlive(ConnectionHandler connHandler) {
+        LOGGER.info("keeping connection alive: {}", connHandler);
+
+        synchronized(connHandler) {
+            // Ensures that lock was not grabbed in the meantime
+            if (connHandler.isLocked()) {
+                return;
             }
 
-            // Sleep for MONITOR_SLEEP_PERIOD milliseconds, minus the processing time of this loop
-            try {
-                Thread.sleep(Math.max(0, MONITOR_SLEEP_PERIOD-(System.currentTimeMillis()-now)));
-            } catch (InterruptedException e) {
-                // Will loop again
+            // Keep alive connection, only if it is connected
+            if (connHandler.isConnected()) {
+                connHandler.keepAlive();
             }
         }
     }
 
 
     /**
-     * Closes a specified ConnectionHandler's connection in a separate thread and removes the ConnectionHandler from
-     * the list of registered ConnectionHandler instances.
+     * Realm and credentials of the handlers of a pool.
      */
-    private static class CloseConnectionThread extends Thread {
-
-        private final ConnectionHandler connHandler;
-
-        private CloseConnectionThread(ConnectionHandler connHandler) {
-            this.connHandler = connHandler;
+    private static final class RealmKey {
+        private final FileURL realm;
+        private final Credentials credentials;
+        private final int hashCode;
+
+        private RealmKey(FileURL realm, Credentials credentials) {
+            this.realm = realm;
+            this.credentials = credentials;
+            // Credentials are compared in a way that is not consistent with their hash code
+            String host = realm.getHost();
+            this.hashCode = 31 * realm.getScheme().toLowerCase().hashCode() + (host == null ? 0 : host.toLowerCase().hashCode());
         }
 
         @Override
-        public void run() {
-            // Try to close connection, only if it is connected
-            if (connHandler.isConnected()) {
-                LOGGER.info("Closing connection held by {}", connHandler);
-                connHandler.closeConnection();
+        public boolean equals(Object o) {
+            if (!(o instanceof RealmKey)) {
+                return false;
+            }
+            RealmKey key = (RealmKey)o;
+            if (!realm.equals(key.realm, false, true)) {
+                return false;
             }
+            // Note: Credentials.equals() considers null as equal to empty Credentials (see Credentials#isEmpty())
+            return (credentials == null && key.credentials == null)
+                || (credentials != null && credentials.equals(key.credentials, true))
+                || (key.credentials != null && key.credentials.equals(credentials, true));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
         }
     }
 
 
     /**
-     * Keeps alive a specified ConnectionHandler's connection in a separate thread. If the connection is not currently
-     * active, {@link com.mucommander.commons.file.connection.ConnectionHandler#keepAlive()} will not be called.
+     * The handlers of a realm and credentials combo.
      */
-    private static class KeepAliveConnectionThread extends Thread {
+    private static final class RealmPool {
+        private final RealmKey key;
+        /** Fair lock, so that waiting threads get released connections in turn */
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Condition available = lock.newCondition();
+        /** Handlers, most recently created first, guarded by the lock */
+        private final List<ConnectionHandler> handlers = new ArrayList<>();
+
+        private RealmPool(RealmKey key) {
+            this.key = key;
+        }
+    }
 
-        private final ConnectionHandler connHandler;
 
-        private KeepAliveConnectionThread(ConnectionHandler connHandler) {
-            this.connHandler = connHandler;
+    /**
+     * Snapshot of the usage statistics of the pool.
+     */
+    public static final class Statistics {
+        private final int inUseCount;
+        private final int idleCount;
+        private final int waitingCount;
+        private final long acquireCount;
+        private final long acquireNanos;
+        private final long maxAcquireNanos;
+        private final long waitCount;
+        private final long timeoutCount;
+        private final long createdCount;
+        private final long closedCount;
+
+        private Statistics(int inUseCount, int idleCount, int waitingCount, long acquireCount, long acquireNanos,
+                           long maxAcquireNanos, long waitCount, long timeoutCount, long createdCount, long closedCount) {
+            this.inUseCount = inUseCount;
+            this.idleCount = idleCount;
+            this.waitingCount = waitingCount;
+            this.acquireCount = acquireCount;
+            this.acquireNanos = acquireNanos;
+            this.maxAcquireNanos = maxAcquireNanos;
+            this.waitCount = waitCount;
+            this.timeoutCount = timeoutCount;
+            this.createdCount = createdCount;
+            this.closedCount = closedCount;
         }
 
-        @Override
-        public void run() {
-            LOGGER.info("keeping connection alive: {}", connHandler);
+        /**
+         * @return the number of connections currently locked by a thread
+         */
+        public int getInUseCount() {
+            return inUseCount;
+        }
 
-            synchronized(connHandler) {
-                // Ensures that lock was not grabbed in the meantime
-                if (connHandler.isLocked()) {
-                    return;
-                }
+        /**
+         * @return the number of connections currently not locked
+         */
+        public int getIdleCount() {
+            return idleCount;
+        }
 
-                // Keep alive connection, only if it is connected
-                if (connHandler.isConnected()) {
-                    connHandler.keepAlive();
-                }
-            }
+        /**
+         * @return the number of threads currently waiting for a connection
+         */
+        public int getWaitingCount() {
+            return waitingCount;
+        }
+
+        /**
+         * @return the number of connections returned by the pool
+         */
+        public long getAcquireCount() {
+            return acquireCount;
+        }
+
+        /**
+         * @return the average time to get a connection from the pool, in microseconds
+         */
+        public long getAverageAcquireLatency() {
+            return acquireCount == 0 ? 0 : acquireNanos / acquireCount / 1000;
+        }
+
+        /**
+         * @return the maximum time to get a connection from the pool, in microseconds
+         */
+        public long getMaxAcquireLatency() {
+            return maxAcquireNanos / 1000;
+        }
+
+        /**
+         * @return the number of requests that had to wait for a connection to be released
+         */
+        public long getWaitCount() {
+            return waitCount;
+        }
+
+        /**
+         * @return the number of requests that timed out while waiting for a connection
+         */
+        public long getTimeoutCount() {
+            return timeoutCount;
+        }
+
+        /**
+         * @return the number of connection handlers created
+         */
+        public long getCreatedCount() {
+            return createdCount;
         }
-    }
 
+        /**
+         * @return the number of connections closed by the pool
+         */
+        public long getClosedCount() {
+            return closedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "inUse=" + inUseCount + " idle=" + idleCount + " waiting=" + waitingCount + " acquired=" + acquireCount +
+                    " avgLatency=" + getAverageAcquireLatency() + "us maxLatency=" + getMaxAcquireLatency() + "us waits=" +
+                    waitCount + " timeouts=" + timeoutCount + " created=" + createdCount + " closed=" + closedCount;
+        }
+    }
 }
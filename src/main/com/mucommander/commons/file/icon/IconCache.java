@@ -19,37 +19,75 @@
 package com.mucommander.commons.file.icon;
 
 
-import org.apache.commons.collections4.map.ReferenceMap;
-
 import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This class provides an icon cache, mapping <code>Object</code> keys onto {@link Icon} instances.
  * Any kind of Object may be used as the key: a file, a URL, an extension, ... allowing different of icon caching
  * strategies to be implemented.
  *
- * <p>Icons are stored as {@link java.lang.ref.SoftReference soft references} so they can be garbage collected 
- * when the VM runs low on memory.
+ * <p>The cache is bounded by the memory used by the pixels of its icons (the weight), estimated from their dimension.
+ * When the weight exceeds the maximum, the least recently used mappings are removed.
+ * Small icons that are identical pixel for pixel share the same instance, even when they are mapped onto different keys
+ * (e.g. several extensions having the same system icon), and their weight is only accounted for once.
  *
- * <p>The implementation uses the {@link ReferenceMap} class part of the <code>Apache Commons Collection</code> library.
- * All accesses to the underlying map is synchronized, making this cache thread-safe.
+ * <p>All accesses to the underlying map is synchronized, making this cache thread-safe.
  *
  * @author Maxence Bernard
  */
 public class IconCache {
 
-   /** The actual hash map */
-    private final ReferenceMap<Object, Icon> hashMap = new ReferenceMap<>(ReferenceMap.ReferenceStrength.HARD, ReferenceMap.ReferenceStrength.SOFT);
+    /** Default maximum weight of the icons, in bytes */
+    public static final long DEFAULT_MAX_WEIGHT = 4 * 1024 * 1024;
+
+    /** Estimated memory used by an icon instance, in addition to its pixels */
+    private static final int ICON_OVERHEAD = 64;
+
+    /** Maximum number of pixels of icons that can be shared */
+    private static final int MAX_SHARED_ICON_PIXELS = 64 * 64;
+
+    /** The actual hash map, in access order */
+    private final LinkedHashMap<Object, Icon> hashMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Icon instances of the map, with the number of keys they are mapped onto */
+    private final Map<Icon, CachedIcon> cachedIcons = new IdentityHashMap<>();
+
+    /** Icon instances that can be shared, by pixels */
+    private final Map<IconPixels, Icon> sharedIcons = new HashMap<>();
+
+    /** Maximum weight of the icons */
+    private long maxWeight;
+
+    /** Current weight of the icons */
+    private long weight;
 
     /**
-     * Creates a new icon cache.
+     * Creates a new icon cache with the {@link #DEFAULT_MAX_WEIGHT default maximum weight}.
      */
     IconCache() {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * Creates a new icon cache.
+     *
+     * @param maxWeight the maximum memory used by the pixels of the cached icons, in bytes
+     */
+    public IconCache(long maxWeight) {
+        this.maxWeight = maxWeight;
     }
 
     /**
      * Adds a new key/icon mapping to the cache. If a mapping with the same key exists, it is replaced and the previous
-     * value returned.
+     * value returned. If an identical icon is already cached, it is mapped onto the key instead of the given one.
      *
      * @param key the key that will later allow to retrieve the cached icon
      * @param value the icon instance to cache
@@ -57,7 +95,16 @@ public class IconCache {
      * such mapping existed
      */
     public synchronized Icon put(Object key, Icon value) {
-        return hashMap.put(key, value);
+        if (value == null) {
+            return remove(key);
+        }
+        value = share(value);
+        Icon old = hashMap.put(key, value);
+        if (old != null) {
+            release(old);
+        }
+        trim();
+        return old;
     }
 
     /**
@@ -72,6 +119,20 @@ public class IconCache {
         return hashMap.get(key);
     }
 
+    /**
+     * Removes the mapping of the given key.
+     *
+     * @param key key of the mapping to remove
+     * @return the icon instance that was mapped onto the given key, <code>null</code> if no such mapping existed
+     */
+    public synchronized Icon remove(Object key) {
+        Icon old = hashMap.remove(key);
+        if (old != null) {
+            release(old);
+        }
+        return old;
+    }
+
     /**
      * Returns <code>true</code> if this cache currently contains a key/icon mapping where the given key is used as
      * the mapping's key.
@@ -93,7 +154,7 @@ public class IconCache {
      * the mapping's key.
      */
     public synchronized boolean containsValue(Icon icon) {
-        return hashMap.containsValue(icon);
+        return cachedIcons.containsKey(icon);
     }
 
     /**
@@ -102,6 +163,9 @@ public class IconCache {
      */
     public synchronized void clear() {
         hashMap.clear();
+        cachedIcons.clear();
+        sharedIcons.clear();
+        weight = 0;
     }
 
     /**
@@ -112,4 +176,185 @@ public class IconCache {
     public synchronized int size() {
         return hashMap.size();
     }
+
+    /**
+     * Returns the estimated memory used by the pixels of the cached icons.
+     *
+     * @return the weight of the cached icons, in bytes
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the maximum memory used by the pixels of the cached icons.
+     *
+     * @return the maximum weight of the cached icons, in bytes
+     */
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Sets the maximum memory used by the pixels of the cached icons, removing the least recently used mappings if
+     * the cached icons are heavier.
+     *
+     * @param maxWeight the maximum weight of the cached icons, in bytes
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        trim();
+    }
+
+    /**
+     * Returns the estimated memory used by the given icon's pixels.
+     *
+     * @param icon an icon
+     * @return the weight of the icon, in bytes
+     */
+    public static long getWeight(Icon icon) {
+        int width = icon.getIconWidth();
+        int height = icon.getIconHeight();
+        if (icon instanceof ImageIcon) {
+            // The image may have a higher resolution than the icon (retina icons)
+            Image image = ((ImageIcon)icon).getImage();
+            if (image != null && image.getWidth(null) > 0 && image.getHeight(null) > 0) {
+                width = image.getWidth(null);
+                height = image.getHeight(null);
+            }
+        }
+        return ICON_OVERHEAD + 4L * Math.max(width, 0) * Math.max(height, 0);
+    }
+
+    /**
+     * Removes the least recently used mappings until the weight doesn't exceed the maximum. The most recently used
+     * mapping is always kept.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Object, Icon>> iterator = hashMap.entrySet().iterator();
+        while (weight > maxWeight && hashMap.size() > 1 && iterator.hasNext()) {
+            Icon icon = iterator.next().getValue();
+            iterator.remove();
+            release(icon);
+        }
+    }
+
+    /**
+     * Returns the cached icon identical to the given one if there is one, the given icon otherwise, and accounts for
+     * a new mapping of the returned icon.
+     */
+    private Icon share(Icon icon) {
+        CachedIcon cachedIcon = cachedIcons.get(icon);
+        if (cachedIcon == null) {
+            IconPixels pixels = IconPixels.of(icon);
+            Icon sharedIcon = pixels == null ? null : sharedIcons.get(pixels);
+            if (sharedIcon != null) {
+                icon = sharedIcon;
+                cachedIcon = cachedIcons.get(icon);
+            } else {
+                cachedIcon = new CachedIcon(getWeight(icon), pixels);
+                cachedIcons.put(icon, cachedIcon);
+                if (pixels != null) {
+                    sharedIcons.put(pixels, icon);
+                }
+                weight += cachedIcon.weight;
+            }
+        }
+        cachedIcon.mappings++;
+        return icon;
+    }
+
+    /**
+     * Accounts for the removal of a mapping of the given icon.
+     */
+    private void release(Icon icon) {
+        CachedIcon cachedIcon = cachedIcons.get(icon);
+        if (cachedIcon != null && --cachedIcon.mappings == 0) {
+            cachedIcons.remove(icon);
+            if (cachedIcon.pixels != null) {
+                sharedIcons.remove(cachedIcon.pixels);
+            }
+            weight -= cachedIcon.weight;
+        }
+    }
+
+
+    /**
+     * Weight and number of mappings of a cached icon instance.
+     */
+    private static final class CachedIcon {
+        private final long weight;
+        private final IconPixels pixels;
+        private int mappings;
+
+        private CachedIcon(long weight, IconPixels pixels) {
+            this.weight = weight;
+            this.pixels = pixels;
+        }
+    }
+
+
+    /**
+     * Pixels of an icon, used to find identical icons.
+     */
+    private static final class IconPixels {
+        private final int width;
+        private final int height;
+        private final int[] rgb;
+        private final int hash;
+
+        private IconPixels(int width, int height, int[] rgb) {
+            this.width = width;
+            this.height = height;
+            this.rgb = rgb;
+            this.hash = 31 * (31 * width + height) + Arrays.hashCode(rgb);
+        }
+
+        /**
+         * Paints the given icon and returns its pixels, <code>null</code> if the icon is too large to be shared or
+         * couldn't be painted.
+         */
+        private static IconPixels of(Icon icon) {
+            int width = icon.getIconWidth();
+            int height = icon.getIconHeight();
+            if (width <= 0 || height <= 0 || width * height > MAX_SHARED_ICON_PIXELS) {
+                return null;
+            }
+            if (icon instanceof ImageIcon) {
+                // Painting a high resolution image at the icon's dimension would lose details
+                Image iconImage = ((ImageIcon)icon).getImage();
+                if (iconImage != null && (iconImage.getWidth(null) != width || iconImage.getHeight(null) != height)) {
+                    return null;
+                }
+            }
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            try {
+                icon.paintIcon(null, g, 0, 0);
+            } catch (RuntimeException e) {
+                // Some icons can't be painted without a component
+                return null;
+            } finally {
+                g.dispose();
+            }
+            return new IconPixels(width, height, image.getRGB(0, 0, width, height, null, 0, width));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IconPixels)) {
+                return false;
+            }
+            IconPixels pixels = (IconPixels)o;
+            return width == pixels.width && height == pixels.height && hash == pixels.hash && Arrays.equals(rgb, pixels.rgb);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
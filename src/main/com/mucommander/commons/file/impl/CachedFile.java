@@ -80,7 +80,7 @@ public class CachedFile extends ProxyFile {
     private static final int IS_ROOT_VALUE_MASK = 1 << 30;
 
     /** If true, AbstractFile instances returned by this class will be wrapped into CachedFile instances */
-    private static final int RECURSE_INSTANCES_MASK = 1 << 29;
+    private static final int RECURSE_INSTANCES_MASK = 1 << 31;
 
     /**
      * All boolean values stored here as bits
@@ -199,6 +199,38 @@ public class CachedFile extends ProxyFile {
         if (recursiveInstances) {
             bitmask |= RECURSE_INSTANCES_MASK;
         }
+        if (file instanceof LocalFile) {
+            LocalFile.ListingAttributes attributes = ((LocalFile)file).takeListingAttributes();
+            if (attributes != null) {
+                setListingAttributes(attributes);
+            }
+        }
+    }
+
+
+    /**
+     * Caches the attributes of a local file that were read when its parent folder was listed.
+     */
+    private void setListingAttributes(LocalFile.ListingAttributes attributes) {
+        getSize = attributes.getSize();
+        getLastModified = attributes.getLastModifiedDate();
+        bitmask |= SIZE_SET_MASK | LAST_MODIFICATION_SET_MASK | SYMLINK_SET_MASK | DIRECTORY_SET_MASK | EXISTS_SET_MASK;
+        if (attributes.isSymlink()) {
+            bitmask |= SYMLINK_VALUE_MASK;
+        }
+        if (attributes.isDirectory()) {
+            bitmask |= DIRECTORY_VALUE_MASK;
+        }
+        if (attributes.exists()) {
+            bitmask |= EXISTS_VALUE_MASK;
+        }
+        Boolean hidden = attributes.isHidden();
+        if (hidden != null) {
+            if (hidden) {
+                bitmask |= HIDDEN_VALUE_MASK;
+            }
+            bitmask |= HIDDEN_SET_MASK;
+        }
     }
 
 
@@ -3,24 +3,69 @@ package com.mucommander.commons.file.impl;
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.sevenzip.SevenZipArchiveFile.ExtractCallback;
 import com.mucommander.commons.file.impl.sevenzip.SignatureCheckedRandomAccessFile;
-import com.mucommander.commons.util.CircularByteBuffer;
+import com.mucommander.commons.io.FailSafePipedInputStream;
 import net.sf.sevenzipjbinding.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Read-only archive file read with 7-Zip-JBinding.
+ *
+ * <p>Entries are extracted by a pool of threads into a bounded pipe read by the entry stream, so that a slow reader
+ * suspends the extraction instead of having the entry buffered in memory. The opened <code>IInArchive</code> instances
+ * are kept for reuse as long as the archive doesn't change, and closed after {@link #IDLE_TIMEOUT} of inactivity.
+ * An <code>IInArchive</code> is used by one thread at a time, entries read concurrently use different instances.
+ */
 public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
-   
-    protected IInArchive inArchive;
-    private ArchiveFormat sevenZipJBindingFormat;
+    private static final Logger LOGGER = LoggerFactory.getLogger(SevenZipJBindingROArchiveFile.class);
+
+    /** Size of the pipe between the extracting thread and the reader of an entry */
+    private static final int PIPE_SIZE = 256 * 1024;
+
+    /** Maximum number of unused opened archives kept by an archive file */
+    private static final int MAX_IDLE_ARCHIVES = 2;
+
+    /** Time after which an unused opened archive is closed, in milliseconds */
+    private static final long IDLE_TIMEOUT = 30000;
+
+    /** Extracts the entries to the pipes read by the entry streams */
+    private static final ExecutorService extractExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "7-Zip extractor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Closes the opened archives that haven't been used for {@link #IDLE_TIMEOUT} */
+    private static final ScheduledExecutorService evictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "7-Zip archive cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile ArchiveFormat sevenZipJBindingFormat;
     private final SevenZipArchiveFormatDetector formatDetector;
 
     private final byte[] formatSignature;
 
+    /** Opened archives that are not being used, the most recently used first */
+    private final Deque<OpenedArchive> idleArchives = new ArrayDeque<>();
+
     /**
      * Creates an AbstractROArchiveFile on top of the given file.
      *
@@ -45,82 +90,178 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
 
 
 
-    private IInArchive openInArchive() throws IOException {
-        if (inArchive == null) {
-            if (formatDetector != null) {
-                sevenZipJBindingFormat = formatDetector.detect(file);
+    private OpenedArchive openInArchive(long date, long size) throws IOException {
+        if (formatDetector != null) {
+            sevenZipJBindingFormat = formatDetector.detect(file);
+        }
+        SignatureCheckedRandomAccessFile in = new SignatureCheckedRandomAccessFile(file, formatSignature);
+        try {
+            return new OpenedArchive(SevenZip.openInArchive(sevenZipJBindingFormat, in), in, date, size);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns an opened archive for the exclusive use of the caller, which must give it back with
+     * {@link #releaseInArchive(OpenedArchive, boolean)}. An unused opened archive is returned if there is one for the
+     * current version of the archive file, otherwise the archive is opened.
+     *
+     * @return an opened archive
+     * @throws IOException if the archive could not be opened
+     */
+    private OpenedArchive acquireInArchive() throws IOException {
+        long date = file.getLastModifiedDate();
+        long size = file.getSize();
+        List<OpenedArchive> outdated = new ArrayList<>();
+        OpenedArchive result = null;
+        synchronized (idleArchives) {
+            OpenedArchive archive = idleArchives.pollFirst();
+            if (archive != null) {
+                if (archive.date == date && archive.size == size) {
+                    result = archive;
+                } else {
+                    // The archive file has changed, none of the opened archives can be used anymore
+                    outdated.add(archive);
+                    outdated.addAll(idleArchives);
+                    idleArchives.clear();
+                }
             }
-            SignatureCheckedRandomAccessFile in = new SignatureCheckedRandomAccessFile(file, formatSignature);
-            inArchive = SevenZip.openInArchive(sevenZipJBindingFormat, in);
         }
-        return inArchive;
+        for (OpenedArchive archive : outdated) {
+            archive.close();
+        }
+        return result != null ? result : openInArchive(date, size);
     }
 
-    @Override
-    public ArchiveEntryIterator getEntryIterator() throws IOException {
+    /**
+     * Gives back an opened archive returned by {@link #acquireInArchive()}, which is kept for reuse if it's still
+     * usable.
+     *
+     * @param archive the opened archive
+     * @param reusable <code>false</code> if an error occurred while using the archive and it must be closed
+     */
+    private void releaseInArchive(OpenedArchive archive, boolean reusable) {
+        if (reusable) {
+            synchronized (idleArchives) {
+                archive.lastUsed = System.currentTimeMillis();
+                idleArchives.addFirst(archive);
+                archive = idleArchives.size() > MAX_IDLE_ARCHIVES ? idleArchives.pollLast() : null;
+            }
+            evictionExecutor.schedule(this::closeIdleArchives, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        if (archive != null) {
+            archive.close();
+        }
+    }
+
+    /**
+     * Closes the opened archives that haven't been used for {@link #IDLE_TIMEOUT}.
+     */
+    private void closeIdleArchives() {
+        List<OpenedArchive> expired = new ArrayList<>();
+        synchronized (idleArchives) {
+            long expiration = System.currentTimeMillis() - IDLE_TIMEOUT;
+            while (!idleArchives.isEmpty() && idleArchives.peekLast().lastUsed <= expiration) {
+                expired.add(idleArchives.pollLast());
+            }
+        }
+        for (OpenedArchive archive : expired) {
+            archive.close();
+        }
+    }
+
+    /**
+     * Returns all the entries of the archive.
+     *
+     * @return the entries of the archive, in the order of their indices
+     * @throws IOException if the archive could not be read
+     */
+    private List<ArchiveEntry> listEntries() throws IOException {
+        OpenedArchive archive = acquireInArchive();
+        boolean reusable = false;
         try {
-            final IInArchive sevenZipFile = openInArchive();
+            final IInArchive sevenZipFile = archive.inArchive;
             int nbEntries = sevenZipFile.getNumberOfItems();
             List<ArchiveEntry> entries = new ArrayList<>();
             for (int i = 0; i < nbEntries; i++) {
-                entries.add(createArchiveEntry(i));
+                entries.add(createArchiveEntry(sevenZipFile, i));
             }
-            return new WrapperArchiveEntryIterator(entries.iterator());
+            reusable = true;
+            return entries;
         } catch (SevenZipException e) {
             throw new IOException(e);
         } finally {
-            try {
-                if (inArchive != null) {
-                    inArchive.close();
-                }
-            } catch (SevenZipException e) {
-                System.err.println("Error closing archive: " + e);
+            releaseInArchive(archive, reusable);
+        }
+    }
+
+    @Override
+    public ArchiveEntryIterator getEntryIterator() throws IOException {
+        return new WrapperArchiveEntryIterator(listEntries().iterator());
+    }
+
+    /**
+     * Returns an iterator that extracts the given entries with a single call to <code>IInArchive#extract</code>
+     * when the first of them is read, instead of one call per entry. In a solid archive, this decompresses the
+     * solid blocks once instead of once per entry.
+     */
+    @Override
+    public ArchiveEntryIterator getEntryIterator(List<ArchiveEntry> entriesToRead) throws IOException {
+        List<ArchiveEntry> entries = listEntries();
+        int[] indices = new int[entriesToRead.size()];
+        int nbIndices = 0;
+        for (ArchiveEntry entry : entriesToRead) {
+            Object index = entry.getEntryObject();
+            if (!entry.isDirectory() && index instanceof Integer && (Integer)index < entries.size()) {
+                indices[nbIndices++] = (Integer)index;
             }
-            inArchive = null;
         }
+        indices = Arrays.stream(indices, 0, nbIndices).sorted().distinct().toArray();
+        return new BatchEntryIterator(entries, indices);
     }
 
     @Override
-    public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) {
+    public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException {
         final int[] in = new int[1];
         in[0] = (Integer)entry.getEntryObject();
-        final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
-        new Thread(() -> {
-            synchronized (SevenZipJBindingROArchiveFile.this) {
-                try {
-                    final IInArchive sevenZipFile = openInArchive();
-                    sevenZipFile.extract(in, false, new ExtractCallback(inArchive, cbb.getOutputStream()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } finally {
-                    if (inArchive != null) {
-                        try {
-                            inArchive.close();
-                        } catch (SevenZipException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                    try {
-                        cbb.getOutputStream().close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    inArchive = null;
-                }
+        // Optimization: read the entry from the extraction of the entries of the iterator, if it's still possible
+        if (entryIterator instanceof BatchEntryIterator) {
+            InputStream entryIn = ((BatchEntryIterator)entryIterator).getEntryInputStream(in[0]);
+            if (entryIn != null) {
+                return entryIn;
             }
-        }).start();
+        }
+        final FailSafePipedInputStream pipedIn = new FailSafePipedInputStream(PIPE_SIZE);
+        final PipedOutputStream pipedOut = new PipedOutputStream(pipedIn);
+        final OpenedArchive archive = acquireInArchive();
+        extractExecutor.execute(() -> {
+            boolean reusable = false;
+            try {
+                archive.inArchive.extract(in, false, new ExtractCallback(archive.inArchive, pipedOut));
+                reusable = true;
+                pipedOut.close();
+            } catch (IOException | RuntimeException e) {
+                // Also happens when the entry stream is closed before the end of the entry
+                LOGGER.debug("Error extracting {}", entry.getPath(), e);
+                pipedIn.setExternalFailure(e instanceof IOException ? (IOException)e : new IOException(e));
+            } finally {
+                releaseInArchive(archive, reusable);
+            }
+        });
 
-        return cbb.getInputStream();
+        return pipedIn;
     }
 
     /**
      * Creates and return an {@link ArchiveEntry()} whose attributes are fetched from the given {@link com.mucommander.commons.file.impl.sevenzip.provider.SevenZip.Archive.SevenZipEntry}
      *
+     * @param sevenZipFile the opened archive
      * @param i the index of entry
      * @return an ArchiveEntry whose attributes are fetched from the given SevenZipEntry
      */
-    private ArchiveEntry createArchiveEntry(int i) throws IOException {
-        final IInArchive sevenZipFile = openInArchive();
+    private ArchiveEntry createArchiveEntry(IInArchive sevenZipFile, int i) throws IOException {
         String path = sevenZipFile.getStringProperty(i, PropID.PATH);
         boolean isDirectory = (Boolean)sevenZipFile.getProperty(i, PropID.IS_FOLDER);
         Date time = (Date) sevenZipFile.getProperty(i, PropID.LAST_MODIFICATION_TIME);
@@ -136,4 +277,239 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
         return result;
     }
 
+
+    /**
+     * An opened <code>IInArchive</code> and the stream it reads, for a given version of the archive file.
+     */
+    private static final class OpenedArchive {
+        final IInArchive inArchive;
+        final SignatureCheckedRandomAccessFile stream;
+        final long date;
+        final long size;
+
+        /** Time the archive was last released, guarded by the idle archives deque */
+        long lastUsed;
+
+        OpenedArchive(IInArchive inArchive, SignatureCheckedRandomAccessFile stream, long date, long size) {
+            this.inArchive = inArchive;
+            this.stream = stream;
+            this.date = date;
+            this.size = size;
+        }
+
+        void close() {
+            try {
+                inArchive.close();
+            } catch (SevenZipException e) {
+                LOGGER.info("Error closing archive", e);
+            }
+            try {
+                stream.close();
+            } catch (IOException e) {
+                LOGGER.info("Error closing archive stream", e);
+            }
+        }
+    }
+
+
+    /**
+     * Iterates through the entries of the archive and extracts the given entries with a single call to
+     * <code>IInArchive#extract</code>, started when the first entry is read.
+     *
+     * <p>The extraction follows the iteration: an entry is extracted to the pipe of the stream returned by
+     * {@link #getEntryInputStream(int)} if this method is called for it before the iterator moves to the next entry,
+     * and is discarded otherwise. The extraction waits for the caller to make this decision, and is aborted when the
+     * iterator is closed.
+     */
+    private class BatchEntryIterator implements ArchiveEntryIterator, IArchiveExtractCallback {
+
+        private final Iterator<ArchiveEntry> iterator;
+
+        /** Indices of the entries to extract, in ascending order */
+        private final int[] indices;
+
+        /** Index of the current entry of the iterator, Integer.MAX_VALUE once the iteration is finished */
+        private int position = -1;
+
+        /** Index of the last entry requested by {@link #getEntryInputStream(int)} and its pipe, until the iterator moves */
+        private int requested = -1;
+        private PipedOutputStream requestedOut;
+        private FailSafePipedInputStream requestedIn;
+
+        /** Index of the last entry the extraction has started to extract or discard */
+        private int extracted = -1;
+
+        private boolean started;
+        private boolean finished;
+        private boolean closed;
+
+        /** Pipe the entry being extracted is written to, null if the entry is discarded. Used by the extracting thread only */
+        private PipedOutputStream currentOut;
+        private FailSafePipedInputStream currentIn;
+
+        BatchEntryIterator(List<ArchiveEntry> entries, int[] indices) {
+            this.iterator = entries.iterator();
+            this.indices = indices;
+        }
+
+        @Override
+        public synchronized ArchiveEntry nextEntry() {
+            ArchiveEntry entry = iterator.hasNext() ? iterator.next() : null;
+            position = entry == null ? Integer.MAX_VALUE : (Integer)entry.getEntryObject();
+            closeRequestedEntry();
+            notifyAll();
+            return entry;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            closeRequestedEntry();
+            notifyAll();
+        }
+
+        /**
+         * Closes the stream of the last requested entry, which can't be read anymore once the iterator has moved, so
+         * that the extraction doesn't wait for it to be read.
+         */
+        private void closeRequestedEntry() {
+            if (requestedIn != null) {
+                try {
+                    requestedIn.close();
+                } catch (IOException e) {
+                    // The extraction of the entry failed, nothing to do
+                }
+                requestedIn = null;
+                requestedOut = null;
+            }
+        }
+
+        /**
+         * Returns a stream reading the given entry from the extraction, which is started if needed.
+         *
+         * @param index the index of the entry
+         * @return a stream reading the entry, <code>null</code> if the entry can't be read from the extraction anymore
+         * or isn't part of it
+         * @throws IOException if the archive could not be opened
+         */
+        synchronized InputStream getEntryInputStream(int index) throws IOException {
+            if (closed || finished || index <= extracted || index <= requested || Arrays.binarySearch(indices, index) < 0) {
+                return null;
+            }
+            FailSafePipedInputStream pipedIn = new FailSafePipedInputStream(PIPE_SIZE);
+            requestedOut = new PipedOutputStream(pipedIn);
+            requestedIn = pipedIn;
+            requested = index;
+            if (!started) {
+                final OpenedArchive archive = acquireInArchive();
+                started = true;
+                extractExecutor.execute(() -> extract(archive));
+            }
+            notifyAll();
+            return pipedIn;
+        }
+
+        /**
+         * Extracts the entries, called by the extracting thread.
+         *
+         * @param archive the opened archive to extract the entries from
+         */
+        private void extract(OpenedArchive archive) {
+            boolean reusable = false;
+            IOException failure = null;
+            try {
+                archive.inArchive.extract(indices, false, this);
+                reusable = true;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Error extracting {}", getPath(), e);
+                failure = e instanceof IOException ? (IOException)e : new IOException(e);
+            } finally {
+                releaseInArchive(archive, reusable);
+                synchronized (this) {
+                    finished = true;
+                    // Fail the entry that was requested but not extracted, if any
+                    if (requested > extracted && requestedIn != null) {
+                        requestedIn.setExternalFailure(failure != null ? failure : new IOException("Entry not extracted"));
+                    }
+                }
+                if (currentIn != null) {
+                    currentIn.setExternalFailure(failure != null ? failure : new IOException("Entry not extracted"));
+                }
+            }
+        }
+
+        ////////////////////////////////////////////
+        // IArchiveExtractCallback implementation //
+        ////////////////////////////////////////////
+
+        @Override
+        public synchronized ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+            if (extractAskMode != ExtractAskMode.EXTRACT) {
+                return null;
+            }
+            // Wait for the caller to either request the entry or move past it
+            while (!closed && position <= index && requested != index) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SevenZipException("Extraction interrupted");
+                }
+            }
+            if (closed) {
+                throw new SevenZipException("Extraction cancelled");
+            }
+            extracted = index;
+            if (requested == index) {
+                currentOut = requestedOut;
+                currentIn = requestedIn;
+            } else {
+                currentOut = null;
+                currentIn = null;
+            }
+            return data -> {
+                if (currentOut != null) {
+                    try {
+                        currentOut.write(data);
+                    } catch (IOException e) {
+                        // The entry stream has been closed, discard the rest of the entry
+                        currentOut = null;
+                        currentIn = null;
+                    }
+                }
+                return data.length;
+            };
+        }
+
+        @Override
+        public void prepareOperation(ExtractAskMode extractAskMode) {
+        }
+
+        @Override
+        public void setOperationResult(ExtractOperationResult extractOperationResult) {
+            if (currentOut == null) {
+                return;
+            }
+            if (extractOperationResult == ExtractOperationResult.OK) {
+                try {
+                    currentOut.close();
+                } catch (IOException e) {
+                    // Nothing to do, the entry stream has been closed
+                }
+            } else {
+                currentIn.setExternalFailure(new IOException("Extraction error: " + extractOperationResult));
+            }
+            currentOut = null;
+            currentIn = null;
+        }
+
+        @Override
+        public void setTotal(long total) {
+        }
+
+        @Override
+        public void setCompleted(long complete) {
+        }
+    }
+
 }
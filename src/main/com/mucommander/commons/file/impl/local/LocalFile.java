@@ -39,6 +39,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.nio.file.attribute.FileOwnerAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.UserPrincipal;
@@ -98,6 +99,10 @@ public class LocalFile extends ProtocolFile {
     protected AbstractFile parent;
     /** Indicates whether the parent folder instance has been retrieved and cached or not (parent can be null) */
     private boolean parentValueSet;
+
+    /** Attributes read when the parent folder was listed, for the caller of {@link #ls()} only: null once retrieved
+     * with {@link #takeListingAttributes()} or once this instance is handed out by the file pool */
+    private volatile ListingAttributes listingAttributes;
 	
     /** Underlying local filesystem's path separator: "/" under UNIX systems, "\" under Windows and OS/2 */
     public final static String SEPARATOR = File.separator;
@@ -1099,30 +1104,68 @@ public class LocalFile extends ProtocolFile {
     }
 
 
+    /**
+     * Implementation notes: the attributes of each child are read once while listing this folder and kept in the
+     * child, so that a {@link com.mucommander.commons.file.impl.CachedFile} created around it doesn't have to query
+     * them one by one (see {@link #takeListingAttributes()}).
+     */
     @Override
     public AbstractFile[] ls(FilenameFilter filenameFilter) throws IOException {
-        File[] files = file.listFiles(filenameFilter == null ? null : new LocalFilenameFilter(filenameFilter));
-
-        if (files == null) {
-            throw new IOException();
+        List<AbstractFile> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.toPath())) {
+            for (Path childPath : stream) {
+                String name = childPath.getFileName().toString();
+                if (filenameFilter != null && !filenameFilter.accept(name)) {
+                    continue;
+                }
+                // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
+                // FileURL instance from scratch.
+                FileURL childURL = (FileURL)fileURL.clone();
+
+                childURL.setPath(absPath + SEPARATOR + name);
+
+                // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
+                // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
+                AbstractFile child = FileFactory.getFile(childURL, this, childPath.toFile());
+                AbstractFile localChild = child.getTopAncestor();
+                if (localChild instanceof LocalFile) {
+                    ((LocalFile)localChild).listingAttributes = ListingAttributes.read(childPath);
+                }
+                children.add(child);
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
         }
 
-        int nbFiles = files.length;
-        AbstractFile[] children = new AbstractFile[nbFiles];
-
-        for(int i = 0; i < nbFiles; i++) {
-            // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
-            // FileURL instance from scratch.
-            FileURL childURL = (FileURL)fileURL.clone();
-
-			childURL.setPath(absPath + SEPARATOR + files[i].getName());
+        return children.toArray(new AbstractFile[children.size()]);
+    }
 
-            // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
-            // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
-            children[i] = FileFactory.getFile(childURL, this, files[i]);
+    /**
+     * Returns the attributes of this file read when its parent folder was listed, and forgets them. The attributes
+     * belong to the listing: only the caller of {@link #ls()}, which got this instance from it, can retrieve them and
+     * only once. They are discarded when this instance is handed out again by {@link FileFactory} from the file pool
+     * (see {@link #discardListingAttributes()}), as it may then be used long after the listing, when the attributes
+     * are outdated.
+     *
+     * @return the attributes read when the parent folder was listed, <code>null</code> if this file wasn't created
+     * by {@link #ls()}, if the attributes couldn't be read or if they have already been retrieved or discarded
+     */
+    public ListingAttributes takeListingAttributes() {
+        ListingAttributes attributes = listingAttributes;
+        if (attributes != null) {
+            listingAttributes = null;
         }
+        return attributes;
+    }
 
-        return children;
+    /**
+     * Forgets the attributes read when the parent folder was listed, called when this instance is reused from the
+     * file pool by another caller than the one that listed the folder.
+     */
+    public void discardListingAttributes() {
+        if (listingAttributes != null) {
+            listingAttributes = null;
+        }
     }
 
     @Override
@@ -1510,19 +1553,89 @@ public class LocalFile extends ProtocolFile {
 
 
     /**
-     * Turns a {@link FilenameFilter} into a {@link java.io.FilenameFilter}.
+     * Snapshot of the attributes of a file, read in one or two system calls (two for symlinks) when its parent folder
+     * is listed. The values are those returned by the corresponding {@link LocalFile} methods at that time.
      */
-    private static class LocalFilenameFilter implements java.io.FilenameFilter {
+    public static final class ListingAttributes {
+        private final boolean exists;
+        private final boolean directory;
+        private final boolean symlink;
+        /** <code>null</code> if the hidden state is not known, i.e. it can't be read without an extra call */
+        private final Boolean hidden;
+        private final long size;
+        private final long lastModifiedDate;
+
+        private ListingAttributes(boolean exists, boolean directory, boolean symlink, Boolean hidden, long size, long lastModifiedDate) {
+            this.exists = exists;
+            this.directory = directory;
+            this.symlink = symlink;
+            this.hidden = hidden;
+            this.size = size;
+            this.lastModifiedDate = lastModifiedDate;
+        }
 
-        private final FilenameFilter filter;
+        /**
+         * Reads the attributes of the given file, <code>null</code> if they can't be read.
+         */
+        private static ListingAttributes read(Path path) {
+            try {
+                BasicFileAttributes attrs = IS_WINDOWS ?
+                        Files.readAttributes(path, DosFileAttributes.class, LinkOption.NOFOLLOW_LINKS) :
+                        Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                Boolean hidden;
+                if (IS_WINDOWS) {
+                    hidden = ((DosFileAttributes)attrs).isHidden();
+                } else if (NATIVE_FILE_UTILS_AVAILABLE) {
+                    // Hidden flag of OS X, not part of the attributes
+                    hidden = null;
+                } else {
+                    hidden = path.getFileName().toString().startsWith(".");
+                }
+                // Junctions are neither links nor regular files, their attributes are read like the ones of symlinks
+                boolean link = attrs.isSymbolicLink() || (IS_WINDOWS && attrs.isOther());
+                if (!link) {
+                    return new ListingAttributes(true, attrs.isDirectory(), false, hidden, attrs.size(), attrs.lastModifiedTime().toMillis());
+                }
+                // Other attributes are the ones of the link target. Symlinks are not reported as such under Windows,
+                // see isSymlink(), but a link to a folder is still a folder.
+                boolean symlink = !IS_WINDOWS;
+                try {
+                    BasicFileAttributes targetAttrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    return new ListingAttributes(true, targetAttrs.isDirectory(), symlink, hidden, targetAttrs.size(), targetAttrs.lastModifiedTime().toMillis());
+                } catch (IOException e) {
+                    // Broken link
+                    return new ListingAttributes(false, false, symlink, hidden, 0, 0);
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                return null;
+            }
+        }
 
-        private LocalFilenameFilter(FilenameFilter filter) {
-            this.filter = filter;
+        public boolean exists() {
+            return exists;
         }
 
-        @Override
-        public boolean accept(File dir, String name) {
-            return filter.accept(name);
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public boolean isSymlink() {
+            return symlink;
+        }
+
+        /**
+         * @return the hidden state of the file, <code>null</code> if it hasn't been read
+         */
+        public Boolean isHidden() {
+            return hidden;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModifiedDate() {
+            return lastModifiedDate;
         }
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompresses a bzip2 stream block by block and records checkpoints at block boundaries.
+ *
+ * <p>Bzip2 blocks are compressed independently and start with a 48-bit marker, so the decompression can be resumed
+ * at any block: the stream is opened a few bytes before the block and <code>CBZip2InputStream</code>, in
+ * {@link SplittableCompressionCodec.READ_MODE#BYBLOCK} mode, looks for the next marker. The same mode reports the
+ * block boundaries while the stream is decompressed.
+ *
+ * @author Oleg Trifonov
+ */
+class Bzip2CheckpointInputStream extends InputStream {
+
+    /** Value returned by CBZip2InputStream#read(byte[], int, int) at the end of a block, in BYBLOCK mode */
+    private static final int END_OF_BLOCK = -2;
+
+    /** Number of bytes a checkpoint is placed before the processed byte count reported at the end of a block, as the
+     * start of the next block marker may have been read already */
+    private static final int MARKER_MARGIN = 16;
+
+    private final CBZip2InputStream in;
+
+    /** Offset in the compressed stream where the given stream starts */
+    private final long compressedOffset;
+
+    /** The index checkpoints are recorded to, null if checkpoints are not recorded */
+    private final TarCheckpointIndex index;
+
+    /** Uncompressed offset of the next byte returned by read */
+    private long uncompressedOffset;
+
+    /** Uncompressed offset of the last checkpoint */
+    private long checkpointOffset;
+
+
+    /**
+     * Creates a stream decompressing the given bzip2 stream from the first block that starts at or after the
+     * stream's position.
+     *
+     * @param in the bzip2 stream
+     * @param compressedOffset the offset in the compressed stream where the given stream starts
+     * @param uncompressedOffset the uncompressed offset of the first block
+     * @param index the index to record checkpoints to, <code>null</code> to not record them
+     * @throws IOException if an I/O error occurred
+     */
+    Bzip2CheckpointInputStream(InputStream in, long compressedOffset, long uncompressedOffset, TarCheckpointIndex index) throws IOException {
+        // CBZip2InputStream reads the compressed stream one byte at a time
+        this.in = new CBZip2InputStream(new BufferedInputStream(in), SplittableCompressionCodec.READ_MODE.BYBLOCK);
+        this.compressedOffset = compressedOffset;
+        this.uncompressedOffset = uncompressedOffset;
+        this.checkpointOffset = uncompressedOffset;
+        this.index = index;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count;
+        while ((count = in.read(b, off, len)) == END_OF_BLOCK) {
+            if (index != null && uncompressedOffset - checkpointOffset >= TarCheckpointIndex.SPAN) {
+                index.add(compressedOffset + Math.max(0, in.getProcessedByteCount() - MARKER_MARGIN), uncompressedOffset, null);
+                checkpointOffset = uncompressedOffset;
+            }
+        }
+        if (count < 0) {
+            if (index != null) {
+                index.setComplete();
+            }
+            return -1;
+        }
+        uncompressedOffset += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
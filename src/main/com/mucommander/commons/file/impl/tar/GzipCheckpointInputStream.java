@@ -0,0 +1,602 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip stream and records checkpoints from which the decompression can be resumed, in the manner of
+ * zlib's <code>zran</code> example.
+ *
+ * <p><code>java.util.zip.Inflater</code> can neither report where DEFLATE blocks start nor start inflating in the
+ * middle of a byte, so the DEFLATE data is decoded by this class. A checkpoint is recorded at the start of the first
+ * block following each {@link TarCheckpointIndex#SPAN} bytes of uncompressed data: its bit offset in the compressed
+ * stream, its uncompressed offset and the last 32 KB of uncompressed data, which the next blocks may refer to.
+ *
+ * <p>Concatenated gzip members are supported. The CRC and size of the members are checked, except for the member
+ * decompression was resumed in.
+ *
+ * @author Oleg Trifonov
+ */
+class GzipCheckpointInputStream extends InputStream {
+
+    /** Maximum distance of DEFLATE back-references */
+    static final int WINDOW_SIZE = 32 * 1024;
+
+    /** Size of the ring buffer holding the window and the data that hasn't been read yet */
+    private static final int RING_SIZE = 64 * 1024;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    /** Maximum length of DEFLATE back-references */
+    private static final int MAX_MATCH = 258;
+
+    /** Maximum number of bytes decoded at once, so that the window is never overwritten by unread data */
+    private static final int MAX_DECODED = RING_SIZE - WINDOW_SIZE - MAX_MATCH;
+
+    private static final int STATE_MEMBER_HEADER = 0;
+    private static final int STATE_BLOCK_HEADER = 1;
+    private static final int STATE_STORED_BLOCK = 2;
+    private static final int STATE_HUFFMAN_BLOCK = 3;
+    private static final int STATE_MEMBER_TRAILER = 4;
+    private static final int STATE_END = 5;
+
+    private static final int MAX_BITS = 15;
+
+    /** Order of the code length code lengths in a dynamic block header */
+    private static final int[] CODE_LENGTHS_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+            67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3,
+            4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+            513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7,
+            8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+
+    /** Decoding tables of the fixed Huffman codes */
+    private static final int[] FIXED_LITERAL_TABLE;
+    private static final int[] FIXED_DISTANCE_TABLE;
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        FIXED_LITERAL_TABLE = new int[1 << 9];
+        FIXED_DISTANCE_TABLE = new int[1 << 5];
+        int[] distanceLengths = new int[30];
+        Arrays.fill(distanceLengths, 5);
+        try {
+            buildTable(lengths, 288, FIXED_LITERAL_TABLE);
+            buildTable(distanceLengths, 30, FIXED_DISTANCE_TABLE);
+        } catch (ZipException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final InputStream in;
+
+    /** The index checkpoints are recorded to, null if checkpoints are not recorded */
+    private final TarCheckpointIndex index;
+
+    private final byte[] inBuffer = new byte[64 * 1024];
+    private int inPos;
+    private int inLength;
+
+    /** Offset in the compressed stream of the next byte to be loaded into the bit buffer */
+    private long inOffset;
+
+    private long bitBuffer;
+    private int bitCount;
+
+    /** Uncompressed data: the window followed by the data that hasn't been read yet */
+    private final byte[] ring = new byte[RING_SIZE];
+
+    /** Uncompressed offset of the next decoded byte */
+    private long outOffset;
+
+    /** Uncompressed offset of the next byte returned by read */
+    private long readOffset;
+
+    /** Uncompressed offset of the start of the current member, back-references can't go beyond it */
+    private long memberOffset;
+
+    /** Uncompressed offset of the last checkpoint */
+    private long checkpointOffset;
+
+    private int state;
+    private boolean lastBlock;
+    private int storedRemaining;
+
+    private final int[] literalTable = new int[1 << MAX_BITS];
+    private final int[] distanceTable = new int[1 << MAX_BITS];
+    private int[] currentLiteralTable;
+    private int literalBits;
+    private int[] currentDistanceTable;
+    private int distanceBits;
+
+    private final CRC32 crc = new CRC32();
+
+    /** False if decompression was resumed in the current member, whose CRC can't be checked */
+    private boolean checkMember;
+
+    /** True once a member header has been read */
+    private boolean headerRead;
+
+
+    /**
+     * Creates a stream decompressing the given gzip stream from its start.
+     *
+     * @param in the gzip stream
+     * @param index the index to record checkpoints to, <code>null</code> to not record them
+     */
+    GzipCheckpointInputStream(InputStream in, TarCheckpointIndex index) {
+        this.in = in;
+        this.index = index;
+        this.state = STATE_MEMBER_HEADER;
+    }
+
+    /**
+     * Creates a stream resuming the decompression at the given checkpoint.
+     *
+     * @param in the gzip stream, positioned at the byte containing the checkpoint's first bit
+     * @param checkpointBitOffset the bit offset of the checkpoint in the compressed stream
+     * @param uncompressedOffset the uncompressed offset of the checkpoint
+     * @param window the uncompressed data preceding the checkpoint in the member, at most {@link #WINDOW_SIZE} bytes
+     * @throws IOException if an I/O error occurred
+     */
+    GzipCheckpointInputStream(InputStream in, long checkpointBitOffset, long uncompressedOffset, byte[] window) throws IOException {
+        this.in = in;
+        this.index = null;
+        this.inOffset = checkpointBitOffset >>> 3;
+        this.outOffset = uncompressedOffset;
+        this.readOffset = uncompressedOffset;
+        this.checkpointOffset = uncompressedOffset;
+        this.memberOffset = uncompressedOffset - window.length;
+        for (int i = 0; i < window.length; i++) {
+            ring[(int)(memberOffset + i) & RING_MASK] = window[i];
+        }
+        this.state = STATE_BLOCK_HEADER;
+        this.headerRead = true;
+        getBits((int)(checkpointBitOffset & 7));
+    }
+
+
+    /**
+     * Returns the next byte of the compressed stream.
+     *
+     * @return the next byte, <code>-1</code> at the end of the stream
+     * @throws IOException if an I/O error occurred
+     */
+    private int nextByte() throws IOException {
+        if (inPos == inLength) {
+            inLength = in.read(inBuffer, 0, inBuffer.length);
+            inPos = 0;
+            if (inLength <= 0) {
+                inLength = 0;
+                return -1;
+            }
+        }
+        inOffset++;
+        return inBuffer[inPos++] & 0xFF;
+    }
+
+    /**
+     * Loads the bit buffer with at least the given number of bits, unless the end of the stream is reached.
+     *
+     * @param count the number of bits
+     * @throws IOException if an I/O error occurred
+     */
+    private void loadBits(int count) throws IOException {
+        while (bitCount < count) {
+            int b = nextByte();
+            if (b < 0) {
+                return;
+            }
+            bitBuffer |= (long)b << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private int getBits(int count) throws IOException {
+        if (bitCount < count) {
+            loadBits(count);
+            if (bitCount < count) {
+                throw new EOFException("Unexpected end of gzip stream");
+            }
+        }
+        int value = (int)(bitBuffer & ((1L << count) - 1));
+        bitBuffer >>>= count;
+        bitCount -= count;
+        return value;
+    }
+
+    private int decodeSymbol(int[] table, int bits) throws IOException {
+        if (bitCount < bits) {
+            loadBits(bits);
+        }
+        int entry = table[(int)(bitBuffer & ((1 << bits) - 1))];
+        int length = entry & 0xF;
+        if (length == 0 || length > bitCount) {
+            if (length == 0) {
+                throw new ZipException("Invalid Huffman code");
+            }
+            throw new EOFException("Unexpected end of gzip stream");
+        }
+        bitBuffer >>>= length;
+        bitCount -= length;
+        return entry >>> 4;
+    }
+
+    /**
+     * Returns the bit offset of the next unread bit of the compressed stream.
+     *
+     * @return the bit offset of the next unread bit
+     */
+    private long getBitOffset() {
+        return inOffset * 8 - bitCount;
+    }
+
+    /**
+     * Builds a decoding table of a canonical Huffman code: the entry indexed by the bit-reversed code of a symbol, and
+     * all the entries sharing the same low bits, contain the symbol and the code length.
+     *
+     * @param lengths the code lengths of the symbols
+     * @param count the number of symbols
+     * @param table the table to fill
+     * @return the number of bits used to index the table
+     * @throws ZipException if the code lengths are invalid
+     */
+    private static int buildTable(int[] lengths, int count, int[] table) throws ZipException {
+        int[] lengthCounts = new int[MAX_BITS + 1];
+        int maxLength = 1;
+        for (int i = 0; i < count; i++) {
+            lengthCounts[lengths[i]]++;
+            maxLength = Math.max(maxLength, lengths[i]);
+        }
+        lengthCounts[0] = 0;
+        int left = 1;
+        for (int length = 1; length <= MAX_BITS; length++) {
+            left = (left << 1) - lengthCounts[length];
+            if (left < 0) {
+                throw new ZipException("Over-subscribed Huffman code");
+            }
+        }
+
+        int[] nextCode = new int[MAX_BITS + 2];
+        for (int length = 1; length <= MAX_BITS; length++) {
+            nextCode[length + 1] = (nextCode[length] + lengthCounts[length]) << 1;
+        }
+
+        int size = 1 << maxLength;
+        Arrays.fill(table, 0, size, 0);
+        for (int symbol = 0; symbol < count; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) {
+                continue;
+            }
+            int reversed = Integer.reverse(nextCode[length]++) >>> (32 - length);
+            int entry = (symbol << 4) | length;
+            for (int i = reversed; i < size; i += 1 << length) {
+                table[i] = entry;
+            }
+        }
+        return maxLength;
+    }
+
+    private void readMemberHeader() throws IOException {
+        // Any data following the last member that isn't another member is ignored, like GZIPInputStream does
+        loadBits(16);
+        if (bitCount < 16 || (bitBuffer & 0xFFFF) != 0x8B1F) {
+            if (!headerRead) {
+                throw new ZipException("Not in GZIP format");
+            }
+            state = STATE_END;
+            if (index != null) {
+                index.setComplete();
+            }
+            return;
+        }
+        headerRead = true;
+        getBits(16);
+        if (getBits(8) != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = getBits(8);
+        // Modification time, extra flags and OS
+        for (int i = 0; i < 6; i++) {
+            getBits(8);
+        }
+        if ((flags & 4) != 0) {
+            int extraLength = getBits(16);
+            for (int i = 0; i < extraLength; i++) {
+                getBits(8);
+            }
+        }
+        if ((flags & 8) != 0) {
+            while (getBits(8) != 0) {
+                // Skip the file name
+            }
+        }
+        if ((flags & 16) != 0) {
+            while (getBits(8) != 0) {
+                // Skip the comment
+            }
+        }
+        if ((flags & 2) != 0) {
+            getBits(16);
+        }
+        memberOffset = outOffset;
+        crc.reset();
+        checkMember = true;
+        state = STATE_BLOCK_HEADER;
+    }
+
+    private void readMemberTrailer() throws IOException {
+        getBits(bitCount & 7);
+        long expectedCrc = getBits(16) | ((long)getBits(16) << 16);
+        long expectedSize = getBits(16) | ((long)getBits(16) << 16);
+        if (checkMember && (expectedCrc != crc.getValue() || expectedSize != ((outOffset - memberOffset) & 0xFFFFFFFFL))) {
+            throw new ZipException("Corrupt gzip stream (CRC or size mismatch)");
+        }
+        state = STATE_MEMBER_HEADER;
+    }
+
+    private void readBlockHeader() throws IOException {
+        if (index != null && outOffset - checkpointOffset >= TarCheckpointIndex.SPAN) {
+            int windowLength = (int)Math.min(WINDOW_SIZE, outOffset - memberOffset);
+            byte[] window = new byte[windowLength];
+            for (int i = 0; i < windowLength; i++) {
+                window[i] = ring[(int)(outOffset - windowLength + i) & RING_MASK];
+            }
+            index.add(getBitOffset(), outOffset, window);
+            checkpointOffset = outOffset;
+        }
+
+        lastBlock = getBits(1) == 1;
+        int type = getBits(2);
+        switch (type) {
+            case 0:
+                getBits(bitCount & 7);
+                int length = getBits(16);
+                if (getBits(16) != (~length & 0xFFFF)) {
+                    throw new ZipException("Invalid stored block length");
+                }
+                storedRemaining = length;
+                state = STATE_STORED_BLOCK;
+                break;
+            case 1:
+                currentLiteralTable = FIXED_LITERAL_TABLE;
+                literalBits = 9;
+                currentDistanceTable = FIXED_DISTANCE_TABLE;
+                distanceBits = 5;
+                state = STATE_HUFFMAN_BLOCK;
+                break;
+            case 2:
+                readDynamicTables();
+                state = STATE_HUFFMAN_BLOCK;
+                break;
+            default:
+                throw new ZipException("Invalid block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        int literalCount = getBits(5) + 257;
+        int distanceCount = getBits(5) + 1;
+        int codeLengthCount = getBits(4) + 4;
+        if (literalCount > 286 || distanceCount > 30) {
+            throw new ZipException("Invalid dynamic block header");
+        }
+
+        int[] lengths = new int[320];
+        for (int i = 0; i < codeLengthCount; i++) {
+            lengths[CODE_LENGTHS_ORDER[i]] = getBits(3);
+        }
+        int[] codeLengthTable = new int[1 << 7];
+        int codeLengthBits = buildTable(lengths, 19, codeLengthTable);
+
+        Arrays.fill(lengths, 0, 19, 0);
+        int count = literalCount + distanceCount;
+        int i = 0;
+        while (i < count) {
+            int symbol = decodeSymbol(codeLengthTable, codeLengthBits);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+            int value = 0;
+            int repeat;
+            if (symbol == 16) {
+                if (i == 0) {
+                    throw new ZipException("Invalid code lengths repeat");
+                }
+                value = lengths[i - 1];
+                repeat = 3 + getBits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + getBits(3);
+            } else {
+                repeat = 11 + getBits(7);
+            }
+            if (i + repeat > count) {
+                throw new ZipException("Invalid code lengths repeat");
+            }
+            while (repeat-- > 0) {
+                lengths[i++] = value;
+            }
+        }
+        if (lengths[256] == 0) {
+            throw new ZipException("Missing end-of-block code");
+        }
+
+        literalBits = buildTable(lengths, literalCount, literalTable);
+        currentLiteralTable = literalTable;
+        distanceBits = buildTable(Arrays.copyOfRange(lengths, literalCount, count), distanceCount, distanceTable);
+        currentDistanceTable = distanceTable;
+    }
+
+    /**
+     * Decodes the data of the current Huffman block, until the end of the block or until <code>limit</code> is
+     * reached.
+     */
+    private void decodeHuffman(long limit) throws IOException {
+        byte[] ring = this.ring;
+        long out = outOffset;
+        try {
+            while (out < limit) {
+                int symbol = decodeSymbol(currentLiteralTable, literalBits);
+                if (symbol < 256) {
+                    ring[(int)out & RING_MASK] = (byte)symbol;
+                    out++;
+                } else if (symbol == 256) {
+                    state = lastBlock ? STATE_MEMBER_TRAILER : STATE_BLOCK_HEADER;
+                    return;
+                } else {
+                    symbol -= 257;
+                    if (symbol >= 29) {
+                        throw new ZipException("Invalid length code");
+                    }
+                    int length = LENGTH_BASE[symbol] + getBits(LENGTH_EXTRA[symbol]);
+                    int distanceSymbol = decodeSymbol(currentDistanceTable, distanceBits);
+                    if (distanceSymbol >= 30) {
+                        throw new ZipException("Invalid distance code");
+                    }
+                    int distance = DISTANCE_BASE[distanceSymbol] + getBits(DISTANCE_EXTRA[distanceSymbol]);
+                    if (distance > out - memberOffset) {
+                        throw new ZipException("Invalid distance too far back");
+                    }
+                    long from = out - distance;
+                    for (int i = 0; i < length; i++) {
+                        ring[(int)out++ & RING_MASK] = ring[(int)from++ & RING_MASK];
+                    }
+                }
+            }
+        } finally {
+            outOffset = out;
+        }
+    }
+
+    private void copyStored(long limit) throws IOException {
+        int count = (int)Math.min(storedRemaining, limit - outOffset);
+        for (int i = 0; i < count; i++) {
+            int b;
+            if (bitCount >= 8) {
+                b = (int)(bitBuffer & 0xFF);
+                bitBuffer >>>= 8;
+                bitCount -= 8;
+            } else if ((b = nextByte()) < 0) {
+                throw new EOFException("Unexpected end of gzip stream");
+            }
+            ring[(int)outOffset++ & RING_MASK] = (byte)b;
+        }
+        storedRemaining -= count;
+        if (storedRemaining == 0) {
+            state = lastBlock ? STATE_MEMBER_TRAILER : STATE_BLOCK_HEADER;
+        }
+    }
+
+    /**
+     * Decodes up to {@link #MAX_DECODED} bytes, called when all decoded bytes have been read.
+     *
+     * @throws IOException if an I/O error occurred or if the stream is corrupt
+     */
+    private void decode() throws IOException {
+        long start = outOffset;
+        long limit = start + MAX_DECODED;
+        while (outOffset < limit && state != STATE_END) {
+            switch (state) {
+                case STATE_MEMBER_HEADER:
+                    readMemberHeader();
+                    break;
+                case STATE_BLOCK_HEADER:
+                    readBlockHeader();
+                    break;
+                case STATE_STORED_BLOCK:
+                    copyStored(limit);
+                    break;
+                case STATE_HUFFMAN_BLOCK:
+                    decodeHuffman(limit);
+                    break;
+                case STATE_MEMBER_TRAILER:
+                    updateCrc(start);
+                    start = outOffset;
+                    readMemberTrailer();
+                    break;
+            }
+        }
+        updateCrc(start);
+    }
+
+    private void updateCrc(long start) {
+        if (start == outOffset) {
+            return;
+        }
+        int from = (int)start & RING_MASK;
+        int to = (int)outOffset & RING_MASK;
+        if (from < to) {
+            crc.update(ring, from, to - from);
+        } else {
+            crc.update(ring, from, RING_SIZE - from);
+            crc.update(ring, 0, to);
+        }
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (readOffset == outOffset) {
+            if (state == STATE_END) {
+                return -1;
+            }
+            decode();
+        }
+        int count = (int)Math.min(len, outOffset - readOffset);
+        int from = (int)readOffset & RING_MASK;
+        int first = Math.min(count, RING_SIZE - from);
+        System.arraycopy(ring, from, b, off, first);
+        if (first < count) {
+            System.arraycopy(ring, 0, b, off + first, count - first);
+        }
+        readOffset += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -47,6 +47,13 @@ import java.util.zip.GZIPInputStream;
 public class TarArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarArchiveFile.class);
 
+    private static final int NONE = 0;
+    private static final int GZIP = 1;
+    private static final int BZIP2 = 2;
+
+    /** Decompression checkpoints of the compressed archive, recorded while it's listed (may be null) */
+    private volatile TarCheckpointIndex checkpointIndex;
+
     /**
      * Creates a TarArchiveFile on of the given file.
      *
@@ -57,6 +64,32 @@ public class TarArchiveFile extends AbstractROArchiveFile {
     }
 
 
+    /**
+     * Returns the compression of the archive, guessed from its name.
+     *
+     * @return {@link #GZIP}, {@link #BZIP2} or {@link #NONE}
+     */
+    private int getCompression() {
+        String name = getName();
+        if (StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz")) {
+            return GZIP;
+        }
+        if (StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2")) {
+            return BZIP2;
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the checkpoint index of the archive if it was created for the current version of the archive.
+     *
+     * @return the checkpoint index, <code>null</code> if there is no up-to-date index
+     */
+    private TarCheckpointIndex getCheckpointIndex() {
+        TarCheckpointIndex index = checkpointIndex;
+        return index != null && index.isUpToDate(file.getLastModifiedDate(), file.getSize()) ? index : null;
+    }
+
     /**
      * Returns a TarInputStream which can be used to read TAR entries.
      *
@@ -68,15 +101,15 @@ public class TarArchiveFile extends AbstractROArchiveFile {
     private TarInputStream createTarStream(long entryOffset) throws IOException {
         InputStream in = file.getInputStream();
 
-        String name = getName();
+        int compression = getCompression();
             // Gzip-compressed file
-        if (StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz"))
+        if (compression == GZIP)
                 // Note: this will fail for gz/tgz entries inside a tar file (IOException: Not in GZIP format),
                 // why is a complete mystery: the gz/tgz entry can be extracted and then properly browsed
             in = new GZIPInputStream(in);
 
         // Bzip2-compressed file
-        else if (StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2")) {
+        else if (compression == BZIP2) {
             try {
                 // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
                 // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
@@ -100,13 +133,84 @@ public class TarArchiveFile extends AbstractROArchiveFile {
         return new TarInputStream(in, entryOffset);
     }
 
+    /**
+     * Returns a TarInputStream reading the whole compressed archive and recording decompression checkpoints to a new
+     * {@link TarCheckpointIndex}, which replaces the current one.
+     *
+     * @param compression the compression of the archive, {@link #GZIP} or {@link #BZIP2}
+     * @return a TarInputStream which can be used to read TAR entries
+     * @throws IOException if an error occurred while create the stream
+     */
+    private TarInputStream createIndexingTarStream(int compression) throws IOException {
+        TarCheckpointIndex index = new TarCheckpointIndex(file.getLastModifiedDate(), file.getSize());
+        InputStream in = file.getInputStream();
+        try {
+            if (compression == GZIP) {
+                in = new GzipCheckpointInputStream(in, index);
+            } else {
+                in = new Bzip2CheckpointInputStream(in, 0, 0, index);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        checkpointIndex = index;
+
+        return new TarInputStream(in, 0);
+    }
+
+    /**
+     * Returns a TarInputStream positioned at the entry located at the given offset, resuming the decompression at the
+     * given checkpoint.
+     *
+     * @param compression the compression of the archive, {@link #GZIP} or {@link #BZIP2}
+     * @param checkpoint the checkpoint, located before the entry
+     * @param entryOffset offset from the start of the archive to the entry
+     * @return a TarInputStream which can be used to read TAR entries
+     * @throws IOException if an error occurred while create the stream
+     */
+    private TarInputStream createTarStream(int compression, TarCheckpointIndex.Checkpoint checkpoint, long entryOffset) throws IOException {
+        InputStream in;
+        if (compression == GZIP) {
+            in = file.getInputStream(checkpoint.compressedOffset >>> 3);
+            try {
+                in = new GzipCheckpointInputStream(in, checkpoint.compressedOffset, checkpoint.uncompressedOffset, checkpoint.window);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        } else {
+            in = new Bzip2CheckpointInputStream(file.getInputStream(checkpoint.compressedOffset), checkpoint.compressedOffset, checkpoint.uncompressedOffset, null);
+        }
+        try {
+            StreamUtils.skipFully(in, entryOffset - checkpoint.uncompressedOffset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+
+        return new TarInputStream(in, 0);
+    }
+
 
     ////////////////////////////////////////
     // AbstractArchiveFile implementation //
     ////////////////////////////////////////
 
+    /**
+     * Returns an iterator over the entries of the archive. If the archive is compressed and has no complete checkpoint
+     * index for its current version, the index is created while the archive is iterated, so that entries can later be
+     * read without decompressing the whole archive up to them.
+     */
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException {
+        int compression = getCompression();
+        if (compression != NONE) {
+            TarCheckpointIndex index = getCheckpointIndex();
+            if (index == null || !index.isComplete()) {
+                return new TarEntryIterator(createIndexingTarStream(compression));
+            }
+        }
         return new TarEntryIterator(createTarStream(0));
     }
 
@@ -135,10 +239,22 @@ public class TarArchiveFile extends AbstractROArchiveFile {
             // This is not the one, look for the entry from the beginning of the archive
         }
 
-        // Iterate through the archive until we've found the entry
         TarEntry tarEntry = (TarEntry)entry.getEntryObject();
         if (tarEntry != null) {
-            TarInputStream tin = createTarStream(tarEntry.getOffset());
+            TarInputStream tin = null;
+            // Resume the decompression at the nearest checkpoint before the entry, if any
+            int compression = getCompression();
+            TarCheckpointIndex index = compression == NONE ? null : getCheckpointIndex();
+            if (index != null) {
+                TarCheckpointIndex.Checkpoint checkpoint = index.find(tarEntry.getOffset());
+                if (checkpoint != null) {
+                    tin = createTarStream(compression, checkpoint, tarEntry.getOffset());
+                }
+            }
+            // Iterate through the archive until we've found the entry
+            if (tin == null) {
+                tin = createTarStream(tarEntry.getOffset());
+            }
             tin.getNextEntry();
 
             return tin;
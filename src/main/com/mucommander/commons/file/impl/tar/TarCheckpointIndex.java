@@ -0,0 +1,180 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Checkpoints of a compressed TAR archive, from which the decompression can be resumed to read an entry without
+ * decompressing all the data that precedes it.
+ *
+ * <p>A checkpoint is made of an offset in the compressed stream, the corresponding offset in the uncompressed stream
+ * and, for gzip streams, the uncompressed data preceding it which the following data may refer to. This data is kept
+ * compressed. Checkpoints are added in increasing order while the archive is listed, and may be looked up at the same
+ * time.
+ *
+ * <p>The index is only valid for the version of the archive it was created for, see {@link #isUpToDate(long, long)}.
+ *
+ * @author Oleg Trifonov
+ */
+final class TarCheckpointIndex {
+
+    /** Minimum number of uncompressed bytes between two checkpoints */
+    static final int SPAN = 4 * 1024 * 1024;
+
+    /** Date of the archive the index was created for */
+    private final long date;
+
+    /** Size of the archive the index was created for */
+    private final long size;
+
+    private long[] compressedOffsets = new long[16];
+    private long[] uncompressedOffsets = new long[16];
+    private byte[][] windows = new byte[16][];
+    private int[] windowLengths = new int[16];
+    private int count;
+
+    /** True if the whole archive has been indexed */
+    private volatile boolean complete;
+
+
+    TarCheckpointIndex(long date, long size) {
+        this.date = date;
+        this.size = size;
+    }
+
+    /**
+     * Returns <code>true</code> if the index was created for an archive with the given date and size.
+     *
+     * @param date the date of the archive
+     * @param size the size of the archive
+     * @return true if the index was created for an archive with the given date and size
+     */
+    boolean isUpToDate(long date, long size) {
+        return this.date == date && this.size == size;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    void setComplete() {
+        this.complete = true;
+    }
+
+    /**
+     * Adds a checkpoint after the existing ones.
+     *
+     * @param compressedOffset the offset in the compressed stream, in bits for gzip and in bytes for bzip2
+     * @param uncompressedOffset the offset in the uncompressed stream
+     * @param window the uncompressed data preceding the checkpoint, <code>null</code> if not needed
+     */
+    synchronized void add(long compressedOffset, long uncompressedOffset, byte[] window) {
+        if (count == compressedOffsets.length) {
+            int capacity = count * 2;
+            compressedOffsets = Arrays.copyOf(compressedOffsets, capacity);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, capacity);
+            windows = Arrays.copyOf(windows, capacity);
+            windowLengths = Arrays.copyOf(windowLengths, capacity);
+        }
+        compressedOffsets[count] = compressedOffset;
+        uncompressedOffsets[count] = uncompressedOffset;
+        if (window != null) {
+            windows[count] = compress(window);
+            windowLengths[count] = window.length;
+        }
+        count++;
+    }
+
+    /**
+     * Returns the checkpoint with the highest uncompressed offset that is lower than or equal to the given offset.
+     *
+     * @param uncompressedOffset the offset in the uncompressed stream
+     * @return the checkpoint, <code>null</code> if there is none before the given offset
+     */
+    synchronized Checkpoint find(long uncompressedOffset) {
+        int index = Arrays.binarySearch(uncompressedOffsets, 0, count, uncompressedOffset);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index < 0) {
+            return null;
+        }
+        byte[] window = windows[index] == null ? null : decompress(windows[index], windowLengths[index]);
+        return new Checkpoint(compressedOffsets[index], uncompressedOffsets[index], window);
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] data, int length) {
+        Inflater inflater = new Inflater(true);
+        try {
+            // An extra dummy byte is needed by the nowrap mode, see Inflater's javadoc
+            inflater.setInput(Arrays.copyOf(data, data.length + 1));
+            byte[] result = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                offset += inflater.inflate(result, offset, length - offset);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            // Can't happen, the data was compressed by this class
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+
+    /**
+     * A checkpoint returned by {@link TarCheckpointIndex#find(long)}.
+     */
+    static final class Checkpoint {
+        final long compressedOffset;
+        final long uncompressedOffset;
+        final byte[] window;
+
+        Checkpoint(long compressedOffset, long uncompressedOffset, byte[] window) {
+            this.compressedOffset = compressedOffset;
+            this.uncompressedOffset = uncompressedOffset;
+            this.window = window;
+        }
+    }
+}
@@ -33,6 +33,9 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
     /** The date at which the current ZipFile object was created */
     private long lastZipFileDate;
 
+    /** The size of the Zip file when the current ZipFile object was created */
+    private long lastZipFileSize;
+
     /** Contents of an empty Zip file, 22 bytes long */
     private final static byte EMPTY_ZIP_BYTES[] = {
         0x50, 0x4B, 0x05, 0x06, 0x00, 0x00, 0x00, 0x00,
@@ -53,14 +56,15 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
     /**
      * Checks if the underlying Zip file is up-to-date, i.e. exists and has not changed without this archive file
      * being aware of it. If one of those 2 conditions are not met, (re)load the ZipFile instance (parse the entries)
-     * and declare the Zip file as up-to-date.
+     * and declare the Zip file as up-to-date. Otherwise the parsed central directory, including the data offsets of
+     * the entries read so far, is reused.
      *
      * @throws IOException if an error occurred while reloading
      */
     private void checkZipFile() throws IOException {
         long currentDate = file.getLastModifiedDate();
 
-        if(zipFile==null || currentDate!=lastZipFileDate) {
+        if(zipFile==null || currentDate!=lastZipFileDate || file.getSize()!=lastZipFileSize) {
             zipFile = new ZipFile(file);
             declareZipFileUpToDate();
         }
@@ -72,6 +76,7 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
      */
     private void declareZipFileUpToDate() {
         lastZipFileDate = file.getLastModifiedDate();
+        lastZipFileSize = file.getSize();
     }
 
     /**
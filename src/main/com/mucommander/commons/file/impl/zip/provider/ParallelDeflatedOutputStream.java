@@ -0,0 +1,297 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.zip.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * ParallelDeflatedOutputStream compresses data using the DEFLATED compression method on a pool of threads.
+ *
+ * <p>The data is split into chunks of {@link #CHUNK_SIZE} bytes that are deflated independently, each one using the
+ * end of the previous chunk as a preset dictionary so that the compression ratio is close to the one of a single
+ * deflater. All chunks but the last one end with a sync flush, so that the compressed chunks, written in order, form
+ * a single valid DEFLATE stream. The CRC is calculated on the writing thread.
+ *
+ * <p>Data that fits in a single chunk is deflated on the writing thread with the supplied <code>Deflater</code>, as
+ * handing it to another thread would not make it any faster. The first chunk grows with the data written, so that
+ * small entries don't allocate a whole chunk.
+ *
+ * @author Oleg Trifonov
+ */
+public class ParallelDeflatedOutputStream extends DeflatedOutputStream {
+
+    /** Size of the chunks deflated by the threads of the pool */
+    static final int CHUNK_SIZE = 128 * 1024;
+
+    /** Initial size of the first chunk, which grows up to {@link #CHUNK_SIZE} as data is written */
+    private static final int INITIAL_CHUNK_SIZE = 8 * 1024;
+
+    /** Size of the preset dictionary taken from the previous chunk, the maximum distance of DEFLATE back-references */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /** Executor deflating the chunks */
+    private final ExecutorService executor;
+
+    /** Compression level of the chunk deflaters */
+    private final int level;
+
+    /** Maximum number of chunks being deflated or waiting to be written */
+    private final int maxPendingChunks;
+
+    /** Compressed chunks, in the order they must be written */
+    private final Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+
+    /** Chunk being filled, null until data is written to it */
+    private byte[] chunk;
+
+    /** Number of bytes in the chunk being filled */
+    private int chunkLength;
+
+    /** Last submitted chunk, used as a dictionary by the next one (null if no chunk has been submitted yet) */
+    private byte[] previousChunk;
+
+    /** Uncompressed size of the submitted chunks */
+    private long totalIn;
+
+    /** Compressed size of the written chunks */
+    private long totalOut;
+
+    /** True if the data has been entirely deflated */
+    private boolean finished;
+
+
+    /**
+     * Creates a new <code>ParallelDeflatedOutputStream</code> that writes compressed data to the given
+     * <code>OutputStream</code> and automatically updates the CRC32 checksum.
+     *
+     * @param out the OutputStream where the compressed data is sent to
+     * @param deflater the Deflater that compresses data that fits in a single chunk, reset before first use
+     * @param buf the buffer used to deflate data with the given Deflater
+     * @param executor the executor that deflates the chunks
+     * @param nbThreads the number of threads of the executor
+     * @param level the compression level
+     */
+    public ParallelDeflatedOutputStream(OutputStream out, Deflater deflater, byte buf[], ExecutorService executor, int nbThreads, int level) {
+        super(out, deflater, buf);
+
+        this.executor = executor;
+        this.level = level;
+        this.maxPendingChunks = 2 * nbThreads;
+    }
+
+    /**
+     * Submits the chunk being filled to the executor and writes the compressed chunks that are ready, waiting for
+     * the oldest ones if too many chunks are pending.
+     *
+     * @param last true if this is the last chunk of the data
+     * @throws IOException if a chunk could not be compressed or written
+     */
+    private void submitChunk(boolean last) throws IOException {
+        if (chunk == null) {
+            // The data ends on a chunk boundary, the last chunk is empty
+            chunk = new byte[0];
+        }
+        pendingChunks.add(executor.submit(new DeflateTask(chunk, chunkLength, previousChunk, level, last)));
+        totalIn += chunkLength;
+
+        previousChunk = chunk;
+        chunk = null;
+        chunkLength = 0;
+
+        while (!pendingChunks.isEmpty() && (pendingChunks.size() >= maxPendingChunks || pendingChunks.peek().isDone())) {
+            writeChunk(pendingChunks.poll());
+        }
+    }
+
+    /**
+     * Makes sure that the chunk being filled can hold the given number of bytes. The first chunk grows as needed,
+     * the next ones are allocated at full size.
+     *
+     * @param capacity the number of bytes, at most {@link #CHUNK_SIZE}
+     */
+    private void ensureChunkCapacity(int capacity) {
+        if (chunk == null) {
+            chunk = new byte[previousChunk == null ? Math.max(capacity, INITIAL_CHUNK_SIZE) : CHUNK_SIZE];
+        } else if (chunk.length < capacity) {
+            chunk = Arrays.copyOf(chunk, Math.min(CHUNK_SIZE, Math.max(capacity, 2 * chunk.length)));
+        }
+    }
+
+    /**
+     * Waits for the given chunk to be compressed and writes it.
+     *
+     * @param future the compressed chunk
+     * @throws IOException if the chunk could not be compressed or written
+     */
+    private void writeChunk(Future<byte[]> future) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        out.write(compressed);
+        totalOut += compressed.length;
+    }
+
+    /**
+     * Cancels the chunks that haven't been written yet.
+     */
+    private void cancelPendingChunks() {
+        for (Future<byte[]> future : pendingChunks) {
+            future.cancel(true);
+        }
+        pendingChunks.clear();
+    }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    @Override
+    public void finishDeflate() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        if (previousChunk == null) {
+            // The data fits in a single chunk, deflate it on this thread
+            if (chunk != null) {
+                deflater.setInput(chunk, 0, chunkLength);
+                chunk = null;
+            }
+            super.finishDeflate();
+            return;
+        }
+
+        try {
+            submitChunk(true);
+            while (!pendingChunks.isEmpty()) {
+                writeChunk(pendingChunks.poll());
+            }
+        } finally {
+            cancelPendingChunks();
+        }
+    }
+
+    @Override
+    public int getTotalIn() {
+        return previousChunk == null ? deflater.getTotalIn() : (int)totalIn;
+    }
+
+    @Override
+    public int getTotalOut() {
+        return previousChunk == null ? deflater.getTotalOut() : (int)totalOut;
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+        if (finished) {
+            throw new IOException("Entry data already finished");
+        }
+        crc.update(b, offset, length);
+
+        try {
+            while (length > 0) {
+                int count = Math.min(length, CHUNK_SIZE - chunkLength);
+                ensureChunkCapacity(chunkLength + count);
+                System.arraycopy(b, offset, chunk, chunkLength, count);
+                chunkLength += count;
+                offset += count;
+                length -= count;
+                if (chunkLength == CHUNK_SIZE) {
+                    submitChunk(false);
+                }
+            }
+        } catch (IOException e) {
+            cancelPendingChunks();
+            throw e;
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Deflates a chunk of data, using the end of the previous chunk as a dictionary.
+     */
+    private static class DeflateTask implements Callable<byte[]> {
+
+        private final byte[] input;
+        private final int length;
+        private final byte[] dictionary;
+        private final int level;
+        private final boolean last;
+
+        DeflateTask(byte[] input, int length, byte[] dictionary, int level, boolean last) {
+            this.input = input;
+            this.length = length;
+            this.dictionary = dictionary;
+            this.level = level;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (dictionary != null) {
+                    deflater.setDictionary(dictionary, CHUNK_SIZE - DICTIONARY_SIZE, DICTIONARY_SIZE);
+                }
+                deflater.setInput(input, 0, length);
+
+                ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 64);
+                byte[] buffer = new byte[16 * 1024];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        result.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                } else {
+                    // A sync flush ends the chunk on a byte boundary without ending the DEFLATE stream
+                    int count;
+                    do {
+                        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        result.write(buffer, 0, count);
+                    } while (count == buffer.length);
+                }
+                return result.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -17,8 +17,8 @@ final class ZipEntryInfo {
     /** Offset to the local file header */
     long headerOffset = -1;
 
-    /** Offset to the start of file data */
-    long dataOffset = -1;
+    /** Offset to the start of file data, volatile as it may be calculated by concurrent readers of the entry */
+    volatile long dataOffset = -1;
 
     /** <code>true</code> if this entry has a data descriptor in the Zip file */
     boolean hasDataDescriptor;
@@ -12,10 +12,12 @@ import java.util.zip.CRC32;
  * current checksum value. The {@link #getTotalIn()} and {@link #getTotalOut()} methods keep track of the uncompressed
  * and compressed of the supplied data.
  *
- * <p>There currently are two implementations of this class:
+ * <p>There currently are three implementations of this class:
  * <ul>
  *  <li>{@link com.mucommander.commons.file.impl.zip.provider.DeflatedOutputStream}: implements the DEFLATED compression method
  *  </li>
+ *  <li>{@link com.mucommander.commons.file.impl.zip.provider.ParallelDeflatedOutputStream}: implements the DEFLATED
+ * compression method on a pool of threads</li>
  *  <li>{@link com.mucommander.commons.file.impl.zip.provider.StoredOutputStream}: implements the STORED compression method
  * (i.e. no compression)</li>
  * </ul>
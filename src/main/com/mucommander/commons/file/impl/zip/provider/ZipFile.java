@@ -25,6 +25,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
@@ -98,6 +104,12 @@ public class ZipFile implements ZipConstants {
     /** Holds byte buffer instance used to convert short and longs, avoids creating lots of small arrays */
     private ZipBuffer zipBuffer = new ZipBuffer();
 
+    /** Source of the entries data shared by all the opened entry streams (null if no entry is being read) */
+    private EntryDataSource dataSource;
+
+    /** Number of the opened entry streams that use {@link #dataSource} */
+    private int dataSourceUsers;
+
     
     /**
      * Opens the given Zip file and parses information about the entries it contains.
@@ -116,6 +128,7 @@ public class ZipFile implements ZipConstants {
         try {
             openRead();
             parseCentralDirectory();
+            entries.trimToSize();
         }
         finally {
             closeRead();
@@ -253,6 +266,12 @@ public class ZipFile implements ZipConstants {
     /**
      * Returns an InputStream for reading the contents of the given entry.
      *
+     * <p>The streams of all the entries being read at the same time share the same source: the archive is opened once
+     * for the first stream and closed with the last one. For local archives, the data is read with positional reads
+     * of a {@link FileChannel}, so that several threads can read different entries without blocking each other. The
+     * channel is reopened if a reader thread is interrupted, which closes it.
+     * Other archives are read with a single <code>RandomAccessInputStream</code> that is sought before each read.
+     *
      * @param ze the entry to get the stream for.
      * @return a stream to read the entry from.
      * @throws IOException if unable to create an input stream from the zipentry
@@ -265,26 +284,73 @@ public class ZipFile implements ZipConstants {
         if (entryInfo == null)
             throw new ZipException("Unknown entry: "+ze.getName());
 
-        openRead();
-        RandomAccessInputStream entryIn = this.rais;
-
-        // If data offset is -1 (not calculated yet), calculate it now
-        if (entryInfo.dataOffset == -1)
-            calculateDataOffset(entryInfo);
-
-        this.rais = null;
-        
-        long start = entryInfo.dataOffset;
-        BoundedInputStream bis = new BoundedInputStream(entryIn, start, ze.getCompressedSize());
-        switch (ze.getMethod()) {
-            case ZipConstants.STORED:
-                return bis;
-            case ZipConstants.DEFLATED:
-                bis.addDummy();
-                return new InflaterInputStream(bis, new Inflater(true));
-            default:
-                throw new ZipException("Found unsupported compression method "
-                                       + ze.getMethod());
+        int method = ze.getMethod();
+        if (method != ZipConstants.STORED && method != ZipConstants.DEFLATED)
+            throw new ZipException("Found unsupported compression method " + method);
+
+        EntryDataSource source = acquireDataSource();
+        BoundedInputStream bis;
+        try {
+            // If data offset is -1 (not calculated yet), calculate it now. It is kept for the next reads of the entry.
+            long start = entryInfo.dataOffset;
+            if (start == -1)
+                start = calculateDataOffset(entryInfo, source);
+
+            bis = new BoundedInputStream(source, start, ze.getCompressedSize());
+        } catch (IOException e) {
+            releaseDataSource();
+            throw e;
+        }
+
+        if (method == ZipConstants.STORED)
+            return bis;
+
+        bis.addDummy();
+        return new InflaterInputStream(bis, new Inflater(true)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // Release the native resources now rather than when the inflater is finalized
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the source of the entries data, opening it if no entry is currently being read. Each call must be
+     * balanced by a call to {@link #releaseDataSource()}.
+     *
+     * @return the source of the entries data
+     * @throws IOException if the archive could not be opened
+     */
+    private synchronized EntryDataSource acquireDataSource() throws IOException {
+        if (dataSource == null) {
+            Object underlyingFile = file.getUnderlyingFileObject();
+            if (underlyingFile instanceof File)
+                dataSource = new ChannelDataSource(((File)underlyingFile).toPath());
+            else
+                dataSource = new StreamDataSource(file.getRandomAccessInputStream());
+        }
+        dataSourceUsers++;
+        return dataSource;
+    }
+
+    /**
+     * Releases the source returned by {@link #acquireDataSource()}, closing it if no more entries are being read.
+     *
+     * @throws IOException if an error occurred while closing the source
+     */
+    private synchronized void releaseDataSource() throws IOException {
+        if (--dataSourceUsers > 0)
+            return;
+
+        try {
+            dataSource.close();
+        } finally {
+            dataSource = null;
         }
     }
 
@@ -727,6 +793,25 @@ public class ZipFile implements ZipConstants {
         entryInfo.dataOffset = dataOffset;
     }
 
+    /**
+     * Calculates the data offset of the given entry like {@link #calculateDataOffset(ZipEntryInfo)} does, reading the
+     * local file header from the given source. This method can be called by several threads at the same time.
+     *
+     * @param entryInfo the ZipEntryInfo object in which to store the data offset
+     * @param source the source to read the local file header from
+     * @return the data offset
+     * @throws IOException if an unexpected I/O error occurred
+     */
+    private static long calculateDataOffset(ZipEntryInfo entryInfo, EntryDataSource source) throws IOException {
+        // Read the filename and extra field lengths that follow the 26 bytes of fixed-size fields
+        byte[] b = new byte[4];
+        source.readFully(entryInfo.headerOffset + 26, b);
+
+        long dataOffset = entryInfo.headerOffset + 30 + ZipShort.getValue(b, 0) + ZipShort.getValue(b, 2);
+        entryInfo.dataOffset = dataOffset;
+        return dataOffset;
+    }
+
 
     /** Combined length of all constant-size fields of the Central File Header */
     private static final int CFH_LEN =
@@ -1110,36 +1195,145 @@ public class ZipFile implements ZipConstants {
     ///////////////////
     
     /**
-     * InputStream that delegates requests to the underlying RandomAccessFile, making sure that only bytes from a
-     * certain range can be read.
+     * Source of the entries data that is read at given positions, so that it can be shared by several entry streams.
      */
-    private static class BoundedInputStream extends InputStream {
+    private static abstract class EntryDataSource implements Closeable {
+
+        /**
+         * Reads up to <code>len</code> bytes starting at the given position of the archive.
+         *
+         * @param pos position of the first byte to read
+         * @param b the buffer into which the data is read
+         * @param off the start offset in the buffer
+         * @param len the maximum number of bytes to read
+         * @return the number of bytes read, or <code>-1</code> if the end of the archive has been reached
+         * @throws IOException if an I/O error occurred
+         */
+        abstract int read(long pos, byte[] b, int off, int len) throws IOException;
+
+        /**
+         * Reads <code>b.length</code> bytes starting at the given position of the archive.
+         *
+         * @param pos position of the first byte to read
+         * @param b the buffer into which the data is read
+         * @throws IOException if an I/O error occurred or the end of the archive has been reached
+         */
+        void readFully(long pos, byte[] b) throws IOException {
+            int off = 0;
+            while (off < b.length) {
+                int ret = read(pos + off, b, off, b.length - off);
+                if (ret < 0)
+                    throw new EOFException();
+                off += ret;
+            }
+        }
+    }
+
+    /**
+     * Reads a local archive with positional reads, which don't change the channel position and thus don't need to be
+     * synchronized.
+     *
+     * <p>A thread interrupted while reading a <code>FileChannel</code> closes it for all the threads that share it,
+     * which happens when a job is cancelled. The interrupted thread gets a <code>ClosedByInterruptException</code>,
+     * the other readers reopen the channel and retry.
+     */
+    private static class ChannelDataSource extends EntryDataSource {
+
+        private final Path path;
+
+        private volatile FileChannel channel;
+
+        /** True once this source has been closed by {@link #close()} */
+        private boolean closed;
+
+        ChannelDataSource(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        @Override
+        int read(long pos, byte[] b, int off, int len) throws IOException {
+            while (true) {
+                FileChannel current = channel;
+                try {
+                    return current.read(ByteBuffer.wrap(b, off, len), pos);
+                } catch (ClosedByInterruptException e) {
+                    // This thread has been interrupted
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    // Closed by the interrupted read of another thread
+                    reopen(current);
+                }
+            }
+        }
+
+        /**
+         * Replaces the given closed channel with a new one, unless another thread already did it.
+         *
+         * @param closedChannel the channel found closed
+         * @throws IOException if this source has been closed or if the archive could not be opened
+         */
+        private synchronized void reopen(FileChannel closedChannel) throws IOException {
+            if (closed)
+                throw new ClosedChannelException();
+            if (channel == closedChannel)
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads an archive with a <code>RandomAccessInputStream</code>, seeking it before each read.
+     */
+    private static class StreamDataSource extends EntryDataSource {
 
         private final RandomAccessInputStream rais;
 
+        StreamDataSource(RandomAccessInputStream rais) {
+            this.rais = rais;
+        }
+
+        @Override
+        synchronized int read(long pos, byte[] b, int off, int len) throws IOException {
+            rais.seek(pos);
+            return rais.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            rais.close();
+        }
+    }
+
+    /**
+     * InputStream that reads the data of an entry from the shared {@link EntryDataSource}, making sure that only bytes
+     * from a certain range can be read.
+     */
+    private class BoundedInputStream extends InputStream {
+
+        private final EntryDataSource source;
+
         private long remaining;
         private long loc;
         private boolean addDummyByte = false;
+        private boolean closed;
 
-        BoundedInputStream(RandomAccessInputStream rais, long start, long remaining) {
-            this.rais = rais;
+        BoundedInputStream(EntryDataSource source, long start, long remaining) {
+            this.source = source;
             this.remaining = remaining;
             loc = start;
         }
 
         @Override
         public int read() throws IOException {
-            if (remaining-- <= 0) {
-                if (addDummyByte) {
-                    addDummyByte = false;
-                    return 0;
-                }
-                return -1;
-            }
-            synchronized (rais) {
-                rais.seek(loc++);
-                return rais.read();
-            }
+            byte[] b = new byte[1];
+            int ret = read(b, 0, 1);
+            return ret > 0 ? b[0] & 0xFF : -1;
         }
 
         @Override
@@ -1160,11 +1354,7 @@ public class ZipFile implements ZipConstants {
             if (len > remaining) {
                 len = (int) remaining;
             }
-            int ret;
-            synchronized (rais) {
-                rais.seek(loc);
-                ret = rais.read(b, off, len);
-            }
+            int ret = source.read(loc, b, off, len);
             if (ret > 0) {
                 loc += ret;
                 remaining -= ret;
@@ -1174,7 +1364,10 @@ public class ZipFile implements ZipConstants {
 
         @Override
         public void close() throws IOException {
-            rais.close();
+            if (closed)
+                return;
+            closed = true;
+            releaseDataSource();
         }
 
         /**
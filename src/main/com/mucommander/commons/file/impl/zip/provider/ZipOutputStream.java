@@ -25,6 +25,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
 import java.util.zip.ZipException;
 
@@ -67,6 +70,12 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /** Buffer used by Deflater to deflate data */
     protected byte[] deflaterBuf;
 
+    /** Number of threads deflating the data of DEFLATED entries, 1 to deflate it on the writing thread */
+    private int nbThreads = 1;
+
+    /** Executor deflating the data of DEFLATED entries, created for the first entry if more than 1 thread is used */
+    private ExecutorService executor;
+
     /** List of zip entries written so far */
     private Vector<ZipEntry> entries;
 
@@ -297,7 +306,12 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             deflater.reset();
             deflater.setLevel(level);
 
-            zeos = new DeflatedOutputStream(out, deflater, deflaterBuf);
+            // Entries known to fit in a single chunk would be deflated by this thread anyway
+            long size = entry.getSize();
+            if (nbThreads > 1 && (size == -1 || size >= ParallelDeflatedOutputStream.CHUNK_SIZE))
+                zeos = new ParallelDeflatedOutputStream(out, deflater, deflaterBuf, getExecutor(), nbThreads, level);
+            else
+                zeos = new DeflatedOutputStream(out, deflater, deflaterBuf);
         }
         else {
             zeos = new StoredOutputStream(out);
@@ -334,6 +348,36 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         this.level = level;
     }
 
+    /**
+     * Sets the number of threads that deflate the data of subsequent DEFLATED entries. With more than 1 thread, the
+     * data of large entries is split into chunks that are deflated concurrently, see
+     * {@link ParallelDeflatedOutputStream}.
+     *
+     * <p>Default is 1, the data is deflated on the thread that writes it.
+     *
+     * @param nbThreads the number of threads
+     */
+    public void setThreads(int nbThreads) {
+        this.nbThreads = Math.max(1, nbThreads);
+    }
+
+    /**
+     * Returns the executor deflating the data of DEFLATED entries, creating it if needed.
+     *
+     * @return the executor deflating the data of DEFLATED entries
+     */
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(nbThreads, runnable -> {
+                Thread thread = new Thread(runnable, "Zip deflater " + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
     /**
      * Sets the default compression method for subsequent entries.
      *
@@ -700,7 +744,14 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      */
     @Override
     public void close() throws IOException {
-        finish();
+        try {
+            finish();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
 
         if(deflaterBuf !=null) {         // Only if close() has not already been called already
             BufferPool.releaseByteArray(deflaterBuf);
@@ -3,6 +3,7 @@ package com.mucommander.commons.file.util;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.ui.quicksearch.QuickSearch;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.regex.Pattern;
 
@@ -57,6 +58,9 @@ public class FileComparator implements Comparator<AbstractFile> {
 
     private final QuickSearch quickSearch;
 
+    /** Number of files from which {@link #sort(AbstractFile[], int[])} sorts in parallel */
+    private final static int PARALLEL_SORT_THRESHOLD = 50000;
+
 
     /**
      * Creates a new FileComparator using the specified comparison criterion, order (ascending or descending) and
@@ -340,6 +344,246 @@ public class FileComparator implements Comparator<AbstractFile> {
     }
 
 
+    /**
+     * Sorts the given indexes of files, in the same order as {@link #compare(AbstractFile, AbstractFile)} does.
+     * The sort keys of the files are retrieved once, so that file attributes are not queried again for each comparison,
+     * and the sort is stable: files that are equal keep their relative order. Large arrays are sorted in parallel.
+     *
+     * @param files the files to sort
+     * @param indexes the indexes of the files to sort in <code>files</code>, sorted in place
+     */
+    public void sort(AbstractFile[] files, int[] indexes) {
+        if (indexes.length < 2) {
+            return;
+        }
+        final SortKeys keys = new SortKeys(files, indexes);
+        Integer[] sorted = new Integer[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            sorted[i] = indexes[i];
+        }
+        Comparator<Integer> comparator = keys::compare;
+        if (indexes.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(sorted, comparator);
+        } else {
+            Arrays.sort(sorted, comparator);
+        }
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = sorted[i];
+        }
+    }
+
+
+    /**
+     * Returns the given string with each character converted the way {@link #compareStrings(String, String, boolean)}
+     * does when it ignores case, so that comparing the converted strings character by character is enough.
+     */
+    private static String foldCase(String s) {
+        char[] chars = null;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            char folded = Character.toLowerCase(Character.toUpperCase(c));
+            if (folded != c) {
+                if (chars == null) {
+                    chars = s.toCharArray();
+                }
+                chars[i] = folded;
+            }
+        }
+        return chars == null ? s : new String(chars);
+    }
+
+    /**
+     * Compares two strings the same way as {@link #compareStrings(String, String, boolean)}, using the strings' keys
+     * computed beforehand.
+     *
+     * @param s1 first string to compare
+     * @param folded1 first string with its case {@link #foldCase(String) folded}
+     * @param digitIndex1 position of the first digit in the first string
+     * @param s2 second string to compare
+     * @param folded2 second string with its case folded
+     * @param digitIndex2 position of the first digit in the second string
+     * @param ignoreCase <code>true</code> to perform a case-insensitive string comparison
+     * @return a negative integer, zero, or a positive integer as the first argument is less than, equal to, or greater
+     * than the second.
+     */
+    private static int compareStringKeys(String s1, String folded1, int digitIndex1, String s2, String folded2, int digitIndex2, boolean ignoreCase) {
+        // Strings having a number with the same prefix are ordered by the number's value
+        if (digitIndex1 >= 0 && digitIndex1 == digitIndex2 && s1.regionMatches(0, s2, 0, digitIndex1)) {
+            int l1 = s1.length();
+            int l2 = s2.length();
+            int end1 = digitIndex1;
+            while (end1 < l1 && s1.charAt(end1) >= '0' && s1.charAt(end1) <= '9') {
+                end1++;
+            }
+            int end2 = digitIndex2;
+            while (end2 < l2 && s2.charAt(end2) >= '0' && s2.charAt(end2) <= '9') {
+                end2++;
+            }
+            if (end1 - digitIndex1 != end2 - digitIndex2) {
+                return (end1 - digitIndex1) - (end2 - digitIndex2);
+            }
+            for (int i = digitIndex1; i < end1; i++) {
+                int c1 = s1.charAt(i);
+                int c2 = s2.charAt(i);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+        }
+
+        String k1 = ignoreCase ? folded1 : s1;
+        String k2 = ignoreCase ? folded2 : s2;
+        int n1 = k1.length();
+        int n2 = k2.length();
+        int n = Math.min(n1, n2);
+        for (int i = 0; i < n; i++) {
+            int c1 = k1.charAt(i);
+            int c2 = k2.charAt(i);
+            if (c1 != c2) {
+                return getCharacterValue(c1) - getCharacterValue(c2);
+            }
+        }
+        return n1 - n2;
+    }
+
+
+    /**
+     * Sort keys of files, retrieved once per file and stored in arrays indexed like the files.
+     */
+    private final class SortKeys {
+        private final boolean[] matches;
+        private final boolean[] directories;
+        private final String[] names;
+        private final String[] foldedNames;
+        private final int[] nameDigitIndexes;
+        /** Value of the criterion for numeric criteria */
+        private final long[] values;
+        /** Value of the criterion for string criteria other than the name */
+        private final String[] strings;
+        private final String[] foldedStrings;
+        private final int[] stringDigitIndexes;
+
+        private SortKeys(AbstractFile[] files, int[] indexes) {
+            int n = files.length;
+            matches = quickSearch != null ? new boolean[n] : null;
+            directories = new boolean[n];
+            names = new String[n];
+            foldedNames = new String[n];
+            nameDigitIndexes = new int[n];
+            boolean numeric = criterion == SIZE_CRITERION || criterion == DATE_CRITERION || criterion == PERMISSIONS_CRITERION;
+            boolean string = criterion == EXTENSION_CRITERION || criterion == OWNER_CRITERION || criterion == GROUP_CRITERION;
+            values = numeric ? new long[n] : null;
+            strings = string ? new String[n] : null;
+            foldedStrings = string ? new String[n] : null;
+            stringDigitIndexes = string ? new int[n] : null;
+
+            for (int i : indexes) {
+                AbstractFile file = files[i];
+                if (matches != null) {
+                    matches[i] = quickSearch.matches(file);
+                }
+                boolean directory = file.isDirectory();
+                directories[i] = directory;
+                String name = file.getName();
+                names[i] = name;
+                foldedNames[i] = foldCase(name);
+                nameDigitIndexes[i] = firstDigitPos(name);
+                if (numeric) {
+                    long value;
+                    if (criterion == SIZE_CRITERION) {
+                        // Consider that directories have a size of 0, a size of -1 (unavailable) is considered as enormous
+                        value = directory ? 0 : file.getSize();
+                        value = value == -1 ? Long.MAX_VALUE : value;
+                    } else if (criterion == DATE_CRITERION) {
+                        value = file.getLastModifiedDate();
+                    } else {
+                        value = file.getPermissions().getIntValue();
+                    }
+                    values[i] = value;
+                } else if (string) {
+                    String value;
+                    if (criterion == EXTENSION_CRITERION) {
+                        value = file.getExtension();
+                    } else if (criterion == OWNER_CRITERION) {
+                        value = file.getOwner();
+                    } else {
+                        value = file.getGroup();
+                    }
+                    strings[i] = value;
+                    if (value != null) {
+                        foldedStrings[i] = foldCase(value);
+                        stringDigitIndexes[i] = firstDigitPos(value);
+                    }
+                }
+            }
+        }
+
+        private int compareNames(int i1, int i2, boolean ignoreCase) {
+            return compareStringKeys(names[i1], foldedNames[i1], nameDigitIndexes[i1],
+                    names[i2], foldedNames[i2], nameDigitIndexes[i2], ignoreCase);
+        }
+
+        private int compareStringValues(int i1, int i2) {
+            String s1 = strings[i1];
+            String s2 = strings[i2];
+            if (s1 == null || s2 == null) {
+                return s1 == null ? (s2 == null ? 0 : -1) : 1;
+            }
+            return compareStringKeys(s1, foldedStrings[i1], stringDigitIndexes[i1], s2, foldedStrings[i2], stringDigitIndexes[i2], true);
+        }
+
+        /**
+         * Compares the files at the given indexes, see {@link FileComparator#compare(AbstractFile, AbstractFile)}.
+         */
+        private int compare(int i1, int i2) {
+            if (matches != null) {
+                boolean m1 = matches[i1];
+                boolean m2 = matches[i2];
+                if (m1 && !m2) {
+                    return -1;
+                } else if (m2 && !m1) {
+                    return 1;
+                }
+            }
+
+            boolean is1Directory = directories[i1];
+            boolean is2Directory = directories[i2];
+            long diff;
+
+            if (directoriesFirst) {
+                if (is1Directory && !is2Directory) {
+                    return -1;
+                } else if (is2Directory && !is1Directory) {
+                    return 1;
+                }
+                if (foldersAlwaysAlphabetical && is1Directory) {
+                    diff = compareNames(i1, i2, true);
+                    return diff != 0 ? (int)diff : compareNames(i1, i2, false);
+                }
+            }
+
+            if (values != null) {
+                diff = Long.compare(values[i1], values[i2]);
+            } else if (strings != null) {
+                diff = compareStringValues(i1, i2);
+            } else {      // criterion == NAME_CRITERION
+                diff = compareNames(i1, i2, true);
+                if (diff == 0) {
+                    diff = compareNames(i1, i2, false);
+                }
+            }
+
+            if (criterion != NAME_CRITERION && diff == 0) {    // If both files have the same criterion's value, compare names
+                diff = compareNames(i1, i2, true);
+            }
+
+            int intValue = diff > 0 ? 1 : (diff < 0 ? -1 : 0);
+            return ascending ? intValue : -intValue;
+        }
+    }
+
+
     /**
      * Returns true only if the given object is a FileComparator using the same criterion and ascending/descending order.
      */
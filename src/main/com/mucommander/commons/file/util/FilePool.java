@@ -1,7 +1,12 @@
 package com.mucommander.commons.file.util;
 
 import com.mucommander.commons.file.AbstractFile;
-import org.apache.commons.collections4.map.ReferenceMap;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows {@link AbstractFile} instances to be pooled, so that existing file instances can be reused,
@@ -10,17 +15,26 @@ import org.apache.commons.collections4.map.ReferenceMap;
  * but a sensible choice is to use the {@link AbstractFile#getURL() file's URL}.
  *
  * <p>Files are stored as {@link java.lang.ref.WeakReference weak references} so they can be garbage collected
- * when they are no longer hard-referenced.
+ * when they are no longer hard-referenced. Mappings of collected files are removed as new files are added.
  *
- * <p>This class uses the {@link ReferenceMap} class part of the <code>Apache Commons Collection</code> library.
- * All accesses to the underlying map is synchronized, making this class thread-safe.
+ * <p>Mappings are stored in a {@link ConcurrentHashMap}: lookups don't lock and additions only lock a part of the
+ * map, so that threads resolving files concurrently don't wait for each other. This class is thread-safe.
  *
  * @author Maxence Bernard
  */
 public class FilePool {
 
-    /** The actual hash map */
-    protected final ReferenceMap<Object, AbstractFile> hashMap = new ReferenceMap<>(ReferenceMap.ReferenceStrength.HARD, ReferenceMap.ReferenceStrength.WEAK);
+    /** The actual hash map, values are {@link FileReference} instances */
+    protected final ConcurrentMap<Object, FileReference> hashMap = new ConcurrentHashMap<>();
+
+    /** Queue of the references to the files that have been garbage collected */
+    private final ReferenceQueue<AbstractFile> collectedFiles = new ReferenceQueue<>();
+
+    /** Number of lookups that returned a file */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** Number of lookups that returned <code>null</code> */
+    private final LongAdder missCount = new LongAdder();
 
     /**
      * Creates a new file pool.
@@ -37,8 +51,10 @@ public class FilePool {
      * @return returns the file instance previously mapped onto the given key, <code>null</code> if no
      * such mapping existed
      */
-    public synchronized AbstractFile put(Object key, AbstractFile value) {
-        return hashMap.put(key, value);
+    public AbstractFile put(Object key, AbstractFile value) {
+        expungeCollectedFiles();
+        FileReference previous = hashMap.put(key, new FileReference(key, value, collectedFiles));
+        return previous == null ? null : previous.get();
     }
 
     /**
@@ -49,8 +65,15 @@ public class FilePool {
      * @return the {@link AbstractFile} instance mapped onto the given key if there is one,
      * <code>null</code> otherwise
      */
-    public synchronized AbstractFile get(Object key) {
-        return hashMap.get(key);
+    public AbstractFile get(Object key) {
+        FileReference ref = hashMap.get(key);
+        AbstractFile file = ref == null ? null : ref.get();
+        if (file == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return file;
     }
 
     /**
@@ -61,8 +84,9 @@ public class FilePool {
      * @return <code>true</code> if this pool currently contains a key/file mapping where the given key is used as
      * the mapping's key.
      */
-    public synchronized boolean containsKey(Object key) {
-        return hashMap.containsKey(key);
+    public boolean containsKey(Object key) {
+        FileReference ref = hashMap.get(key);
+        return ref != null && ref.get() != null;
     }
 
     /**
@@ -73,24 +97,95 @@ public class FilePool {
      * @return <code>true</code> if this pool currently contains a key/file mapping where the given file is used as
      * the mapping's key.
      */
-    public synchronized boolean containsValue(AbstractFile file) {
-        return hashMap.containsValue(file);
+    public boolean containsValue(AbstractFile file) {
+        for (FileReference ref : hashMap.values()) {
+            AbstractFile pooledFile = ref.get();
+            if (pooledFile != null && pooledFile.equals(file)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Removes all existing key/file mapping from this pool, leaving the pool in the same state as it was right after
      * its creation.
      */
-    public synchronized void clear() {
+    public void clear() {
         hashMap.clear();
+        expungeCollectedFiles();
+        resetStatistics();
     }
 
     /**
-     * Returns the number of key/file mapping this pool currently contains.
+     * Returns the number of key/file mapping this pool currently contains, that is the number of live entries.
      *
      * @return the number of key/file mapping this pool currently contains.
      */
-    public synchronized int size() {
+    public int size() {
+        expungeCollectedFiles();
         return hashMap.size();
     }
+
+    /**
+     * Returns the number of lookups that returned a pooled file since this pool was created or its statistics reset.
+     *
+     * @return the number of lookups that returned a pooled file
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups that didn't find a pooled file since this pool was created or its statistics reset.
+     *
+     * @return the number of lookups that didn't find a pooled file
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the ratio of lookups that returned a pooled file, between 0 and 1.
+     *
+     * @return the ratio of lookups that returned a pooled file, 0 if there was no lookup
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    /**
+     * Resets the hit and miss counters.
+     */
+    public void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    /**
+     * Removes the mappings of the files that have been garbage collected.
+     */
+    private void expungeCollectedFiles() {
+        FileReference ref;
+        while ((ref = (FileReference)collectedFiles.poll()) != null) {
+            // The mapping may have been replaced by a newer file in the meantime
+            hashMap.remove(ref.key, ref);
+        }
+    }
+
+
+    /**
+     * Weak reference to a pooled file, which remembers its key so that its mapping can be removed once the file
+     * has been garbage collected.
+     */
+    protected static class FileReference extends WeakReference<AbstractFile> {
+        private final Object key;
+
+        private FileReference(Object key, AbstractFile file, ReferenceQueue<AbstractFile> queue) {
+            super(file, queue);
+            this.key = key;
+        }
+    }
 }
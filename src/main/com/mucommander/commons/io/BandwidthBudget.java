@@ -0,0 +1,186 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A throughput limit shared by any number of streams, see
+ * {@link ThroughputLimitInputStream#setBandwidthBudgets(int, BandwidthBudget...)}.
+ *
+ * <p>This is a token bucket: the budget refills at the limit rate, and a stream must take tokens before transferring
+ * as many bytes. Tokens are handed out in small slices, in the order they are requested, so concurrent streams
+ * get an even share of the limit whatever the size of their reads. A caller asking for a share greater than
+ * <code>1</code> gets proportionally smaller slices, which keeps a job running several transfers from taking more than
+ * its share.
+ *
+ * <p>The limit can be changed at any time, waiting streams take the new one into account within
+ * {@link #MAX_WAIT_STEP} milliseconds.
+ *
+ * @author Oleg Trifonov
+ */
+public class BandwidthBudget {
+
+    /** Duration worth of bytes handed out at once, in nanoseconds */
+    private final static long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** Minimum number of bytes handed out at once */
+    private final static long MIN_SLICE = 1024;
+
+    /** Duration worth of unused bytes that can be saved up for a burst, in nanoseconds */
+    private final static long MAX_BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    /** Maximum time a waiting stream sleeps before checking the limit again, in milliseconds */
+    private final static long MAX_WAIT_STEP = 100;
+
+    /** Name of this budget */
+    private final String name;
+
+    /** Throughput limit in bytes per second, -1 for no limit */
+    private volatile long bpsLimit;
+
+    /** Time at which the bytes handed out so far will have been transferred at the limit rate, in nanoseconds */
+    private long nextSliceTime;
+
+    /** Total number of bytes handed out, refunded bytes excepted */
+    private long nbTransferredBytes;
+
+
+    /**
+     * Creates a new budget.
+     *
+     * @param name name of the budget
+     * @param bytesPerSecond initial throughput limit in bytes per second, 0 or -1 for no limit
+     */
+    public BandwidthBudget(String name, long bytesPerSecond) {
+        this.name = name;
+        this.bpsLimit = bytesPerSecond <= 0 ? -1 : bytesPerSecond;
+        this.nextSliceTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the name of this budget.
+     *
+     * @return the name of this budget
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Specifies a new throughput limit expressed in bytes per second, which will be shared by all the streams drawing
+     * from this budget.
+     *
+     * @param bytesPerSecond new throughput limit in bytes per second, 0 or -1 to disable it
+     */
+    public synchronized void setThroughputLimit(long bytesPerSecond) {
+        this.bpsLimit = bytesPerSecond <= 0 ? -1 : bytesPerSecond;
+        // Forget the debt accumulated at the previous rate
+        this.nextSliceTime = System.nanoTime();
+        notifyAll();
+    }
+
+    /**
+     * Returns the current throughput limit, in bytes per second, <code>-1</code> if there is no limit.
+     *
+     * @return the current throughput limit, in bytes per second
+     */
+    public long getThroughputLimit() {
+        return bpsLimit;
+    }
+
+    /**
+     * Returns the total number of bytes transferred through this budget.
+     *
+     * @return the total number of bytes transferred through this budget
+     */
+    public synchronized long getTransferredBytes() {
+        return nbTransferredBytes;
+    }
+
+    /**
+     * Blocks until some bytes can be transferred without exceeding the limit of this budget, and returns how many,
+     * at most <code>len</code>. If the calling thread is interrupted, the method returns without waiting any longer.
+     *
+     * @param len the number of bytes that are about to be transferred
+     * @param share number of streams the caller stands for, the slices handed out are divided by it
+     * @return the number of bytes that can be transferred now, strictly positive if <code>len</code> is
+     */
+    public long acquire(long len, int share) {
+        if (len <= 0) {
+            return len;
+        }
+        long granted;
+        synchronized (this) {
+            long limit = bpsLimit;
+            if (limit < 0) {
+                nbTransferredBytes += len;
+                return len;
+            }
+            long slice = Math.max(MIN_SLICE, limit * SLICE_NANOS / TimeUnit.SECONDS.toNanos(1));
+            granted = Math.min(len, Math.max(1, slice / Math.max(1, share)));
+
+            // Reserve the bytes, they may be transferred as soon as the previous reservations have been
+            long now = System.nanoTime();
+            long sliceTime = Math.max(nextSliceTime, now - MAX_BURST_NANOS);
+            nextSliceTime = sliceTime + getDuration(granted, limit);
+            nbTransferredBytes += granted;
+
+            // Wait for our turn, unless the limit is changed meanwhile
+            try {
+                while (sliceTime - now > 0 && bpsLimit == limit) {
+                    long waitMs = Math.min(MAX_WAIT_STEP, TimeUnit.NANOSECONDS.toMillis(sliceTime - now) + 1);
+                    wait(waitMs);
+                    now = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * Gives back bytes obtained by {@link #acquire(long, int)} that have not been transferred, for instance
+     * because a read returned fewer bytes than requested.
+     *
+     * @param len the number of bytes that have not been transferred
+     */
+    public synchronized void refund(long len) {
+        if (len <= 0) {
+            return;
+        }
+        nbTransferredBytes -= len;
+        long limit = bpsLimit;
+        if (limit > 0) {
+            nextSliceTime -= getDuration(len, limit);
+        }
+    }
+
+    /**
+     * Returns the time needed to transfer the given number of bytes at the given rate, in nanoseconds.
+     */
+    private static long getDuration(long len, long bytesPerSecond) {
+        return (long)(len * (double)TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + bpsLimit + " B/s)";
+    }
+}
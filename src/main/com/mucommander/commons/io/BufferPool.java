@@ -23,9 +23,14 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows to share and reuse byte buffers to avoid excessive memory allocation and garbage collection.
@@ -36,6 +41,8 @@ import java.util.List;
  *  <li>Byte array buffers (<code>byte[]</code>)</li>
  *  <li><code>java.nio.ByteBuffer</code></li>
  * </ul>
+ * <code>ByteBuffer</code> instances created by the pool are direct, so they can be handed to NIO channels without
+ * an intermediate copy.
  *
  * <p>
  * Usage of this class is similar to malloc/free:
@@ -47,7 +54,13 @@ import java.util.List;
  * used again and from being garbage-collected.</li>
  * </ul>
  *
- * <p>Note: this class is thread safe and thus can safely be used by concurrent threads.
+ * <p>Note: this class is thread safe and thus can safely be used by concurrent threads. It doesn't use any lock:
+ * available buffers are kept in lock-free stacks, bucketed by buffer class and power-of-two size class, and each
+ * thread keeps the last buffer of each class it released in a private cache so that a get/release loop in a single
+ * thread doesn't contend with other threads on the stacks. Every get and release still updates the concurrent set of
+ * pooled buffers, which detects buffers released twice, and the pool size counter. Buffers in thread caches count in
+ * the pool size. Once their owner has died, they are reclaimed as soon as another thread starts using the pool or the
+ * pool is full.
  *
  * @author Maxence Bernard, Nicolas Rinaudo
  * @see com.mucommander.commons.io.StreamUtils
@@ -56,23 +69,50 @@ public class BufferPool {
     /** Logger used by this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BufferPool.class);
 
-    /** List of BufferContainer instances that wraps available buffers */
-    private static List<BufferContainer> bufferContainers = new ArrayList<>();
+    /** Number of size classes, one per power of two */
+    private final static int NB_SIZE_CLASSES = 32;
+
+    /** Free lists of available buffers, by buffer class then by size class */
+    private final static Map<Class<?>, AtomicReferenceArray<FreeList>> freeLists = new ConcurrentHashMap<>();
+
+    /** All the buffers that currently are in the pool, either in a free list or in a thread cache */
+    private final static Map<BufferContainer, Boolean> pooledBuffers = new ConcurrentHashMap<>();
+
+    /** Thread caches, by owner thread. Dead threads are removed whenever a thread registers its cache, so that
+     * the map doesn't retain threads that have died */
+    private final static Map<Thread, ThreadCache> threadCaches = new ConcurrentHashMap<>();
+
+    /** Cache of the current thread */
+    private final static ThreadLocal<ThreadCache> threadCache = ThreadLocal.withInitial(() -> {
+        reclaimDeadThreadCaches();
+        ThreadCache cache = new ThreadCache();
+        threadCaches.put(Thread.currentThread(), cache);
+        return cache;
+    });
 
     /** The initial default buffer size */
     final static int INITIAL_DEFAULT_BUFFER_SIZE = 65536;
 
     /** Size of buffers returned by get*Buffer methods without a size argument */
-    private static int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
+    private static volatile int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
 
     /** The initial max pool size */
     final static long INITIAL_POOL_LIMIT = 10485760;
 
     /** Maximum combined size of all pooled buffers, in bytes */
-    private static long maxPoolSize = INITIAL_POOL_LIMIT;
+    private static volatile long maxPoolSize = INITIAL_POOL_LIMIT;
 
     /** Current combined size of all pooled buffers, in bytes */
-    private static long poolSize;
+    private final static AtomicLong poolSize = new AtomicLong();
+
+    /** Number of get*Buffer calls served by a pooled buffer */
+    private final static LongAdder hitCount = new LongAdder();
+
+    /** Number of get*Buffer calls that had to create a new buffer */
+    private final static LongAdder missCount = new LongAdder();
+
+    /** Number of retries caused by concurrent modifications of the free lists */
+    private final static LongAdder contentionCount = new LongAdder();
 
 
     /**
@@ -81,7 +121,7 @@ public class BufferPool {
      *
      * @return a byte array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized byte[] getByteArray() {
+    public static byte[] getByteArray() {
         return getByteArray(getDefaultBufferSize());
     }
 
@@ -99,8 +139,8 @@ public class BufferPool {
      * @param length length of the byte array
      * @return a byte array of the specified size
      */
-    public static synchronized byte[] getByteArray(int length) {
-        return (byte[])getBuffer(new ByteArrayFactory(), length);
+    public static byte[] getByteArray(int length) {
+        return (byte[])getBuffer(BYTE_ARRAY_FACTORY, length);
     }
 
     /**
@@ -109,7 +149,7 @@ public class BufferPool {
      *
      * @return a char array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized char[] getCharArray() {
+    public static char[] getCharArray() {
         return getCharArray(getDefaultBufferSize());
     }
 
@@ -127,8 +167,8 @@ public class BufferPool {
      * @param length length of the char array
      * @return a char array of the specified length
      */
-    public static synchronized char[] getCharArray(int length) {
-        return (char[])getBuffer(new CharArrayFactory(), length);
+    public static char[] getCharArray(int length) {
+        return (char[])getBuffer(CHAR_ARRAY_FACTORY, length);
     }
 
     /**
@@ -137,12 +177,12 @@ public class BufferPool {
      *
      * @return a ByteBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized ByteBuffer getByteBuffer() {
+    public static ByteBuffer getByteBuffer() {
         return getByteBuffer(getDefaultBufferSize());
     }
 
     /**
-     * Returns a ByteBuffer of the specified capacity. This method first checks if a ByteBuffer instance of the
+     * Returns a direct ByteBuffer of the specified capacity. This method first checks if a ByteBuffer instance of the
      * specified capacity exists in the pool. If one is found, it is removed from the pool and returned. If not,
      * a new instance is created and returned.
      *
@@ -155,8 +195,8 @@ public class BufferPool {
      * @param capacity capacity of the ByteBuffer
      * @return a ByteBuffer with the specified capacity
      */
-    public static synchronized ByteBuffer getByteBuffer(int capacity) {
-        return (ByteBuffer)getBuffer(new ByteBufferFactory(), capacity);
+    public static ByteBuffer getByteBuffer(int capacity) {
+        return (ByteBuffer)getBuffer(BYTE_BUFFER_FACTORY, capacity);
     }
 
 
@@ -166,7 +206,7 @@ public class BufferPool {
      *
      * @return a CharBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized CharBuffer getCharBuffer() {
+    public static CharBuffer getCharBuffer() {
         return getCharBuffer(getDefaultBufferSize());
     }
 
@@ -184,8 +224,8 @@ public class BufferPool {
      * @param capacity capacity of the CharBuffer
      * @return a CharBuffer with the specified capacity
      */
-    public static synchronized CharBuffer getCharBuffer(int capacity) {
-        return (CharBuffer)getBuffer(new CharBufferFactory(), capacity);
+    public static CharBuffer getCharBuffer(int capacity) {
+        return (CharBuffer)getBuffer(CHAR_BUFFER_FACTORY, capacity);
     }
 
 
@@ -196,7 +236,7 @@ public class BufferPool {
      * @param factory BufferFactory used to identify the target buffer class and create a new buffer (if necessary)
      * @return a buffer with a size equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized Object getBuffer(BufferFactory factory) {
+    public static Object getBuffer(BufferFactory factory) {
         return getBuffer(factory, getDefaultBufferSize());
     }
 
@@ -213,23 +253,27 @@ public class BufferPool {
      * @param size size of the buffer
      * @return a buffer of the specified size
      */
-    public static synchronized Object getBuffer(BufferFactory factory, int size) {
-        // Looks for a buffer container in the pool that matches the specified size and buffer class.
-        Iterator<BufferContainer> it = bufferContainers.iterator();
-        while (it.hasNext()) {
-            BufferContainer bufferContainer = it.next();
-            Object buffer = bufferContainer.getBuffer();
-
-            // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
-            if (bufferContainer.getLength() == size && (factory.matchesBufferClass(buffer.getClass()))) {
-                it.remove();
-                //bufferContainers.removeElementAt(i);
-                poolSize -= bufferContainer.getSize();
-                return buffer;
+    public static Object getBuffer(BufferFactory factory, int size) {
+        Class<?> bufferClass = factory.getBufferClass();
+
+        // Look in the current thread's cache first, then in the shared free list
+        BufferContainer bufferContainer = threadCache.get().take(bufferClass, size);
+        if (bufferContainer == null) {
+            FreeList freeList = findFreeList(bufferClass, size, false);
+            if (freeList != null) {
+                bufferContainer = freeList.pop();
             }
         }
 
+        if (bufferContainer != null) {
+            pooledBuffers.remove(bufferContainer);
+            poolSize.addAndGet(-bufferContainer.getSize());
+            hitCount.increment();
+            return bufferContainer.getBuffer();
+        }
+
         LOGGER.trace("Creating new buffer with {} size=", factory, size);
+        missCount.increment();
 
         // No buffer with the same class and size found in the pool, create a new one and return it
         return factory.newBuffer(size);
@@ -248,8 +292,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteArray(byte[] buffer) {
-        return releaseBuffer(buffer, new ByteArrayFactory());
+    public static boolean releaseByteArray(byte[] buffer) {
+        return releaseBuffer(buffer, BYTE_ARRAY_FACTORY);
     }
 
     /**
@@ -264,8 +308,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharArray(char[] buffer) {
-        return releaseBuffer(buffer, new CharArrayFactory());
+    public static boolean releaseCharArray(char[] buffer) {
+        return releaseBuffer(buffer, CHAR_ARRAY_FACTORY);
     }
 
     /**
@@ -280,8 +324,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteBuffer(ByteBuffer buffer) {
-        return releaseBuffer(buffer, new ByteBufferFactory());
+    public static boolean releaseByteBuffer(ByteBuffer buffer) {
+        return releaseBuffer(buffer, BYTE_BUFFER_FACTORY);
     }
 
     /**
@@ -296,8 +340,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharBuffer(CharBuffer buffer) {
-        return releaseBuffer(buffer, new CharBufferFactory());
+    public static boolean releaseCharBuffer(CharBuffer buffer) {
+        return releaseBuffer(buffer, CHAR_BUFFER_FACTORY);
     }
 
     /**
@@ -314,35 +358,125 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool or the pool size limit has been reached
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseBuffer(Object buffer, BufferFactory factory) {
+    public static boolean releaseBuffer(Object buffer, BufferFactory factory) {
         if(buffer==null)
             throw new IllegalArgumentException("specified buffer is null");
 
         BufferContainer bufferContainer = factory.newBufferContainer(buffer);
 
-        if(bufferContainers.contains(bufferContainer)) {
+        if(pooledBuffers.putIfAbsent(bufferContainer, Boolean.TRUE) != null) {
             LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
             return false;
         }
 
         long bufferSize = bufferContainer.getSize();        // size in bytes (!= length)
 
-        if(maxPoolSize!=-1 && poolSize+bufferSize>maxPoolSize) {
+        if(!reservePoolSize(bufferSize) && !(reclaimDeadThreadCaches() && reservePoolSize(bufferSize))) {
+            pooledBuffers.remove(bufferContainer);
             LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool of type {}. Enable trace to get the buffer.", buffer.getClass());
             LOGGER.trace("Warning: maximum pool size reached, buffer not added to the pool of type {} : {}", buffer.getClass(), buffer);
             return false;
         }
 
-        bufferContainers.add(bufferContainer);
-        poolSize += bufferSize;
+        // Keep the buffer in the current thread's cache, the buffer previously cached goes to the shared free list
+        Class<?> bufferClass = factory.getBufferClass();
+        BufferContainer evicted = threadCache.get().put(bufferClass, bufferContainer);
+        if (evicted != null) {
+            findFreeList(bufferClass, evicted.getLength(), true).push(evicted);
+        }
 
         return true;
     }
 
+    /**
+     * Adds the given number of bytes to the pool size, unless that would exceed the max pool size.
+     *
+     * @param bufferSize the number of bytes to add
+     * @return <code>false</code> if the max pool size would be exceeded
+     */
+    private static boolean reservePoolSize(long bufferSize) {
+        while (true) {
+            long currentPoolSize = poolSize.get();
+            long limit = maxPoolSize;
+            if (limit != -1 && currentPoolSize + bufferSize > limit) {
+                return false;
+            }
+            if (poolSize.compareAndSet(currentPoolSize, currentPoolSize + bufferSize)) {
+                return true;
+            }
+            contentionCount.increment();
+        }
+    }
+
+    /**
+     * Removes the buffers cached by threads that have died from the pool.
+     *
+     * @return <code>true</code> if some buffers have been removed
+     */
+    private static boolean reclaimDeadThreadCaches() {
+        boolean reclaimed = false;
+        Iterator<Map.Entry<Thread, ThreadCache>> it = threadCaches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Thread, ThreadCache> entry = it.next();
+            if (!entry.getKey().isAlive()) {
+                it.remove();
+                reclaimed |= entry.getValue().clear() > 0;
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Returns the free list of buffers of the given class and length.
+     *
+     * @param bufferClass class of the buffers, as returned by {@link BufferFactory#getBufferClass()}
+     * @param length length of the buffers
+     * @param create <code>true</code> to create the free list if it doesn't exist yet
+     * @return the free list, <code>null</code> if it doesn't exist and <code>create</code> is <code>false</code>
+     */
+    private static FreeList findFreeList(Class<?> bufferClass, int length, boolean create) {
+        AtomicReferenceArray<FreeList> sizeClasses = freeLists.get(bufferClass);
+        if (sizeClasses == null) {
+            if (!create) {
+                return null;
+            }
+            sizeClasses = freeLists.computeIfAbsent(bufferClass, c -> new AtomicReferenceArray<>(NB_SIZE_CLASSES));
+        }
+
+        // Free lists of a same size class are chained, there is usually only one length per size class
+        int sizeClass = getSizeClass(length);
+        while (true) {
+            FreeList head = sizeClasses.get(sizeClass);
+            for (FreeList freeList = head; freeList != null; freeList = freeList.next) {
+                if (freeList.length == length) {
+                    return freeList;
+                }
+            }
+            if (!create) {
+                return null;
+            }
+            if (sizeClasses.compareAndSet(sizeClass, head, new FreeList(length, head))) {
+                return sizeClasses.get(sizeClass);
+            }
+            contentionCount.increment();
+        }
+    }
+
+    /**
+     * Returns the power-of-two size class of the given length, i.e. the smallest <code>n</code> such that
+     * <code>length &lt;= 2^n</code>.
+     *
+     * @param length a buffer length
+     * @return the size class of the given length
+     */
+    static int getSizeClass(int length) {
+        return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+    }
+
     /**
      * Returns <code>true</code> if the specified buffer is currently in the pool.
      *
-     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
+     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
      * calling <code>release*Buffer</code> as it already performs this test before adding a buffer to the pool.
      *
      * @param buffer the buffer to look for in the pool
@@ -350,7 +484,7 @@ public class BufferPool {
      * @return <code>true</code> if the specified buffer is already in the pool
      */
     public static boolean containsBuffer(Object buffer, BufferFactory factory) {
-        return bufferContainers.contains(factory.newBufferContainer(buffer));
+        return pooledBuffers.containsKey(factory.newBufferContainer(buffer));
     }
 
 
@@ -361,7 +495,7 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount() {
-        return bufferContainers.size();
+        return pooledBuffers.size();
     }
 
     /**
@@ -373,7 +507,7 @@ public class BufferPool {
      */
     public static int getBufferCount(BufferFactory factory) {
         int count = 0;
-        for (BufferContainer bufferContainer : bufferContainers) {
+        for (BufferContainer bufferContainer : pooledBuffers.keySet()) {
             if (factory.matchesBufferClass(bufferContainer.getBuffer().getClass())) {
                 count ++;
             }
@@ -399,7 +533,7 @@ public class BufferPool {
      *
      * @param bufferSize the new buffer size
      */
-    public static synchronized void setDefaultBufferSize(int bufferSize) {
+    public static void setDefaultBufferSize(int bufferSize) {
         BufferPool.defaultBufferSize = bufferSize;
     }
 
@@ -410,7 +544,7 @@ public class BufferPool {
      * @return the combined size in bytes of all buffers that are currenty in the pool
      */
     public static long getPoolSize() {
-        return poolSize;
+        return poolSize.get();
     }
 
     /**
@@ -433,10 +567,47 @@ public class BufferPool {
      *
      * @param maxPoolSize the maximum combined size in bytes for all buffers in the pool
      */
-    public static synchronized void setMaxPoolSize(long maxPoolSize) {
+    public static void setMaxPoolSize(long maxPoolSize) {
         BufferPool.maxPoolSize = maxPoolSize;
     }
 
+    /**
+     * Returns the number of <code>get*Buffer</code> calls that returned a pooled buffer.
+     *
+     * @return the number of <code>get*Buffer</code> calls that returned a pooled buffer
+     */
+    public static long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of <code>get*Buffer</code> calls that had to create a new buffer.
+     *
+     * @return the number of <code>get*Buffer</code> calls that had to create a new buffer
+     */
+    public static long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of times an operation had to be retried because another thread modified the pool
+     * concurrently. A steadily growing value means that the pool is heavily contended.
+     *
+     * @return the number of retries caused by concurrent modifications of the pool
+     */
+    public static long getContentionCount() {
+        return contentionCount.sum();
+    }
+
+    /**
+     * Resets the hit, miss and contention counters.
+     */
+    public static void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+        contentionCount.reset();
+    }
+
 
     ///////////////////
     // Inner classes //
@@ -472,10 +643,17 @@ public class BufferPool {
          * Implements a shallow equal comparison.
          */
         public boolean equals(Object o) {
-            // Note: this method is used by Vector.contains()
+            // Note: this method is used by the pool's hash-based lookups
             return (o instanceof BufferContainer) && buffer == ((BufferContainer)o).buffer;
         }
 
+        /**
+         * Returns the identity hash code of the wrapped buffer, consistent with {@link #equals(Object)}.
+         */
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+
         /**
          * Returns the length of the wrapped buffer instance.
          *
@@ -659,8 +837,151 @@ public class BufferPool {
         }
     }
 
-	public static synchronized void releaseAll() {
-		bufferContainers.clear();
-		poolSize = 0;
-	}
+    /**
+     * A lock-free stack of available buffers that all have the same class and length.
+     */
+    private static class FreeList {
+        /** Length of the buffers */
+        private final int length;
+
+        /** Next free list of the same size class */
+        private final FreeList next;
+
+        /** Top of the stack */
+        private final AtomicReference<Node> top = new AtomicReference<>();
+
+        private FreeList(int length, FreeList next) {
+            this.length = length;
+            this.next = next;
+        }
+
+        private void push(BufferContainer bufferContainer) {
+            Node node = new Node(bufferContainer);
+            while (true) {
+                node.next = top.get();
+                if (top.compareAndSet(node.next, node)) {
+                    return;
+                }
+                contentionCount.increment();
+            }
+        }
+
+        private BufferContainer pop() {
+            while (true) {
+                Node node = top.get();
+                if (node == null) {
+                    return null;
+                }
+                if (top.compareAndSet(node, node.next)) {
+                    return node.bufferContainer;
+                }
+                contentionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * A {@link FreeList} element.
+     */
+    private static class Node {
+        private final BufferContainer bufferContainer;
+        private Node next;
+
+        private Node(BufferContainer bufferContainer) {
+            this.bufferContainer = bufferContainer;
+        }
+    }
+
+    /**
+     * Per-thread cache holding the last released buffer of each buffer class. Slots are atomic so that other
+     * threads can empty the cache (see {@link #releaseAll()} and {@link #reclaimDeadThreadCaches()}).
+     */
+    private static class ThreadCache {
+        private final Map<Class<?>, AtomicReference<BufferContainer>> slots = new HashMap<>();
+
+        /**
+         * Removes and returns the cached buffer of the given class if it has the given length.
+         */
+        private BufferContainer take(Class<?> bufferClass, int length) {
+            AtomicReference<BufferContainer> slot = slots.get(bufferClass);
+            if (slot == null) {
+                return null;
+            }
+            BufferContainer bufferContainer = slot.get();
+            if (bufferContainer == null || bufferContainer.getLength() != length) {
+                return null;
+            }
+            return slot.compareAndSet(bufferContainer, null) ? bufferContainer : null;
+        }
+
+        /**
+         * Caches the given buffer and returns the buffer it replaces, if any.
+         */
+        private BufferContainer put(Class<?> bufferClass, BufferContainer bufferContainer) {
+            AtomicReference<BufferContainer> slot = slots.get(bufferClass);
+            if (slot == null) {
+                // Only the owner thread adds slots, other threads only iterate them in #clear()
+                synchronized (slots) {
+                    slots.put(bufferClass, new AtomicReference<>(bufferContainer));
+                }
+                return null;
+            }
+            return slot.getAndSet(bufferContainer);
+        }
+
+        /**
+         * Removes all the cached buffers from the pool.
+         *
+         * @return the number of buffers removed
+         */
+        private int clear() {
+            int count = 0;
+            synchronized (slots) {
+                for (AtomicReference<BufferContainer> slot : slots.values()) {
+                    BufferContainer bufferContainer = slot.getAndSet(null);
+                    if (bufferContainer != null) {
+                        removeFromPool(bufferContainer);
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Removes the given buffer from the pool accounting, once it has been taken from a free list or a thread cache.
+     *
+     * @param bufferContainer the buffer that has been taken
+     */
+    private static void removeFromPool(BufferContainer bufferContainer) {
+        pooledBuffers.remove(bufferContainer);
+        poolSize.addAndGet(-bufferContainer.getSize());
+    }
+
+    /** Shared factory instances used by the shorthand methods */
+    private final static BufferFactory BYTE_ARRAY_FACTORY = new ByteArrayFactory();
+    private final static BufferFactory CHAR_ARRAY_FACTORY = new CharArrayFactory();
+    private final static BufferFactory BYTE_BUFFER_FACTORY = new ByteBufferFactory();
+    private final static BufferFactory CHAR_BUFFER_FACTORY = new CharBufferFactory();
+
+    /**
+     * Removes all the buffers from the pool, including the ones cached by threads.
+     */
+    public static void releaseAll() {
+        for (AtomicReferenceArray<FreeList> sizeClasses : freeLists.values()) {
+            for (int i = 0; i < sizeClasses.length(); i++) {
+                for (FreeList freeList = sizeClasses.get(i); freeList != null; freeList = freeList.next) {
+                    BufferContainer bufferContainer;
+                    while ((bufferContainer = freeList.pop()) != null) {
+                        removeFromPool(bufferContainer);
+                    }
+                }
+            }
+        }
+        for (ThreadCache cache : threadCaches.values()) {
+            cache.clear();
+        }
+        reclaimDeadThreadCaches();
+    }
 }
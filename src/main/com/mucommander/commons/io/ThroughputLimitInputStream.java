@@ -43,6 +43,9 @@ import java.io.InputStream;
  * current second intact and thus the throughput limit stable. This does not hold true if a new ThroughputLimitInputStream
  * is created for each InputStream, the bytes count for the current second starting at 0.  
  *
+ * <p>In addition to its own limit, the stream can draw from {@link BandwidthBudget}s shared with other streams,
+ * see {@link #setBandwidthBudgets(int, BandwidthBudget...)}.
+ *
  * @author Maxence Bernard
  */
 public class ThroughputLimitInputStream extends InputStream {
@@ -59,6 +62,15 @@ public class ThroughputLimitInputStream extends InputStream {
     /** Number of bytes that have been read or skipped this second */
     private long nbBytesReadThisSecond;
 
+    /** Budgets shared with other streams that the bytes read are taken from */
+    private BandwidthBudget[] budgets = new BandwidthBudget[0];
+
+    /** Number of streams this one stands for when drawing from the budgets */
+    private int budgetShare = 1;
+
+    /** Number of bytes taken from the budgets by {@link #getNbAllowedBytes(long)} */
+    private long nbPendingBudgetBytes;
+
 
     /**
      * Creates a new ThroughputLimitInputStream with no initial throughput limit (-1 value).
@@ -106,6 +118,21 @@ public class ThroughputLimitInputStream extends InputStream {
     }
 
 
+    /**
+     * Specifies the budgets, shared with other streams, that the bytes read or skipped from this stream are taken
+     * from in addition to the limit of this stream. Reads wait until all the budgets allow some bytes to be
+     * transferred.
+     *
+     * @param share number of concurrent streams this stream stands for, a budget is split evenly between the streams
+     * drawing from it, and a stream standing for <code>n</code> streams gets <code>1/n</code> of a share
+     * @param budgets the budgets to draw from, none to only apply the limit of this stream
+     */
+    public void setBandwidthBudgets(int share, BandwidthBudget... budgets) {
+        this.budgetShare = Math.max(1, share);
+        this.budgets = budgets;
+    }
+
+
     /**
      * Changes the underlying InputStream which data is read from, keeping the bytes count for the current second intact.
      *
@@ -200,6 +227,63 @@ public class ThroughputLimitInputStream extends InputStream {
     }
 
 
+    /**
+     * Blocks until the budgets allow some bytes to be transferred, and returns how many, at most <code>len</code>.
+     */
+    private long acquireBudgets(long len) {
+        BandwidthBudget[] budgets = this.budgets;
+        long allowed = len;
+        for (int i = 0; i < budgets.length; i++) {
+            long granted = budgets[i].acquire(allowed, budgetShare);
+            // Give back what the previous budgets granted in excess
+            for (int j = 0; j < i && granted < allowed; j++) {
+                budgets[j].refund(allowed - granted);
+            }
+            allowed = granted;
+        }
+        return allowed;
+    }
+
+    /**
+     * Gives back to the budgets bytes that have been acquired but not transferred.
+     */
+    private void refundBudgets(long len) {
+        if (len > 0) {
+            for (BandwidthBudget budget : budgets) {
+                budget.refund(len);
+            }
+        }
+    }
+
+
+    /**
+     * Blocks until some bytes can be transferred without exceeding the current throughput limit, and returns how many,
+     * at most <code>len</code>. This method and {@link #addTransferredBytes(long)} allow transfers that do not go
+     * through the read methods of this stream, <code>FileChannel#transferTo</code> for instance, to be throttled and
+     * paused the same way.
+     *
+     * @param len the number of bytes that are about to be transferred
+     * @return the number of bytes that can be transferred now, strictly positive if <code>len</code> is
+     */
+    public long getNbAllowedBytes(long len) {
+        long allowed = acquireBudgets(bpsLimit >= 0 ? Math.min(getNbAllowedBytes(), len) : len);
+        nbPendingBudgetBytes = allowed;
+        return allowed;
+    }
+
+    /**
+     * Accounts bytes that have been transferred without being read from this stream, see {@link #getNbAllowedBytes(long)}.
+     *
+     * @param nbTransferred number of bytes that have been transferred
+     */
+    public void addTransferredBytes(long nbTransferred) {
+        if(nbTransferred>0)
+            addToLimitCounter(nbTransferred);
+        refundBudgets(nbPendingBudgetBytes - Math.max(0, nbTransferred));
+        nbPendingBudgetBytes = 0;
+    }
+
+
     ////////////////////////////////
     // InputStream implementation //
     ////////////////////////////////
@@ -209,6 +293,7 @@ public class ThroughputLimitInputStream extends InputStream {
         // Wait until at least 1 byte is available if a limit is set
         if(bpsLimit>=0)
             getNbAllowedBytes();
+        acquireBudgets(1);
 
         // Read the byte from the underlying stream
         int i = in.read();
@@ -216,6 +301,8 @@ public class ThroughputLimitInputStream extends InputStream {
         // Increase read counter by 1
         if(i>0)
             addToLimitCounter(1);
+        if(i<0)
+            refundBudgets(1);
 
         return i;
     }
@@ -231,10 +318,14 @@ public class ThroughputLimitInputStream extends InputStream {
 
         // Wait until at least 1 byte is available if a limit is set and try to read as many bytes are available
         // without exceeding the throughput limit or the number specified
-        if(bpsLimit>=0)
-            nbRead = in.read(bytes, off, Math.min(getNbAllowedBytes(),len));
-        else
-            nbRead = in.read(bytes, off, len);
+        int nbAllowed = (int)acquireBudgets(bpsLimit>=0 ? Math.min(getNbAllowedBytes(),len) : len);
+        nbRead = -1;
+        try {
+            nbRead = in.read(bytes, off, nbAllowed);
+        } finally {
+            // Give back the bytes that have not been read
+            refundBudgets(nbAllowed - Math.max(0, nbRead));
+        }
 
         // Increase read counter by the number of bytes that have actually been read by the underlying stream
         if(nbRead>0)
@@ -245,7 +336,13 @@ public class ThroughputLimitInputStream extends InputStream {
 
     @Override
     public long skip(long l) throws IOException {
-        long nbSkipped = in.skip(bpsLimit>=0?Math.min(getNbAllowedBytes(),l):l);
+        long nbAllowed = acquireBudgets(bpsLimit>=0?Math.min(getNbAllowedBytes(),l):l);
+        long nbSkipped = 0;
+        try {
+            nbSkipped = in.skip(nbAllowed);
+        } finally {
+            refundBudgets(nbAllowed - Math.max(0, nbSkipped));
+        }
 
         // Increase read counter by the number of bytes that have actually been skipped by the underlying stream
         if(nbSkipped>0)
@@ -58,6 +58,7 @@ public enum TcPreference {
 	TABLE_ICON_SCALE(TcPreferences.TABLE_ICON_SCALE),
 	AUTO_SIZE_COLUMNS(TcPreferences.AUTO_SIZE_COLUMNS),
 	USE_SYSTEM_FILE_ICONS(TcPreferences.USE_SYSTEM_FILE_ICONS),
+	FILE_ICONS_CACHE_SIZE(TcPreferences.FILE_ICONS_CACHE_SIZE),
 	SHOW_FOLDERS_FIRST(TcPreferences.SHOW_FOLDERS_FIRST),
 	FOLDERS_ALWAYS_ALPHABETICAL(TcPreferences.FOLDERS_ALWAYS_ALPHABETICAL),
 	SHOW_QUICK_SEARCH_MATCHES_FIRST(TcPreferences.SHOW_QUICK_SEARCH_MATCHES_FIRST),
@@ -72,6 +73,14 @@ public enum TcPreference {
 	WAIT_AFTER_REFRESH(TcPreferences.WAIT_AFTER_REFRESH),
 	PROGRESS_DIALOG_EXPANDED(TcPreferences.PROGRESS_DIALOG_EXPANDED),
 	PROGRESS_DIALOG_CLOSE_WHEN_FINISHED(TcPreferences.PROGRESS_DIALOG_CLOSE_WHEN_FINISHED),
+	PARALLEL_COPY(TcPreferences.PARALLEL_COPY),
+	PARALLEL_COPY_THREADS(TcPreferences.PARALLEL_COPY_THREADS),
+	BANDWIDTH_LIMIT(TcPreferences.BANDWIDTH_LIMIT),
+	PROTOCOL_BANDWIDTH_LIMITS(TcPreferences.PROTOCOL_BANDWIDTH_LIMITS),
+	MAX_CONNECTIONS_PER_REALM(TcPreferences.MAX_CONNECTIONS_PER_REALM),
+	MIN_IDLE_CONNECTIONS_PER_REALM(TcPreferences.MIN_IDLE_CONNECTIONS_PER_REALM),
+	MAX_IDLE_CONNECTIONS_PER_REALM(TcPreferences.MAX_IDLE_CONNECTIONS_PER_REALM),
+	CONNECTION_ACQUIRE_TIMEOUT(TcPreferences.CONNECTION_ACQUIRE_TIMEOUT),
 	THEME_TYPE(TcPreferences.THEME_TYPE),
 	THEME_NAME(TcPreferences.THEME_NAME),
     SYNTAX_THEME_NAME(TcPreferences.SYNTAX_THEME_NAME),
@@ -100,7 +109,8 @@ public enum TcPreference {
 	FIND_FILE_ARCHIVES(TcPreferences.FIND_FILE_ARCHIVES),
 	FIND_FILE_IGNORE_HIDDEN(TcPreferences.FIND_FILE_IGNORE_HIDDEN),
 	FIND_FILE_CASE_SENSITIVE(TcPreferences.FIND_FILE_CASE_SENSITIVE),
-	FIND_FILE_SEARCH_HEX(TcPreferences.FIND_FILE_SEARCH_HEX);
+	FIND_FILE_SEARCH_HEX(TcPreferences.FIND_FILE_SEARCH_HEX),
+	FIND_FILE_MAX_RESULTS(TcPreferences.FIND_FILE_MAX_RESULTS);
 
 
 
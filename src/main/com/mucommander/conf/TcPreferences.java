@@ -240,6 +240,10 @@ public class TcPreferences implements TcPreferencesAPI {
 	public static final String  USE_SYSTEM_FILE_ICONS              = FILE_TABLE_SECTION + '.' + "use_system_file_icons";
 	/** Default system file icons policy. */
 	public static final String  DEFAULT_USE_SYSTEM_FILE_ICONS      = FileIcons.USE_SYSTEM_ICONS_APPLICATIONS;
+	/** Maximum memory used by the cached file icons, in kilobytes. */
+	public static final String  FILE_ICONS_CACHE_SIZE              = FILE_TABLE_SECTION + '.' + "icons_cache_size";
+	/** Default maximum memory used by the cached file icons. */
+	public static final int     DEFAULT_FILE_ICONS_CACHE_SIZE      = 8 * 1024;
 	/** Controls whether folders are displayed first in the FileTable or mixed with regular files. */
 	public static final String  SHOW_FOLDERS_FIRST                 = FILE_TABLE_SECTION + '.' + "show_folders_first";
 	/** Controls whether folders are always sorted alphabetical, doesn't matter which sort is set for the files. */
@@ -349,6 +353,45 @@ public class TcPreferences implements TcPreferencesAPI {
 
 
 
+	// - File transfer variables ---------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing the behavior of file transfer jobs. */
+	static final String FILE_TRANSFER_SECTION                   = "file_transfer";
+	/** Whether copy and move jobs copy regular files concurrently. */
+	public static final String  PARALLEL_COPY                     = FILE_TRANSFER_SECTION + '.' + "parallel_copy";
+	/** Default parallel copy behavior. */
+	public static final boolean DEFAULT_PARALLEL_COPY             = false;
+	/** Maximum number of files copied concurrently by copy and move jobs. */
+	public static final String  PARALLEL_COPY_THREADS             = FILE_TRANSFER_SECTION + '.' + "parallel_copy_threads";
+	/** Default maximum number of files copied concurrently. */
+	public static final int     DEFAULT_PARALLEL_COPY_THREADS     = 4;
+	/** Throughput limit shared by all the transfers from or to remote files, in bytes per second. */
+	public static final String  BANDWIDTH_LIMIT                   = FILE_TRANSFER_SECTION + '.' + "bandwidth_limit";
+	/** Default shared throughput limit, none. */
+	public static final long    DEFAULT_BANDWIDTH_LIMIT           = -1;
+	/** Throughput limits shared by all the transfers from or to each protocol, as <code>protocol:bytes_per_second</code> pairs. */
+	public static final String  PROTOCOL_BANDWIDTH_LIMITS         = FILE_TRANSFER_SECTION + '.' + "protocol_bandwidth_limits";
+	/** Separator used to separate the protocol throughput limits. */
+	public static final String  PROTOCOL_BANDWIDTH_LIMITS_SEPARATOR = ",";
+	/** Maximum number of simultaneous connections to a server with the same credentials. */
+	public static final String  MAX_CONNECTIONS_PER_REALM         = FILE_TRANSFER_SECTION + '.' + "max_connections_per_realm";
+	/** Default maximum number of simultaneous connections to a server. */
+	public static final int     DEFAULT_MAX_CONNECTIONS_PER_REALM = 4;
+	/** Number of idle connections to a server that are kept open when they have been inactive for too long. */
+	public static final String  MIN_IDLE_CONNECTIONS_PER_REALM    = FILE_TRANSFER_SECTION + '.' + "min_idle_connections_per_realm";
+	/** Default number of idle connections to a server kept open, none. */
+	public static final int     DEFAULT_MIN_IDLE_CONNECTIONS_PER_REALM = 0;
+	/** Maximum number of idle connections to a server, the extra ones are closed. */
+	public static final String  MAX_IDLE_CONNECTIONS_PER_REALM    = FILE_TRANSFER_SECTION + '.' + "max_idle_connections_per_realm";
+	/** Default maximum number of idle connections to a server. */
+	public static final int     DEFAULT_MAX_IDLE_CONNECTIONS_PER_REALM = 4;
+	/** Maximum time to wait for a connection to a server to be released, in milliseconds. */
+	public static final String  CONNECTION_ACQUIRE_TIMEOUT        = FILE_TRANSFER_SECTION + '.' + "connection_acquire_timeout";
+	/** Default maximum time to wait for a connection to be released. */
+	public static final long    DEFAULT_CONNECTION_ACQUIRE_TIMEOUT = 60000;
+
+
+
 	// - Variables used for themes -------------------------------------------
 	// -----------------------------------------------------------------------
 	/** Section controlling which theme should be applied to trolCommander. */
@@ -431,6 +474,10 @@ public class TcPreferences implements TcPreferencesAPI {
 	static final String FIND_FILE_IGNORE_HIDDEN            = FIND_FILE_SECTION + ".ignore_hidden";
 	static final String FIND_FILE_CASE_SENSITIVE           = FIND_FILE_SECTION + ".case_sensitive";
 	static final String FIND_FILE_SEARCH_HEX               = FIND_FILE_SECTION + ".search_hex";
+	/** Maximum number of files found by a search, 0 for no limit. */
+	static final String FIND_FILE_MAX_RESULTS              = FIND_FILE_SECTION + ".max_results";
+	/** Default maximum number of files found by a search. */
+	public static final int DEFAULT_FIND_FILE_MAX_RESULTS  = 0;
 	
 	private static final String ROOT_ELEMENT = "preferences";
 
@@ -21,7 +21,9 @@ package com.mucommander.core;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 import org.slf4j.Logger;
@@ -41,19 +43,22 @@ import com.mucommander.ui.main.FolderPanel;
 
 
 /**
- * This file monitors changes in the current folder of a FolderPanel, checking periodically if the current folder's
- * date has changed. If a change has been detected, the FolderPanel will be asked to refresh its current folder.
+ * This file monitors changes in the current folder of a FolderPanel. Local folders are watched by
+ * {@link LocalFolderWatcher} which notifies changes as they happen; for other folders (or when the platform has no
+ * native change notification), the monitor falls back to checking periodically if the current folder's date has
+ * changed. If a change has been detected, the FolderPanel will be asked to refresh its current folder.
  * 
  * <p>If the MainFrame which contains the monitored FolderPanel becomes inactive (lies in the background), monitoring
  * on will be not happen until the MainFrame becomes active again.
  *
  * <p>Implementation note: the monitoring is done in one single thread for all folders, each folder being monitored
- * one after another. Current folder refreshes are performed in a separate thread.
+ * one after another. The thread sleeps until notified when no folder needs to be polled.
+ * Current folder refreshes are performed in a separate thread.
  *
  * @author Maxence Bernard
  * @see <a href="http://trac.mucommander.com/wiki/FolderAutoRefresh">FolderAutoRefresh wiki entry</a>
  */
-public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener {
+public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener, LocalFolderWatcher.Listener {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FolderChangeMonitor.class);
 	
     /** Folder panel we are monitoring */
@@ -83,6 +88,15 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Number of checks in current folder */
     private int nbSamples = 0;
 
+    /** True when the current folder is watched by {@link LocalFolderWatcher} rather than polled */
+    private volatile boolean watched;
+
+    /** Changes notified by {@link LocalFolderWatcher} that have not been applied yet, null if there are none */
+    private LocalFolderWatcher.Changes pendingChanges;
+
+    /** Time at which the last folder change started */
+    private long locationChangingTime;
+
     /**
      * If not null then refresh folder that contains this files
      */
@@ -94,6 +108,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Thread in which the actual monitoring is performed */
     private static Thread monitorThread;
 
+    /** Lock the monitor thread waits on between two checks */
+    private static final Object MONITOR_LOCK = new Object();
+
     /** FolderChangeMonitor instances */
     private static final List<FolderChangeMonitor> instances;
 
@@ -108,6 +125,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** If folder change check took an average of N milliseconds, thread will wait at least N*WAIT_MULTIPLIER before next check */
     private final static int WAIT_MULTIPLIER = 50;
 
+    /** Above this number of changed files, the folder is listed again rather than updated file by file */
+    private final static int MAX_INCREMENTAL_CHANGES = 1000;
+
     /** Granularity of the thread check (number of milliseconds to sleep before next loop) */
     private final static int TICK = 300;
 
@@ -145,6 +165,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
         this.currentFolder = folderPanel.getCurrentFolder();
         this.currentFolderDate = currentFolder.getLastModifiedDate();
+        updateWatch(null);
 
         // Folder contents is up-to-date let's wait before checking it for changes
         this.lastCheckTimestamp = System.currentTimeMillis();
@@ -159,20 +180,25 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
             monitorThread = new Thread(this, getClass().getName());
             monitorThread.setDaemon(true);
             monitorThread.start();
+        } else {
+            wakeUp();
         }
     }
 
 
     public void run() {
-        // TODO: it would be more efficient to use a wait/notify scheme rather than sleeping. 
-        // It would also allow folders to be checked immediately upon certain conditions such as a window becoming activated.
-
         int needToClearRefreshQueueCounter = 0;
         while (monitorThread != null) {
 			
-            // Sleep for a while
+            // Sleep for a while, or until woken up if there is nothing to poll
             try {
-                Thread.sleep(TICK);
+                synchronized (MONITOR_LOCK) {
+                    if (needsTick()) {
+                        MONITOR_LOCK.wait(TICK);
+                    } else {
+                        MONITOR_LOCK.wait();
+                    }
+                }
             } catch(InterruptedException ignore) {}
 			
             // Loop on instances
@@ -196,6 +222,33 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     }
 
 
+    /**
+     * Returns <code>true</code> if the monitor thread has to wake up periodically, i.e. if some folders are polled
+     * or if some changes could not be applied yet.
+     */
+    private static boolean needsTick() {
+        if (!forceRefreshFilePath.isEmpty()) {
+            return true;
+        }
+        synchronized (instances) {
+            for (FolderChangeMonitor instance : instances) {
+                if (!instance.watched || instance.hasPendingChanges()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wakes up the monitor thread so that folders are checked immediately.
+     */
+    private static void wakeUp() {
+        synchronized (MONITOR_LOCK) {
+            MONITOR_LOCK.notifyAll();
+        }
+    }
+
     private void checkForMonitor(FolderChangeMonitor monitor) {
         // Check for changes in current folder and refresh it only if :
         // - MainFrame is in the foreground
@@ -209,6 +262,16 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
             monitor.waitBeforeCheckTime = checkPeriod;
             return;
         }
+        // Changes notified by the watcher are applied as soon as possible, including the last ones of a folder
+        // that is polled because it can't be watched anymore
+        monitor.applyPendingChanges();
+        // Watched folders are refreshed as soon as changes have been notified, no need to check their date
+        if (monitor.watched) {
+            if (monitor.checkForcedRefresh()) {
+                monitor.folderPanel.tryRefreshCurrentFolder();
+            }
+            return;
+        }
         // By checking FolderPanel.getLastFolderChangeTime(), we ensure that we don't check right after
         // the folder has been refreshed.
         if (System.currentTimeMillis() - Math.max(monitor.lastCheckTimestamp, monitor.folderPanel.getLastFolderChangeTime()) > monitor.waitBeforeCheckTime) {
@@ -237,6 +300,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      */
     public void stop() {
         monitorThread = null;
+        wakeUp();
     }
 
 
@@ -253,6 +317,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         // Check folder for changes immediately as setPaused(false) is often called after a FileJob
         if (!paused) {
             this.waitBeforeCheckTime = 0;
+            wakeUp();
         }
     }
 	
@@ -264,12 +329,88 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      * @param folder the new current folder
      */
     private void updateFolderInfo(AbstractFile folder) {
+        AbstractFile previousFolder = this.currentFolder;
         this.currentFolder = folder;
         this.currentFolderDate = currentFolder.getLastModifiedDate();
 
         // Reset time average
         totalCheckTime = 0;
         nbSamples = 0;
+
+        updateWatch(previousFolder);
+    }
+
+    /**
+     * Watches the current folder with {@link LocalFolderWatcher} if possible, and discards the pending changes that
+     * have been notified before the folder was listed.
+     *
+     * @param previousFolder the previously monitored folder, null if there was none
+     */
+    private void updateWatch(AbstractFile previousFolder) {
+        synchronized (this) {
+            if (pendingChanges != null && (previousFolder == null || !previousFolder.equals(currentFolder) ||
+                    pendingChanges.getLastEventTime() < locationChangingTime)) {
+                pendingChanges = null;
+            }
+        }
+
+        LocalFolderWatcher watcher = LocalFolderWatcher.getInstance();
+        if (watcher == null || checkPeriod < 0) {
+            return;
+        }
+        if (watched && currentFolder.equals(previousFolder)) {
+            // Simple refresh, the folder is still being watched
+            return;
+        }
+        watcher.unregister(this);
+        watched = watcher.register(currentFolder, this);
+        LOGGER.debug(currentFolder + (watched ? " is watched" : " is polled"));
+        wakeUp();
+    }
+
+    /**
+     * Returns <code>true</code> if {@link LocalFolderWatcher} has notified changes that have not been applied yet.
+     *
+     * @return <code>true</code> if there are changes that have not been applied yet
+     */
+    private synchronized boolean hasPendingChanges() {
+        return pendingChanges != null;
+    }
+
+    /**
+     * Updates the current folder if {@link LocalFolderWatcher} has notified changes in it: the changed files are
+     * patched into the table, unless there are too many of them or some events have been lost, in which case the
+     * whole folder is refreshed.
+     */
+    private void applyPendingChanges() {
+        LocalFolderWatcher.Changes changes;
+        synchronized (this) {
+            changes = pendingChanges;
+            pendingChanges = null;
+        }
+        if (changes == null) {
+            return;
+        }
+        int nbChanges = changes.getCreated().size() + changes.getDeleted().size() + changes.getModified().size();
+        if (!changes.isOverflow() && nbChanges <= MAX_INCREMENTAL_CHANGES) {
+            LOGGER.debug(this+" ("+currentFolder.getName()+") Notified of changes in current folder, updating table: "+changes);
+            Set<String> changedNames = new HashSet<>(changes.getCreated());
+            changedNames.addAll(changes.getModified());
+            if (folderPanel.getLocationManager().updateCurrentFolder(changes.getDeleted(), changedNames)) {
+                return;
+            }
+        }
+
+        LOGGER.debug(this+" ("+currentFolder.getName()+") Notified of changes in current folder, refreshing table: "+changes);
+        // The folder change thread may already be running (e.g. started by the user), keep the changes for later
+        if (folderPanel.tryRefreshCurrentFolder() == null) {
+            synchronized (this) {
+                if (pendingChanges != null) {
+                    changes.merge(pendingChanges);
+                }
+                pendingChanges = changes;
+            }
+        }
     }
 	
 	
@@ -305,29 +446,49 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
             result = true;
         }
 
-        if (!forceRefreshFilePath.isEmpty()) {
-            synchronized (forceRefreshFilePath) {
-                String folderPath = currentFolder.getAbsolutePath();
-                for (String path : forceRefreshFilePath) {
-                    if (path.startsWith(folderPath)) {
-                        forceRefreshFilePath.remove(path);
-                        folderPanel.tryRefreshCurrentFolder();
-                        result = true;
-                        break;
-                    }
-                }
-            }
+        if (checkForcedRefresh()) {
+            folderPanel.tryRefreshCurrentFolder();
+            result = true;
         }
 		
         return result;
     }
 
+    /**
+     * Returns <code>true</code> if the current folder must be refreshed because of {@link #addFileToRefresh(String)}.
+     */
+    private boolean checkForcedRefresh() {
+        return consumeFileToRefresh(currentFolder.getAbsolutePath());
+    }
+
+    /**
+     * Removes from the files to refresh the first one that is located in the given folder.
+     *
+     * @param folderPath path of a folder
+     * @return <code>true</code> if a file to refresh was located in the folder
+     */
+    static boolean consumeFileToRefresh(String folderPath) {
+        if (forceRefreshFilePath.isEmpty()) {
+            return false;
+        }
+        synchronized (forceRefreshFilePath) {
+            for (String path : forceRefreshFilePath) {
+                if (path.startsWith(folderPath)) {
+                    forceRefreshFilePath.remove(path);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
 
     /////////////////////////////////////
     // LocationListener implementation //
     /////////////////////////////////////
 
     public void locationChanging(LocationEvent locationEvent) {
+        locationChangingTime = System.currentTimeMillis();
         folderChanging = true;
     }
 
@@ -351,7 +512,12 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     // WindowListener implementation //
     ///////////////////////////////////
 
-    public void windowActivated(WindowEvent e) {}
+    public void windowActivated(WindowEvent e) {
+        // Apply the changes that have been notified while the window was in the background
+        if (watched && hasPendingChanges()) {
+            wakeUp();
+        }
+    }
 
     public void windowDeactivated(WindowEvent e) {}
 
@@ -367,6 +533,11 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         // Remove the MainFrame from the list of monitored instances
         instances.remove(this);
         LOGGER.debug("nbInstances="+instances.size());
+
+        LocalFolderWatcher watcher = LocalFolderWatcher.getInstance();
+        if (watcher != null) {
+            watcher.unregister(this);
+        }
     }
 
     /**
@@ -377,6 +548,28 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         synchronized (forceRefreshFilePath) {
             forceRefreshFilePath.add(path);
         }
+        wakeUp();
+    }
+
+
+    ////////////////////////////////////////////////
+    // LocalFolderWatcher.Listener implementation //
+    ////////////////////////////////////////////////
+
+    public void folderChanged(LocalFolderWatcher.Changes changes) {
+        // The folder is polled from now on, until the next folder change registers a new watch
+        if (changes.isWatchLost()) {
+            watched = false;
+        }
+        synchronized (this) {
+            if (pendingChanges == null) {
+                // The same instance is delivered to all the monitors watching the folder, keep a private copy
+                pendingChanges = changes.copy();
+            } else {
+                pendingChanges.merge(changes);
+            }
+        }
+        wakeUp();
     }
 	
 }
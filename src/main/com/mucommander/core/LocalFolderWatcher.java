@@ -0,0 +1,475 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+
+
+/**
+ * Delivers change notifications for local folders using the {@link WatchService} of the default file system, as an
+ * alternative to polling the folder's date.
+ *
+ * <p>Events are coalesced per folder: a folder's listeners are notified once no new event has been received for
+ * {@link #COALESCE_DELAY} milliseconds, or at the latest {@link #MAX_COALESCE_DELAY} milliseconds after the first
+ * pending event, so that a burst of changes (a copy job, a build, an archive extraction) results in a single
+ * notification carrying the names of all created, deleted and modified children.
+ *
+ * <p>Folders that cannot be watched (non-local files, archives, or platforms where the JRE only provides a polling
+ * <code>WatchService</code>) are rejected by {@link #register(AbstractFile, Listener)}; {@link FolderChangeMonitor}
+ * keeps checking those by polling.
+ *
+ * <p>Implementation note: a single daemon thread dispatches the events of all watched folders, listeners are
+ * called from this thread.
+ *
+ * @author Oleg Trifonov
+ */
+public class LocalFolderWatcher implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalFolderWatcher.class);
+
+    /** Number of milliseconds without event after which pending changes are delivered */
+    private final static long COALESCE_DELAY = 200;
+
+    /** Maximum number of milliseconds pending changes are held back while events keep coming */
+    private final static long MAX_COALESCE_DELAY = 1000;
+
+    /** Shared instance, created on first use */
+    private static LocalFolderWatcher instance;
+
+    /** <code>true</code> once the shared instance creation has been attempted */
+    private static boolean initialized;
+
+    private final WatchService watchService;
+
+    /** Watched folders, by path */
+    private final Map<Path, WatchedFolder> foldersByPath = new HashMap<>();
+
+    /** Watched folders, by watch key */
+    private final Map<WatchKey, WatchedFolder> foldersByKey = new HashMap<>();
+
+    /** Folders that can't be watched anymore and whose last changes have not been delivered yet */
+    private final List<WatchedFolder> lostFolders = new ArrayList<>();
+
+
+    /**
+     * Receives the coalesced changes of a watched folder.
+     */
+    public interface Listener {
+        /**
+         * Called from the watcher thread when changes have been detected in a watched folder. If the folder
+         * can't be watched anymore (see {@link Changes#isWatchLost()}), this is the last notification the listener
+         * receives for it.
+         *
+         * @param changes the changes that occurred since the last notification
+         */
+        void folderChanged(Changes changes);
+    }
+
+
+    private LocalFolderWatcher(WatchService watchService) {
+        this.watchService = watchService;
+
+        Thread thread = new Thread(this, getClass().getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the shared watcher instance, <code>null</code> if native change notification is not available
+     * on this platform.
+     *
+     * @return the shared watcher instance, <code>null</code> if not available
+     */
+    public static synchronized LocalFolderWatcher getInstance() {
+        if (!initialized) {
+            initialized = true;
+            try {
+                WatchService watchService = FileSystems.getDefault().newWatchService();
+                // The JRE falls back to a sun.nio.fs.PollingWatchService where the OS has no notification API
+                // (e.g. Mac OS X); it polls less often than FolderChangeMonitor does, so there's no point in using it.
+                if (watchService.getClass().getName().endsWith("PollingWatchService")) {
+                    LOGGER.info("No native folder change notification available, falling back to polling");
+                    watchService.close();
+                } else {
+                    instance = new LocalFolderWatcher(watchService);
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.info("Could not create folder watch service, falling back to polling", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns <code>true</code> if the given folder is a plain local directory that can be watched.
+     *
+     * @param folder the folder to test
+     * @return <code>true</code> if the given folder can be watched
+     */
+    public static boolean isWatchable(AbstractFile folder) {
+        return folder != null && !folder.isArchive() && folder.getTopAncestor() instanceof LocalFile && folder.isDirectory();
+    }
+
+    /**
+     * Starts delivering changes of the given folder to the listener.
+     *
+     * @param folder the folder to watch
+     * @param listener the listener to notify
+     * @return <code>true</code> if the folder is watched, <code>false</code> if it can't be watched and needs to be polled
+     */
+    public synchronized boolean register(AbstractFile folder, Listener listener) {
+        if (!isWatchable(folder)) {
+            return false;
+        }
+        Path path;
+        try {
+            path = ((File)folder.getTopAncestor().getUnderlyingFileObject()).toPath();
+        } catch (InvalidPathException e) {
+            return false;
+        }
+        WatchedFolder watchedFolder = foldersByPath.get(path);
+        if (watchedFolder == null) {
+            WatchKey key;
+            try {
+                key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+                LOGGER.debug("Could not watch " + path + ", falling back to polling", e);
+                return false;
+            }
+            watchedFolder = new WatchedFolder(path, key);
+            foldersByPath.put(path, watchedFolder);
+            foldersByKey.put(key, watchedFolder);
+        }
+        watchedFolder.listeners.add(listener);
+        return true;
+    }
+
+    /**
+     * Stops delivering changes to the given listener. The watch is cancelled once a folder has no more listener.
+     *
+     * @param listener the listener to remove
+     */
+    public synchronized void unregister(Listener listener) {
+        for (WatchedFolder watchedFolder : lostFolders) {
+            watchedFolder.listeners.remove(listener);
+        }
+        Iterator<WatchedFolder> iterator = foldersByPath.values().iterator();
+        while (iterator.hasNext()) {
+            WatchedFolder watchedFolder = iterator.next();
+            if (watchedFolder.listeners.remove(listener) && watchedFolder.listeners.isEmpty()) {
+                watchedFolder.key.cancel();
+                foldersByKey.remove(watchedFolder.key);
+                iterator.remove();
+            }
+        }
+    }
+
+
+    public void run() {
+        while (true) {
+            try {
+                WatchKey key;
+                long timeout = getNextDeliveryDelay();
+                if (timeout < 0) {
+                    key = watchService.take();
+                } else if (timeout > 0) {
+                    key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+                } else {
+                    key = watchService.poll();
+                }
+                // Drain everything that is already queued before delivering
+                while (key != null) {
+                    processKey(key);
+                    key = watchService.poll();
+                }
+                deliverPendingChanges();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (Throwable t) {
+                LOGGER.error("Error while dispatching folder changes", t);
+            }
+        }
+    }
+
+    /**
+     * Records the events of the given key as pending changes of its folder.
+     */
+    private synchronized void processKey(WatchKey key) {
+        WatchedFolder watchedFolder = foldersByKey.get(key);
+        List<WatchEvent<?>> events = key.pollEvents();
+        if (watchedFolder == null) {
+            // Unregistered in the meantime
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (watchedFolder.pending == null) {
+            watchedFolder.pending = new Changes(watchedFolder.path);
+            watchedFolder.firstEventTime = now;
+        }
+        watchedFolder.pending.lastEventTime = now;
+        for (WatchEvent<?> event : events) {
+            watchedFolder.pending.addEvent(event);
+        }
+        // An invalid key means the folder itself has gone, force a full refresh and deliver it right away
+        if (!key.reset()) {
+            watchedFolder.pending.overflow = true;
+            watchedFolder.pending.watchLost = true;
+            foldersByKey.remove(key);
+            foldersByPath.remove(watchedFolder.path);
+            lostFolders.add(watchedFolder);
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds before the next pending changes are due, <code>-1</code> if there is
+     * nothing pending.
+     */
+    private synchronized long getNextDeliveryDelay() {
+        if (!lostFolders.isEmpty()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long delay = -1;
+        for (WatchedFolder watchedFolder : foldersByPath.values()) {
+            if (watchedFolder.pending != null) {
+                long folderDelay = Math.max(0, watchedFolder.getDeliveryTime() - now);
+                delay = delay < 0 ? folderDelay : Math.min(delay, folderDelay);
+            }
+        }
+        return delay;
+    }
+
+    /**
+     * Notifies the listeners of the folders whose pending changes are due.
+     */
+    private void deliverPendingChanges() {
+        Map<Changes, List<Listener>> due = new HashMap<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (WatchedFolder watchedFolder : foldersByPath.values()) {
+                if (watchedFolder.pending != null && watchedFolder.getDeliveryTime() <= now) {
+                    due.put(watchedFolder.pending, new ArrayList<>(watchedFolder.listeners));
+                    watchedFolder.pending = null;
+                }
+            }
+            for (WatchedFolder watchedFolder : lostFolders) {
+                due.put(watchedFolder.pending, new ArrayList<>(watchedFolder.listeners));
+            }
+            lostFolders.clear();
+        }
+        // Listeners are called outside the lock so that they can (un)register folders
+        for (Map.Entry<Changes, List<Listener>> entry : due.entrySet()) {
+            for (Listener listener : entry.getValue()) {
+                listener.folderChanged(entry.getKey());
+            }
+        }
+    }
+
+
+    /**
+     * A watched folder and its listeners.
+     */
+    private static class WatchedFolder {
+        private final Path path;
+        private final WatchKey key;
+        private final List<Listener> listeners = new ArrayList<>();
+        private Changes pending;
+        private long firstEventTime;
+
+        private WatchedFolder(Path path, WatchKey key) {
+            this.path = path;
+            this.key = key;
+        }
+
+        private long getDeliveryTime() {
+            return Math.min(pending.lastEventTime + COALESCE_DELAY, firstEventTime + MAX_COALESCE_DELAY);
+        }
+    }
+
+
+    /**
+     * The changes that occurred in a watched folder, given as the names of the children that were created, deleted
+     * or modified. A name can only appear in one of the sets: a child that has been created then deleted before the
+     * changes were delivered appears as deleted.
+     */
+    public static class Changes {
+        private final Path folder;
+        private final Set<String> created = new HashSet<>();
+        private final Set<String> deleted = new HashSet<>();
+        private final Set<String> modified = new HashSet<>();
+        private boolean overflow;
+        private boolean watchLost;
+        private long lastEventTime;
+
+        private Changes(Path folder) {
+            this.folder = folder;
+        }
+
+        private void addEvent(WatchEvent<?> event) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                return;
+            }
+            String name = event.context().toString();
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                deleted.remove(name);
+                modified.remove(name);
+                created.add(name);
+            } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                created.remove(name);
+                modified.remove(name);
+                deleted.add(name);
+            } else if (!created.contains(name)) {
+                modified.add(name);
+            }
+        }
+
+        /**
+         * Returns a copy of these changes that can be modified independently.
+         *
+         * @return a copy of these changes
+         */
+        public Changes copy() {
+            Changes copy = new Changes(folder);
+            copy.merge(this);
+            return copy;
+        }
+
+        /**
+         * Merges the given changes into these ones, the given changes being the most recent.
+         *
+         * @param changes the changes to merge
+         */
+        public void merge(Changes changes) {
+            for (String name : changes.deleted) {
+                created.remove(name);
+                modified.remove(name);
+                deleted.add(name);
+            }
+            for (String name : changes.created) {
+                deleted.remove(name);
+                modified.remove(name);
+                created.add(name);
+            }
+            for (String name : changes.modified) {
+                if (!created.contains(name)) {
+                    modified.add(name);
+                }
+            }
+            overflow |= changes.overflow;
+            watchLost |= changes.watchLost;
+            lastEventTime = Math.max(lastEventTime, changes.lastEventTime);
+        }
+
+        /**
+         * Returns the watched folder's path.
+         *
+         * @return the watched folder's path
+         */
+        public Path getFolder() {
+            return folder;
+        }
+
+        /**
+         * Returns the names of the children that have been created.
+         *
+         * @return the names of the children that have been created
+         */
+        public Set<String> getCreated() {
+            return Collections.unmodifiableSet(created);
+        }
+
+        /**
+         * Returns the names of the children that have been deleted.
+         *
+         * @return the names of the children that have been deleted
+         */
+        public Set<String> getDeleted() {
+            return Collections.unmodifiableSet(deleted);
+        }
+
+        /**
+         * Returns the names of the children that have been modified.
+         *
+         * @return the names of the children that have been modified
+         */
+        public Set<String> getModified() {
+            return Collections.unmodifiableSet(modified);
+        }
+
+        /**
+         * Returns <code>true</code> if some events have been lost or the folder itself has changed, in which case
+         * the whole folder must be listed again.
+         *
+         * @return <code>true</code> if the whole folder must be listed again
+         */
+        public boolean isOverflow() {
+            return overflow;
+        }
+
+        /**
+         * Returns <code>true</code> if the folder can't be watched anymore, because it has been deleted for instance.
+         * Its listeners are not notified of its changes anymore and have to poll it.
+         *
+         * @return <code>true</code> if the folder is not watched anymore
+         */
+        public boolean isWatchLost() {
+            return watchLost;
+        }
+
+        /**
+         * Returns the time at which the last event of these changes has been received.
+         *
+         * @return the time at which the last event of these changes has been received
+         */
+        public long getLastEventTime() {
+            return lastEventTime;
+        }
+
+        @Override
+        public String toString() {
+            return folder + " created=" + created + " deleted=" + deleted + " modified=" + modified + " overflow=" + overflow + " watchLost=" + watchLost;
+        }
+    }
+}
@@ -59,6 +59,12 @@ public abstract class AbstractCopyJob extends TransferFileJob {
     /** True when an archive is being optimized */
     boolean isOptimizingArchive;
 
+    /** If true, regular files are copied concurrently when possible, see {@link ParallelCopyEngine} */
+    private boolean parallelCopyEnabled;
+
+    /** Copies regular files concurrently, <code>null</code> if they are copied by the job thread */
+    ParallelCopyEngine parallelCopyEngine;
+
 
     /**
      * Creates a new <code>AbstractCopyJob</code>.
@@ -79,6 +85,104 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         this.defaultFileExistsAction = fileExistsAction;
     }
 
+    /**
+     * Specifies whether regular files should be copied concurrently by a pool of worker threads, when the source and
+     * destination allow it. Disabled by default, this must be called before the job is started.
+     *
+     * <p>When enabled, {@link #processRegularFile(AbstractFile, AbstractFile)} returns before the file has been transferred.
+     *
+     * @param parallelCopyEnabled true to copy regular files concurrently
+     */
+    public void setParallelCopyEnabled(boolean parallelCopyEnabled) {
+        this.parallelCopyEnabled = parallelCopyEnabled;
+    }
+
+    @Override
+    AbstractFile getBaseDestinationFolder() {
+        return baseDestFolder;
+    }
+
+    /**
+     * Transfers the given regular file to the destination file with {@link #transferRegularFile(AbstractFile, AbstractFile, boolean)},
+     * or has it transferred by a worker with {@link #transferRegularFileInWorker(AbstractFile, AbstractFile, boolean)}
+     * if files are copied concurrently. In the latter case, this method returns before the file has been transferred
+     * and errors are reported later on by the job thread.
+     *
+     * @param file the file to transfer
+     * @param destFile the destination file
+     * @return <code>true</code> if the file was transferred or submitted to a worker
+     */
+    boolean processRegularFile(AbstractFile file, AbstractFile destFile) {
+        if (parallelCopyEngine != null) {
+            return parallelCopyEngine.submit(file, destFile, append);
+        }
+        return transferRegularFile(file, destFile, append);
+    }
+
+    /**
+     * Transfers the given regular file to the destination file on the job thread, reporting errors to the user.
+     * This implementation copies the file with {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)}.
+     *
+     * @param file the file to transfer
+     * @param destFile the destination file
+     * @param append true to resume the copy of the file
+     * @return <code>true</code> if the file was transferred
+     */
+    boolean transferRegularFile(AbstractFile file, AbstractFile destFile, boolean append) {
+        return tryCopyFile(file, destFile, append, errorDialogTitle);
+    }
+
+    /**
+     * Transfers the given regular file to the destination file on a worker thread, without any user interaction.
+     * This implementation copies the file with {@link #copyFileInWorker(AbstractFile, AbstractFile, boolean)}.
+     *
+     * @param file the file to transfer
+     * @param destFile the destination file
+     * @param append true to resume the copy of the file
+     * @throws IOException if the file couldn't be transferred, it is then transferred again by the job thread
+     */
+    void transferRegularFileInWorker(AbstractFile file, AbstractFile destFile, boolean append) throws IOException {
+        copyFileInWorker(file, destFile, append);
+    }
+
+    /**
+     * Waits until the files submitted to workers have been transferred, reporting errors to the user.
+     *
+     * @return <code>true</code> if all the files submitted since the last call have been transferred
+     */
+    boolean waitForParallelCopies() {
+        return parallelCopyEngine == null || parallelCopyEngine.waitForCompletion();
+    }
+
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        if (parallelCopyEnabled) {
+            parallelCopyEngine = ParallelCopyEngine.create(this, getBaseSourceFolder(), baseDestFolder);
+            if (parallelCopyEngine != null) {
+                // The job thread can copy a file while the workers do
+                setNbConcurrentTransfers(parallelCopyEngine.getNbThreads() + 1);
+            }
+        }
+    }
+
+    @Override
+    protected void waitForPendingFiles() {
+        super.waitForPendingFiles();
+
+        waitForParallelCopies();
+    }
+
+    @Override
+    protected void jobStopped() {
+        if (parallelCopyEngine != null) {
+            parallelCopyEngine.shutdown();
+        }
+
+        super.jobStopped();
+    }
+
     /**
      * Creates a destination file given a destination folder and a new file name.
      * @param destFolder a destination folder
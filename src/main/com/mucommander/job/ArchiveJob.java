@@ -152,6 +152,11 @@ public class ArchiveJob extends TransferFileJob {
         } while(true);
     }
 
+    @Override
+    AbstractFile getBaseDestinationFolder() {
+        return destFile;
+    }
+
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
         // This job modifies the folder where the archive is
@@ -0,0 +1,166 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.io.BandwidthBudget;
+import com.mucommander.conf.TcConfigurations;
+import com.mucommander.conf.TcPreference;
+import com.mucommander.conf.TcPreferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Holds the {@link BandwidthBudget}s shared by all the transfer jobs of the application: one for all the transfers
+ * from or to remote files, and one for each remote protocol. A transfer draws from the network budget and from the
+ * budgets of the protocols of its source and destination, so that jobs running at the same time share the limits
+ * evenly instead of adding up their own limits.
+ *
+ * <p>The limits are stored in the preferences and can be changed at any time, ongoing transfers take the new limits
+ * into account immediately.
+ *
+ * @author Oleg Trifonov
+ */
+public final class BandwidthManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BandwidthManager.class);
+
+    /** Separator between the protocol and the limit of a protocol budget in the preferences */
+    private static final char PROTOCOL_LIMIT_SEPARATOR = ':';
+
+    /** Budget shared by all the transfers from or to remote files */
+    private static BandwidthBudget networkBudget;
+
+    /** Budgets shared by the transfers from or to each protocol */
+    private static final Map<String, BandwidthBudget> protocolBudgets = new TreeMap<>();
+
+    private BandwidthManager() {
+    }
+
+    /**
+     * Returns the budget shared by all the transfers from or to remote files.
+     *
+     * @return the budget shared by all the network transfers
+     */
+    public static synchronized BandwidthBudget getNetworkBudget() {
+        if (networkBudget == null) {
+            loadLimits();
+        }
+        return networkBudget;
+    }
+
+    /**
+     * Returns the budget shared by all the transfers from or to the given protocol.
+     *
+     * @param protocol a protocol, see {@link FileProtocols}
+     * @return the budget shared by the transfers of this protocol
+     */
+    public static synchronized BandwidthBudget getProtocolBudget(String protocol) {
+        if (networkBudget == null) {
+            loadLimits();
+        }
+        return protocolBudgets.computeIfAbsent(protocol, p -> new BandwidthBudget(p, -1));
+    }
+
+    /**
+     * Returns the budgets a transfer from the given source to the given destination must draw from. Transfers between
+     * local files are not limited.
+     *
+     * @param source the source file or folder, may be <code>null</code>
+     * @param destination the destination file or folder, may be <code>null</code>
+     * @return the budgets to draw from, an empty array if there is none
+     */
+    public static BandwidthBudget[] getBudgets(AbstractFile source, AbstractFile destination) {
+        String sourceProtocol = getRemoteProtocol(source);
+        String destProtocol = getRemoteProtocol(destination);
+        List<BandwidthBudget> budgets = new ArrayList<>(3);
+        if (sourceProtocol != null) {
+            budgets.add(getProtocolBudget(sourceProtocol));
+        }
+        if (destProtocol != null && !destProtocol.equals(sourceProtocol)) {
+            budgets.add(getProtocolBudget(destProtocol));
+        }
+        if (!budgets.isEmpty()) {
+            budgets.add(getNetworkBudget());
+        }
+        return budgets.toArray(new BandwidthBudget[budgets.size()]);
+    }
+
+    /**
+     * Returns the protocol of the given file if it's a remote one, <code>null</code> otherwise.
+     */
+    private static String getRemoteProtocol(AbstractFile file) {
+        if (file == null) {
+            return null;
+        }
+        String protocol = file.getURL().getScheme();
+        return FileProtocols.FILE.equals(protocol) ? null : protocol;
+    }
+
+    /**
+     * Changes the limit of a budget and stores it in the preferences.
+     *
+     * @param budget a budget returned by this class
+     * @param bytesPerSecond the new limit in bytes per second, 0 or -1 to remove the limit
+     */
+    public static synchronized void setThroughputLimit(BandwidthBudget budget, long bytesPerSecond) {
+        budget.setThroughputLimit(bytesPerSecond);
+        if (budget == networkBudget) {
+            TcConfigurations.getPreferences().setVariable(TcPreference.BANDWIDTH_LIMIT, budget.getThroughputLimit());
+            return;
+        }
+        List<String> limits = new ArrayList<>();
+        for (BandwidthBudget protocolBudget : protocolBudgets.values()) {
+            if (protocolBudget.getThroughputLimit() > 0) {
+                limits.add(protocolBudget.getName() + PROTOCOL_LIMIT_SEPARATOR + protocolBudget.getThroughputLimit());
+            }
+        }
+        TcConfigurations.getPreferences().setVariable(TcPreference.PROTOCOL_BANDWIDTH_LIMITS, limits,
+                TcPreferences.PROTOCOL_BANDWIDTH_LIMITS_SEPARATOR);
+    }
+
+    /**
+     * Creates the budgets with the limits stored in the preferences.
+     */
+    private static void loadLimits() {
+        networkBudget = new BandwidthBudget("network", TcConfigurations.getPreferences().getVariable(
+                TcPreference.BANDWIDTH_LIMIT, TcPreferences.DEFAULT_BANDWIDTH_LIMIT));
+        List<String> limits = TcConfigurations.getPreferences().getListVariable(TcPreference.PROTOCOL_BANDWIDTH_LIMITS,
+                TcPreferences.PROTOCOL_BANDWIDTH_LIMITS_SEPARATOR);
+        if (limits == null) {
+            return;
+        }
+        for (String limit : limits) {
+            if (limit.trim().isEmpty()) {
+                continue;
+            }
+            int separatorIndex = limit.indexOf(PROTOCOL_LIMIT_SEPARATOR);
+            try {
+                String protocol = limit.substring(0, separatorIndex).trim();
+                protocolBudgets.put(protocol, new BandwidthBudget(protocol, Long.parseLong(limit.substring(separatorIndex + 1).trim())));
+            } catch (RuntimeException e) {
+                LOGGER.warn("Invalid protocol bandwidth limit: " + limit);
+            }
+        }
+    }
+}
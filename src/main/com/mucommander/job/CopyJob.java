@@ -23,6 +23,9 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.adb.AdbFile;
 import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.conf.TcConfigurations;
+import com.mucommander.conf.TcPreference;
+import com.mucommander.conf.TcPreferences;
 import com.mucommander.job.utils.ScanDirectoryThread;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
@@ -79,6 +82,8 @@ public class CopyJob extends AbstractCopyJob {
         this.errorDialogTitle = Translator.get(mode==Mode.DOWNLOAD ? "download_dialog.error_title" : "copy_dialog.error_title");
         scanDirectoryThread = new ScanDirectoryThread(files);
         scanDirectoryThread.start();
+
+        setParallelCopyEnabled(TcConfigurations.getPreferences().getVariable(TcPreference.PARALLEL_COPY, TcPreferences.DEFAULT_PARALLEL_COPY));
     }
 
 
@@ -140,7 +145,7 @@ public class CopyJob extends AbstractCopyJob {
         }
 
         if (!file.isDirectory()) {
-            return tryCopyFile(file, destFile, append, errorDialogTitle);
+            return processRegularFile(file, destFile);
         }
         return copyDirectoryRecursively(file, destFileName, destFile);
     }
@@ -185,7 +190,11 @@ public class CopyJob extends AbstractCopyJob {
                 currentDestFile = destFile;
 
                 // Only when finished with folder, set destination folder's date to match the original folder one
-                changeFolderModifiedDate(file, destFile);
+                if (parallelCopyEngine != null) {
+                    parallelCopyEngine.runWhenCompleted(() -> changeFolderModifiedDate(file, destFile));
+                } else {
+                    changeFolderModifiedDate(file, destFile);
+                }
 
                 return true;
             } catch (IOException e) {
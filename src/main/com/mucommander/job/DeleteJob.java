@@ -89,7 +89,7 @@ public class DeleteJob extends FileJob {
             trash = DesktopManager.getTrash();
         }
 
-        scanDirectoryThread = new ScanDirectoryThread(files, false);
+        scanDirectoryThread = new ScanDirectoryThread(files);
         scanDirectoryThread.start();
     }
 
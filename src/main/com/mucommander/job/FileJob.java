@@ -451,8 +451,8 @@ public abstract class FileJob implements Runnable {
                 // Call the jobResumed method to notify of the new job's state
                 jobResumed();
 
-                // Wake up the job's thread that is potentially waiting for pause to be over 
-                pauseLock.notify();
+                // Wake up the job's threads that are potentially waiting for pause to be over
+                pauseLock.notifyAll();
 
                 // Switch to RUNNING state and notify listeners
                 setState(State.RUNNING);
@@ -484,7 +484,17 @@ public abstract class FileJob implements Runnable {
 //        // Notify ProgressDialog (if any) that a new file is being processed
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
-        
+
+        waitWhilePaused();
+//        if(this.currentFile!=null)
+//            this.nbFilesProcessed++;
+    }
+
+    /**
+     * Blocks the calling thread while this job is paused. This method is called by {@link #nextFile(AbstractFile)}
+     * and can be called by other threads processing files on behalf of this job.
+     */
+    void waitWhilePaused() {
         // Lock the pause lock
         synchronized(pauseLock) {
             // Loop while job is paused, there shouldn't normally be more than one loop
@@ -497,8 +507,6 @@ public abstract class FileJob implements Runnable {
                 }
             }
         }
-//        if(this.currentFile!=null)
-//            this.nbFilesProcessed++;
     }
 
 
@@ -561,6 +569,15 @@ public abstract class FileJob implements Runnable {
     }
 
 
+    /**
+     * This method is called by the job thread once {@link #processFile(AbstractFile,Object)} has returned for the last
+     * file, before the job is stopped and {@link #jobCompleted()} is called. Jobs that hand files over to other threads
+     * override it to wait for them. This method implementation does nothing.
+     */
+    protected void waitForPendingFiles() {
+    }
+
+
     /**
      * This method is called when this job has been paused, either by the user, or by the job when asking for user input.
      * 
@@ -871,6 +888,10 @@ public abstract class FileJob implements Runnable {
             // If last file was reached without any user interruption, all files have been processed with or
             // without errors, switch to FINISHED state and notify listeners
             if (currentFileIndex >= nbFiles-1 && getState() != FileJob.State.INTERRUPTED) {
+                waitForPendingFiles();
+                if (getState() == State.INTERRUPTED) {
+                    break;
+                }
                 currentFileIndex++;
                 stop();
                 jobCompleted();
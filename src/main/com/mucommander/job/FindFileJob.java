@@ -19,6 +19,7 @@ package com.mucommander.job;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.ui.main.MainFrame;
 import org.apache.commons.io.IOCase;
@@ -26,18 +27,54 @@ import org.apache.commons.io.filefilter.AbstractFileFilter;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.OrFileFilter;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.trolsoft.utils.search.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Job for directory scanning
+ * Job for directory scanning.
+ *
+ * <p>The job thread walks the directories and filters the files by name. When searching for a content, local files
+ * are scanned by a pool of worker threads, the other files (remote or in archives) are scanned by the job thread.
+ *
+ * <p>Found files are queued until they are consumed with {@link #pollResults(Collection, int, long)}. The queue is
+ * bounded: the search pauses when the consumer falls behind, so results must be consumed until the job ends.
  */
 public class FindFileJob extends FileJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FindFileJob.class);
+
+    /** Local files larger than this are mapped in memory instead of being read */
+    private static final long MMAP_THRESHOLD = 1024 * 1024;
+
+    /** Maximum number of worker threads scanning the content of the files */
+    private static final int MAX_SEARCH_THREADS = 8;
+
+    /** Number of files that can be waiting for a worker, per worker */
+    private static final int QUEUED_FILES_PER_THREAD = 16;
+
+    /** Delay after which a waiting job thread checks if the job has been interrupted */
+    private static final long INTERRUPT_CHECK_DELAY = 200;
+
+    /** Maximum number of found files waiting to be consumed */
+    private static final int RESULT_QUEUE_CAPACITY = 1024;
 
     private AbstractFile startDirectory;
     private String fileContent;
@@ -45,10 +82,23 @@ public class FindFileJob extends FileJob {
     private boolean searchArchives;
     private boolean ignoreHidden;
     private SearchPattern searchPattern;
+    private HorspoolSearcher searcher;
+
+    /** Workers scanning the content of local files, null if the job thread scans all files */
+    private ExecutorService searchExecutor;
+    /** Permits to submit a file to the workers, bounds the number of files waiting for a worker */
+    private Semaphore submitPermits;
+    /** Number of files submitted to the workers that haven't been scanned yet */
+    private int nbPendingSearches;
 
     private AbstractFileFilter fileFilter;
 
-    private final List<AbstractFile> list = new ArrayList<>();
+    /** Found files that haven't been consumed yet */
+    private final BlockingQueue<AbstractFile> results = new ArrayBlockingQueue<>(RESULT_QUEUE_CAPACITY);
+    /** Number of files found so far */
+    private final AtomicInteger nbResults = new AtomicInteger();
+    /** Number of files after which the search stops, 0 for no limit */
+    private volatile int maxResults;
 
     public FindFileJob(MainFrame mainFrame) {
         super(mainFrame);
@@ -61,10 +111,50 @@ public class FindFileJob extends FileJob {
         return false;
     }
 
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+        if (searcher != null) {
+            int nbThreads = Math.max(2, Math.min(MAX_SEARCH_THREADS, Runtime.getRuntime().availableProcessors()));
+            submitPermits = new Semaphore(nbThreads * QUEUED_FILES_PER_THREAD);
+            AtomicInteger threadNumber = new AtomicInteger();
+            searchExecutor = Executors.newFixedThreadPool(nbThreads, runnable -> {
+                Thread thread = new Thread(runnable, "FindFileJob worker " + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    protected void waitForPendingFiles() {
+        super.waitForPendingFiles();
+        synchronized (this) {
+            while (nbPendingSearches > 0 && getState() != State.INTERRUPTED) {
+                try {
+                    wait(INTERRUPT_CHECK_DELAY);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
+    }
+
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+        }
+    }
+
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
-        // Stop if interrupted
-        if (getState() == State.INTERRUPTED) {
+        // Stop if interrupted or if enough files have been found
+        if (isStopped()) {
             return false;
         }
         // If file is a directory, recurs
@@ -75,7 +165,7 @@ public class FindFileJob extends FileJob {
             }
             try {
                 AbstractFile[] subFiles = file.ls();
-                for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
+                for (int i = 0; i < subFiles.length && !isStopped(); i++) {
                     if (ignoreHidden && file.isHidden()) {
                         continue;
                     }
@@ -95,7 +185,7 @@ public class FindFileJob extends FileJob {
         if (file.isArchive() && searchArchives) {
             try {
                 AbstractFile[] subFiles = file.ls();
-                for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
+                for (int i = 0; i < subFiles.length && !isStopped(); i++) {
                     if (ignoreHidden && file.isHidden()) {
                         continue;
                     }
@@ -113,29 +203,112 @@ public class FindFileJob extends FileJob {
 
     private void searchInFile(AbstractFile file) {
         File f = new File(file.toString());
-        if (fileFilter.accept(f) && fileContainsString(file)) {
-            synchronized (this) {
-                list.add(file);
+        if (!fileFilter.accept(f)) {
+            return;
+        }
+        if (searchExecutor != null && !file.isDirectory() && isLocalFile(file)) {
+            submitSearch(file);
+        } else if (fileContainsString(file)) {
+            addResult(file);
+        }
+    }
+
+    /**
+     * Queues a found file, blocking while the queue is full.
+     */
+    private void addResult(AbstractFile file) {
+        // Reserve the result first so that concurrent workers don't go past the limit
+        int n;
+        do {
+            n = nbResults.get();
+            if (maxResults > 0 && n >= maxResults) {
+                return;
             }
+        } while (!nbResults.compareAndSet(n, n + 1));
+        try {
+            while (!results.offer(file, INTERRUPT_CHECK_DELAY, TimeUnit.MILLISECONDS)) {
+                if (getState() == State.INTERRUPTED) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The job has been stopped
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the search must stop, because the job has been interrupted or enough files have
+     * been found.
+     */
+    private boolean isStopped() {
+        return getState() == State.INTERRUPTED || isResultLimitReached();
+    }
+
+    /**
+     * Queues the given file to be scanned by a worker, blocking while too many files are waiting for a worker.
+     */
+    private void submitSearch(AbstractFile file) {
+        try {
+            while (!submitPermits.tryAcquire(INTERRUPT_CHECK_DELAY, TimeUnit.MILLISECONDS)) {
+                if (isStopped()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+        synchronized (this) {
+            nbPendingSearches++;
+        }
+        try {
+            searchExecutor.execute(() -> {
+                try {
+                    if (!isStopped() && fileContainsString(file)) {
+                        addResult(file);
+                    }
+                } finally {
+                    searchDone();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The job has been stopped
+            searchDone();
         }
     }
 
+    private synchronized void searchDone() {
+        submitPermits.release();
+        nbPendingSearches--;
+        notifyAll();
+    }
+
+    private static boolean isLocalFile(AbstractFile file) {
+        return file.getUnderlyingFileObject() instanceof File;
+    }
+
 
     private boolean fileContainsString(AbstractFile f) {
-        //Profiler.start("check_new");
         if (fileContent == null || fileContent.isEmpty()) {
             return true;
         }
-        if (f.isDirectory()) {
+        if (f.isDirectory() || searcher == null) {
             return false;
         }
 
-        try (SearchSourceStream source = new InputStreamSource(f.getInputStream())) {
-            long pos = SearchUtils.indexOf(source, searchPattern);
-            //Profiler.stop("check_new");
-            return pos >= 0;
-        } catch (IOException | SearchException e) {
-            e.printStackTrace();
+        try {
+            if (isLocalFile(f) && f.getSize() >= MMAP_THRESHOLD) {
+                try (FileChannel channel = FileChannel.open(((File)f.getUnderlyingFileObject()).toPath(), StandardOpenOption.READ)) {
+                    return searcher.indexOf(channel) >= 0;
+                }
+            }
+            byte[] buffer = BufferPool.getByteArray(Math.max(BufferPool.getDefaultBufferSize(), 2 * searcher.length()));
+            try (InputStream in = f.getInputStream()) {
+                return searcher.indexOf(in, buffer) >= 0;
+            } finally {
+                BufferPool.releaseByteArray(buffer);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("failed to search in " + f, e);
             return false;
         }
     }
@@ -143,8 +316,51 @@ public class FindFileJob extends FileJob {
 
 
 
-    public List<AbstractFile> getResults() {
-        return list;
+    /**
+     * Waits up to the given time for a found file, then moves the found files to the given collection.
+     * Results are consumed in the order they have been found.
+     *
+     * @param batch the collection to add the found files to
+     * @param maxBatchSize the maximum number of files to add
+     * @param timeout the maximum time to wait for a found file, in milliseconds
+     * @return the number of files added to the collection
+     * @throws InterruptedException if the calling thread has been interrupted while waiting
+     */
+    public int pollResults(Collection<? super AbstractFile> batch, int maxBatchSize, long timeout) throws InterruptedException {
+        AbstractFile first = results.poll(timeout, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return 0;
+        }
+        batch.add(first);
+        return 1 + results.drainTo(batch, maxBatchSize - 1);
+    }
+
+    /**
+     * Returns the number of files found so far, including the ones that haven't been consumed yet.
+     *
+     * @return the number of files found so far
+     */
+    public int getNbResults() {
+        return nbResults.get();
+    }
+
+    /**
+     * Sets the number of files after which the search stops.
+     *
+     * @param maxResults the maximum number of files to find, 0 for no limit
+     */
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Returns <code>true</code> if the search has stopped because the maximum number of files has been found.
+     *
+     * @return <code>true</code> if the maximum number of files has been found
+     */
+    public boolean isResultLimitReached() {
+        int max = maxResults;
+        return max > 0 && nbResults.get() >= max;
     }
 
     public void setStartDirectory(AbstractFile startDirectory) {
@@ -188,6 +404,7 @@ public class FindFileJob extends FileJob {
                 e.printStackTrace();
             }
         }
+        searcher = searchPattern != null && fileContent != null && !fileContent.isEmpty() ? new HorspoolSearcher(searchPattern) : null;
 
     }
 
@@ -30,6 +30,9 @@ import com.mucommander.commons.file.AbstractRWArchiveFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.conf.TcConfigurations;
+import com.mucommander.conf.TcPreference;
+import com.mucommander.conf.TcPreferences;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
@@ -63,6 +66,8 @@ public class MoveJob extends AbstractCopyJob {
 
         this.errorDialogTitle = Translator.get("move_dialog.error_title");
         this.renameMode = renameMode;
+
+        setParallelCopyEnabled(!renameMode && TcConfigurations.getPreferences().getVariable(TcPreference.PARALLEL_COPY, TcPreferences.DEFAULT_PARALLEL_COPY));
     }
 
 
@@ -149,6 +154,11 @@ public class MoveJob extends AbstractCopyJob {
 
         // Move the directory and all its children recursively, by copying files to the destination and then deleting them.
         if (file.isDirectory()) {
+            // Files moved by workers so far are top-level files: this folder's parent, if any, has already waited for its own
+            if (isFileInBaseFolder) {
+                waitForParallelCopies();
+            }
+
             // create the destination folder if it doesn't exist
             if (!(destFile.exists() && destFile.isDirectory())) {
                 do {		// Loop for retry
@@ -177,12 +187,21 @@ public class MoveJob extends AbstractCopyJob {
                         if (getState() == State.INTERRUPTED)
                             return false;
 
+                        // Files of this folder moved by workers so far must be accounted for before a sub-folder is
+                        // processed, as the sub-folder waits for the workers too
+                        if (subFile.isDirectory() && !waitForParallelCopies())
+                            isFolderEmpty = false;
+
                         // Notify job that we're starting to process this file (needed for recursive calls to processFile)
                         nextFile(subFile);
                         if (!processFile(subFile, destFile))
                             isFolderEmpty = false;
                     }
 
+                    // Wait for the files moved by workers, the folder can't be deleted before
+                    if (!waitForParallelCopies())
+                        isFolderEmpty = false;
+
                     // Only when finished with folder, set destination folder's date to match the original folder one
                     if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
                         try {
@@ -220,31 +239,48 @@ public class MoveJob extends AbstractCopyJob {
         }
         // File is a regular file, move it by copying it to the destination and then deleting it
         else  {
-            // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
-            // try the hard way by copying the file first, and then deleting the source file.
-            if (tryCopyFile(file, destFile, append, errorDialogTitle) && getState() != State.INTERRUPTED) {
-                // Delete the source file
-                do {		// Loop for retry
-                    try  {
-                        file.delete();
-                        // All OK
-                        return true;
-                    } catch(IOException e) {
-                        LOGGER.debug("IOException caught", e);
+            return processRegularFile(file, destFile);
+        }
+    }
 
-                        int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
-                        // Retry loops
-                        if (ret == RETRY_ACTION) {
-                            continue;
-                        }
-                        // Cancel, skip or close dialog returns false
-                        return false;
+    /**
+     * Moves the given regular file by copying it to the destination and then deleting it.
+     */
+    @Override
+    boolean transferRegularFile(AbstractFile file, AbstractFile destFile, boolean append) {
+        // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
+        // try the hard way by copying the file first, and then deleting the source file.
+        if (tryCopyFile(file, destFile, append, errorDialogTitle) && getState() != State.INTERRUPTED) {
+            // Delete the source file
+            do {		// Loop for retry
+                try  {
+                    file.delete();
+                    // All OK
+                    return true;
+                } catch(IOException e) {
+                    LOGGER.debug("IOException caught", e);
+
+                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
+                    // Retry loops
+                    if (ret == RETRY_ACTION) {
+                        continue;
                     }
-                } while(true);
-            }
-
-            return false;
+                    // Cancel, skip or close dialog returns false
+                    return false;
+                }
+            } while(true);
         }
+
+        return false;
+    }
+
+    /**
+     * Moves the given regular file by copying it to the destination and then deleting it.
+     */
+    @Override
+    void transferRegularFileInWorker(AbstractFile file, AbstractFile destFile, boolean append) throws IOException {
+        super.transferRegularFileInWorker(file, destFile, append);
+        file.delete();
     }
 
     private boolean deleteEmptyFolder(AbstractFile file) {
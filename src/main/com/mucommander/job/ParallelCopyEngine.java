@@ -0,0 +1,309 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.connection.ConnectionHandlerFactory;
+import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.impl.sftp.SFTPConnectionHandlerFactory;
+import com.mucommander.commons.file.impl.sftp.SFTPFile;
+import com.mucommander.conf.TcConfigurations;
+import com.mucommander.conf.TcPreference;
+import com.mucommander.conf.TcPreferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies regular files on a pool of worker threads on behalf of an {@link AbstractCopyJob}, while the job thread keeps
+ * walking the source files, creating folders and resolving file collisions in order.
+ *
+ * <p>Workers don't interact with the user: a file whose copy failed is handed back to the job thread, which processes
+ * it again the usual way so that the error is reported with the usual dialog. This happens the next time the job
+ * thread submits a file or waits for the workers.
+ *
+ * <p>The number of files waiting for a worker is bounded so that the job thread doesn't get too far ahead of the
+ * workers, and the number of workers is capped depending on the destination protocol.
+ *
+ * @author Oleg Trifonov
+ */
+class ParallelCopyEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelCopyEngine.class);
+
+    /** Maximum number of files copied concurrently for each destination protocol, protocols not listed here are not
+     * copied to concurrently */
+    private static final Map<String, Integer> PROTOCOL_MAX_THREADS = new HashMap<>();
+    static {
+        PROTOCOL_MAX_THREADS.put(FileProtocols.FILE, Integer.MAX_VALUE);
+        PROTOCOL_MAX_THREADS.put(FileProtocols.NFS, 4);
+        PROTOCOL_MAX_THREADS.put(FileProtocols.SMB, 4);
+        PROTOCOL_MAX_THREADS.put(FileProtocols.SFTP, 4);
+        PROTOCOL_MAX_THREADS.put(FileProtocols.FTP, 2);
+    }
+
+    /** Number of files that can be waiting for a worker, per worker */
+    private static final int QUEUED_FILES_PER_THREAD = 8;
+
+    /** Delay after which a waiting job thread checks if the job has been interrupted */
+    private static final long INTERRUPT_CHECK_DELAY = 200;
+
+    private final AbstractCopyJob job;
+
+    private final ExecutorService executor;
+
+    /** Number of worker threads */
+    private final int nbThreads;
+
+    /** Permits to submit a file, bounds the number of submitted files that haven't been copied yet */
+    private final Semaphore submitPermits;
+
+    /** Files whose copy failed and that need to be processed again by the job thread */
+    private final Queue<CopyTask> failedTasks = new ConcurrentLinkedQueue<>();
+
+    /** Actions to perform once all submitted files have been copied */
+    private final List<Runnable> completionActions = new ArrayList<>();
+
+    /** Number of submitted files that haven't been copied yet */
+    private int nbPendingTasks;
+
+    /** True if a file couldn't be copied since the last call to {@link #waitForCompletion()} */
+    private boolean failed;
+
+
+    private ParallelCopyEngine(AbstractCopyJob job, int nbThreads) {
+        this.job = job;
+        this.nbThreads = nbThreads;
+        this.submitPermits = new Semaphore(nbThreads * (QUEUED_FILES_PER_THREAD + 1));
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(nbThreads, runnable -> {
+            Thread thread = new Thread(runnable, job.getClass().getSimpleName() + " worker " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates an engine copying files to the given folder on behalf of the given job, if copying these files
+     * concurrently is possible. The number of workers is set in the preferences and capped depending on the
+     * destination protocol.
+     *
+     * @param job the job the files are copied for
+     * @param sourceFolder the folder containing the files to copy, may be <code>null</code>
+     * @param destFolder the folder where the files are copied
+     * @return the engine, <code>null</code> if the files must be copied by the job thread
+     */
+    static ParallelCopyEngine create(AbstractCopyJob job, AbstractFile sourceFolder, AbstractFile destFolder) {
+        // Archives are not meant to be read from or written to concurrently
+        if (destFolder.getParentArchive() != null || (sourceFolder != null && sourceFolder.getParentArchive() != null)) {
+            return null;
+        }
+        Integer protocolMaxThreads = PROTOCOL_MAX_THREADS.get(destFolder.getURL().getScheme());
+        int nbThreads = TcConfigurations.getPreferences().getVariable(TcPreference.PARALLEL_COPY_THREADS, TcPreferences.DEFAULT_PARALLEL_COPY_THREADS);
+        if (protocolMaxThreads != null) {
+            nbThreads = Math.min(nbThreads, protocolMaxThreads);
+        }
+        if (protocolMaxThreads == null || nbThreads < 2) {
+            return null;
+        }
+        LOGGER.debug("copying files to {} with {} threads", destFolder, nbThreads);
+        // One connection for each worker and one for the job thread
+        prewarmConnections(sourceFolder, nbThreads + 1);
+        prewarmConnections(destFolder, nbThreads + 1);
+        return new ParallelCopyEngine(job, nbThreads);
+    }
+
+    /**
+     * Opens in background the given number of connections to the server of the given folder if its connections are
+     * pooled, so that the first files don't wait for the workers to connect one after the other.
+     *
+     * @param folder a source or destination folder, may be <code>null</code>
+     * @param nbConnections the number of connections that will be used concurrently
+     */
+    private static void prewarmConnections(AbstractFile folder, int nbConnections) {
+        if (folder == null) {
+            return;
+        }
+        AbstractFile file = folder.getTopAncestor();
+        ConnectionHandlerFactory connectionHandlerFactory;
+        if (file instanceof ConnectionHandlerFactory) {
+            connectionHandlerFactory = (ConnectionHandlerFactory)file;
+        } else if (file instanceof SFTPFile) {
+            connectionHandlerFactory = new SFTPConnectionHandlerFactory();
+        } else {
+            return;
+        }
+        ConnectionPool.prewarm(connectionHandlerFactory, folder.getURL(), nbConnections);
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of worker threads
+     */
+    int getNbThreads() {
+        return nbThreads;
+    }
+
+    /**
+     * Queues the given file to be copied by a worker, blocking while too many files are queued already.
+     * This method must be called by the job thread, which processes the files whose copy failed beforehand.
+     *
+     * @param file the regular file to copy
+     * @param destFile the destination file
+     * @param append true to resume the copy of the file
+     * @return <code>false</code> if the job has been interrupted before the file could be queued
+     */
+    boolean submit(AbstractFile file, AbstractFile destFile, boolean append) {
+        processFailedTasks();
+        try {
+            while (!submitPermits.tryAcquire(INTERRUPT_CHECK_DELAY, TimeUnit.MILLISECONDS)) {
+                if (job.getState() == FileJob.State.INTERRUPTED) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            return false;
+        }
+        synchronized (this) {
+            nbPendingTasks++;
+        }
+        try {
+            CopyTask task = new CopyTask(file, destFile, append);
+            executor.execute(() -> copy(task));
+        } catch (RejectedExecutionException e) {
+            // The engine has been shut down
+            submitPermits.release();
+            taskDone();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until all the submitted files have been copied, processes the files whose copy failed and then performs
+     * the actions registered with {@link #runWhenCompleted(Runnable)}. This method must be called by the job thread.
+     *
+     * @return <code>true</code> if all the files submitted since the last call to this method have been copied
+     */
+    boolean waitForCompletion() {
+        synchronized (this) {
+            while (nbPendingTasks > 0 && job.getState() != FileJob.State.INTERRUPTED) {
+                try {
+                    wait(INTERRUPT_CHECK_DELAY);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        processFailedTasks();
+        if (job.getState() != FileJob.State.INTERRUPTED) {
+            for (Runnable action : completionActions) {
+                action.run();
+            }
+            completionActions.clear();
+        }
+        boolean result = !failed && job.getState() != FileJob.State.INTERRUPTED;
+        failed = false;
+        return result;
+    }
+
+    /**
+     * Registers an action to be performed by the job thread once all the files submitted so far have been copied,
+     * for instance setting the date of the folder they have been copied to.
+     *
+     * @param action the action to perform
+     */
+    void runWhenCompleted(Runnable action) {
+        completionActions.add(action);
+    }
+
+    /**
+     * Stops the workers, interrupting the copies in progress.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Has the job thread process again the files whose copy failed.
+     */
+    private void processFailedTasks() {
+        CopyTask task;
+        while ((task = failedTasks.poll()) != null) {
+            if (job.getState() == FileJob.State.INTERRUPTED || !job.transferRegularFile(task.file, task.destFile, task.append)) {
+                failed = true;
+            }
+        }
+    }
+
+    /**
+     * Copies a file, called by the workers.
+     */
+    private void copy(CopyTask task) {
+        try {
+            job.waitWhilePaused();
+            if (job.getState() == FileJob.State.INTERRUPTED) {
+                return;
+            }
+            job.transferRegularFileInWorker(task.file, task.destFile, task.append);
+        } catch (Exception e) {
+            // Errors caused by the job being interrupted are not reported
+            if (job.getState() != FileJob.State.INTERRUPTED) {
+                LOGGER.debug("failed to copy " + task.file + ", handing it over to the job thread", e);
+                failedTasks.add(task);
+            }
+        } finally {
+            submitPermits.release();
+            taskDone();
+        }
+    }
+
+    private synchronized void taskDone() {
+        nbPendingTasks--;
+        notifyAll();
+    }
+
+
+    /**
+     * A file to copy.
+     */
+    private static class CopyTask {
+        private final AbstractFile file;
+        private final AbstractFile destFile;
+        private final boolean append;
+
+        private CopyTask(AbstractFile file, AbstractFile destFile, boolean append) {
+            this.file = file;
+            this.destFile = destFile;
+            this.append = append;
+        }
+    }
+}
@@ -20,12 +20,18 @@
 package com.mucommander.job;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.adb.AdbFile;
@@ -40,6 +46,7 @@ import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.CounterInputStream;
 import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.BandwidthBudget;
 import com.mucommander.commons.io.ThroughputLimitInputStream;
 import com.mucommander.commons.io.security.MuProvider;
 import com.mucommander.commons.runtime.OsFamily;
@@ -71,8 +78,14 @@ public abstract class TransferFileJob extends FileJob {
     /** Contains the number of bytes skipped so far (resumed files), see {@link #getTotalSkippedByteCounter()} */
     private final ByteCounter totalSkippedByteCounter;
 
-    /** InputStream currently being processed, may be null */
-    private ThroughputLimitInputStream tlin;
+    /** Transfer of the file currently being processed by the job thread */
+    private final Transfer currentTransfer;
+
+    /** Transfers currently being performed by other threads, see {@link #copyFileInWorker(AbstractFile, AbstractFile, boolean)} */
+    private final Set<Transfer> workerTransfers = ConcurrentHashMap.newKeySet();
+
+    /** Number of transfers that may be performed concurrently, the throughput limit is shared between them */
+    private volatile int nbConcurrentTransfers = 1;
 
     /** ThroughputLimit in bytes per second, -1 initially (no limit) */
     private long throughputLimit = -1;
@@ -91,6 +104,10 @@ public abstract class TransferFileJob extends FileJob {
      * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
     private final static String CHECKSUM_VERIFICATION_ALGORITHM = "Adler32";
 
+    /** Maximum number of bytes copied by a single FileChannel#transferTo call, small enough to keep the job
+     * responsive to pause and throughput limit changes */
+    private final static long CHANNEL_TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
     /**
      * If user changed "Overwrite all readonly" in the question dialog
      */
@@ -115,15 +132,17 @@ public abstract class TransferFileJob extends FileJob {
         this.currentFileByteCounter = new ByteCounter();
         this.currentFileSkippedByteCounter = new ByteCounter();
 
-        // Account the current file's byte counter in the total byte counter
-        this.totalByteCounter = new ByteCounter(currentFileByteCounter);
-        this.totalSkippedByteCounter = new ByteCounter(currentFileSkippedByteCounter);
+        // Account the current file's and the workers' byte counters in the total byte counters
+        this.totalByteCounter = new TotalByteCounter(currentFileByteCounter, false);
+        this.totalSkippedByteCounter = new TotalByteCounter(currentFileSkippedByteCounter, true);
+
+        this.currentTransfer = new Transfer(currentFileByteCounter, currentFileSkippedByteCounter);
     }
 
     void copyToReadonlyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
         try {
             destFile.changePermission(PermissionAccesses.USER_ACCESS, PermissionTypes.WRITE_PERMISSION, true);
-            copyFile(sourceFile, destFile, append);
+            copyFile(sourceFile, destFile, append, currentTransfer);
             destFile.changePermission(PermissionAccesses.USER_ACCESS, PermissionTypes.WRITE_PERMISSION, false);
         } catch (IOException e) {
             e.printStackTrace();
@@ -139,11 +158,14 @@ public abstract class TransferFileJob extends FileJob {
      * @param sourceFile source file
      * @param destFile destination file
      * @param append append or overwrite
+     * @param transfer the streams and counters to use
      * @throws FileTransferException on transfer error
      */
-    private void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+    private void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, Transfer transfer) throws FileTransferException {
         // Reset this field in case it was set to true for the previous file
-        isCheckingIntegrity = false;
+        if (transfer == currentTransfer) {
+            isCheckingIntegrity = false;
+        }
 
         // Throw a specific FileTransferException if source and destination files are identical
         if (sourceFile.equalsCanonical(destFile)) {
@@ -171,18 +193,32 @@ public abstract class TransferFileJob extends FileJob {
             try {
                 long inLength = sourceFile.getSize();
 
+                // Local files are copied channel to channel, without going through a user-space buffer
+                FileChannel sourceChannel = null;
+
                 // Try to open InputStream
                 try  {
                     long destFileSize = destFile.getSize();
-                    if (append && destFileSize > 0) {
+                    if (isLocalFile(sourceFile) && isLocalFile(destFile)) {
+                        sourceChannel = FileChannel.open(((File)sourceFile.getUnderlyingFileObject()).toPath(), StandardOpenOption.READ);
+                        // Closing the stream (when the job is stopped or the file skipped) closes the channel
+                        in = Channels.newInputStream(sourceChannel);
+                        if (append && destFileSize > 0) {
+                            sourceChannel.position(destFileSize);
+                            inLength -= destFileSize;
+                            transfer.byteCounter.add(destFileSize);
+                            transfer.skippedByteCounter.add(destFileSize);
+                        }
+                        // The checksum of the source file is calculated after the transfer, see below
+                    } else if (append && destFileSize > 0) {
                         in = sourceFile.getInputStream(destFileSize);
                         // Do not calculate checksum, as it needs to be calculated on the whole file
 
                         inLength -= destFileSize;
                         // Increase current file ByteCounter by the number of bytes skipped
-                        currentFileByteCounter.add(destFileSize);
+                        transfer.byteCounter.add(destFileSize);
                         // Increase skipped ByteCounter by the number of bytes skipped
-                        currentFileSkippedByteCounter.add(destFileSize);
+                        transfer.skippedByteCounter.add(destFileSize);
                     } else {
                         in = sourceFile.getInputStream();
                         if (integrityCheckEnabled) {
@@ -190,7 +226,8 @@ public abstract class TransferFileJob extends FileJob {
                         }
                     }
 
-                    setCurrentInputStream(in);
+                    transfer.setBandwidthBudgets(BandwidthManager.getBudgets(sourceFile, destFile));
+                    transfer.setInputStream(in);
                 } catch(Exception e) {
                     LOGGER.debug("IOException caught, throwing FileTransferException", e);
                     throw new FileTransferException(FileTransferException.OPENING_SOURCE);
@@ -207,14 +244,18 @@ public abstract class TransferFileJob extends FileJob {
                     System.out.println(sourceFile + " -> " + destFile);
                     return;
                 }
-                // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
+                if (sourceChannel != null) {
+                    transferChannel(sourceChannel, (File)destFile.getUnderlyingFileObject(), append, transfer);
+                } else {
+                    // Copy source stream to destination file
+                    destFile.copyStream(transfer.tlin, append, inLength);
+                }
             } finally {
                 // This block will always be executed, even if an exception
                 // was thrown in the catch block
 
                 // Tries to close the streams no matter what happened before
-                closeCurrentInputStream();
+                transfer.closeInputStream();
             }
         }
 
@@ -225,7 +266,9 @@ public abstract class TransferFileJob extends FileJob {
         // This block is executed only if integrity check has been enabled (disabled by default)
         if (integrityCheckEnabled) {
             // Indicate that integrity is being checked, the value is reset when the next file starts
-            isCheckingIntegrity = true;
+            if (transfer == currentTransfer) {
+                isCheckingIntegrity = true;
+            }
 
             String sourceChecksum;
             if (in instanceof ChecksumInputStream) {
@@ -236,7 +279,7 @@ public abstract class TransferFileJob extends FileJob {
                 // The file was copied using AbstractFile#copyRemotelyTo(), or the transfer was resumed:
                 // we have to calculate the source file's checksum from scratch.
                 try {
-                    sourceChecksum = calculateChecksum(sourceFile);
+                    sourceChecksum = calculateChecksum(sourceFile, transfer);
                 } catch (Exception e) {
                     throw new FileTransferException(FileTransferException.READING_SOURCE);
                 }
@@ -247,7 +290,7 @@ public abstract class TransferFileJob extends FileJob {
             // Calculate the destination file's checksum
             String destinationChecksum;
             try {
-                destinationChecksum = calculateChecksum(destFile);
+                destinationChecksum = calculateChecksum(destFile, transfer);
             } catch(Exception e) {
                 throw new FileTransferException(FileTransferException.READING_DESTINATION);
             }
@@ -261,13 +304,132 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
-    private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
-        currentFileByteCounter.reset();
-        InputStream in = setCurrentInputStream(file.getInputStream());
+    /**
+     * Copies the remaining contents of the given channel to the specified local file, using
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} so that the data is copied by
+     * the kernel when the platform allows it. Data is transferred in chunks of {@link #CHANNEL_TRANSFER_CHUNK_SIZE}
+     * bytes at most, accounted in the current file's byte counter and the throughput limit between chunks, so that
+     * progress, throughput limit and pause work as with a stream copy.
+     *
+     * @param sourceChannel channel to read from, positioned at the first byte to copy
+     * @param destFile file to write to
+     * @param append append or overwrite
+     * @param transfer the transfer that registered the source channel
+     * @throws FileTransferException on transfer error
+     */
+    private void transferChannel(FileChannel sourceChannel, File destFile, boolean append, Transfer transfer) throws FileTransferException {
+        FileChannel destChannel;
+        try {
+            destChannel = new FileOutputStream(destFile, append).getChannel();
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION, e);
+        }
+
+        long totalTransferred = 0;
+        FileTransferException failure = null;
+        try {
+            long position = sourceChannel.position();
+            long size = sourceChannel.size();
+            while (position < size) {
+                long count = transfer.tlin.getNbAllowedBytes(Math.min(CHANNEL_TRANSFER_CHUNK_SIZE, size - position));
+                long transferred = sourceChannel.transferTo(position, count, destChannel);
+                if (transferred <= 0) {
+                    // The source file has been truncated
+                    break;
+                }
+                position += transferred;
+                totalTransferred += transferred;
+                transfer.tlin.addTransferredBytes(transferred);
+                transfer.byteCounter.add(transferred);
+            }
+        } catch (IOException e) {
+            failure = new FileTransferException(FileTransferException.WRITING_DESTINATION, totalTransferred, e);
+        } finally {
+            // Close the channel even if the transfer failed, a write error is reported rather than the close one
+            try {
+                destChannel.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = new FileTransferException(FileTransferException.CLOSING_DESTINATION, e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static boolean isLocalFile(AbstractFile file) {
+        return file.getUnderlyingFileObject() instanceof File;
+    }
+
+    private String calculateChecksum(AbstractFile file, Transfer transfer) throws IOException, NoSuchAlgorithmException {
+        transfer.byteCounter.reset();
+        InputStream in = transfer.setInputStream(file.getInputStream());
         try {
             return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
         } finally {
-            closeCurrentInputStream();
+            transfer.closeInputStream();
+        }
+    }
+
+    /**
+     * Copies the given source file to the specified destination file like {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)}
+     * does, but without any user interaction and using its own source stream and byte counters, so that it can be
+     * called by threads other than the job's. The bytes transferred are accounted in the total byte counter as they
+     * are transferred, they are no longer accounted if the transfer fails.
+     *
+     * <p>Pausing, stopping the job and changing the throughput limit affect the transfer, skipping the current file
+     * doesn't.
+     *
+     * @param sourceFile source file
+     * @param destFile destination file
+     * @param append append or overwrite
+     * @throws FileTransferException on transfer error, the caller is responsible for reporting it
+     */
+    void copyFileInWorker(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        Transfer transfer = new Transfer(new ByteCounter(), new ByteCounter());
+        workerTransfers.add(transfer);
+        try {
+            copyFile(sourceFile, destFile, append, transfer);
+            // Move the bytes from the transfer's counters to the totals, the counters are reset in the same operation
+            // so that the bytes are never accounted twice
+            totalByteCounter.add(transfer.byteCounter, true);
+            totalSkippedByteCounter.add(transfer.skippedByteCounter, true);
+        } finally {
+            workerTransfers.remove(transfer);
+        }
+    }
+
+    /**
+     * Sets the number of transfers that may be performed concurrently by this job, <code>1</code> by default.
+     * The throughput limit is evenly split between them.
+     *
+     * @param nbConcurrentTransfers number of concurrent transfers
+     */
+    void setNbConcurrentTransfers(int nbConcurrentTransfers) {
+        this.nbConcurrentTransfers = Math.max(1, nbConcurrentTransfers);
+        if (getState() != State.PAUSED) {
+            setTransfersThroughputLimit(getTransferThroughputLimit());
+        }
+    }
+
+    /**
+     * Returns the throughput limit of a single transfer.
+     */
+    private long getTransferThroughputLimit() {
+        return throughputLimit <= 0 ? throughputLimit : Math.max(1, throughputLimit / nbConcurrentTransfers);
+    }
+
+    /**
+     * Sets the given throughput limit on all ongoing transfers.
+     */
+    private void setTransfersThroughputLimit(long bytesPerSecond) {
+        currentTransfer.setThroughputLimit(bytesPerSecond);
+        for (Transfer transfer : workerTransfers) {
+            transfer.setThroughputLimit(bytesPerSecond);
         }
     }
 
@@ -289,7 +451,7 @@ public abstract class TransferFileJob extends FileJob {
                 if (overwriteReadonly) {
                     copyToReadonlyFile(sourceFile, destFile, append);
                 } else {
-                    copyFile(sourceFile, destFile, append);
+                    copyFile(sourceFile, destFile, append, currentTransfer);
                 }
                 return true;
             } catch(FileTransferException e) {
@@ -386,27 +548,16 @@ public abstract class TransferFileJob extends FileJob {
      * @param in the InputStream to be used
      * @return the 'augmented' InputStream using the given stream as the underlying InputStream
      */
-    synchronized InputStream setCurrentInputStream(InputStream in) {
-        if (tlin == null) {
-            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), throughputLimit);
-        } else {
-            tlin.setUnderlyingInputStream(new CounterInputStream(in, currentFileByteCounter));
-        }
-
-        return tlin;
+    InputStream setCurrentInputStream(InputStream in) {
+        currentTransfer.setBandwidthBudgets(BandwidthManager.getBudgets(getCurrentFile(), getBaseDestinationFolder()));
+        return currentTransfer.setInputStream(in);
     }
 
     /**
      * Closes the currently registered source InputStream.
      */
-    synchronized void closeCurrentInputStream() {
-        if (tlin != null) {
-            try {
-                tlin.close();
-            } catch(IOException e) {
-                e.printStackTrace();
-            }
-        }
+    void closeCurrentInputStream() {
+        currentTransfer.closeInputStream();
     }
 
 
@@ -444,8 +595,8 @@ public abstract class TransferFileJob extends FileJob {
      * Interrupts the current file transfer and advance to the next one.
      */
     public synchronized void skipCurrentFile() {
-        if (tlin != null) {
-            LOGGER.debug("skipping current file, closing "+ tlin);
+        if (currentTransfer.tlin != null) {
+            LOGGER.debug("skipping current file, closing "+ currentTransfer.tlin);
 
             // Prevents an error from being reported when the current InputStream is closed
             currentFileSkipped = true;
@@ -546,8 +697,8 @@ public abstract class TransferFileJob extends FileJob {
         this.throughputLimit = bytesPerSecond <= 0 ? -1 : bytesPerSecond;
 
         synchronized(this) {
-            if (getState() != State.PAUSED && tlin != null) {
-                tlin.setThroughputLimit(throughputLimit);
+            if (getState() != State.PAUSED) {
+                setTransfersThroughputLimit(getTransferThroughputLimit());
             }
         }
     }
@@ -561,6 +712,25 @@ public abstract class TransferFileJob extends FileJob {
     public long getThroughputLimit() {
         return throughputLimit;
     }
+
+    /**
+     * Returns the budgets, shared with the other jobs, that the transfers of this job draw from, see
+     * {@link BandwidthManager}.
+     *
+     * @return the shared budgets, an empty array if the transfers of this job are not subject to any
+     */
+    public BandwidthBudget[] getBandwidthBudgets() {
+        return BandwidthManager.getBudgets(getBaseSourceFolder(), getBaseDestinationFolder());
+    }
+
+    /**
+     * Returns the folder the files are transferred to, <code>null</code> if this job doesn't have one.
+     *
+     * @return the base destination folder, may be <code>null</code>
+     */
+    AbstractFile getBaseDestinationFolder() {
+        return null;
+    }
     
 
     /**
@@ -571,10 +741,13 @@ public abstract class TransferFileJob extends FileJob {
         super.jobStopped();
 
         synchronized(this) {
-            if (tlin != null) {
-                LOGGER.debug("closing current InputStream "+ tlin);
+            if (currentTransfer.tlin != null) {
+                LOGGER.debug("closing current InputStream "+ currentTransfer.tlin);
                 closeCurrentInputStream();
             }
+            for (Transfer transfer : workerTransfers) {
+                transfer.closeInputStream();
+            }
         }
     }
 
@@ -588,9 +761,7 @@ public abstract class TransferFileJob extends FileJob {
         super.jobPaused();
 
         synchronized(this) {
-            if (tlin != null) {
-                tlin.setThroughputLimit(0);
-            }
+            setTransfersThroughputLimit(0);
         }
     }
 
@@ -605,9 +776,7 @@ public abstract class TransferFileJob extends FileJob {
 
         synchronized(this) {
             // Restore previous throughput limit (if any, -1 by default)
-            if (tlin != null) {
-                tlin.setThroughputLimit(throughputLimit);
-            }
+            setTransfersThroughputLimit(getTransferThroughputLimit());
         }
     }
 
@@ -661,6 +830,94 @@ public abstract class TransferFileJob extends FileJob {
         return super.getStatusString();
     }
 
+    /**
+     * Total byte counter of the job: its own count, plus the one of the current file's counter, plus the ones of the
+     * transfers currently performed by workers.
+     */
+    private class TotalByteCounter extends ByteCounter {
+        /** If true, the skipped bytes of the workers are accounted, otherwise the processed ones */
+        private final boolean skipped;
+
+        private TotalByteCounter(ByteCounter currentFileCounter, boolean skipped) {
+            super(currentFileCounter);
+            this.skipped = skipped;
+        }
+
+        @Override
+        public synchronized long getByteCount() {
+            long count = super.getByteCount();
+            for (Transfer transfer : workerTransfers) {
+                count += (skipped ? transfer.skippedByteCounter : transfer.byteCounter).getByteCount();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Source InputStream and byte counters of a file transfer. The job thread uses a single instance for all the
+     * files it processes, transfers performed by other threads have their own.
+     */
+    private class Transfer {
+        /** InputStream currently being processed, may be null */
+        private ThroughputLimitInputStream tlin;
+
+        /** Contains the number of bytes processed in the file so far */
+        private final ByteCounter byteCounter;
+
+        /** Contains the number of bytes skipped in the file so far */
+        private final ByteCounter skippedByteCounter;
+
+        /** Shared budgets the current file is transferred with */
+        private BandwidthBudget[] budgets = new BandwidthBudget[0];
+
+        private Transfer(ByteCounter byteCounter, ByteCounter skippedByteCounter) {
+            this.byteCounter = byteCounter;
+            this.skippedByteCounter = skippedByteCounter;
+        }
+
+        /**
+         * Registers the given InputStream as the one being transferred, see {@link #setCurrentInputStream(InputStream)}.
+         */
+        private synchronized InputStream setInputStream(InputStream in) {
+            if (tlin == null) {
+                tlin = new ThroughputLimitInputStream(new CounterInputStream(in, byteCounter),
+                        getState() == State.PAUSED ? 0 : getTransferThroughputLimit());
+            } else {
+                tlin.setUnderlyingInputStream(new CounterInputStream(in, byteCounter));
+            }
+            // The job takes a single share of the budgets whatever its number of concurrent transfers
+            tlin.setBandwidthBudgets(nbConcurrentTransfers, budgets);
+
+            return tlin;
+        }
+
+        /**
+         * Closes the registered InputStream.
+         */
+        private synchronized void closeInputStream() {
+            if (tlin != null) {
+                try {
+                    tlin.close();
+                } catch(IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Sets the shared budgets the next InputStream will be transferred with.
+         */
+        private synchronized void setBandwidthBudgets(BandwidthBudget[] budgets) {
+            this.budgets = budgets;
+        }
+
+        private synchronized void setThroughputLimit(long bytesPerSecond) {
+            if (tlin != null) {
+                tlin.setThroughputLimit(bytesPerSecond);
+            }
+        }
+    }
+
     protected boolean tryCopySymlinkFile(AbstractFile sourceFile, AbstractFile destFile) {
         Path sourcePath = ((File) sourceFile.getUnderlyingFileObject()).toPath();
         Path destPath = ((File) destFile.getUnderlyingFileObject()).toPath();
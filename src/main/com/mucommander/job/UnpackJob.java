@@ -53,6 +53,9 @@ public class UnpackJob extends AbstractCopyJob {
     private long totalFilesSize;
     private int totalFilesCount;
 
+    /** Entries of the archive being unpacked that are going to be unpacked, passed to the archive's entry iterator */
+    private final List<ArchiveEntry> entriesToUnpack = new ArrayList<>();
+
     private int processedFilesCount;
     private long processedFilesSize;
     private boolean preparingFinished;
@@ -194,9 +197,10 @@ public class UnpackJob extends AbstractCopyJob {
         String destSeparator = destFolder.getSeparator();
         String relDestPath;
 
-        // Unpack the archive, copying entries one by one, in the iterator's order
+        // Unpack the archive, copying entries one by one, in the iterator's order. The entries are passed to the
+        // archive so that it can read them all in one pass if it's faster, for instance with solid 7z or RAR archives.
         try {
-            iterator = archiveFile.getEntryIterator();
+            iterator = archiveFile.getEntryIterator(entriesToUnpack);
             while ((entry = iterator.nextEntry()) != null && getState() != State.INTERRUPTED) {
                 entryPath = entry.getPath();
 
@@ -377,6 +381,7 @@ public class UnpackJob extends AbstractCopyJob {
     private void calculateTotalSize(AbstractArchiveFile archiveFile) {
         totalFilesSize = 0;
         totalFilesCount = 0;
+        entriesToUnpack.clear();
         // get all directoires
         List<String> selectedDirectories = new ArrayList<>();
         List<ArchiveEntry> fileEntries = new ArrayList<>();
@@ -409,7 +414,8 @@ public class UnpackJob extends AbstractCopyJob {
                     } // directories
                     if (!addThisEntry && !selectedEntries.isEmpty()) {
                         for (ArchiveEntry selEntry : selectedEntries) {
-                            if (entry == selEntry) {
+                            // Compared by path as the iterator may return new instances of the selected entries
+                            if (entry.getPath().equals(selEntry.getPath())) {
                                 addThisEntry = true;
                                 break;
                             }
@@ -422,6 +428,7 @@ public class UnpackJob extends AbstractCopyJob {
                 if (addThisEntry) {
                     totalFilesSize += entry.getSize();
                     totalFilesCount++;
+                    entriesToUnpack.add(entry);
                 }
             } // while
         } catch (IOException e) {
@@ -0,0 +1,253 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job.utils;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.CachedFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calculates the total size and the number of files of a directory tree.
+ *
+ * <p>Sub-directories are scanned in parallel by a {@link ForkJoinPool} shared by all scanners. The content of local
+ * directories is cached with their date: a directory whose date hasn't changed since it was last scanned is not
+ * listed again, only its sub-directories are checked. Note that the date of a directory doesn't change when a file
+ * it contains is modified in place, such changes are seen once the directory itself changes. The cached contents
+ * are softly referenced, as they hold the files of the sub-directories: they are reclaimed when memory runs low.
+ *
+ * <p>Symbolic links are counted as files but neither followed nor included in the total size.
+ *
+ * @author Oleg Trifonov
+ */
+public class DirectoryScanner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryScanner.class);
+
+    /** Pool shared by all scans, larger than the number of cores because scanning mostly waits for I/O */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    /** Maximum number of directories in the cache, the cache is cleared when it is reached */
+    private static final int MAX_CACHED_DIRECTORIES = 100000;
+
+    /** Content of the scanned local directories, by absolute path */
+    private static final Map<String, SoftReference<DirectoryContent>> CACHE = new ConcurrentHashMap<>();
+
+    private final boolean followRootSymlink;
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder filesCount = new LongAdder();
+    private volatile boolean cancelled;
+
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param followRootSymlink if <code>true</code>, a scanned file that is a symbolic link to a directory is
+     * followed, links found inside the directory are never followed
+     */
+    public DirectoryScanner(boolean followRootSymlink) {
+        this.followRootSymlink = followRootSymlink;
+    }
+
+    /**
+     * Scans the given file and waits for the scan to be complete. The file is counted and, if it's a directory, its
+     * whole content.
+     *
+     * @param file the file to scan
+     */
+    public void scan(AbstractFile file) {
+        POOL.invoke(new ScanTask(file, true));
+    }
+
+    /**
+     * Starts to scan the given file in background, like {@link #scan(AbstractFile)} does.
+     *
+     * @param file the file to scan
+     * @return the task the completion of which can be waited for
+     */
+    public ForkJoinTask<?> start(AbstractFile file) {
+        return POOL.submit(new ScanTask(file, true));
+    }
+
+    /**
+     * Stops the scans of this scanner, the totals are not complete.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the total size of the regular files scanned so far.
+     *
+     * @return the total size of the files scanned so far
+     */
+    public long getTotalBytes() {
+        return totalBytes.sum();
+    }
+
+    /**
+     * Returns the number of files scanned so far, including directories and symbolic links.
+     *
+     * @return the number of files scanned so far
+     */
+    public long getFilesCount() {
+        return filesCount.sum();
+    }
+
+
+    /**
+     * Returns the content of the given directory, from the cache if the directory hasn't changed.
+     *
+     * @return the content of the directory, <code>null</code> if it couldn't be listed or the scan was cancelled
+     */
+    private DirectoryContent getContent(AbstractFile folder) {
+        // Unwrap local directories so that their date is not a cached one
+        AbstractFile topAncestor = folder.getTopAncestor();
+        boolean cacheable = topAncestor instanceof LocalFile;
+        AbstractFile dir = cacheable ? topAncestor : folder;
+        String path = null;
+        long date = 0;
+        if (cacheable) {
+            path = dir.getAbsolutePath();
+            date = dir.getLastModifiedDate();
+            SoftReference<DirectoryContent> cached = CACHE.get(path);
+            DirectoryContent content = cached == null ? null : cached.get();
+            if (content != null && content.date == date) {
+                return content;
+            }
+        }
+
+        AbstractFile[] children;
+        try {
+            children = dir.ls();
+        } catch (IOException e) {
+            LOGGER.debug("Can't list " + dir, e);
+            return null;
+        }
+        long bytes = 0;
+        List<AbstractFile> folders = new ArrayList<>();
+        for (AbstractFile child : children) {
+            if (cancelled) {
+                return null;
+            }
+            // Use the attributes read while listing, if any
+            AbstractFile attributes = child instanceof LocalFile ? new CachedFile(child, false) : child;
+            if (attributes.isSymlink()) {
+                continue;
+            }
+            if (attributes.isDirectory()) {
+                folders.add(child);
+            } else {
+                bytes += attributes.getSize();
+            }
+        }
+        DirectoryContent content = new DirectoryContent(date, bytes, children.length, folders.toArray(new AbstractFile[folders.size()]));
+        if (cacheable && date > 0) {
+            if (CACHE.size() >= MAX_CACHED_DIRECTORIES) {
+                CACHE.clear();
+            }
+            CACHE.put(path, new SoftReference<>(content));
+        }
+        return content;
+    }
+
+
+    /**
+     * Content of a directory, not including the content of its sub-directories.
+     */
+    private static class DirectoryContent {
+        /** Date of the directory when it was listed */
+        final long date;
+        /** Total size of the regular files */
+        final long bytes;
+        /** Number of files, including directories and symbolic links */
+        final int filesCount;
+        /** Sub-directories, not including symbolic links */
+        final AbstractFile[] folders;
+
+        DirectoryContent(long date, long bytes, int filesCount, AbstractFile[] folders) {
+            this.date = date;
+            this.bytes = bytes;
+            this.filesCount = filesCount;
+            this.folders = folders;
+        }
+    }
+
+
+    /**
+     * Scans a file, forking a task for each sub-directory.
+     */
+    private class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final AbstractFile file;
+        private final boolean root;
+
+        ScanTask(AbstractFile file, boolean root) {
+            this.file = file;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled) {
+                return;
+            }
+            if (root) {
+                filesCount.increment();
+                if (file.isSymlink() && !(followRootSymlink && file.isDirectory())) {
+                    return;
+                }
+                if (!file.isDirectory()) {
+                    totalBytes.add(file.getSize());
+                    return;
+                }
+            }
+            DirectoryContent content = getContent(file);
+            if (content == null) {
+                return;
+            }
+            totalBytes.add(content.bytes);
+            filesCount.add(content.filesCount);
+            if (content.folders.length == 1) {
+                new ScanTask(content.folders[0], false).compute();
+            } else if (content.folders.length > 1) {
+                List<ScanTask> tasks = new ArrayList<>(content.folders.length);
+                for (AbstractFile folder : content.folders) {
+                    tasks.add(new ScanTask(folder, false));
+                }
+                invokeAll(tasks);
+            }
+        }
+    }
+}
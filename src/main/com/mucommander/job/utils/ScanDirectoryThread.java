@@ -20,30 +20,21 @@ package com.mucommander.job.utils;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
 
-import java.io.IOException;
-
 /**
  * Thread to calculating the total size of files
+ *
+ * @see DirectoryScanner
  */
 public class ScanDirectoryThread extends Thread {
 
     private final FileSet files;
-    private long totalBytes;
-    private boolean completed;
+    private final DirectoryScanner scanner = new DirectoryScanner(false);
+    private volatile boolean completed;
     private long executionTime;
-    private long filesCount;
-    private boolean interrupted;
-    private final boolean calcSize;
+    private volatile boolean interrupted;
 
     public ScanDirectoryThread(FileSet files) {
         this.files = files;
-        this.calcSize = true;
-        setName("ScanDirectoryThread " + files.getBaseFolder());
-    }
-
-    public ScanDirectoryThread(FileSet files, boolean calcSize) {
-        this.files = files;
-        this.calcSize = calcSize;
         setName("ScanDirectoryThread " + files.getBaseFolder());
     }
 
@@ -55,43 +46,15 @@ public class ScanDirectoryThread extends Thread {
                 break;
             }
             try {
-                processFile(file);
+                scanner.scan(file);
             } catch (Throwable ignore) {}
         }
         completed = true;
         executionTime = System.currentTimeMillis() - executionTime;
-//System.out.println("finished  " + totalBytes + " " + filesCount + "    time " + executionTime);
-    }
-
-    private void processFile(AbstractFile file) {
-        if (interrupted) {
-            return;
-        }
-        filesCount++;
-        if (file.isSymlink()) {
-            return; // ignore symlinks
-        }
-        if (file.isDirectory()) {
-            try {
-                AbstractFile[] subfiles = file.ls();
-                for (AbstractFile subfile : subfiles ) {
-                    if (interrupted) {
-                        return;
-                    }
-                    processFile(subfile);
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        } else {
-            if (calcSize) {
-                totalBytes += file.getSize();
-            }
-        }
     }
 
     public long getTotalBytes() {
-        return totalBytes;
+        return scanner.getTotalBytes();
     }
 
     public boolean isCompleted() {
@@ -99,10 +62,11 @@ public class ScanDirectoryThread extends Thread {
     }
 
     public long getFilesCount() {
-        return filesCount;
+        return scanner.getFilesCount();
     }
 
     public void interrupt() {
         interrupted = true;
+        scanner.cancel();
     }
 }
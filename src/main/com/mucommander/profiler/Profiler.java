@@ -18,130 +18,270 @@
 
 package com.mucommander.profiler;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
+ * Measures the duration of named code sections.
+ *
+ * <p>A section is measured between {@link #start(String)} and {@link #stop(String)} calls made by the same thread:
+ * each thread has its own stack of running sections, so that the same section may run on several threads at once.
+ * A section that ends on another thread than the one it started on is measured with a {@link Span} returned by
+ * {@link #begin(String)}. Durations are measured with {@link System#nanoTime()} and recorded in a lock-free
+ * {@link Histogram} per section name.
+ *
+ * <p>The profiler is enabled with the <code>trolcommander.profiler</code> system property. When it is disabled, all
+ * methods return immediately and the JIT removes their calls. When it is enabled, the report is printed at shutdown and
+ * exported as CSV to the file specified by the <code>trolcommander.profiler.csv</code> system property, if any.
+ *
  * Created on 01/01/14.
  */
 public class Profiler {
-    public static final boolean ENABLED = true;
+    public static final boolean ENABLED = Boolean.getBoolean("trolcommander.profiler");
+
+    /** Recorded durations, by section name */
+    private static final Map<String, Histogram> sections = new ConcurrentHashMap<>();
 
-    private static final Map<String, Long> timesStart = new HashMap<>();
-    private static final Map<String, Long> timesDuration = new HashMap<>();
-    private static final Map<String, Integer> callCount = new HashMap<>();
-    private static final Set<String> hiddenGroups = new HashSet<>();
+    private static final Set<String> hiddenGroups = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /** Sections started by the current thread and not stopped yet, the most recent first */
+    private static final ThreadLocal<Deque<Span>> runningSpans = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /** Span returned when the profiler is disabled */
+    private static final Span DISABLED_SPAN = new Span(null, 0);
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Profiler::dump, "Profiler shutdown"));
+        }
+    }
 
-    private static String lastSectionName;
-    private static final List<String> initThreads = new ArrayList<>();
 
+    /**
+     * Returns the current value of the profiler's timer, in nanoseconds.
+     *
+     * @return the current time, in nanoseconds
+     */
     public static long getTime() {
-//        return System.nanoTime();
-        return System.currentTimeMillis();
+        return System.nanoTime();
     }
 
+    /**
+     * Starts a section on the current thread.
+     *
+     * @param name name of the section
+     */
     public static void start(String name) {
         if (!ENABLED) {
             return;
         }
-        lastSectionName = name;
-        synchronized (timesStart) {
-            timesStart.put(name, getTime());
-        }
-        synchronized (callCount) {
-            Integer cnt = callCount.get(name);
-            if (cnt == null) {
-                cnt = 1;
-            } else {
-                cnt++;
-            }
-            callCount.put(name, cnt);
-        }
+        runningSpans.get().push(new Span(name, getTime()));
     }
 
+    /**
+     * Stops the most recently started section of the given name on the current thread. Nothing is recorded if the
+     * current thread has no such section running.
+     *
+     * @param name name of the section
+     */
     public static void stop(String name) {
         if (!ENABLED) {
             return;
         }
         long endTime = getTime();
-        long startTime;
-        synchronized (timesStart) {
-            startTime = timesStart.get(name);
-        }
-        long duration = endTime - startTime;
-        synchronized (timesDuration) {
-            Long sum = timesDuration.get(name);
-            if (sum == null) {
-                sum = duration;
-            } else {
-                sum += duration;
+        for (Iterator<Span> it = runningSpans.get().iterator(); it.hasNext(); ) {
+            Span span = it.next();
+            if (span.name.equals(name)) {
+                it.remove();
+                span.end(endTime);
+                return;
             }
-            timesDuration.put(name, sum);
         }
     }
 
+    /**
+     * Stops the most recently started section on the current thread.
+     */
     public static void stop() {
         if (!ENABLED) {
             return;
         }
-        stop(lastSectionName);
+        long endTime = getTime();
+        Span span = runningSpans.get().poll();
+        if (span != null) {
+            span.end(endTime);
+        }
     }
 
-    public static void print() {
+    /**
+     * Starts a section that can be ended by any thread.
+     *
+     * @param name name of the section
+     * @return the span to {@link Span#end() end} when the section is over
+     */
+    public static Span begin(String name) {
+        if (!ENABLED) {
+            return DISABLED_SPAN;
+        }
+        return new Span(name, getTime());
+    }
+
+    /**
+     * Records the duration of a section that has been measured by the caller.
+     *
+     * @param name name of the section
+     * @param duration duration of the section, in nanoseconds
+     */
+    public static void record(String name, long duration) {
         if (!ENABLED) {
             return;
         }
-        synchronized (timesDuration) {
-            TreeMap<String, Long> sortedMap = new TreeMap<>(new ValueComparator(timesDuration));
-            sortedMap.putAll(timesDuration);
-            System.out.println(withSpaces("Name", 40) + "\t" + withSpaces("Total", 10) + "\t" + withSpaces("Count", 7) + "\t" + "Average");
-            System.out.println(withSpaces("-----------", 40) + "\t" + withSpaces("--------", 10) + "\t" + withSpaces("-------", 7) + "\t" + "----------");
-            for (String name : sortedMap.keySet()) {
-                boolean isHidden = false;
-                for (String hiddenName : hiddenGroups) {
-                    if (name.contains(hiddenName)) {
-                        isHidden = true;
-                        break;
-                    }
-                }
-                if (isHidden) {
-                    continue;
-                }
-                long duration = timesDuration.get(name);
-                int count = callCount.get(name);
-                String avgDuration = String.valueOf(duration/count);
-                if (avgDuration.equals("0") && duration != 0) {
-                    avgDuration = String.valueOf(1.0*duration/count);
-                }
-                System.out.println(withSpaces(name, 40) + "\t" + withSpaces(Long.toString(duration), 10) + "\t" + withSpaces(Integer.toString(count), 7) + "\t" + avgDuration);
+        Histogram histogram = sections.get(name);
+        if (histogram == null) {
+            histogram = sections.computeIfAbsent(name, n -> new Histogram());
+        }
+        histogram.record(duration);
+    }
+
+    /**
+     * Returns the recorded durations of the sections that are not hidden, the longest in total first.
+     *
+     * @return the durations in nanoseconds, by section name
+     */
+    public static Map<String, Histogram> getSections() {
+        List<Map.Entry<String, Histogram>> entries = new ArrayList<>();
+        for (Map.Entry<String, Histogram> entry : sections.entrySet()) {
+            if (!isHidden(entry.getKey())) {
+                entries.add(entry);
             }
         }
+        entries.sort((e1, e2) -> Long.compare(e2.getValue().getTotal(), e1.getValue().getTotal()));
+        Map<String, Histogram> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Histogram> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
     }
 
-    private static String withSpaces(String name, int len) {
-        StringBuilder nameBuilder = new StringBuilder(name);
-        while (nameBuilder.length() < len) {
-            nameBuilder.append(" ");
+    /**
+     * Removes all the recorded durations.
+     */
+    public static void reset() {
+        sections.clear();
+    }
+
+    /**
+     * Returns the report of the recorded durations, as lines of text. Durations are in milliseconds.
+     *
+     * @return the lines of the report
+     */
+    public static List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add(withSpaces("Name", 40) + withSpaces("Count", 8, true) + withSpaces("Total", 12, true) +
+                withSpaces("Average", 11, true) + withSpaces("p50", 11, true) + withSpaces("p90", 11, true) +
+                withSpaces("p99", 11, true) + withSpaces("Max", 11, true));
+        lines.add(withSpaces("-----------", 40) + withSpaces("-------", 8, true) + withSpaces("----------", 12, true) +
+                withSpaces("---------", 11, true) + withSpaces("---------", 11, true) + withSpaces("---------", 11, true) +
+                withSpaces("---------", 11, true) + withSpaces("---------", 11, true));
+        for (Map.Entry<String, Histogram> entry : getSections().entrySet()) {
+            Histogram histogram = entry.getValue();
+            lines.add(withSpaces(entry.getKey(), 40) + withSpaces(Long.toString(histogram.getCount()), 8, true) +
+                    withSpaces(toMillis(histogram.getTotal()), 12, true) +
+                    withSpaces(toMillis(histogram.getMean()), 11, true) +
+                    withSpaces(toMillis(histogram.getValueAtPercentile(50)), 11, true) +
+                    withSpaces(toMillis(histogram.getValueAtPercentile(90)), 11, true) +
+                    withSpaces(toMillis(histogram.getValueAtPercentile(99)), 11, true) +
+                    withSpaces(toMillis(histogram.getMax()), 11, true));
         }
-        name = nameBuilder.toString();
-        return name;
+        return lines;
     }
 
-    static class ValueComparator implements Comparator<String> {
+    /**
+     * Prints the report of the recorded durations to the standard output.
+     */
+    public static void print() {
+        if (!ENABLED) {
+            return;
+        }
+        for (String line : getReport()) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Writes the recorded durations as CSV, one line per section. Durations are in nanoseconds.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if an error occurred while writing
+     */
+    public static void exportCsv(Writer writer) throws IOException {
+        writer.write("name,count,total,min,average,p50,p90,p99,max\n");
+        for (Map.Entry<String, Histogram> entry : getSections().entrySet()) {
+            Histogram histogram = entry.getValue();
+            String name = entry.getKey();
+            if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0) {
+                name = '"' + name.replace("\"", "\"\"") + '"';
+            }
+            writer.write(name + ',' + histogram.getCount() + ',' + histogram.getTotal() + ',' + histogram.getMin() + ',' +
+                    Math.round(histogram.getMean()) + ',' + histogram.getValueAtPercentile(50) + ',' +
+                    histogram.getValueAtPercentile(90) + ',' + histogram.getValueAtPercentile(99) + ',' +
+                    histogram.getMax() + '\n');
+        }
+        writer.flush();
+    }
 
-        Map<String, Long> base;
-        public ValueComparator(Map<String, Long> base) {
-            this.base = base;
+    /**
+     * Prints the report and exports it to the CSV file specified by the <code>trolcommander.profiler.csv</code>
+     * system property, if any.
+     */
+    private static void dump() {
+        print();
+        String csvPath = System.getProperty("trolcommander.profiler.csv");
+        if (csvPath == null || csvPath.isEmpty()) {
+            return;
         }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(csvPath), StandardCharsets.UTF_8)) {
+            exportCsv(writer);
+        } catch (IOException e) {
+            System.err.println("Can't export profiler report to " + csvPath + ": " + e);
+        }
+    }
+
+    private static boolean isHidden(String name) {
+        for (String hiddenName : hiddenGroups) {
+            if (name.contains(hiddenName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toMillis(double nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1000000);
+    }
+
+    private static String withSpaces(String name, int len) {
+        return withSpaces(name, len, false);
+    }
 
-        // Note: this comparator imposes orderings that are inconsistent with equals.
-        @Override
-        public int compare(String a, String b) {
-            if (base.get(a) >= base.get(b)) {
-                return -1;
-            } else {
-                return 1;
-            } // returning 0 would merge keys
+    private static String withSpaces(String name, int len, boolean alignRight) {
+        StringBuilder nameBuilder = new StringBuilder(len);
+        if (!alignRight) {
+            nameBuilder.append(name);
+        }
+        for (int i = name.length(); i < len; i++) {
+            nameBuilder.append(' ');
+        }
+        if (alignRight) {
+            nameBuilder.append(name);
         }
+        return nameBuilder.toString();
     }
 
     public static void hide(String name) {
@@ -154,32 +294,36 @@ public class Profiler {
     }
 
 
-/*
-    public static void printThreads() {
-        System.out.println("---------------------------");
-        Set<Thread> threads = Thread.getAllStackTraces().keySet();
-        for (Thread thread : threads) {
-            String s = thread2str(thread);
-            if (initThreads.contains(s)) {
-                continue;
-            }
-            System.out.println(s);
-        }
-        System.out.println("---------------------------");
-    }
+    /**
+     * A running section, that can be ended by any thread.
+     */
+    public static final class Span {
+        private static final AtomicIntegerFieldUpdater<Span> ENDED = AtomicIntegerFieldUpdater.newUpdater(Span.class, "ended");
 
-    public static void initThreads() {
-        if (initThreads.size() > 0) {
-            return;
+        private final String name;
+        private final long startTime;
+        /** 1 once the section has ended, updated with {@link #ENDED} */
+        private volatile int ended;
+
+        private Span(String name, long startTime) {
+            this.name = name;
+            this.startTime = startTime;
         }
-        Set<Thread> threads = Thread.getAllStackTraces().keySet();
-        for (Thread thread : threads) {
-            initThreads.add(thread2str(thread));
+
+        /**
+         * Ends this section and records its duration. Only the first call has an effect.
+         */
+        public void end() {
+            if (ENABLED) {
+                end(getTime());
+            }
         }
-    }
 
-    private static String thread2str(Thread thread) {
-        return thread.getId() + ":" + thread.getName() + ":" + thread.getState();
+        private void end(long endTime) {
+            if (name == null || !ENDED.compareAndSet(this, 0, 1)) {
+                return;
+            }
+            record(name, endTime - startTime);
+        }
     }
-*/
 }
@@ -112,6 +112,24 @@ public class SizeChooser extends JPanel {
         return SizeFormat.getUnitBytes(unitComboBox.getSelectedIndex())* (Integer) valueSpinner.getValue();
     }
 
+    /**
+     * Sets the current value, expressed in bytes. The largest unit the value is a multiple of is selected.
+     *
+     * @param bytes the new value expressed in bytes
+     */
+    public void setValue(long bytes) {
+        if (bytes <= 0) {
+            valueSpinner.setValue(0);
+            return;
+        }
+        int unit = SizeFormat.BYTE_UNIT;
+        while (unit < SizeFormat.GIGABYTE_UNIT && bytes % SizeFormat.getUnitBytes(unit + 1) == 0) {
+            unit++;
+        }
+        unitComboBox.setSelectedIndex(unit);
+        valueSpinner.setValue((int)Math.min(MAX_SPINNER_VALUE, bytes / SizeFormat.getUnitBytes(unit)));
+    }
+
 
     /**
      * Adds the specified ChangedListener to the list of registered listeners.
@@ -42,6 +42,7 @@ import javax.swing.ListCellRenderer;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
 
+import com.mucommander.profiler.Profiler;
 import com.mucommander.ui.combobox.TcComboBox;
 import com.mucommander.utils.MuLogging;
 import com.mucommander.utils.MuLogging.LogLevel;
@@ -81,6 +82,9 @@ public class DebugConsoleDialog extends FocusDialog implements ActionListener, I
     /** Show active threads tree */
     private final JButton btnActiveThreads;
 
+    /** Show profiler report, <code>null</code> if the profiler is disabled */
+    private final JButton btnProfiler;
+
     /** Dialog size constraints */
     private final static Dimension MINIMUM_DIALOG_DIMENSION = new Dimension(600, 400);
 
@@ -119,6 +123,14 @@ public class DebugConsoleDialog extends FocusDialog implements ActionListener, I
         btnActiveThreads.addActionListener(this);
         buttonPanel.add(btnActiveThreads);
 
+        if (Profiler.ENABLED) {
+            btnProfiler = new JButton(i18n("debug_console_dialog.profiler"));
+            btnProfiler.addActionListener(this);
+            buttonPanel.add(btnProfiler);
+        } else {
+            btnProfiler = null;
+        }
+
         btnRefresh = new JButton(new RefreshAction.Descriptor().getLabel());
         btnRefresh.addActionListener(this);
         buttonPanel.add(btnRefresh);
@@ -197,6 +209,8 @@ public class DebugConsoleDialog extends FocusDialog implements ActionListener, I
             printThreads(false);
         } else if (source == btnActiveThreads) {
             printThreads(true);
+        } else if (source == btnProfiler) {
+            printProfilerReport();
         }
     }
 
@@ -216,6 +230,15 @@ public class DebugConsoleDialog extends FocusDialog implements ActionListener, I
     }
 
 
+    private void printProfilerReport() {
+        DefaultListModel<LoggingEvent> model = (DefaultListModel<LoggingEvent>)loggingEventsList.getModel();
+        for (String line : Profiler.getReport()) {
+            model.addElement(buildStringEvent(LogLevel.INFO, line));
+        }
+        loggingEventsList.ensureIndexIsVisible(model.getSize() - 1);
+    }
+
+
     private static LoggingEvent buildStringEvent(final LogLevel level, final String s) {
         return new LoggingEvent() {
 
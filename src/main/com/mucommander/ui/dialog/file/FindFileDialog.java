@@ -24,6 +24,7 @@ import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.conf.TcConfigurations;
 import com.mucommander.conf.TcPreference;
+import com.mucommander.conf.TcPreferences;
 import com.mucommander.conf.TcPreferencesAPI;
 import com.mucommander.job.FileJob;
 import com.mucommander.job.FindFileJob;
@@ -56,6 +57,7 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.event.*;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -70,6 +72,9 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
     /** How often should progress information be refreshed (in ms) */
     private final static int REFRESH_RATE = 200;
 
+    /** Maximum number of found files added to the list at once */
+    private final static int MAX_RESULTS_BATCH_SIZE = 256;
+
     private final MainFrame mainFrame;
     private FindFileJob job;
     private final SpinningDial dial;
@@ -101,17 +106,36 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
 
     private class UpdateRunner extends SwingWorker<List<AbstractFile>, AbstractFile> {
 
+        private final FindFileJob searchJob;
+
+        UpdateRunner(FindFileJob searchJob) {
+            this.searchJob = searchJob;
+        }
+
         @Override
         protected List<AbstractFile> doInBackground() {
             btnNewSearch.setEnabled(false);
-            while (job != null && job.getState() != FileJob.State.FINISHED) {
-                checkUpdates();
+            List<AbstractFile> batch = new ArrayList<>(MAX_RESULTS_BATCH_SIZE);
+            while (!isCancelled()) {
+                // The state is read before polling so that files found before the job ended are not missed
+                FileJob.State state = searchJob.getState();
+                boolean ended = state == FileJob.State.FINISHED || state == FileJob.State.INTERRUPTED;
                 try {
-                    Thread.sleep(REFRESH_RATE);
-                } catch(InterruptedException ignore) {}
+                    searchJob.pollResults(batch, MAX_RESULTS_BATCH_SIZE, REFRESH_RATE);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (!batch.isEmpty()) {
+                    publish(batch.toArray(new AbstractFile[batch.size()]));
+                    batch.clear();
+                } else if (ended) {
+                    break;
+                }
+            }
+            // A new search may have been started in the meantime
+            if (job == searchJob) {
+                job = null;
             }
-            checkUpdates();
-            job = null;
             return null;
         }
 
@@ -129,21 +153,8 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
                     break;
                 }
                 listModel.addElement(f);
-                updateResultLabel();
-            }
-        }
-
-        private void checkUpdates() {
-            if (job == null) {
-                return;
-            }
-            final List<AbstractFile> jobResults = job.getResults();
-            synchronized (job) {
-                for (int i = listModel.size(); i < jobResults.size(); i++) {
-                    AbstractFile f = jobResults.get(i);
-                    publish(f);
-                }
             }
+            updateResultLabel();
         }
 
     }
@@ -380,6 +391,7 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
         showProgress(true);
         clearResults();
         job = new FindFileJob(mainFrame);
+        job.setMaxResults(TcConfigurations.getPreferences().getVariable(TcPreference.FIND_FILE_MAX_RESULTS, TcPreferences.DEFAULT_FIND_FILE_MAX_RESULTS));
         startDirectory = FileFactory.getFile(edtFromDirectory.getText());
         job.setStartDirectory(startDirectory);
         job.setup(edtFileName.getText(), edtText.getText(), cbSearchSubdirectories.isSelected(), cbSearchArchives.isSelected(),
@@ -388,7 +400,7 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
         updateResultLabel();
         job.start();
         updateButtons();
-        updateRunner = new UpdateRunner();
+        updateRunner = new UpdateRunner(job);
         updateRunner.execute();
     }
 
@@ -49,9 +49,11 @@ import com.mucommander.ui.main.statusbar.TaskWidget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mucommander.commons.io.BandwidthBudget;
 import com.mucommander.conf.TcConfigurations;
 import com.mucommander.conf.TcPreference;
 import com.mucommander.conf.TcPreferences;
+import com.mucommander.job.BandwidthManager;
 import com.mucommander.job.FileJob;
 import com.mucommander.job.FileJobListener;
 import com.mucommander.job.TransferFileJob;
@@ -104,6 +106,10 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
     private JLabel lblCurrentSpeed;
     private JCheckBox cbLimitSpeed;
     private SizeChooser speedChooser;
+    /** Budgets shared with the other jobs, and the components to change their limits */
+    private BandwidthBudget[] bandwidthBudgets;
+    private JCheckBox[] cbLimitBudgets;
+    private SizeChooser[] budgetChoosers;
     private JLabel lblElapsedTime;
 
     private SpeedGraph speedGraph;
@@ -218,6 +224,31 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             // panel height can't be greater than speedChooser height
             tempPanel2.setMaximumSize(new Dimension(tempPanel2.getMaximumSize().width, speedChooser.getPreferredSize().height));
 
+            // Limits shared with the other jobs
+            bandwidthBudgets = transferFileJob.getBandwidthBudgets();
+            cbLimitBudgets = new JCheckBox[bandwidthBudgets.length];
+            budgetChoosers = new SizeChooser[bandwidthBudgets.length];
+            for (int i = 0; i < bandwidthBudgets.length; i++) {
+                BandwidthBudget budget = bandwidthBudgets[i];
+                boolean limited = budget.getThroughputLimit() > 0;
+                String label = budget == BandwidthManager.getNetworkBudget() ? i18n("progress_dialog.limit_network_speed") :
+                        i18n("progress_dialog.limit_protocol_speed", budget.getName().toUpperCase());
+                cbLimitBudgets[i] = new JCheckBox(label + ":", limited);
+                cbLimitBudgets[i].addItemListener(this);
+
+                budgetChoosers[i] = new SizeChooser(true);
+                budgetChoosers[i].setValue(budget.getThroughputLimit());
+                budgetChoosers[i].setEnabled(limited);
+                budgetChoosers[i].addChangeListener(this);
+
+                JPanel budgetPanel = new JPanel(new BorderLayout());
+                budgetPanel.add(cbLimitBudgets[i], BorderLayout.WEST);
+                budgetPanel.add(budgetChoosers[i], BorderLayout.EAST);
+                budgetPanel.setMaximumSize(new Dimension(budgetPanel.getMaximumSize().width, budgetChoosers[i].getPreferredSize().height));
+                advancedPanel.add(budgetPanel);
+                advancedPanel.addSpace(5);
+            }
+
             collapseExpandButton = new CollapseExpandButton(i18n("progress_dialog.advanced"), advancedPanel, true);
             collapseExpandButton.setExpandedState(TcConfigurations.getPreferences().getVariable(TcPreference.PROGRESS_DIALOG_EXPANDED,
                                                                                    TcPreferences.DEFAULT_PROGRESS_DIALOG_EXPANDED));
@@ -311,6 +342,26 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
         transferFileJob.setThroughputLimit(cbLimitSpeed.isSelected() ? speedChooser.getValue() : -1);
     }
 
+    private void updateBandwidthLimit(int index) {
+        BandwidthManager.setThroughputLimit(bandwidthBudgets[index],
+                cbLimitBudgets[index].isSelected() ? budgetChoosers[index].getValue() : -1);
+    }
+
+    /**
+     * Returns the lowest of the job throughput limit and the limits it shares with other jobs, <code>-1</code> if
+     * there is none.
+     */
+    private long getEffectiveThroughputLimit() {
+        long bpsLimit = transferFileJob.getThroughputLimit();
+        for (BandwidthBudget budget : bandwidthBudgets) {
+            long budgetLimit = budget.getThroughputLimit();
+            if (budgetLimit > 0 && (bpsLimit <= 0 || budgetLimit < bpsLimit)) {
+                bpsLimit = budgetLimit;
+            }
+        }
+        return bpsLimit;
+    }
+
     private void updateCurrentSpeedLabel(String value) {
         lblCurrentSpeed.setText(i18n("progress_dialog.current_speed") + ": " + value);
     }
@@ -347,6 +398,10 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
                     btnSkip.setEnabled(false);
                     cbLimitSpeed.setEnabled(false);
                     speedChooser.setEnabled(false);
+                    for (int i = 0; i < bandwidthBudgets.length; i++) {
+                        cbLimitBudgets[i].setEnabled(false);
+                        budgetChoosers[i].setEnabled(false);
+                    }
                 }
             }
         } else if (newState == State.PAUSED) {
@@ -481,6 +536,12 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             speedChooser.setEnabled(isEnabled);
             updateThroughputLimit();
         }
+        for (int i = 0; cbLimitBudgets != null && i < cbLimitBudgets.length; i++) {
+            if (source == cbLimitBudgets[i]) {
+                budgetChoosers[i].setEnabled(cbLimitBudgets[i].isSelected());
+                updateBandwidthLimit(i);
+            }
+        }
     }
 
 
@@ -489,6 +550,11 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
         if (e.getSource() == speedChooser) {
             updateThroughputLimit();
         }
+        for (int i = 0; budgetChoosers != null && i < budgetChoosers.length; i++) {
+            if (e.getSource() == budgetChoosers[i]) {
+                updateBandwidthLimit(i);
+            }
+        }
     }
 
 
@@ -606,7 +672,7 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
                 float yRatio = maxBps/((float)height-2*STROKE_WIDTH);
 
                 // Draw throughput limit as an horizontal line, only if there is a limit
-                long bpsLimit = transferFileJob.getThroughputLimit();
+                long bpsLimit = getEffectiveThroughputLimit();
                 if (bpsLimit > 0) {
                     g.setColor(BPS_LIMIT_COLOR);
                     int y = height-STROKE_WIDTH - (int)(bpsLimit/yRatio);
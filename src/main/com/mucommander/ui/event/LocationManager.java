@@ -18,6 +18,10 @@
 
 package com.mucommander.ui.event;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -86,6 +90,47 @@ public class LocationManager {
         }
     }
 
+    /**
+     * Updates the presented folder with the children that have been created, deleted or modified, without listing
+     * the whole folder again. Changed children that don't exist anymore or that are filtered out are removed.
+     *
+     * <p>This method is I/O-bound: the changed children are resolved in the calling thread.
+     *
+     * @param deletedNames names of the children that have been deleted
+     * @param changedNames names of the children that have been created or modified
+     * @return <code>false</code> if the changes could not be applied, in which case the folder must be refreshed
+     */
+    public boolean updateCurrentFolder(Collection<String> deletedNames, Collection<String> changedNames) {
+        AbstractFile folder = currentFolder;
+        if (folder == null) {
+            return false;
+        }
+        List<String> removedNames = new ArrayList<>(deletedNames);
+        List<AbstractFile> changedFiles = new ArrayList<>(changedNames.size());
+        for (String name : changedNames) {
+            AbstractFile child;
+            try {
+                child = folder.getDirectChild(name);
+            } catch (IOException e) {
+                LOGGER.debug("Couldn't resolve " + name + " in " + folder.getAbsolutePath(), e);
+                return false;
+            }
+            if (child.exists() && configurableFolderFilter.match(child)) {
+                changedFiles.add(child);
+            } else {
+                removedNames.add(name);
+            }
+        }
+
+        if (!folderPanel.updateCurrentFolder(folder, removedNames, changedFiles)) {
+            return false;
+        }
+        if (!deletedNames.isEmpty() || !changedNames.isEmpty()) {
+            folderPanel.getFoldersTreePanel().refreshFolder(folder);
+        }
+        return true;
+    }
+
     private static AbstractFile[] safeLs(AbstractFile folder, FileFilter filter) {
         LOGGER.trace("calling ls()");
         try {
@@ -157,7 +157,7 @@ public class FileIcons {
      * @param file the file for which an icon is to be returned
      * @return a custom icon for the given file
      */
-    private static Icon getCustomFileIcon(AbstractFile file) {
+    public static Icon getCustomFileIcon(AbstractFile file) {
         return getCustomFileIcon(file, iconDimension);
     }
 
@@ -56,6 +56,7 @@ import java.awt.dnd.DropTarget;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.KeyEvent;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -419,6 +420,18 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
         }
     }
 
+    /**
+     * Applies changes of the current folder's contents to the table without listing the whole folder again.
+     *
+     * @param folder the folder the changes apply to
+     * @param removedNames names of the files that are no longer in the folder
+     * @param changedFiles files that have been created or modified in the folder
+     * @return <code>false</code> if the table doesn't display the given folder anymore and nothing was changed
+     */
+    public boolean updateCurrentFolder(AbstractFile folder, Collection<String> removedNames, Collection<AbstractFile> changedFiles) {
+        return fileTable.updateCurrentFolder(folder, removedNames, changedFiles);
+    }
+
     /**
      * Shows the pop up which is located the given index in fileTablePopups.
      * 
@@ -18,7 +18,7 @@
 
 package com.mucommander.ui.main.statusbar;
 
-import com.mucommander.cache.FastLRUCache;
+import com.mucommander.cache.ConcurrentLRUCache;
 import com.mucommander.cache.LRUCache;
 import com.mucommander.commons.conf.ConfigurationEvent;
 import com.mucommander.commons.conf.ConfigurationListener;
@@ -116,7 +116,7 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
 
     /** Caches volume info strings (free/total space) for a while, since this information is expensive to retrieve
      * (I/O bound). This map uses folders' volume path as its key. */
-    private static final LRUCache<String, Long[]> volumeInfoCache = new FastLRUCache<>(VOLUME_INFO_CACHE_CAPACITY);
+    private static final LRUCache<String, Long[]> volumeInfoCache = new ConcurrentLRUCache<>(VOLUME_INFO_CACHE_CAPACITY);
 	
     /** Icon that is displayed when folder is changing */
     public final static String WAITING_ICON = "waiting.png";
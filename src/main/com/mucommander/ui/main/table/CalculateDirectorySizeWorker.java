@@ -18,11 +18,14 @@
 package com.mucommander.ui.main.table;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.job.utils.DirectoryScanner;
 import com.mucommander.ui.main.table.views.BaseFileTableModel;
 
 import javax.swing.SwingWorker;
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author Oleg Trifonov
@@ -35,8 +38,8 @@ public class CalculateDirectorySizeWorker extends SwingWorker<Long, Long> {
     private final BaseFileTableModel fileTableModel;
     private final AbstractFile path;
     private final FileTable table;
-    private long size;
-    private long lastRefreshTime;
+    private final DirectoryScanner scanner = new DirectoryScanner(true);
+    private volatile long size;
 
     public CalculateDirectorySizeWorker(BaseFileTableModel fileTableModel, FileTable table, AbstractFile path) {
         this.fileTableModel = fileTableModel;
@@ -47,8 +50,24 @@ public class CalculateDirectorySizeWorker extends SwingWorker<Long, Long> {
     @Override
     protected Long doInBackground() {
         size = 0;
+        ForkJoinTask<?> task = scanner.start(path);
         try {
-            calcDirectorySize(path);
+            while (true) {
+                try {
+                    task.get(REFRESH_RATE_MS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    if (isCancelled()) {
+                        scanner.cancel();
+                        break;
+                    }
+                    size = scanner.getTotalBytes();
+                    publish(size);
+                }
+            }
+            size = scanner.getTotalBytes();
+        } catch (InterruptedException e) {
+            scanner.cancel();
         } catch (Exception e) {
             e.printStackTrace();
             size = -1;
@@ -71,38 +90,6 @@ public class CalculateDirectorySizeWorker extends SwingWorker<Long, Long> {
         table.updateSelectedFilesStatusBar();
     }
 
-    private void calcDirectorySize(AbstractFile path) throws IOException {
-        if (isCancelled()) {
-            return;
-        }
-        long tm = System.currentTimeMillis();
-        if (tm - lastRefreshTime > REFRESH_RATE_MS) {
-            lastRefreshTime = tm;
-            publish(size);
-        }
-        if (path.isSymlink() && path != this.path) {
-            return;
-        }
-        AbstractFile[] childs;
-        try {
-            childs = path.ls();
-        } catch (IOException e) {
-            return;
-        }
-        for (AbstractFile f : childs) {
-            if (isCancelled()) {
-                return;
-            }
-            if (f.isDirectory()) {
-                calcDirectorySize(f);
-            } else if (!f.isSymlink()) {
-                size += f.getSize();
-            }
-        }
-
-    }
-
-
     public AbstractFile getFile() {
         return path;
     }
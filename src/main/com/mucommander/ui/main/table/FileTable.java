@@ -20,6 +20,7 @@ package com.mucommander.ui.main.table;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.WeakHashMap;
 
@@ -630,14 +631,45 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
         // Wait for the getTask to complete, so that we return only when the folder has actually been changed and the
         // table updated to reflect the new folder.
+        invokeAndWait(folderChangeThread);
+    }
+
+    /**
+     * Applies changes of the current folder's contents to the table without listing the whole folder again, see
+     * {@link BaseFileTableModel#updateFiles(Collection, Collection)}. The currently selected file remains selected
+     * if it still exists, the closest row is selected otherwise.
+     *
+     * <p>
+     * This method returns only when the table has actually been updated.<br>
+     * <b>Important:</b> as {@link #setCurrentFolder(AbstractFile, AbstractFile[], AbstractFile)}, this method should
+     * only be called by {@link FolderPanel}.
+     *
+     * @param folder the folder the changes apply to
+     * @param removedNames names of the files that are no longer in the folder
+     * @param changedFiles files that have been created or modified in the folder
+     * @return <code>false</code> if the table doesn't display the given folder anymore and nothing was changed
+     */
+    public boolean updateCurrentFolder(AbstractFile folder, Collection<String> removedNames, Collection<AbstractFile> changedFiles) {
+        FolderUpdateThread folderUpdateThread = new FolderUpdateThread(folder, removedNames, changedFiles);
+        invokeAndWait(folderUpdateThread);
+        return folderUpdateThread.updated;
+    }
+
+    /**
+     * Runs the given task in the event dispatch thread and waits for it to complete. The task must call
+     * <code>notify()</code> on itself when done.
+     *
+     * @param task the task to run
+     */
+    private static void invokeAndWait(Runnable task) {
         // Note: we use a wait/notify scheme rather than calling SwingUtilities#invokeAndWait to avoid deadlocks
         // due to AWT thread synchronization issues.
-        synchronized(folderChangeThread) {
-            SwingUtilities.invokeLater(folderChangeThread);
+        synchronized(task) {
+            SwingUtilities.invokeLater(task);
             while(true) {
                 try {
-                    // FolderChangeThread will call notify when done
-                    folderChangeThread.wait();
+                    // The task will call notify when done
+                    task.wait();
                     break;
                 } catch (InterruptedException e) {
                     // will keep looping
@@ -2357,6 +2389,58 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         }
     }
 
+    /**
+     * This thread applies changes of the current folder's contents to the table.
+     */
+    private class FolderUpdateThread implements Runnable {
+        private final AbstractFile folder;
+        private final Collection<String> removedNames;
+        private final Collection<AbstractFile> changedFiles;
+        private boolean updated;
+
+        private FolderUpdateThread(AbstractFile folder, Collection<String> removedNames, Collection<AbstractFile> changedFiles) {
+            this.folder = folder;
+            this.removedNames = removedNames;
+            this.changedFiles = changedFiles;
+        }
+
+        public void run() {
+            try {
+                // The folder may have been changed in the meantime
+                if (!folder.equals(tableModel.getCurrentFolder())) {
+                    return;
+                }
+                int currentIndex = tableModel.getFileIndexAt(currentRow, currentColumn);
+                AbstractFile selectedFile = getSelectedFile();
+                int nbMarkedFiles = tableModel.getNbMarkedFiles();
+
+                tableModel.updateFiles(removedNames, changedFiles);
+                updated = true;
+
+                int indexToSelect = selectedFile == null ? -1 : tableModel.getFileIndex(selectedFile);
+                if (indexToSelect < 0) {
+                    int filesCount = tableModel.getFilesCount();
+                    indexToSelect = currentIndex < filesCount ? currentIndex : filesCount - 1;
+                }
+                selectFile(indexToSelect);
+                fireSelectedFileChangedEvent();
+
+                if (nbMarkedFiles > 0) {
+                    fireMarkedFilesChangedEvent();
+                }
+                resizeAndRepaint();
+            } catch (Throwable e) {
+                // Make sure no exception is propagated to the AWT event dispatch thread
+                getLogger().warn("Caught exception while updating folder, this should not happen!", e);
+            } finally {
+                // Notify #updateCurrentFolder that we're done
+                synchronized(this) {
+                    notify();
+                }
+            }
+        }
+    }
+
     void updateSelectedFilesStatusBar() {
         mainFrame.getStatusBar().updateSelectedFilesInfo();
     }
@@ -134,6 +134,15 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
      */
     protected abstract void initCellValuesCache();
 
+    /**
+     * Rebuilds the cell cache after files have been added to or removed from the model by
+     * {@link #updateFiles(Collection, Collection)}, keeping the cached values of the files that are still present.
+     *
+     * @param oldToNewIndex new index of each file in the previous cachedFiles array, <code>-1</code> for files that
+     * have been removed or replaced
+     */
+    protected abstract void remapCellValuesCache(int[] oldToNewIndex);
+
     /**
      * Returns index of file in directory (index of '..' == 0)
      * @param row table row
@@ -292,9 +301,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
      * Sorts rows by the current criterion, ascending/descending order and 'folders first' value.
      */
     public synchronized void sortRows() {
-        this.fileComparator = createFileComparator(sortInfo);
-        sort(0, fileArrayIndex.length - 1);
-        this.fileComparator = null;
+        createFileComparator(sortInfo).sort(cachedFiles, fileArrayIndex);
     }
 
 
@@ -309,65 +316,6 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     }
 
 
-    /**
-     * Quick sort implementation, based on James Gosling's implementation.
-     */
-    protected void sort(int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
-
-        if (lo >= hi) {
-            return;
-        } else if (lo == hi - 1) {
-            // sort a two element list by swapping if necessary
-            int loIndex = fileArrayIndex[lo];
-            int hiIndex = fileArrayIndex[hi];
-            if (compare(loIndex, hiIndex) > 0) {
-                fileArrayIndex[lo] = hiIndex;
-                fileArrayIndex[hi] = loIndex;
-            }
-            return;
-        }
-
-        // Pick a pivot and move it out of the way
-        int pivotIndex = fileArrayIndex[(lo + hi) / 2];
-        fileArrayIndex[(lo + hi) / 2] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        while (lo < hi) {
-            // Search forward from files[lo] until an element is found that
-            // is greater than the pivot or lo >= hi
-            //while (compare(cachedFiles[fileArrayIndex[lo]], pivot)<=0 && lo < hi) {
-            while (compare(fileArrayIndex[lo], pivotIndex) <= 0 && lo < hi) {
-                lo++;
-            }
-
-            // Search backward from files[hi] until element is found that
-            // is less than the pivot, or lo >= hi
-            //while (compare(pivot, cachedFiles[fileArrayIndex[hi]])<=0 && lo < hi ) {
-            while (compare(pivotIndex, fileArrayIndex[hi]) <= 0 && lo < hi ) {
-                hi--;
-            }
-
-            // Swap elements files[lo] and files[hi]
-            if (lo < hi) {
-                int temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
-            }
-        }
-
-        // Put the median in the "center" of the list
-        fileArrayIndex[hi0] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        // Recursive calls, elements files[lo0] to files[lo-1] are less than or
-        // equal to pivot, elements files[hi+1] to files[hi0] are greater than pivot.
-        sort(lo0, lo-1);
-        sort(hi+1, hi0);
-    }
-
-
     private int compare(int index1, int index2) {
         if (index1 == index2) {
             return 0;
@@ -452,6 +400,152 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         fillCellCache(table);
     }
 
+    /**
+     * Applies changes of the current folder's contents without listing and sorting the whole folder again.
+     * Files whose name is in <code>removedNames</code> are dropped, files of <code>changedFiles</code> are inserted
+     * at their sorted position, found by binary search, replacing the file of the same name if there is one
+     * (i.e. modified files are moved to their new position). Marked files remain marked.
+     *
+     * <p>Changing k files costs O(k log n) comparisons, the rest of the folder is neither compared nor re-fetched.
+     * The rows are deliberately kept in arrays, which the table reads in O(1) for every painted cell, so they are
+     * copied once per call: this is O(n) but only moves references, a single change included. Registered listeners
+     * are notified of the removed and inserted rows.
+     *
+     * @param removedNames names of the files that are no longer in the current folder
+     * @param changedFiles files that have been created or modified in the current folder
+     */
+    public synchronized void updateFiles(Collection<String> removedNames, Collection<AbstractFile> changedFiles) {
+        int nbFiles = cachedFiles.length;
+        Set<String> names = new HashSet<>(removedNames);
+        for (AbstractFile file : changedFiles) {
+            names.add(file.getName());
+        }
+
+        // Find the files to drop and unmark them, replaced files will be marked again once inserted
+        Set<String> markedNames = new HashSet<>();
+        boolean[] dropped = new boolean[nbFiles];
+        int nbDropped = 0;
+        for (int i = 0; i < nbFiles && nbDropped < names.size(); i++) {
+            String name = cachedFiles[i].getName();
+            if (names.contains(name)) {
+                dropped[i] = true;
+                nbDropped++;
+                if (fileMarked[i]) {
+                    updateMarkedTotals(cachedFiles[i], false);
+                    markedDirectories.remove(cachedFiles[i]);
+                    markedNames.add(name);
+                }
+            }
+        }
+
+        // Compact the remaining files, added files are appended at the end of cachedFiles
+        int newNbFiles = nbFiles - nbDropped + changedFiles.size();
+        AbstractFile[] newCachedFiles = new AbstractFile[newNbFiles];
+        boolean[] newFileMarked = new boolean[newNbFiles];
+        int[] oldToNewIndex = new int[nbFiles];
+        int index = 0;
+        for (int i = 0; i < nbFiles; i++) {
+            if (dropped[i]) {
+                oldToNewIndex[i] = -1;
+            } else {
+                newCachedFiles[index] = cachedFiles[i];
+                newFileMarked[index] = fileMarked[i];
+                oldToNewIndex[i] = index++;
+            }
+        }
+        int firstAddedIndex = index;
+        for (AbstractFile file : changedFiles) {
+            newCachedFiles[index++] = file instanceof CachedFile ? file : new CachedFile(file, true);
+        }
+
+        // Remove dropped files from the sorted index, keeping track of the rows they were displayed at
+        final int rowOffset = parent == null ? 0 : 1;
+        int[] removedRows = new int[nbDropped];
+        int[] newFileArrayIndex = new int[newNbFiles];
+        int nbSorted = 0;
+        int nbRemovedRows = 0;
+        for (int i = 0; i < fileArrayIndex.length; i++) {
+            int newIndex = oldToNewIndex[fileArrayIndex[i]];
+            if (newIndex < 0) {
+                removedRows[nbRemovedRows++] = i + rowOffset;
+            } else {
+                newFileArrayIndex[nbSorted++] = newIndex;
+            }
+        }
+
+        this.cachedFiles = newCachedFiles;
+        this.fileMarked = newFileMarked;
+
+        // Insert added files at their sorted position: sort them, find their positions among the remaining files by
+        // binary search, then merge both in a single pass, which also gives the rows they are inserted at
+        this.fileComparator = createFileComparator(sortInfo);
+        Integer[] addedFiles = new Integer[newNbFiles - firstAddedIndex];
+        for (int i = 0; i < addedFiles.length; i++) {
+            addedFiles[i] = firstAddedIndex + i;
+        }
+        Arrays.sort(addedFiles, this::compare);
+        int[] mergedFileArrayIndex = new int[newNbFiles];
+        int[] insertedRows = new int[addedFiles.length];
+        int nbMerged = 0;
+        int nbCopied = 0;
+        for (int i = 0; i < addedFiles.length; i++) {
+            int fileIndex = addedFiles[i];
+            // Positions don't decrease as the added files are sorted
+            int position = findInsertionPosition(newFileArrayIndex, nbSorted, fileIndex);
+            System.arraycopy(newFileArrayIndex, nbCopied, mergedFileArrayIndex, nbMerged, position - nbCopied);
+            nbMerged += position - nbCopied;
+            nbCopied = position;
+            insertedRows[i] = nbMerged + rowOffset;
+            mergedFileArrayIndex[nbMerged++] = fileIndex;
+            if (markedNames.contains(cachedFiles[fileIndex].getName())) {
+                fileMarked[fileIndex] = true;
+                updateMarkedTotals(cachedFiles[fileIndex], true);
+            }
+        }
+        System.arraycopy(newFileArrayIndex, nbCopied, mergedFileArrayIndex, nbMerged, nbSorted - nbCopied);
+        this.fileComparator = null;
+        this.fileArrayIndex = mergedFileArrayIndex;
+
+        remapCellValuesCache(oldToNewIndex);
+
+        fireFilesUpdated(removedRows, insertedRows);
+    }
+
+    /**
+     * Returns the position at which the given file must be inserted in the first <code>length</code> elements of the
+     * sorted index, after the files that are equal to it.
+     */
+    private int findInsertionPosition(int[] sortedIndex, int length, int fileIndex) {
+        int left = 0;
+        int right = length;
+        while (left < right) {
+            int mid = (left + right) >>> 1;
+            if (compare(sortedIndex[mid], fileIndex) <= 0) {
+                left = mid + 1;
+            } else {
+                right = mid;
+            }
+        }
+        return left;
+    }
+
+    /**
+     * Notifies listeners that files have been removed and inserted by {@link #updateFiles(Collection, Collection)}.
+     * The default implementation fires one event per row, first the removed rows in descending order, then the inserted
+     * rows in ascending order.
+     *
+     * @param removedRows rows the removed files were displayed at, in ascending order
+     * @param insertedRows rows the inserted files are displayed at, in ascending order
+     */
+    protected void fireFilesUpdated(int[] removedRows, int[] insertedRows) {
+        for (int i = removedRows.length - 1; i >= 0; i--) {
+            fireTableRowsDeleted(removedRows[i], removedRows[i]);
+        }
+        for (int row : insertedRows) {
+            fireTableRowsInserted(row, row);
+        }
+    }
+
     /**
      * Returns the date of the current folder, when it was set using
      * {@link #setCurrentFolder(com.mucommander.commons.file.AbstractFile, com.mucommander.commons.file.AbstractFile[], FileTable table)}.
@@ -758,8 +852,18 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
             return;
         }
 
-        AbstractFile file = getCachedFileAt(index);
+        updateMarkedTotals(getCachedFileAt(index), marked);
 
+        fileMarked[fileIndex] = marked;
+    }
+
+    /**
+     * Updates the number and combined size of marked files after the given file has been marked or unmarked.
+     *
+     * @param file the file that is being marked/unmarked
+     * @param marked <code>true</code> if the file is being marked, <code>false</code> if it is being unmarked
+     */
+    private void updateMarkedTotals(AbstractFile file, boolean marked) {
         // Do not call getSize() on directories, it's unnecessary and the value is most likely not cached by CachedFile yet
         long fileSize;
 
@@ -787,8 +891,6 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
 
             nbFilesMarked--;
         }
-
-        fileMarked[fileIndex] = marked;
     }
 
 
@@ -107,6 +107,25 @@ public class CompactFileTableModel extends BaseFileTableModel {
         this.cellValuesCache = new String[getFileCount()];
     }
 
+    @Override
+    protected void remapCellValuesCache(int[] oldToNewIndex) {
+        String[] newCellValuesCache = new String[getFileCount()];
+        for (int i = 0; i < oldToNewIndex.length; i++) {
+            if (oldToNewIndex[i] >= 0 && i < cellValuesCache.length) {
+                newCellValuesCache[oldToNewIndex[i]] = cellValuesCache[i];
+            }
+        }
+        this.cellValuesCache = newCellValuesCache;
+    }
+
+    /**
+     * Files are laid out in columns, inserting or removing one moves all the following ones to another cell.
+     */
+    @Override
+    protected void fireFilesUpdated(int[] removedRows, int[] insertedRows) {
+        fireTableDataChanged();
+    }
+
     @Override
     public int getRowCount() {
         return visibleRows;
@@ -140,7 +140,7 @@ public class FileTableCellRenderer extends BaseCellRenderer {
             label.setIcon(row == 0 && tableModel.hasParentFolder()
                     ? IconManager.getIcon(IconManager.IconSet.FILE, CustomFileIconProvider.PARENT_FOLDER_ICON_NAME, FileIcons.getScaleFactor())
                     // : FileIcons.getFileIcon(file));
-                    : FileIconsCache.getInstance().getIcon(file));
+                    : FileIconsCache.getInstance().getIcon(file, table));
         } else {    // Any other column (name, date or size)
             String text = (String)value;
             Color foregroundColor;
@@ -65,6 +65,27 @@ public class FileTableModel extends BaseFileTableModel {
     }
 
 
+    @Override
+    protected void remapCellValuesCache(int[] oldToNewIndex) {
+        final int indexOffset = parent == null ? 0 : 1;
+        Object[][] newCellValuesCache = new Object[getRowCount()][];
+        if (parent != null && cellValuesCache.length > 0) {
+            newCellValuesCache[0] = cellValuesCache[0];
+        }
+        for (int i = 0; i < oldToNewIndex.length; i++) {
+            if (oldToNewIndex[i] >= 0 && i + indexOffset < cellValuesCache.length) {
+                newCellValuesCache[oldToNewIndex[i] + indexOffset] = cellValuesCache[i + indexOffset];
+            }
+        }
+        for (int i = 0; i < newCellValuesCache.length; i++) {
+            if (newCellValuesCache[i] == null) {
+                newCellValuesCache[i] = new Object[Column.values().length-1];
+            }
+        }
+        this.cellValuesCache = newCellValuesCache;
+    }
+
+
     /**
      * Retrieves all cell values and stores them in an array for fast access.
      */
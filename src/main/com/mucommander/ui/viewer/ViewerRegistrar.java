@@ -58,6 +58,8 @@ public class ViewerRegistrar {
         registerFileViewer(new com.mucommander.ui.viewer.image.ImageFactory());
         registerFileViewer(new AudioFactory());
         registerFileViewer(new com.mucommander.ui.viewer.html.HtmlFactory());
+        // Must be registered before the TextFactory which only warns about large files
+        registerFileViewer(new com.mucommander.ui.viewer.text.LargeTextFactory());
         registerFileViewer(new com.mucommander.ui.viewer.text.TextFactory());
         // The HexFactory must be the last FileViewer to be registered (otherwise it would open other factories file types)
         registerFileViewer(new com.mucommander.ui.viewer.hex.HexFactory());
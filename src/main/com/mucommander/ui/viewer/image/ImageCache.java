@@ -0,0 +1,178 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.image;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.ui.viewer.image.ImageDecoder.DecodedImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * LRU cache of the images decoded by an {@link ImageViewer}, bounded by the memory of their pixels.
+ *
+ * <p>The images next to the displayed one can be decoded ahead by {@link #prefetch(List, int, int)}, on a thread
+ * shared by all viewers. Requesting an image that is being prefetched waits for it instead of decoding it twice.
+ *
+ * @author Oleg Trifonov
+ */
+final class ImageCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageCache.class);
+
+    /** Maximum memory of the cached pixels, in bytes */
+    private static final long MAX_MEMORY_SIZE = Math.min(Runtime.getRuntime().maxMemory() / 8, 256L * 1024 * 1024);
+
+    private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Image prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /** Decoded images by file path, in access order */
+    private final Map<String, DecodedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long memorySize;
+
+    /** Prefetch tasks not completed yet, by file path */
+    private final Map<String, Future<DecodedImage>> prefetchTasks = new HashMap<>();
+
+
+    /**
+     * Returns the decoded image of a file, decoding it if it's neither cached nor being prefetched.
+     *
+     * @param file the image file
+     * @param maxWidth the width the image will be displayed at most, 0 for the full resolution
+     * @param maxHeight the height the image will be displayed at most, 0 for the full resolution
+     * @return the decoded image
+     * @throws IOException if the image could not be decoded
+     */
+    DecodedImage get(AbstractFile file, int maxWidth, int maxHeight) throws IOException {
+        String key = file.getAbsolutePath();
+        Future<DecodedImage> task;
+        synchronized (this) {
+            DecodedImage image = images.get(key);
+            if (image != null && image.isUsable(file, maxWidth, maxHeight)) {
+                return image;
+            }
+            task = prefetchTasks.get(key);
+        }
+        if (task != null) {
+            try {
+                DecodedImage image = task.get();
+                if (image != null && image.isUsable(file, maxWidth, maxHeight)) {
+                    return image;
+                }
+            } catch (CancellationException | ExecutionException e) {
+                LOGGER.debug("Prefetch of " + file + " failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        DecodedImage image = ImageDecoder.decode(file, maxWidth, maxHeight);
+        put(key, image);
+        return image;
+    }
+
+    /**
+     * Decodes ahead the given files that are not cached yet. Pending prefetches of other files are canceled.
+     *
+     * @param files the files that are likely to be displayed next, in order of priority
+     * @param maxWidth the width the images will be displayed at most
+     * @param maxHeight the height the images will be displayed at most
+     */
+    synchronized void prefetch(List<AbstractFile> files, int maxWidth, int maxHeight) {
+        Iterator<Map.Entry<String, Future<DecodedImage>>> iterator = prefetchTasks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Future<DecodedImage>> entry = iterator.next();
+            if (!containsPath(files, entry.getKey())) {
+                entry.getValue().cancel(false);
+                iterator.remove();
+            }
+        }
+        for (AbstractFile file : files) {
+            String key = file.getAbsolutePath();
+            DecodedImage image = images.get(key);
+            if ((image != null && image.isUsable(file, maxWidth, maxHeight)) || prefetchTasks.containsKey(key)) {
+                continue;
+            }
+            prefetchTasks.put(key, prefetchExecutor.submit(() -> {
+                try {
+                    DecodedImage decoded = ImageDecoder.decode(file, maxWidth, maxHeight);
+                    put(key, decoded);
+                    return decoded;
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.debug("Can't prefetch " + file, e);
+                    return null;
+                } finally {
+                    synchronized (ImageCache.this) {
+                        prefetchTasks.remove(key);
+                    }
+                }
+            }));
+        }
+    }
+
+    private static boolean containsPath(List<AbstractFile> files, String path) {
+        for (AbstractFile file : files) {
+            if (file.getAbsolutePath().equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void put(String key, DecodedImage image) {
+        DecodedImage old = images.put(key, image);
+        if (old != null) {
+            memorySize -= old.getMemorySize();
+        }
+        memorySize += image.getMemorySize();
+        // The most recent image is kept even if it's larger than the limit
+        Iterator<DecodedImage> iterator = images.values().iterator();
+        while (memorySize > MAX_MEMORY_SIZE && images.size() > 1) {
+            memorySize -= iterator.next().getMemorySize();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Cancels the pending prefetches and releases the cached images.
+     */
+    synchronized void clear() {
+        for (Future<DecodedImage> task : prefetchTasks.values()) {
+            task.cancel(false);
+        }
+        prefetchTasks.clear();
+        images.clear();
+        memorySize = 0;
+    }
+}
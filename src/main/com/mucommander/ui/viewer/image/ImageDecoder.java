@@ -0,0 +1,264 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.image;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.StreamUtils;
+import net.sf.image4j.codec.ico.ICODecoder;
+import org.apache.batik.transcoder.Transcoder;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.common.bytesource.ByteSource;
+import org.apache.commons.imaging.common.bytesource.ByteSourceArray;
+import org.apache.commons.imaging.common.bytesource.ByteSourceFile;
+import org.apache.commons.imaging.formats.pnm.PnmImageParser;
+import org.apache.commons.imaging.formats.psd.PsdImageParser;
+import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Decodes the image files supported by {@link ImageViewer}.
+ *
+ * <p>Images read by <code>ImageIO</code> are decoded with source subsampling so that the decoded image is not much
+ * larger than the requested size, a 50 megapixel photo displayed on a screen never gets decoded at full resolution.
+ * Other formats are decoded at full resolution.
+ *
+ * @author Oleg Trifonov
+ */
+final class ImageDecoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageDecoder.class);
+
+    static {
+        IIORegistry registry = IIORegistry.getDefaultInstance();
+        registry.registerServiceProvider(new com.realityinteractive.imageio.tga.TGAImageReaderSpi());
+    }
+
+    /**
+     * A decoded image with the properties of the original one.
+     */
+    static final class DecodedImage {
+        /** The decoded, possibly subsampled, image */
+        final BufferedImage image;
+        /** Width of the original image */
+        final int width;
+        /** Height of the original image */
+        final int height;
+        /** Only one pixel out of <code>subsampling</code> in each direction has been decoded */
+        final int subsampling;
+        /** Bits per pixel of the original image, or -1 if unknown */
+        final int bpp;
+        /** Date and size of the file when the image was decoded */
+        final long fileDate;
+        final long fileSize;
+
+        DecodedImage(BufferedImage image, int width, int height, int subsampling, int bpp, AbstractFile file) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+            this.subsampling = subsampling;
+            this.bpp = bpp;
+            this.fileDate = file.getLastModifiedDate();
+            this.fileSize = file.getSize();
+        }
+
+        /**
+         * Returns the approximate memory used by the pixels of the decoded image, in bytes.
+         */
+        long getMemorySize() {
+            DataBuffer buffer = image.getRaster().getDataBuffer();
+            return (long)buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        }
+
+        /**
+         * Returns <code>true</code> if this image was decoded from the current version of the file with enough
+         * resolution to be displayed with the given maximum size.
+         */
+        boolean isUsable(AbstractFile file, int maxWidth, int maxHeight) {
+            return fileDate == file.getLastModifiedDate() && fileSize == file.getSize() &&
+                    subsampling <= getSubsampling(width, height, maxWidth, maxHeight);
+        }
+    }
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * Returns the largest subsampling that keeps the image at least as large as needed to fit it in the given size.
+     *
+     * @param width the image width
+     * @param height the image height
+     * @param maxWidth the maximum displayed width, 0 for no limit
+     * @param maxHeight the maximum displayed height, 0 for no limit
+     * @return the subsampling, 1 to decode every pixel
+     */
+    static int getSubsampling(int width, int height, int maxWidth, int maxHeight) {
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            return 1;
+        }
+        return Math.max(1, (int)Math.max((double)width / maxWidth, (double)height / maxHeight));
+    }
+
+    /**
+     * Decodes an image.
+     *
+     * @param file the image file
+     * @param maxWidth the width the image will be displayed at most, 0 to decode the full resolution
+     * @param maxHeight the height the image will be displayed at most, 0 to decode the full resolution
+     * @return the decoded image
+     * @throws IOException if the file could not be read or decoded
+     */
+    static DecodedImage decode(AbstractFile file, int maxWidth, int maxHeight) throws IOException {
+        final String ext = file.getExtension() == null ? "" : file.getExtension().toLowerCase();
+        BufferedImage image;
+        int bpp = -1;
+        try {
+            if ("scr".equals(ext) && file.getSize() == ZxSpectrumScrImage.SCR_IMAGE_FILE_SIZE) {
+                try (InputStream is = file.getInputStream()) {
+                    image = ZxSpectrumScrImage.load(is);
+                }
+                bpp = 4;
+            } else if ("psd".equals(ext)) {
+                image = new PsdImageParser().getBufferedImage(getByteSource(file), null);
+            } else if ("tif".equals(ext) || "tiff".equals(ext)) {
+                image = new TiffImageParser().getBufferedImage(getByteSource(file), null);
+            } else if ("ico".equals(ext)) {
+                try (InputStream is = file.getInputStream()) {
+                    image = ICODecoder.read(is).get(0);
+                }
+            } else if ("pnm".equals(ext) || "pbm".equals(ext) || "pgm".equals(ext) || "ppm".equals(ext)) {
+                // TODO pBm raw format reading error
+                image = new PnmImageParser().getAllBufferedImages(getByteSource(file)).get(0);
+            } else if ("svg".equals(ext)) {
+                image = transcodeSVGDocument(file, 0, 0);
+            } else {
+                return decodeSubsampled(file, maxWidth, maxHeight);
+            }
+        } catch (ImageReadException e) {
+            throw new IOException("Image parsing error", e);
+        }
+        if (image == null) {
+            throw new IOException("Can't decode " + file);
+        }
+        return new DecodedImage(image, image.getWidth(), image.getHeight(), 1, bpp, file);
+    }
+
+    /**
+     * Returns a byte source reading local files in place instead of loading them into memory. Other files are loaded
+     * into memory and their stream is closed at once, as the parsers never close the stream of a byte source.
+     */
+    private static ByteSource getByteSource(AbstractFile file) throws IOException {
+        File localFile = getLocalFile(file);
+        if (localFile != null) {
+            return new ByteSourceFile(localFile);
+        }
+        long size = file.getSize();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int)size : 32 * 1024);
+        try (InputStream is = file.getInputStream()) {
+            StreamUtils.copyStream(is, out);
+        }
+        return new ByteSourceArray(file.getName(), out.toByteArray());
+    }
+
+    /**
+     * Returns the <code>java.io.File</code> of a local file, <code>null</code> for other files.
+     */
+    private static File getLocalFile(AbstractFile file) {
+        Object fileObject = file.getUnderlyingFileObject();
+        return fileObject instanceof File ? (File)fileObject : null;
+    }
+
+    private static DecodedImage decodeSubsampled(AbstractFile file, int maxWidth, int maxHeight) throws IOException {
+        // Local files are read in place, other files may be cached by ImageIO
+        File localFile = getLocalFile(file);
+        InputStream is = localFile == null ? file.getInputStream() : null;
+        try (ImageInputStream iis = ImageIO.createImageInputStream(localFile != null ? localFile : is)) {
+            Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = getSubsampling(width, height, maxWidth, maxHeight);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                LOGGER.trace("Decoded " + file + " " + width + "x" + height + " / " + subsampling);
+                return new DecodedImage(image, width, height, subsampling, image.getColorModel().getPixelSize(), file);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            if (is != null) {
+                is.close();
+            }
+        }
+    }
+
+    static BufferedImage transcodeSVGDocument(AbstractFile file, float width, float height) throws IOException {
+        // create a PNG transcoder.
+        Transcoder t = new PNGTranscoder();
+        // Set the transcoding hints.
+        if (width > 0) {
+            t.addTranscodingHint(PNGTranscoder.KEY_WIDTH, width);
+        }
+        if (height > 0) {
+            t.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, height);
+        }
+        t.addTranscodingHint(PNGTranscoder.KEY_XML_PARSER_VALIDATING, false);
+
+        try (InputStream istream = file.getInputStream(); ByteArrayOutputStream ostream = new ByteArrayOutputStream()) {
+            TranscoderInput input = new TranscoderInput(istream);
+            TranscoderOutput output = new TranscoderOutput(ostream);
+            // Save the image.
+            t.transcode(input, output);
+
+            // Flush and close the stream.
+            ostream.flush();
+
+            byte[] imgData = ostream.toByteArray();
+
+            // Return the newly rendered image.
+            return ImageIO.read(new ByteArrayInputStream(imgData));
+        } catch (TranscoderException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -22,17 +22,12 @@ package com.mucommander.ui.viewer.image;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import javax.imageio.ImageIO;
-import javax.imageio.spi.IIORegistry;
 import javax.swing.*;
 
 import com.mucommander.commons.file.AbstractFile;
@@ -48,16 +43,9 @@ import com.mucommander.ui.theme.ThemeListener;
 import com.mucommander.ui.theme.ThemeManager;
 import com.mucommander.ui.viewer.FileFrame;
 import com.mucommander.ui.viewer.FileViewer;
-import net.sf.image4j.codec.ico.ICODecoder;
-import org.apache.batik.transcoder.Transcoder;
-import org.apache.batik.transcoder.TranscoderException;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
-import org.apache.batik.transcoder.image.PNGTranscoder;
-import org.apache.commons.imaging.ImageReadException;
-import org.apache.commons.imaging.formats.pnm.PnmImageParser;
-import org.apache.commons.imaging.formats.psd.PsdImageParser;
-import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+import com.mucommander.ui.viewer.image.ImageDecoder.DecodedImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.trolsoft.ui.TMenuSeparator;
 
 //import org.apache.commons.imaging.Imaging;
@@ -71,12 +59,19 @@ import ru.trolsoft.ui.TMenuSeparator;
  */
 class ImageViewer extends FileViewer implements ActionListener {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageViewer.class);
+
     private static final Cursor CURSOR_WAIT = new Cursor(Cursor.WAIT_CURSOR);
     private static final Cursor CURSOR_DEFAULT = Cursor.getDefaultCursor();
     private static final Cursor CURSOR_CROSS = new Cursor(Cursor.CROSSHAIR_CURSOR);
 
     private BufferedImage image;
     //private BufferedImage scaledImage;
+    /** Size of the original image, the displayed image may have been subsampled */
+    private int originalWidth;
+    private int originalHeight;
+    /** Subsampling of the displayed image */
+    private int subsampling = 1;
     private double zoomFactor;
     private boolean vectorImage;
 	
@@ -90,6 +85,7 @@ class ImageViewer extends FileViewer implements ActionListener {
     private final JMenuItem zoomOutItem;
 
     private final ImageViewerImpl imageViewerImpl;
+    private final ImageCache imageCache = new ImageCache();
     private List<AbstractFile> filesInDirectory;
     private int indexInDirectory = -1;
 
@@ -104,11 +100,6 @@ class ImageViewer extends FileViewer implements ActionListener {
      */
     private boolean mouseMovementIssueFixed = false;
 
-    static {
-        IIORegistry registry = IIORegistry.getDefaultInstance();
-        registry.registerServiceProvider(new com.realityinteractive.imageio.tga.TGAImageReaderSpi());
-    }
-
 
     ImageViewer() {
     	imageViewerImpl = new ImageViewerImpl();
@@ -151,6 +142,7 @@ class ImageViewer extends FileViewer implements ActionListener {
 
     @Override
     protected void saveStateOnClose() {
+        imageCache.clear();
         // Run GC for big images
         if (image != null && image.getWidth()*image.getHeight() > 1024*200) {
             System.gc();
@@ -162,55 +154,35 @@ class ImageViewer extends FileViewer implements ActionListener {
 
     }
 
-    private synchronized void loadImage(AbstractFile file) throws IOException, ImageReadException {
+    private synchronized void loadImage(AbstractFile file) throws IOException {
         setFrameCursor(CURSOR_WAIT);
 
         if (statusBar != null) {
             statusBar.setFileSize(file.getSize());
             statusBar.setDateTime(file.getLastModifiedDate());
         }
-        int imageWidth, imageHeight;
 
-        final String ext = file.getExtension().toLowerCase();
-        if ("scr".equals(ext) && file.getSize() == ZxSpectrumScrImage.SCR_IMAGE_FILE_SIZE) {
-            this.image = ZxSpectrumScrImage.load(file.getInputStream());
-            if (statusBar != null) {
-                statusBar.setImageBpp(4);
-            }
-        } else if ("psd".equals(ext)) {
-            this.image = new PsdImageParser().getBufferedImage(loadFile(file), null);
-        } else if ("tif".equals(ext) || "tiff".equals(ext)) {
-            this.image = new TiffImageParser().getBufferedImage(loadFile(file), null);
-        } else if ("ico".equals(ext)) {
-            this.image = ICODecoder.read(file.getInputStream()).get(0);
-            //this.image = (BufferedImage) (new IcoImageParser().getAllBufferedImages(loadFile(file)).get(0));
-        } else if ("pnm".equals(ext) || "pbm".equals(ext) || "pgm".equals(ext) || "ppm".equals(ext)) {
-            // TODO pBm raw format reading error
-            this.image = new PnmImageParser().getAllBufferedImages(loadFile(file)).get(0);
-        } else if ("svg".equals(ext)) {
-            this.image = transcodeSVGDocument(file, 0, 0);
-        } else {
-            try (InputStream is = file.getInputStream()) {
-                this.image = ImageIO.read(is);
-            }
-            if (statusBar != null) {
-                statusBar.setImageBpp(image.getColorModel().getPixelSize());
-            }
-        }
-        vectorImage = "svg".equalsIgnoreCase(ext);
-        imageWidth = image.getWidth();
-        imageHeight = image.getHeight();
+        // The image is decoded with no more pixels than needed to fit the screen
+        Dimension screen = TcSnapshot.getScreenSize();
+        DecodedImage decodedImage = imageCache.get(file, screen.width, screen.height);
+        this.image = decodedImage.image;
+        this.subsampling = decodedImage.subsampling;
+        this.originalWidth = decodedImage.width;
+        this.originalHeight = decodedImage.height;
+        vectorImage = "svg".equalsIgnoreCase(file.getExtension());
         this.hasTransparentPixels = image.getColorModel().hasAlpha();
 
         if (statusBar != null) {
-            statusBar.setImageSize(imageWidth, imageHeight);
+            statusBar.setImageSize(originalWidth, originalHeight);
+            if (decodedImage.bpp >= 0) {
+                statusBar.setImageBpp(decodedImage.bpp);
+            }
         }
 
         this.zoomFactor = 1.0;
-        Dimension screen = TcSnapshot.getScreenSize();
 
-        double zoomFactorX = 1.0 * screen.width / imageWidth;
-        double zoomFactorY = 1.0 * screen.height / imageHeight;
+        double zoomFactorX = 1.0 * screen.width / originalWidth;
+        double zoomFactorY = 1.0 * screen.height / originalHeight;
         zoomFactor = Math.min(zoomFactorX, zoomFactorY);
         if (zoomFactor > 1.0) {
             zoomFactor = 1.0;
@@ -220,6 +192,7 @@ class ImageViewer extends FileViewer implements ActionListener {
         fixMouseMovementEventsIssue();
 
         checkNextPrev();
+        prefetchNeighbours(screen);
         setFrameCursor(CURSOR_DEFAULT);
 
         try {
@@ -229,22 +202,18 @@ class ImageViewer extends FileViewer implements ActionListener {
         }
     }
 
-
-    private static byte[] loadFile(AbstractFile file) {
-        byte[] data = new byte[(int) file.getSize()];
-        try (InputStream is = file.getInputStream()) {
-            int readTotal = 0;
-            while (readTotal < data.length) {
-                int bytesRead = is.read(data, readTotal, data.length - readTotal);
-                if (bytesRead < 0) {
-                    break;
-                }
-                readTotal += bytesRead;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Decodes the next and previous images in background to display them without delay.
+     */
+    private void prefetchNeighbours(Dimension screen) {
+        List<AbstractFile> neighbours = new ArrayList<>();
+        if (getNextFileIndex() >= 0) {
+            neighbours.add(filesInDirectory.get(getNextFileIndex()));
+        }
+        if (getPrevFileIndex() >= 0) {
+            neighbours.add(filesInDirectory.get(getPrevFileIndex()));
         }
-        return data;
+        imageCache.prefetch(neighbours, screen.width, screen.height);
     }
 
 
@@ -267,16 +236,24 @@ class ImageViewer extends FileViewer implements ActionListener {
     private synchronized void zoom(double factor) {
         setFrameCursor(CURSOR_WAIT);
 
-        final int srcWidth = image.getWidth(null);
-        final int srcHeight = image.getHeight(null);
-        final int scaledWidth = (int)(srcWidth*factor);
-        final int scaledHeight = (int)(srcHeight*factor);
-
+        final int scaledWidth = (int)(originalWidth*factor);
+        final int scaledHeight = (int)(originalHeight*factor);
+
+        AbstractFile file = filesInDirectory.get(indexInDirectory);
+        if (factor * subsampling > 1.0 && subsampling > 1) {
+            // Zoomed in beyond the resolution the image was decoded with
+            try {
+                DecodedImage decodedImage = imageCache.get(file, scaledWidth, scaledHeight);
+                this.image = decodedImage.image;
+                this.subsampling = decodedImage.subsampling;
+            } catch (IOException e) {
+                LOGGER.warn("Can't decode " + file, e);
+            }
+        }
         if (factor != 1.0) {
-            AbstractFile file = filesInDirectory.get(indexInDirectory);
             if ("svg".equalsIgnoreCase(file.getExtension())) {
                 try {
-                    this.image = transcodeSVGDocument(file, scaledWidth, scaledHeight);
+                    this.image = ImageDecoder.transcodeSVGDocument(file, scaledWidth, scaledHeight);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -367,12 +344,7 @@ class ImageViewer extends FileViewer implements ActionListener {
                 statusBar.setFileNumber(indexInDirectory + 1, filesInDirectory.size());
             }
         }
-        try {
-            loadImage(file);
-        } catch (ImageReadException e) {
-            e.printStackTrace();
-            throw new IOException("Image parsing error", e);
-        }
+        loadImage(file);
     }
 
     @Override
@@ -471,50 +443,18 @@ class ImageViewer extends FileViewer implements ActionListener {
     }
 
 
-    private static BufferedImage transcodeSVGDocument(AbstractFile file, float width, float height) throws IOException {
-        // create a PNG transcoder.
-        Transcoder t = new PNGTranscoder();
-        // Set the transcoding hints.
-        if (width > 0) {
-            t.addTranscodingHint(PNGTranscoder.KEY_WIDTH, width);
-        }
-        if (height > 0) {
-            t.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, height);
-        }
-        t.addTranscodingHint(PNGTranscoder.KEY_XML_PARSER_VALIDATING, false);
-
-        try (InputStream istream = file.getInputStream(); ByteArrayOutputStream ostream = new ByteArrayOutputStream()) {
-            TranscoderInput input = new TranscoderInput(istream);
-            TranscoderOutput output = new TranscoderOutput(ostream);
-            // Save the image.
-            t.transcode(input, output);
-
-            // Flush and close the stream.
-            ostream.flush();
-
-            byte[] imgData = ostream.toByteArray();
-
-            // Return the newly rendered image.
-            return ImageIO.read(new ByteArrayInputStream(imgData));
-        } catch (TranscoderException e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-
     private int getScaledWidth() {
         if (image == null) {
             return 0;
         }
-        return vectorImage ? image.getWidth() : (int)(zoomFactor*image.getWidth());
+        return vectorImage ? image.getWidth() : (int)(zoomFactor*originalWidth);
     }
 
     private int getScaledHeight() {
         if (image == null) {
             return 0;
         }
-        return vectorImage ? image.getHeight() : (int)(zoomFactor*image.getHeight());
+        return vectorImage ? image.getHeight() : (int)(zoomFactor*originalHeight);
     }
 
 
@@ -646,9 +586,10 @@ class ImageViewer extends FileViewer implements ActionListener {
             if (pixelY < 0 || pixelY >= h) {
                 return;
             }
+            // The displayed image may be scaled from a subsampled one
+            int color = image.getRGB(pixelX * image.getWidth() / w, pixelY * image.getHeight() / h);
             pixelX = (int)(pixelX/zoomFactor);
             pixelY = (int)(pixelY/zoomFactor);
-            int color = image.getRGB(pixelX, pixelY);
 //            int r = (color >> 16) & 0xff;
 //            int g = (color >> 8) & 0xff;
 //            int b = (color) & 0xff;
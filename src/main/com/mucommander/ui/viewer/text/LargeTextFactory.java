@@ -0,0 +1,70 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.io.BinaryDetector;
+import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.ui.viewer.FileViewer;
+import com.mucommander.ui.viewer.ViewerFactory;
+import com.mucommander.utils.text.Translator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+
+/**
+ * <code>ViewerFactory</code> implementation for creating {@link LargeTextViewer}s. It handles the text files that are
+ * too large for {@link TextFactory} and must be registered before it.
+ *
+ * @author Oleg Trifonov
+ */
+public class LargeTextFactory implements ViewerFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LargeTextFactory.class);
+
+    @Override
+    public boolean canViewFile(AbstractFile file) {
+        if (file.isDirectory() || file.getSize() <= TextFactory.FILE_SIZE_WARNING_THRESHOLD) {
+            return false;
+        }
+        // Lines are read from their indexed offsets
+        if (!file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
+            return false;
+        }
+        try {
+            PushbackInputStream is = file.getPushBackInputStream(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE);
+            return !BinaryDetector.guessBinary(is);
+        } catch (IOException e) {
+            LOGGER.debug("Can't read " + file, e);
+            return false;
+        }
+    }
+
+    @Override
+    public FileViewer createFileViewer() {
+        return new LargeTextViewer();
+    }
+
+    @Override
+    public String getName() {
+        return Translator.get("viewer_type.large_text");
+    }
+}
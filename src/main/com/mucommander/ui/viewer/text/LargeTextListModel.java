@@ -0,0 +1,341 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.io.bom.BOM;
+import com.mucommander.commons.io.bom.BOMInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.AbstractListModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * List model of the lines of a large text file. Lines are decoded by blocks of
+ * {@link TextLineIndex#LINES_PER_CHECKPOINT} when they're displayed and the most recently used blocks are cached.
+ *
+ * @author Oleg Trifonov
+ */
+final class LargeTextListModel extends AbstractListModel<String> implements Closeable {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LargeTextListModel.class);
+
+    /** Lines longer than this number of bytes are truncated */
+    static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    /** Maximum number of chars kept in the cache */
+    private static final int MAX_CACHED_CHARS = 4 * 1024 * 1024;
+
+    private static final int TAB_SIZE = 4;
+
+    private final RandomAccessInputStream in;
+    private final Charset charset;
+    private final long start;
+    private final TextLineIndex index;
+    private final byte[] buffer = new byte[TextLineIndex.BUFFER_SIZE];
+
+    /** Decoded blocks in access order */
+    private final Map<Integer, String[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedChars;
+
+    /** Number of lines published to the list */
+    private int size;
+
+
+    /**
+     * Creates a model reading the file from the given stream. If the encoding is a UTF one and the file starts with
+     * a byte order mark, the mark is skipped and the encoding it designates is used.
+     *
+     * @param in the stream to read the lines from, closed by {@link #close()}
+     * @param encoding a supported encoding
+     * @throws IOException if the beginning of the file could not be read
+     */
+    LargeTextListModel(RandomAccessInputStream in, String encoding) throws IOException {
+        this.in = in;
+        byte[] head = new byte[4];
+        in.seek(0);
+        int count = StreamUtils.readUpTo(in, head);
+        BOM bom = new BOMInputStream(new ByteArrayInputStream(head, 0, count)).getBOM();
+        if (bom != null && encoding.toLowerCase().startsWith("utf")) {
+            this.charset = Charset.forName(bom.getEncoding());
+            this.start = bom.getSignature().length;
+        } else {
+            this.charset = Charset.forName(encoding);
+            this.start = 0;
+        }
+        this.index = new TextLineIndex(getLineFeed(charset), start);
+    }
+
+    /**
+     * Returns the encoded line feed without the byte order mark some encoders write first.
+     */
+    private static byte[] getLineFeed(Charset charset) {
+        byte[] one = "\n".getBytes(charset);
+        int unit = "\n\n".getBytes(charset).length - one.length;
+        byte[] lineFeed = new byte[unit];
+        System.arraycopy(one, one.length - unit, lineFeed, 0, unit);
+        return lineFeed;
+    }
+
+    /**
+     * Builds the line index, see {@link TextLineIndex#build(java.io.InputStream)}.
+     *
+     * @param scanIn a stream on the same file, distinct from the one used to read the lines
+     * @throws IOException if an I/O error occurred or the current thread was interrupted
+     */
+    void buildIndex(RandomAccessInputStream scanIn) throws IOException {
+        scanIn.seek(start);
+        index.build(scanIn);
+    }
+
+    /**
+     * Publishes the lines indexed since the last call. Must be called from the event dispatch thread.
+     */
+    void update() {
+        int count = index.getLineCount();
+        if (count > size) {
+            int oldSize = size;
+            size = count;
+            fireIntervalAdded(this, oldSize, count - 1);
+        }
+    }
+
+    boolean isIndexComplete() {
+        return index.isComplete();
+    }
+
+    /**
+     * Returns the length of the longest line indexed so far, in characters for single byte encodings.
+     */
+    int getMaxLineLength() {
+        return Math.min(index.getMaxLineLength(), MAX_LINE_LENGTH) / index.getLineFeed().length;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int line) {
+        try {
+            String[] lines = getBlock(line / TextLineIndex.LINES_PER_CHECKPOINT);
+            int i = line % TextLineIndex.LINES_PER_CHECKPOINT;
+            return i < lines.length ? lines[i] : "";
+        } catch (IOException e) {
+            LOGGER.debug("Can't read line " + line, e);
+            return "";
+        }
+    }
+
+    /**
+     * Returns the lines of a block from the cache, reading them if they're not cached. Only the lines already
+     * indexed are returned for the last block.
+     *
+     * @param block the block index
+     * @return the decoded lines
+     * @throws IOException if an I/O error occurred
+     */
+    private String[] getBlock(int block) throws IOException {
+        synchronized (cache) {
+            String[] lines = cache.get(block);
+            if (lines != null) {
+                return lines;
+            }
+        }
+        int count = getBlockLineCount(block);
+        String[] lines;
+        synchronized (in) {
+            lines = readLines(in, buffer, index.getBlockOffset(block), index.getBlockEnd(block), count);
+        }
+        // The last block of an incomplete index will grow
+        if (count == TextLineIndex.LINES_PER_CHECKPOINT || index.isComplete()) {
+            addToCache(block, lines);
+        }
+        return lines;
+    }
+
+    private int getBlockLineCount(int block) {
+        int first = block * TextLineIndex.LINES_PER_CHECKPOINT;
+        return Math.max(0, Math.min(TextLineIndex.LINES_PER_CHECKPOINT, index.getLineCount() - first));
+    }
+
+    /**
+     * Searches the lines after or before the given one for the pattern. The lines are read from the given stream
+     * rather than from the one used to display them: interrupting a read may close the stream (e.g. when it wraps
+     * an interruptible channel) and the search is interrupted when it's cancelled. The cache is not used.
+     *
+     * @param searchIn a stream on the same file, distinct from the one used to read the displayed lines
+     * @param pattern the pattern to search
+     * @param startLine the first line to search, may be out of the list bounds
+     * @param lineCount the number of lines to search through
+     * @param forward <code>true</code> to search the lines after the start line, <code>false</code> the lines before
+     * @return the first matching line, -1 if there is none
+     * @throws IOException if an I/O error occurred or the current thread was interrupted
+     */
+    int find(RandomAccessInputStream searchIn, Pattern pattern, int startLine, int lineCount, boolean forward) throws IOException {
+        final int linesPerBlock = TextLineIndex.LINES_PER_CHECKPOINT;
+        byte[] searchBuffer = new byte[TextLineIndex.BUFFER_SIZE];
+        int line = startLine;
+        while (line >= 0 && line < lineCount) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+            int block = line / linesPerBlock;
+            String[] lines = readLines(searchIn, searchBuffer, index.getBlockOffset(block), index.getBlockEnd(block),
+                    getBlockLineCount(block));
+            if (forward) {
+                for (int i = line % linesPerBlock; i < lines.length && block * linesPerBlock + i < lineCount; i++) {
+                    if (pattern.matcher(lines[i]).find()) {
+                        return block * linesPerBlock + i;
+                    }
+                }
+                line = (block + 1) * linesPerBlock;
+            } else {
+                for (int i = Math.min(line % linesPerBlock, lines.length - 1); i >= 0; i--) {
+                    if (pattern.matcher(lines[i]).find()) {
+                        return block * linesPerBlock + i;
+                    }
+                }
+                line = block * linesPerBlock - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void addToCache(int block, String[] lines) {
+        synchronized (cache) {
+            if (cache.put(block, lines) == null) {
+                cachedChars += getLength(lines);
+            }
+            Iterator<String[]> iterator = cache.values().iterator();
+            while (cachedChars > MAX_CACHED_CHARS && cache.size() > 1) {
+                cachedChars -= getLength(iterator.next());
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int getLength(String[] lines) {
+        int length = 0;
+        for (String line : lines) {
+            length += line.length();
+        }
+        return length;
+    }
+
+    /**
+     * Reads and decodes the given number of lines.
+     *
+     * @param in the stream to read the lines from
+     * @param buffer the buffer used to read the stream
+     * @param offset offset of the first line
+     * @param end offset following the last line, <code>-1</code> if unknown
+     * @param count number of lines
+     * @return the decoded lines
+     * @throws IOException if an I/O error occurred
+     */
+    private String[] readLines(RandomAccessInputStream in, byte[] buffer, long offset, long end, int count) throws IOException {
+        String[] lines = new String[count];
+        byte[] lineFeed = index.getLineFeed();
+        int unit = lineFeed.length;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int n = 0;
+        // Don't read past the block when its end is known, a block is usually much smaller than the buffer
+        long remaining = end >= 0 ? end - offset : Long.MAX_VALUE;
+        in.seek(offset);
+        while (n < count) {
+            int requested = (int)Math.min(buffer.length, remaining);
+            int len = StreamUtils.readUpTo(in, buffer, 0, requested);
+            remaining -= len;
+            int limit = len - len % unit;
+            int from = 0;
+            while (n < count) {
+                int i = TextLineIndex.indexOf(buffer, from, limit, lineFeed);
+                int to = i >= 0 ? i : limit;
+                line.write(buffer, from, Math.max(0, Math.min(to - from, MAX_LINE_LENGTH - line.size())));
+                if (i < 0) {
+                    break;
+                }
+                lines[n++] = decode(line);
+                line.reset();
+                from = i + unit;
+            }
+            if (len < requested || remaining == 0) {
+                // The end of the file or of the block, the last line has no line feed
+                if (n < count) {
+                    lines[n++] = decode(line);
+                }
+                break;
+            }
+        }
+        // The file may have been truncated since it was indexed
+        while (n < count) {
+            lines[n++] = "";
+        }
+        return lines;
+    }
+
+    private String decode(ByteArrayOutputStream bytes) {
+        String line = new String(bytes.toByteArray(), charset);
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line = line.substring(0, length - 1);
+        }
+        return line.indexOf('\t') >= 0 ? expandTabs(line) : line;
+    }
+
+    /**
+     * Replaces the tabulations with spaces as list cells don't expand them.
+     */
+    private static String expandTabs(String line) {
+        StringBuilder sb = new StringBuilder(line.length() + TAB_SIZE * 4);
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                do {
+                    sb.append(' ');
+                } while (sb.length() % TAB_SIZE != 0);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
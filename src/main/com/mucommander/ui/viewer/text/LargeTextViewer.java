@@ -0,0 +1,490 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.cache.TextHistory;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.ui.dialog.DialogOwner;
+import com.mucommander.ui.dialog.InformationDialog;
+import com.mucommander.ui.encoding.EncodingListener;
+import com.mucommander.ui.encoding.EncodingMenu;
+import com.mucommander.ui.helper.MenuToolkit;
+import com.mucommander.ui.helper.MnemonicHelper;
+import com.mucommander.ui.theme.ThemeId;
+import com.mucommander.ui.viewer.FileViewer;
+import com.mucommander.ui.viewer.text.search.FindDialog;
+import com.mucommander.ui.viewer.text.search.SearchEvent;
+import com.mucommander.ui.viewer.text.search.SearchListener;
+import org.fife.ui.rtextarea.SearchContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.text.Position;
+import java.awt.FontMetrics;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static com.mucommander.ui.theme.ThemeManager.getCurrentColor;
+import static com.mucommander.ui.theme.ThemeManager.getCurrentFont;
+
+/**
+ * Read-only viewer for text files too large to be loaded by {@link TextViewer}.
+ *
+ * <p>The lines are indexed by a background task and only the visible ones are read and decoded, see
+ * {@link LargeTextListModel}. Lines are displayed in a list with fixed cell sizes so that Swing never has to go
+ * through the whole model. There is no syntax highlighting nor line wrapping.
+ *
+ * @author Oleg Trifonov
+ */
+public class LargeTextViewer extends FileViewer implements EncodingListener, ThemeId {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LargeTextViewer.class);
+
+    /** Interval between two refreshes of the list while the file is being indexed, in milliseconds */
+    private static final int UPDATE_INTERVAL = 300;
+
+    private final JList<String> list;
+    private final int charWidth;
+    private final Timer updateTimer;
+
+    private AbstractFile file;
+    private LargeTextListModel model;
+    private SwingWorker<Void, Void> indexer;
+    private SwingWorker<Integer, Void> searcher;
+    private String encoding;
+    private StatusBar statusBar;
+    private TextFilesHistory.FileRecord historyRecord;
+    private SearchContext searchContext;
+
+    /** Line to go to once it has been indexed, -1 if none */
+    private int pendingLine = -1;
+
+    private final JMenu menuEdit;
+    private final JMenu menuSearch;
+    private final JMenuItem miCopy;
+    private final JMenuItem miFind;
+    private final JMenuItem miFindNext;
+    private final JMenuItem miFindPrevious;
+    private final JMenuItem miGotoLine;
+
+
+    LargeTextViewer() {
+        list = new JList<String>() {
+            @Override
+            public int getNextMatch(String prefix, int startIndex, Position.Bias bias) {
+                // Type-ahead would read the whole file
+                return -1;
+            }
+        };
+        list.setFont(getCurrentFont(EDITOR_FONT));
+        list.setForeground(getCurrentColor(EDITOR_FOREGROUND_COLOR));
+        list.setBackground(getCurrentColor(EDITOR_BACKGROUND_COLOR));
+        list.setSelectionForeground(getCurrentColor(EDITOR_SELECTED_FOREGROUND_COLOR));
+        list.setSelectionBackground(getCurrentColor(EDITOR_SELECTED_BACKGROUND_COLOR));
+        list.setSelectionMode(ListSelectionModel.SINGLE_INTERVAL_SELECTION);
+        FontMetrics fontMetrics = list.getFontMetrics(list.getFont());
+        charWidth = fontMetrics.charWidth('m');
+        // Both sizes must be fixed, otherwise the list measures every line
+        list.setFixedCellHeight(fontMetrics.getHeight() + 2);
+        list.setFixedCellWidth(charWidth);
+        list.addListSelectionListener(e -> updatePosition());
+
+        setComponentToPresent(list);
+        getViewport().setBackground(list.getBackground());
+        setVerticalScrollBarPolicy(VERTICAL_SCROLLBAR_ALWAYS);
+
+        updateTimer = new Timer(UPDATE_INTERVAL, e -> updateModel());
+
+        MnemonicHelper mnemonicHelper = new MnemonicHelper();
+        menuEdit = new JMenu(i18n("text_editor.edit"));
+        miCopy = MenuToolkit.addMenuItem(menuEdit, i18n("text_editor.copy"), mnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_C, getCtrlOrMetaMask()), this);
+
+        menuSearch = new JMenu(i18n("text_editor.search"));
+        miFind = MenuToolkit.addMenuItem(menuSearch, i18n("text_editor.find"), mnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F, getCtrlOrMetaMask()), this);
+        miFindNext = MenuToolkit.addMenuItem(menuSearch, i18n("text_editor.find_next"), mnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), this);
+        miFindPrevious = MenuToolkit.addMenuItem(menuSearch, i18n("text_editor.find_previous"), mnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, KeyEvent.SHIFT_DOWN_MASK), this);
+        menuSearch.addSeparator();
+        miGotoLine = MenuToolkit.addMenuItem(menuSearch, i18n("text_viewer.goto_line"), mnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_G, getCtrlOrMetaMask()), this);
+    }
+
+    private static int getCtrlOrMetaMask() {
+        return OsFamily.MAC_OS_X.isCurrent() ? KeyEvent.META_MASK : KeyEvent.CTRL_MASK;
+    }
+
+
+    @Override
+    protected void show(AbstractFile file) throws IOException {
+        this.file = file;
+        historyRecord = TextFilesHistory.getInstance().get(file);
+        String encoding = historyRecord.getEncoding();
+        if (encoding == null) {
+            try (PushbackInputStream in = file.getPushBackInputStream(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE)) {
+                encoding = EncodingDetector.detectEncoding(in);
+            }
+        }
+        open(encoding);
+    }
+
+    /**
+     * Opens the file with the given encoding and starts indexing it.
+     *
+     * @param encoding the encoding, "UTF-8" is used if it's <code>null</code> or not supported
+     * @throws IOException if the file could not be opened
+     */
+    private void open(String encoding) throws IOException {
+        closeModel();
+        this.encoding = encoding == null || !Charset.isSupported(encoding) ? "UTF-8" : encoding;
+        model = new LargeTextListModel(file.getRandomAccessInputStream(), this.encoding);
+        list.setModel(model);
+        list.setFixedCellWidth(charWidth);
+        getStatusBar().setEncoding(this.encoding);
+        startIndexing(model, file.getRandomAccessInputStream());
+    }
+
+    private void startIndexing(final LargeTextListModel model, final RandomAccessInputStream scanIn) {
+        indexer = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                try {
+                    model.buildIndex(scanIn);
+                } finally {
+                    scanIn.close();
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                if (indexer != this || isCancelled()) {
+                    return;
+                }
+                updateTimer.stop();
+                updateModel();
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    LOGGER.warn("Can't index " + file, e);
+                    setStatusMessage(i18n("cannot_read_file", file.getName()));
+                }
+            }
+        };
+        updateTimer.start();
+        indexer.execute();
+    }
+
+    /**
+     * Shows the lines indexed so far.
+     */
+    private void updateModel() {
+        if (model == null) {
+            return;
+        }
+        model.update();
+        int width = (model.getMaxLineLength() + 1) * charWidth;
+        if (width > list.getFixedCellWidth()) {
+            list.setFixedCellWidth(width);
+        }
+        if (pendingLine >= 0 && (pendingLine < model.getSize() || model.isIndexComplete())) {
+            int line = pendingLine;
+            pendingLine = -1;
+            gotoLine(line);
+        }
+        if (model.isIndexComplete()) {
+            if (searcher == null || searcher.isDone()) {
+                setStatusMessage("");
+            }
+        } else {
+            setStatusMessage(i18n("text_viewer.indexing", String.valueOf(model.getSize())));
+        }
+    }
+
+    private void closeModel() {
+        if (indexer != null) {
+            indexer.cancel(true);
+            indexer = null;
+        }
+        if (searcher != null) {
+            searcher.cancel(true);
+            searcher = null;
+        }
+        updateTimer.stop();
+        if (model != null) {
+            try {
+                model.close();
+            } catch (IOException e) {
+                LOGGER.debug("Can't close " + file, e);
+            }
+            model = null;
+        }
+    }
+
+    /**
+     * Selects the given line, the line is selected as soon as it is indexed if it's not yet.
+     *
+     * @param line the zero-based line number
+     */
+    private void gotoLine(int line) {
+        if (line >= model.getSize() && !model.isIndexComplete()) {
+            pendingLine = line;
+            return;
+        }
+        line = Math.max(0, Math.min(line, model.getSize() - 1));
+        list.setSelectedIndex(line);
+        list.ensureIndexIsVisible(line);
+    }
+
+    private void updatePosition() {
+        int line = list.getSelectedIndex();
+        if (line >= 0 && statusBar != null) {
+            statusBar.setPosition(line + 1, 1);
+        }
+    }
+
+    private void copy() {
+        int first = list.getMinSelectionIndex();
+        int last = list.getMaxSelectionIndex();
+        if (first < 0) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int line = first; line <= last; line++) {
+            sb.append(model.getElementAt(line));
+            if (line < last) {
+                sb.append('\n');
+            }
+        }
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(sb.toString()), null);
+    }
+
+
+    /////////////////
+    // Search code //
+    /////////////////
+
+    private void find() {
+        SearchListener searchListener = new SearchListener() {
+            @Override
+            public void searchEvent(SearchEvent e) {
+                searchContext = e.getSearchContext();
+                TextHistory.getInstance().add(TextHistory.Type.TEXT_SEARCH, searchContext.getSearchFor(), true);
+                search(searchContext.getSearchForward());
+                list.requestFocus();
+            }
+
+            @Override
+            public String getSelectedText() {
+                return null;
+            }
+        };
+        FindDialog dlg = new FindDialog(getFrame(), searchListener);
+        dlg.setSearchString(searchContext != null ? searchContext.getSearchFor() : FindDialog.getLastSearchStr());
+        dlg.showDialog();
+    }
+
+    private void findMore(boolean forward) {
+        if (searchContext == null) {
+            String last = FindDialog.getLastSearchStr();
+            if (last == null) {
+                find();
+                return;
+            }
+            searchContext = new SearchContext(last);
+        }
+        search(forward);
+    }
+
+    /**
+     * Searches the lines after or before the selected one in a background task and selects the first line found.
+     */
+    private void search(final boolean forward) {
+        String searchFor = searchContext.getSearchFor();
+        if (searchFor == null || searchFor.isEmpty()) {
+            return;
+        }
+        final Pattern pattern;
+        try {
+            pattern = createPattern(searchContext);
+        } catch (PatternSyntaxException e) {
+            setStatusMessage(e.getDescription());
+            return;
+        }
+        if (searcher != null) {
+            searcher.cancel(true);
+        }
+        final LargeTextListModel model = this.model;
+        final int lineCount = model.getSize();
+        final int selected = list.getSelectedIndex();
+        final int startLine = forward ? selected + 1 : (selected < 0 ? lineCount : selected) - 1;
+        searcher = new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                // Cancelling interrupts the search, which may close the stream it's reading
+                try (RandomAccessInputStream searchIn = file.getRandomAccessInputStream()) {
+                    return model.find(searchIn, pattern, startLine, lineCount, forward);
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (searcher != this || isCancelled()) {
+                    return;
+                }
+                try {
+                    int line = get();
+                    if (line >= 0) {
+                        setStatusMessage("");
+                        gotoLine(line);
+                    } else {
+                        Toolkit.getDefaultToolkit().beep();
+                        setStatusMessage(i18n("text_editor.text_not_found"));
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    LOGGER.warn("Search failed in " + file, e);
+                    setStatusMessage(i18n("cannot_read_file", file.getName()));
+                }
+            }
+        };
+        setStatusMessage(i18n("text_viewer.searching"));
+        searcher.execute();
+    }
+
+    private static Pattern createPattern(SearchContext context) {
+        String regex = context.isRegularExpression() ? context.getSearchFor() : Pattern.quote(context.getSearchFor());
+        if (context.getWholeWord()) {
+            regex = "\\b" + regex + "\\b";
+        }
+        return Pattern.compile(regex, context.getMatchCase() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    private void setStatusMessage(String message) {
+        if (statusBar != null) {
+            statusBar.setStatusMessage(message);
+        }
+    }
+
+
+    ///////////////////////////////
+    // FileViewer implementation //
+    ///////////////////////////////
+
+    @Override
+    public JMenuBar getMenuBar() {
+        JMenuBar menuBar = super.getMenuBar();
+
+        EncodingMenu encodingMenu = new EncodingMenu(new DialogOwner(getFrame()), encoding);
+        encodingMenu.addEncodingListener(this);
+
+        menuBar.add(menuEdit);
+        menuBar.add(menuSearch);
+        menuBar.add(encodingMenu);
+        setMainKeyListener(list, menuBar);
+        return menuBar;
+    }
+
+    @Override
+    protected StatusBar getStatusBar() {
+        if (statusBar == null) {
+            statusBar = new StatusBar();
+        }
+        return statusBar;
+    }
+
+    @Override
+    protected void saveStateOnClose() {
+        historyRecord.setLine(Math.max(list.getSelectedIndex(), 0) + 1);
+        historyRecord.setEncoding(encoding);
+        TextFilesHistory.getInstance().updateRecord(historyRecord).save();
+        closeModel();
+        try {
+            file.closePushbackInputStream();
+        } catch (IOException e) {
+            LOGGER.debug("Can't close " + file, e);
+        }
+    }
+
+    @Override
+    protected void restoreStateOnStartup() {
+        if (historyRecord.getLine() > 0) {
+            gotoLine(historyRecord.getLine() - 1);
+        }
+    }
+
+    @Override
+    public void setSearchedText(String searchedText) {
+        searchContext = new SearchContext(searchedText);
+    }
+
+    @Override
+    public void setSearchedBytes(byte[] searchedBytes) {
+        setSearchedText(new String(searchedBytes, model != null ? model.getCharset() : Charset.defaultCharset()));
+    }
+
+
+    ///////////////////////////////////
+    // ActionListener implementation //
+    ///////////////////////////////////
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        Object source = e.getSource();
+        if (source == miCopy) {
+            copy();
+        } else if (source == miFind) {
+            find();
+        } else if (source == miFindNext) {
+            findMore(true);
+        } else if (source == miFindPrevious) {
+            findMore(false);
+        } else if (source == miGotoLine) {
+            new GotoLineDialog(getFrame(), model.getSize(), line -> gotoLine(line - 1)).showDialog();
+        } else {
+            super.actionPerformed(e);
+        }
+    }
+
+
+    /////////////////////////////////////
+    // EncodingListener implementation //
+    /////////////////////////////////////
+
+    @Override
+    public void encodingChanged(Object source, String oldEncoding, String newEncoding) {
+        int line = list.getSelectedIndex();
+        try {
+            open(newEncoding);
+            if (line >= 0) {
+                gotoLine(line);
+            }
+        } catch (IOException e) {
+            InformationDialog.showErrorDialog(getFrame(), i18n("read_error"), i18n("cannot_read_file", file.getName()));
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Sparse index of the lines of a text file, used by {@link LargeTextViewer} to reach any line without loading the
+ * whole file.
+ *
+ * <p>Only the offset of every {@link #LINES_PER_CHECKPOINT}th line is kept, the lines in between are found by reading
+ * forward from the previous checkpoint. The index is built by {@link #build(InputStream)} in a background thread
+ * and can be queried while it's being built.
+ *
+ * @author Oleg Trifonov
+ */
+final class TextLineIndex {
+
+    /** Number of lines between two recorded offsets */
+    static final int LINES_PER_CHECKPOINT = 64;
+
+    /** Size of the buffer used to scan the file, a multiple of any line feed length */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Encoded line feed, its length is also the size of a code unit */
+    private final byte[] lineFeed;
+
+    /** Offset of the first line, after the byte order mark if any */
+    private final long start;
+
+    /** Offsets of the lines 0, LINES_PER_CHECKPOINT, 2*LINES_PER_CHECKPOINT, ... */
+    private long[] checkpoints = new long[1024];
+    private int nbCheckpoints;
+
+    /** Number of line feeds found so far */
+    private volatile long nbLineFeeds;
+
+    /** Length in bytes of the longest line found so far */
+    private volatile int maxLineLength;
+
+    /** <code>true</code> if the file doesn't end with a line feed, known once the index is complete */
+    private volatile boolean unterminatedLastLine;
+
+    private volatile boolean complete;
+
+
+    TextLineIndex(byte[] lineFeed, long start) {
+        this.lineFeed = lineFeed;
+        this.start = start;
+        checkpoints[nbCheckpoints++] = start;
+    }
+
+    /**
+     * Scans the file and records the line offsets, the stream must be positioned at the start offset.
+     * The scan is aborted with an <code>InterruptedIOException</code> if the current thread is interrupted.
+     *
+     * @param in the stream to read the file from
+     * @throws IOException if an I/O error occurred or the scan was interrupted
+     */
+    void build(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int unit = lineFeed.length;
+        long offset = start;
+        long lineStart = start;
+        long lines = 0;
+        int count;
+        do {
+            count = StreamUtils.readUpTo(in, buffer);
+            int limit = count - count % unit;
+            for (int i = indexOf(buffer, 0, limit, lineFeed); i >= 0; i = indexOf(buffer, i + unit, limit, lineFeed)) {
+                long next = offset + i + unit;
+                updateMaxLineLength(next - lineStart - unit);
+                lineStart = next;
+                if (++lines % LINES_PER_CHECKPOINT == 0) {
+                    addCheckpoint(next);
+                }
+            }
+            offset += count;
+            nbLineFeeds = lines;
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+        } while (count == buffer.length);
+        updateMaxLineLength(offset - lineStart);
+        unterminatedLastLine = offset > lineStart;
+        complete = true;
+    }
+
+    private void updateMaxLineLength(long length) {
+        if (length > maxLineLength) {
+            maxLineLength = (int)Math.min(length, Integer.MAX_VALUE);
+        }
+    }
+
+    private synchronized void addCheckpoint(long offset) {
+        if (nbCheckpoints == checkpoints.length) {
+            long[] newCheckpoints = new long[checkpoints.length * 2];
+            System.arraycopy(checkpoints, 0, newCheckpoints, 0, nbCheckpoints);
+            checkpoints = newCheckpoints;
+        }
+        checkpoints[nbCheckpoints++] = offset;
+    }
+
+    /**
+     * Returns the offset of the first line of the given block of {@link #LINES_PER_CHECKPOINT} lines.
+     *
+     * @param block the block index
+     * @return the block offset
+     */
+    synchronized long getBlockOffset(int block) {
+        return checkpoints[block];
+    }
+
+    /**
+     * Returns the offset following the last line of the given block, if the index has reached the next block.
+     *
+     * @param block the block index
+     * @return the offset of the next block, <code>-1</code> if it is not known yet or if the block is the last one
+     */
+    synchronized long getBlockEnd(int block) {
+        return block + 1 < nbCheckpoints ? checkpoints[block + 1] : -1;
+    }
+
+    /**
+     * Returns the number of lines whose end is known: lines terminated by a line feed and, once the index is
+     * complete, the last unterminated line.
+     *
+     * @return the number of lines, limited to <code>Integer.MAX_VALUE</code>
+     */
+    int getLineCount() {
+        long lines = complete && unterminatedLastLine ? nbLineFeeds + 1 : nbLineFeeds;
+        return (int)Math.min(lines, Integer.MAX_VALUE);
+    }
+
+    int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    byte[] getLineFeed() {
+        return lineFeed;
+    }
+
+    /**
+     * Returns the index of the first line feed in the buffer range, only offsets aligned on the code unit size
+     * relative to <code>from</code> are considered.
+     *
+     * @param buffer the buffer to search
+     * @param from the first offset to search from
+     * @param to the end of the range, exclusive
+     * @param lineFeed the encoded line feed
+     * @return the line feed offset, or -1 if there is none
+     */
+    static int indexOf(byte[] buffer, int from, int to, byte[] lineFeed) {
+        int unit = lineFeed.length;
+        if (unit == 1) {
+            byte b = lineFeed[0];
+            for (int i = from; i < to; i++) {
+                if (buffer[i] == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        for (int i = from; i + unit <= to; i += unit) {
+            int j = 0;
+            while (j < unit && buffer[i + j] == lineFeed[j]) {
+                j++;
+            }
+            if (j == unit) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
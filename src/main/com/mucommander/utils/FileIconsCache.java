@@ -20,6 +20,10 @@ package com.mucommander.utils;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.icon.IconCache;
+import com.mucommander.conf.TcConfigurations;
+import com.mucommander.conf.TcPreference;
+import com.mucommander.conf.TcPreferences;
 import com.mucommander.ui.icon.FileIcons;
 import org.jetbrains.annotations.NotNull;
 import ru.trolsoft.macosx.RetinaImageIcon;
@@ -28,28 +32,44 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.net.MalformedURLException;
-import java.util.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created on 07.01.15.
  * @author Oleg Trifonov
  *
- * Cache of system file icons
+ * Cache of system file icons.
+ *
+ * Icons are kept by file path in an {@link IconCache}, bounded by the memory used by the icons' pixels
+ * (see {@link TcPreference#FILE_ICONS_CACHE_SIZE}). File tables request icons with {@link #getIcon(AbstractFile, Component)}:
+ * system icons are then loaded by a background thread, the custom icon of the file being returned in the meantime.
  */
 public class FileIconsCache {
 
-    /**
-     * Default cache size
-     */
-    private static final int CACHE_SIZE = 1000;
+    /** Loads system icons out of the event dispatch thread */
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "FileIconsLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private final Map<String, Icon> icons = new HashMap<>();
-    private final LinkedList<String> files = new LinkedList<>();
+    private final IconCache icons;
+
+    /** Paths of the icons that are being loaded by the background thread */
+    private final Set<String> pendingPaths = ConcurrentHashMap.newKeySet();
 
 
     private static FileIconsCache instance;
 
 
+    private FileIconsCache() {
+        int maxSizeKb = TcConfigurations.getPreferences().getVariable(TcPreference.FILE_ICONS_CACHE_SIZE, TcPreferences.DEFAULT_FILE_ICONS_CACHE_SIZE);
+        icons = new IconCache(maxSizeKb * 1024L);
+    }
+
 
     public static FileIconsCache getInstance() {
         if (instance == null) {
@@ -71,20 +91,45 @@ public class FileIconsCache {
         String path = file.getAbsolutePath();
         Icon result = icons.get(path);
         if (result != null) {
-            // move record to top
-            files.remove(path);
-            files.addFirst(path);
             return result;
         }
         return addIcon(file, path);
     }
 
+    /**
+     * Get icon from cache or load it in background. While the icon is being loaded, the custom icon of the file is
+     * returned and the given component is repainted once the icon is available.
+     *
+     * @param file the file to get the icon of
+     * @param repaintComponent the component displaying the icon
+     * @return the icon of the file, or a placeholder icon if it's not loaded yet
+     */
+    public Icon getIcon(final AbstractFile file, final Component repaintComponent) {
+        final String path = file.getAbsolutePath();
+        Icon result = icons.get(path);
+        if (result != null) {
+            return result;
+        }
+        if (FileIcons.USE_SYSTEM_ICONS_NEVER.equals(FileIcons.getSystemIconsPolicy())) {
+            // Custom icons are fast to get
+            return addIcon(file, path);
+        }
+        if (pendingPaths.add(path)) {
+            LOADER.execute(() -> {
+                try {
+                    addIcon(file, path);
+                } finally {
+                    pendingPaths.remove(path);
+                }
+                SwingUtilities.invokeLater(repaintComponent::repaint);
+            });
+        }
+        return FileIcons.getCustomFileIcon(file);
+    }
+
     public Icon getIcon(String path) {
         Icon result = icons.get(path);
         if (result != null) {
-            // move record to top
-            files.remove(path);
-            files.addFirst(path);
             return result;
         }
         AbstractFile file = null;
@@ -134,26 +179,21 @@ public class FileIconsCache {
 
 
     /**
-     * Loads icon and adds it to cache
+     * Loads icon and adds it to cache, the least recently used icons are removed if the cache is full
      * @param path absolute path of file
      * @return loaded icon
      */
     private Icon addIcon(AbstractFile file, String path) {
         Icon icon = loadIcon(file);
         icons.put(path, icon);
-        files.addFirst(path);
-
-        // remove oldest record if the cache is full
-        if (files.size() > CACHE_SIZE) {
-            icons.remove(files.removeLast());
-        }
-        return icon;
+        // an identical icon may have been cached before
+        Icon cached = icons.get(path);
+        return cached != null ? cached : icon;
     }
 
 
     public void clear() {
         icons.clear();
-        files.clear();
     }
 
 }
@@ -0,0 +1,193 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore-Horspool search of a {@link SearchPattern} in blocks of data.
+ *
+ * <p>The bytes accepted at each position of the pattern are computed once from {@link SearchPattern#checkByte(int, int)},
+ * so that a pattern accepting several bytes at a position (like {@link StringCaseInsensitiveSearchPattern}) is matched
+ * in a single pass. The searcher is immutable and can be shared by several threads.
+ *
+ * @author Oleg Trifonov
+ */
+public class HorspoolSearcher {
+
+    /** Maximum size of a file region mapped in memory at once */
+    private static final long MAP_REGION_SIZE = 64 * 1024 * 1024;
+
+    /** Length of the pattern */
+    private final int length;
+
+    /** accepted[i][b] is true if the pattern accepts byte b at position i */
+    private final boolean[][] accepted;
+
+    /** Shift of the search window for the byte at the last position of the window */
+    private final int[] shift = new int[256];
+
+
+    public HorspoolSearcher(SearchPattern pattern) {
+        this.length = pattern.length();
+        this.accepted = new boolean[length][256];
+        for (int i = 0; i < length; i++) {
+            for (int b = 0; b < 256; b++) {
+                accepted[i][b] = pattern.checkByte(i, b);
+            }
+        }
+        Arrays.fill(shift, Math.max(length, 1));
+        for (int i = 0; i < length - 1; i++) {
+            for (int b = 0; b < 256; b++) {
+                if (accepted[i][b]) {
+                    shift[b] = length - 1 - i;
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @return length of the search pattern
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the pattern in the given range of an array.
+     *
+     * @param data the array to search in
+     * @param from the offset from which to start the search
+     * @param to the offset at which to end the search (exclusive)
+     * @return the offset of the first occurrence in the array, or -1 if there is no such occurrence
+     */
+    public int indexOf(byte[] data, int from, int to) {
+        if (length == 0) {
+            return -1;
+        }
+        final int last = length - 1;
+        for (int i = from; i <= to - length; i += shift[data[i + last] & 0xff]) {
+            int j = last;
+            while (accepted[j][data[i + j] & 0xff]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the pattern in the given range of a buffer.
+     * The position of the buffer is not modified.
+     *
+     * @param data the buffer to search in
+     * @param from the index from which to start the search
+     * @param to the index at which to end the search (exclusive)
+     * @return the index of the first occurrence in the buffer, or -1 if there is no such occurrence
+     */
+    public int indexOf(ByteBuffer data, int from, int to) {
+        if (length == 0) {
+            return -1;
+        }
+        final int last = length - 1;
+        for (int i = from; i <= to - length; i += shift[data.get(i + last) & 0xff]) {
+            int j = last;
+            while (accepted[j][data.get(i + j) & 0xff]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the pattern in a stream, reading it by blocks.
+     * The stream is read until the pattern is found and is not closed.
+     *
+     * @param is the stream to search in
+     * @param buffer the buffer to read the stream into, must be longer than the pattern
+     * @return the offset of the first occurrence in the stream, or -1 if there is no such occurrence
+     * @throws IOException if an error occurred while reading the stream
+     */
+    public long indexOf(InputStream is, byte[] buffer) throws IOException {
+        if (length == 0) {
+            return -1;
+        }
+        if (buffer.length <= length) {
+            throw new IllegalArgumentException("buffer is too small: " + buffer.length);
+        }
+        // Bytes at the end of a block that may be the start of an occurrence are kept in the next block
+        final int keep = length - 1;
+        long bufferOffset = 0;
+        int count = 0;
+        int read;
+        while ((read = is.read(buffer, count, buffer.length - count)) >= 0) {
+            count += read;
+            if (count < buffer.length) {
+                continue;
+            }
+            int pos = indexOf(buffer, 0, count);
+            if (pos >= 0) {
+                return bufferOffset + pos;
+            }
+            System.arraycopy(buffer, count - keep, buffer, 0, keep);
+            bufferOffset += count - keep;
+            count = keep;
+        }
+        int pos = indexOf(buffer, 0, count);
+        return pos >= 0 ? bufferOffset + pos : -1;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the pattern in a file, mapping it in memory region by region.
+     *
+     * @param channel the channel of the file to search in
+     * @return the offset of the first occurrence in the file, or -1 if there is no such occurrence
+     * @throws IOException if an error occurred while mapping the file
+     */
+    public long indexOf(FileChannel channel) throws IOException {
+        if (length == 0) {
+            return -1;
+        }
+        final long size = channel.size();
+        long regionOffset = 0;
+        while (size - regionOffset >= length) {
+            int regionSize = (int)Math.min(MAP_REGION_SIZE, size - regionOffset);
+            ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionOffset, regionSize);
+            int pos = indexOf(region, 0, regionSize);
+            if (pos >= 0) {
+                return regionOffset + pos;
+            }
+            if (regionOffset + regionSize == size) {
+                break;
+            }
+            // Regions overlap so that occurrences crossing a region boundary are found
+            regionOffset += regionSize - (length - 1);
+        }
+        return -1;
+    }
+}
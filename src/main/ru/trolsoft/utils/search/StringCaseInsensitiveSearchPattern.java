@@ -40,7 +40,8 @@ public class StringCaseInsensitiveSearchPattern implements SearchPattern {
 
     @Override
     public boolean checkByte(int index, int val) {
-        return (data[index] & 0xff) == val || (dataAlt[index] & 0xff) == val;
+        // lower and upper case encodings may have different lengths
+        return (data[index] & 0xff) == val || (index < dataAlt.length && (dataAlt[index] & 0xff) == val);
     }
 
     @Override
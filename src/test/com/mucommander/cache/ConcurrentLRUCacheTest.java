@@ -0,0 +1,111 @@
+package com.mucommander.cache;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/**
+ * A test case for {@link ConcurrentLRUCache}.
+ *
+ * @author Oleg Trifonov
+ */
+public class ConcurrentLRUCacheTest {
+
+    /**
+     * Tests that the capacity is never exceeded and that recently used items are kept.
+     */
+    @Test
+    public void testEviction() {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<>(3);
+        cache.add(1, "one");
+        cache.add(2, "two");
+        cache.add(3, "three");
+        assertEquals(cache.get(1), "one");
+
+        cache.add(4, "four");
+        assertEquals(cache.size(), 3);
+        assertEquals(cache.getEvictionCount(), 1);
+        // 1 has been used since it was added, 2 is the eldest unused item
+        assertEquals(cache.get(1), "one");
+        assertNull(cache.get(2));
+
+        cache.add(3, "THREE");
+        assertEquals(cache.size(), 3);
+        assertEquals(cache.get(3), "THREE");
+        cache.testCorruption();
+
+        cache.clearAll();
+        assertEquals(cache.size(), 0);
+        assertNull(cache.get(1));
+    }
+
+    /**
+     * Tests that items are not returned once their time-to-live has expired.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(10);
+        cache.add("short", "value", 50);
+        cache.add("long", "value", 60000);
+        cache.add("forever", "value");
+        assertEquals(cache.get("short"), "value");
+
+        Thread.sleep(300);
+        assertNull(cache.get("short"));
+        assertEquals(cache.get("long"), "value");
+        assertEquals(cache.get("forever"), "value");
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getEvictionCount(), 0);
+    }
+
+    /**
+     * Tests the cache's consistency after concurrent additions and retrievals.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final int capacity = 1000;
+        final ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(capacity);
+        final AtomicInteger nbGets = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final long seed = t;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 100000; i++) {
+                        int key = random.nextInt(4 * capacity);
+                        if (random.nextBoolean()) {
+                            cache.add(key, key, random.nextBoolean() ? -1 : random.nextInt(10));
+                        } else {
+                            nbGets.incrementAndGet();
+                            Integer value = cache.get(key);
+                            assertTrue(value == null || value == key);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= capacity);
+        assertEquals(cache.getHitCount() + cache.getMissCount(), nbGets.get());
+        cache.testCorruption();
+    }
+}
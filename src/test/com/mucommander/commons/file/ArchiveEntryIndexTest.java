@@ -0,0 +1,157 @@
+package com.mucommander.commons.file;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * A test case for {@link ArchiveEntryIndex}.
+ *
+ * @author Oleg Trifonov
+ */
+public class ArchiveEntryIndexTest {
+
+    private static ArchiveEntryIndex buildIndex(String... paths) {
+        ArchiveEntryIndex.Builder builder = new ArchiveEntryIndex.Builder();
+        for (String path : paths) {
+            builder.add(new ArchiveEntry(path, path.endsWith("/"), 0, 0, true));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Tests that entries are found with or without trailing separators and that missing parent folders are created.
+     */
+    @Test
+    public void testFindNode() {
+        ArchiveEntryIndex index = buildIndex("b/c/d.txt", "a.txt", "b/", "b/c/e.txt");
+
+        assertSame(index.findNode(""), index.getRoot());
+        assertNull(index.getRoot().getEntry());
+        assertEquals(index.size(), 6);
+        assertEquals(index.getRoot().getChildCount(), 2);
+
+        ArchiveEntryIndex.Node b = index.findNode("b");
+        assertSame(b, index.findNode("b/"));
+        assertTrue(b.getEntry().isDirectory());
+
+        // Parent folder without an entry of its own
+        ArchiveEntryIndex.Node c = index.findNode("b/c/");
+        assertNotNull(c);
+        assertTrue(c.getEntry().isDirectory());
+        assertEquals(c.getEntry().getPath(), "b/c/");
+        assertSame(b.getChild(0), c);
+        assertEquals(c.getChildCount(), 2);
+
+        ArchiveEntryIndex.Node[] d = index.findNodePath("b/c/d.txt");
+        assertEquals(d.length, 3);
+        assertEquals(d[2].getEntry().getPath(), "b/c/d.txt");
+        assertSame(d[1], c);
+        assertSame(d[0], b);
+
+        assertEquals(index.findNodePath("").length, 0);
+        assertNull(index.findNode("b/c/f.txt"));
+        assertNull(index.findNode("c"));
+    }
+
+    /**
+     * Tests that children are sorted by name.
+     */
+    @Test
+    public void testChildrenOrder() {
+        ArchiveEntryIndex index = buildIndex("z", "m/", "a", "ab", "m/x", "m/b");
+
+        ArchiveEntryIndex.Node root = index.getRoot();
+        assertEquals(root.getChild(0).getEntry().getName(), "a");
+        assertEquals(root.getChild(1).getEntry().getName(), "ab");
+        assertEquals(root.getChild(2).getEntry().getName(), "m");
+        assertEquals(root.getChild(3).getEntry().getName(), "z");
+
+        ArchiveEntryIndex.Node m = index.findNode("m");
+        assertEquals(m.getChild(0).getEntry().getName(), "b");
+        assertEquals(m.getChild(1).getEntry().getName(), "x");
+    }
+
+    /**
+     * Tests that adding and removing entries return a new index and leave the original one untouched.
+     */
+    @Test
+    public void testWithAndWithoutEntry() {
+        ArchiveEntryIndex index = buildIndex("a/b.txt", "a/c/d.txt", "e.txt");
+
+        ArchiveEntryIndex added = index.withEntry(new ArchiveEntry("a/c/f.txt", false, 0, 0, true));
+        assertNotNull(added.findNode("a/c/f.txt"));
+        assertNull(index.findNode("a/c/f.txt"));
+        assertEquals(added.size(), index.size() + 1);
+        // Folders out of the entry's path are shared
+        assertSame(added.findNode("e.txt"), index.findNode("e.txt"));
+
+        ArchiveEntryIndex removed = added.withoutEntry("a/c/");
+        assertNull(removed.findNode("a/c"));
+        assertNull(removed.findNode("a/c/d.txt"));
+        assertNotNull(removed.findNode("a/b.txt"));
+        assertNotNull(removed.findNode("e.txt"));
+        assertEquals(removed.size(), 4);
+
+        assertSame(removed.withoutEntry("missing"), removed);
+    }
+
+    /**
+     * Tests an index built by adding many entries one by one, in no particular order, to an empty index.
+     */
+    @Test
+    public void testManyEntriesAddedOneByOne() {
+        final int nbFolders = 7;
+        final int nbFiles = 2000;
+        ArchiveEntryIndex empty = buildIndex();
+        ArchiveEntryIndex index = empty;
+        for (int i = 0; i < nbFiles; i++) {
+            // 997 is prime with the number of files, so that entries are not added in sorted order
+            int n = (i * 997) % nbFiles;
+            String path = "dir" + (n % nbFolders) + "/sub/file" + n;
+            ArchiveEntry entry = new ArchiveEntry(path, false, 0, 0, false);
+            ArchiveEntryIndex previous = index;
+            index = index.withEntry(entry);
+            assertTrue(entry.exists());
+            assertNull(previous.findNode(path));
+            assertSame(index.findNode(path).getEntry(), entry);
+        }
+
+        // root + 2 folders per top-level folder + the files
+        assertEquals(index.size(), 1 + 2 * nbFolders + nbFiles);
+        assertEquals(empty.size(), 1);
+        assertEquals(empty.getRoot().getChildCount(), 0);
+
+        for (int n = 0; n < nbFiles; n++) {
+            String path = "dir" + (n % nbFolders) + "/sub/file" + n;
+            ArchiveEntryIndex.Node node = index.findNode(path);
+            assertNotNull(node, path);
+            assertEquals(node.getEntry().getPath(), path);
+        }
+
+        ArchiveEntryIndex.Node root = index.getRoot();
+        assertEquals(root.getChildCount(), nbFolders);
+        int total = 0;
+        for (int f = 0; f < nbFolders; f++) {
+            ArchiveEntryIndex.Node folder = root.getChild(f);
+            assertEquals(folder.getEntry().getPath(), "dir" + f + "/");
+            ArchiveEntryIndex.Node sub = folder.getChild(0);
+            for (int c = 1; c < sub.getChildCount(); c++) {
+                assertTrue(sub.getChild(c - 1).getEntry().getName().compareTo(sub.getChild(c).getEntry().getName()) < 0);
+            }
+            total += sub.getChildCount();
+        }
+        assertEquals(total, nbFiles);
+
+        // Replacing an entry doesn't change the size, removing a folder removes its children
+        ArchiveEntry replacement = new ArchiveEntry("dir0/sub/file0", false, 0, 1, true);
+        ArchiveEntryIndex replaced = index.withEntry(replacement);
+        assertEquals(replaced.size(), index.size());
+        assertSame(replaced.findNode("dir0/sub/file0").getEntry(), replacement);
+        int nbDir0Files = index.findNode("dir0/sub").getChildCount();
+        ArchiveEntryIndex removed = replaced.withoutEntry("dir0");
+        assertEquals(removed.size(), index.size() - 2 - nbDir0Files);
+        assertNull(removed.findNode("dir0/sub/file0"));
+        assertNotNull(index.findNode("dir0/sub/file0"));
+    }
+}
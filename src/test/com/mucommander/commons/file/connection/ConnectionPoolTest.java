@@ -0,0 +1,280 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.connection;
+
+import com.mucommander.commons.file.FileURL;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests the per-realm limit, the fairness, the idle connections trimming and the pre-warming of {@link ConnectionPool}.
+ *
+ * @author Oleg Trifonov
+ */
+@Test
+public class ConnectionPoolTest {
+
+    /**
+     * A handler that is always connected, it doesn't connect to anything.
+     */
+    private static class TestConnectionHandler extends ConnectionHandler {
+        private TestConnectionHandler(FileURL serverURL) {
+            super(serverURL);
+        }
+
+        @Override
+        public void startConnection() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void closeConnection() {
+        }
+
+        @Override
+        public void keepAlive() {
+        }
+    }
+
+    /**
+     * A handler that is connected once {@link #startConnection()} has been called.
+     */
+    private static class LazyConnectionHandler extends TestConnectionHandler {
+        private volatile boolean connected;
+
+        private LazyConnectionHandler(FileURL serverURL) {
+            super(serverURL);
+        }
+
+        @Override
+        public void startConnection() {
+            connected = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+    }
+
+    private static final ConnectionHandlerFactory FACTORY = TestConnectionHandler::new;
+
+    private static FileURL getURL(String host) throws MalformedURLException {
+        return FileURL.getFileURL("ftp://" + host + "/");
+    }
+
+    /**
+     * Locks the maximum number of handlers of the given realm.
+     */
+    private static List<ConnectionHandler> acquireAll(FileURL url) throws IOException {
+        List<ConnectionHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < ConnectionPool.getMaxConnectionsPerRealm(); i++) {
+            handlers.add(ConnectionPool.getConnectionHandler(FACTORY, url, true));
+        }
+        return handlers;
+    }
+
+    /**
+     * Requests a handler on a new thread, and waits until the thread waits for one to be released.
+     */
+    private static Thread startWaiting(FileURL url, BlockingQueue<ConnectionHandler> acquired) throws InterruptedException {
+        int waiting = ConnectionPool.getStatistics().getWaitingCount();
+        Thread thread = new Thread(() -> {
+            try {
+                acquired.add(ConnectionPool.getConnectionHandler(FACTORY, url, true));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ConnectionPool.getStatistics().getWaitingCount() == waiting) {
+            assertTrue(System.currentTimeMillis() < deadline, "the request didn't wait");
+            Thread.sleep(10);
+        }
+        return thread;
+    }
+
+    /**
+     * Returns the handlers of the given realm that are in the pool.
+     */
+    private static List<ConnectionHandler> getHandlers(FileURL url) {
+        List<ConnectionHandler> handlers = new ArrayList<>();
+        for (ConnectionHandler handler : ConnectionPool.getConnectionHandlersSnapshot()) {
+            if (handler.getRealm().getHost().equals(url.getHost())) {
+                handlers.add(handler);
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * Waits until the pool has the given number of handlers for the given realm.
+     */
+    private static void waitForHandlerCount(FileURL url, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (getHandlers(url).size() != count) {
+            assertTrue(System.currentTimeMillis() < deadline, "the pool has " + getHandlers(url).size() + " handlers instead of " + count);
+            Thread.sleep(50);
+        }
+    }
+
+    private static void releaseAll(List<ConnectionHandler> handlers) {
+        for (ConnectionHandler handler : handlers) {
+            if (handler.isLocked()) {
+                handler.releaseLock();
+            }
+        }
+    }
+
+    /**
+     * A realm can't have more handlers than the maximum, a request then waits for a handler to be released.
+     * Other realms are not affected.
+     */
+    public void testLimitPerRealm() throws IOException, InterruptedException {
+        FileURL url = getURL("limit.test");
+        List<ConnectionHandler> handlers = acquireAll(url);
+        try {
+            IdentityHashMap<ConnectionHandler, Boolean> distinct = new IdentityHashMap<>();
+            for (ConnectionHandler handler : handlers) {
+                distinct.put(handler, true);
+            }
+            assertEquals(distinct.size(), ConnectionPool.getMaxConnectionsPerRealm());
+
+            // Another realm is served at once
+            ConnectionHandler other = ConnectionPool.getConnectionHandler(FACTORY, getURL("other.test"), true);
+            assertFalse(distinct.containsKey(other));
+            other.releaseLock();
+
+            BlockingQueue<ConnectionHandler> acquired = new LinkedBlockingQueue<>();
+            Thread waiter = startWaiting(url, acquired);
+            assertNull(acquired.poll(200, TimeUnit.MILLISECONDS));
+
+            ConnectionHandler released = handlers.get(2);
+            released.releaseLock();
+            assertSame(acquired.poll(5, TimeUnit.SECONDS), released);
+            waiter.join();
+            assertTrue(released.isLocked());
+        } finally {
+            releaseAll(handlers);
+        }
+    }
+
+    /**
+     * Requests waiting for a handler of the same realm are served in turn.
+     */
+    public void testFairness() throws IOException, InterruptedException {
+        FileURL url = getURL("fairness.test");
+        List<ConnectionHandler> handlers = acquireAll(url);
+        try {
+            BlockingQueue<ConnectionHandler> acquired1 = new LinkedBlockingQueue<>();
+            BlockingQueue<ConnectionHandler> acquired2 = new LinkedBlockingQueue<>();
+            Thread waiter1 = startWaiting(url, acquired1);
+            Thread waiter2 = startWaiting(url, acquired2);
+
+            handlers.get(0).releaseLock();
+            assertSame(acquired1.poll(5, TimeUnit.SECONDS), handlers.get(0));
+            assertNull(acquired2.poll(200, TimeUnit.MILLISECONDS));
+
+            handlers.get(1).releaseLock();
+            assertSame(acquired2.poll(5, TimeUnit.SECONDS), handlers.get(1));
+            waiter1.join();
+            waiter2.join();
+        } finally {
+            releaseAll(handlers);
+        }
+    }
+
+    /**
+     * The idle handlers exceeding the maximum are closed, the minimum number of idle handlers is kept past the
+     * inactivity period.
+     */
+    public void testIdleConnections() throws IOException, InterruptedException {
+        FileURL url = getURL("idle.test");
+        ConnectionPool.setMaxIdleConnectionsPerRealm(2);
+        ConnectionPool.setMinIdleConnectionsPerRealm(1);
+        List<ConnectionHandler> handlers = acquireAll(url);
+        try {
+            for (ConnectionHandler handler : handlers) {
+                handler.setCloseOnInactivityPeriod(-1);
+            }
+            releaseAll(handlers);
+            waitForHandlerCount(url, 2);
+
+            for (ConnectionHandler handler : getHandlers(url)) {
+                handler.setCloseOnInactivityPeriod(1);
+            }
+            waitForHandlerCount(url, 1);
+            // The last one is kept open
+            Thread.sleep(2500);
+            assertEquals(getHandlers(url).size(), 1);
+        } finally {
+            releaseAll(handlers);
+            ConnectionPool.setMaxIdleConnectionsPerRealm(ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_REALM);
+            ConnectionPool.setMinIdleConnectionsPerRealm(0);
+        }
+    }
+
+    /**
+     * Pre-warmed handlers are connected in background and then returned without creating new ones.
+     */
+    public void testPrewarm() throws IOException, InterruptedException {
+        FileURL url = getURL("prewarm.test");
+        ConnectionPool.prewarm(LazyConnectionHandler::new, url, 3);
+        waitForHandlerCount(url, 3);
+        long deadline = System.currentTimeMillis() + 5000;
+        for (ConnectionHandler handler : getHandlers(url)) {
+            while (handler.isLocked()) {
+                assertTrue(System.currentTimeMillis() < deadline, "the handler wasn't released");
+                Thread.sleep(10);
+            }
+            assertTrue(handler.isConnected());
+        }
+
+        // Pre-warming again doesn't open more connections than requested
+        ConnectionPool.prewarm(LazyConnectionHandler::new, url, 2);
+        assertEquals(getHandlers(url).size(), 3);
+
+        long created = ConnectionPool.getStatistics().getCreatedCount();
+        List<ConnectionHandler> handlers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                ConnectionHandler handler = ConnectionPool.getConnectionHandler(FACTORY, url, true);
+                assertTrue(handler instanceof LazyConnectionHandler);
+                handlers.add(handler);
+            }
+            assertEquals(ConnectionPool.getStatistics().getCreatedCount(), created);
+        } finally {
+            releaseAll(handlers);
+        }
+    }
+}
@@ -158,4 +158,34 @@ public class LocalFileTest extends AbstractFileTest {
         matcher = LocalFile.DRIVE_ROOT_PATTERN.matcher("/blah/C:\\");
         assert !matcher.matches();
     }
+
+    /**
+     * Asserts that the attributes read while listing a folder are handed to the caller of ls() once, whatever the
+     * time it takes to get them, and not to the callers that get the same instance from the file pool later on.
+     *
+     * @throws IOException should not happen
+     * @throws NoSuchAlgorithmException should not happen
+     */
+    @Test
+    public void testListingAttributes() throws IOException, NoSuchAlgorithmException {
+        tempFile.mkdir();
+        AbstractFile child = tempFile.getDirectChild("child");
+        createFile(child, 1000);
+
+        AbstractFile[] children = tempFile.ls();
+        assert children.length == 1;
+        LocalFile listedChild = (LocalFile)children[0];
+        LocalFile.ListingAttributes attributes = listedChild.takeListingAttributes();
+        assert attributes != null;
+        assert attributes.exists();
+        assert !attributes.isDirectory();
+        assert attributes.getSize() == 1000;
+        // Only once
+        assert listedChild.takeListingAttributes() == null;
+
+        // An instance handed out by the pool doesn't have the attributes of the listing that created it
+        children = tempFile.ls();
+        assert FileFactory.getFile(children[0].getURL()) == children[0];
+        assert ((LocalFile)children[0]).takeListingAttributes() == null;
+    }
 }
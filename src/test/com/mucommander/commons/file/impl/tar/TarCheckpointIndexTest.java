@@ -0,0 +1,149 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.tar;
+
+import com.mucommander.commons.io.StreamUtils;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tests the decompression checkpoints recorded by {@link GzipCheckpointInputStream} and
+ * {@link Bzip2CheckpointInputStream}.
+ *
+ * @author Oleg Trifonov
+ */
+@Test
+public class TarCheckpointIndexTest {
+
+    /** Size of the uncompressed data, enough for a few checkpoints */
+    private static final int DATA_SIZE = 3 * TarCheckpointIndex.SPAN + 12345;
+
+    /**
+     * Returns compressible data with back-references, stored and fixed blocks being used for parts of it.
+     */
+    private static byte[] createData() {
+        Random random = new Random(0);
+        byte[] data = new byte[DATA_SIZE];
+        byte[] word = new byte[40];
+        for (int i = 0; i < data.length; i++) {
+            if (i % 2000 == 0) {
+                random.nextBytes(word);
+            }
+            data[i] = (i / 100000) % 7 == 3 ? (byte)random.nextInt() : word[random.nextInt(word.length)];
+        }
+        return data;
+    }
+
+    private static byte[] gzip(byte[] data, int from, int to, int level) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bout) {{ def.setLevel(level); }}) {
+            out.write(data, from, to - from);
+        }
+        return bout.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses the data while indexing it, then resumes the decompression from every checkpoint.
+     */
+    private static void checkCheckpoints(byte[] compressed, byte[] data, boolean gzip) throws IOException {
+        TarCheckpointIndex index = new TarCheckpointIndex(0, compressed.length);
+        InputStream in = gzip ? new GzipCheckpointInputStream(new ByteArrayInputStream(compressed), index) :
+                new Bzip2CheckpointInputStream(new ByteArrayInputStream(compressed), 0, 0, index);
+        assert Arrays.equals(readAll(in), data);
+        assert index.isComplete();
+        assert index.size() >= 2;
+        assert index.find(TarCheckpointIndex.SPAN - 1) == null;
+
+        int resumed = 0;
+        for (long offset = TarCheckpointIndex.SPAN; offset < data.length; offset += TarCheckpointIndex.SPAN / 2) {
+            TarCheckpointIndex.Checkpoint checkpoint = index.find(offset);
+            if (checkpoint == null) {
+                continue;
+            }
+            assert checkpoint.uncompressedOffset <= offset;
+            resumed++;
+
+            ByteArrayInputStream bin = new ByteArrayInputStream(compressed);
+            if (gzip) {
+                StreamUtils.skipFully(bin, checkpoint.compressedOffset >>> 3);
+                in = new GzipCheckpointInputStream(bin, checkpoint.compressedOffset, checkpoint.uncompressedOffset, checkpoint.window);
+            } else {
+                StreamUtils.skipFully(bin, checkpoint.compressedOffset);
+                in = new Bzip2CheckpointInputStream(bin, checkpoint.compressedOffset, checkpoint.uncompressedOffset, null);
+            }
+            assert Arrays.equals(readAll(in), Arrays.copyOfRange(data, (int)checkpoint.uncompressedOffset, data.length));
+        }
+        assert resumed >= 2;
+    }
+
+    public void testGzip() throws IOException {
+        byte[] data = createData();
+        checkCheckpoints(gzip(data, 0, data.length, Deflater.DEFAULT_COMPRESSION), data, true);
+        checkCheckpoints(gzip(data, 0, data.length, Deflater.NO_COMPRESSION), data, true);
+    }
+
+    /**
+     * Tests a gzip file made of several members, as created by <code>pigz</code> or concatenated gzip files.
+     */
+    public void testMultiMemberGzip() throws IOException {
+        byte[] data = createData();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int middle = data.length / 2 + 1;
+        out.write(gzip(data, 0, middle, Deflater.BEST_SPEED));
+        out.write(gzip(data, middle, data.length, Deflater.BEST_COMPRESSION));
+        checkCheckpoints(out.toByteArray(), data, true);
+    }
+
+    public void testBzip2() throws IOException {
+        byte[] data = createData();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        // CBZip2OutputStream expects the caller to write the magic bytes
+        bout.write('B');
+        bout.write('Z');
+        try (OutputStream out = new CBZip2OutputStream(bout, 1)) {
+            out.write(data);
+        }
+        checkCheckpoints(bout.toByteArray(), data, false);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNotGzip() throws IOException {
+        readAll(new GzipCheckpointInputStream(new ByteArrayInputStream(new byte[100]), new TarCheckpointIndex(0, 0)));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.zip.provider;
+
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipOutputStream;
+
+import static org.testng.Assert.fail;
+
+/**
+ * Tests the reading of the entries of a {@link ZipFile}.
+ *
+ * @author Oleg Trifonov
+ */
+@Test
+public class ZipFileTest {
+
+    private static final int ENTRIES_COUNT = 64;
+
+    private File archive;
+    private byte[][] contents;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        archive = File.createTempFile("ZipFileTest", ".zip");
+        contents = new byte[ENTRIES_COUNT][];
+        Random random = new Random(0);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < ENTRIES_COUNT; i++) {
+                // Compressible data for deflated entries, random data for stored ones
+                byte[] data = new byte[random.nextInt(100000)];
+                java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry("dir/entry" + i);
+                if (i % 2 == 0) {
+                    random.nextBytes(data);
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(java.util.zip.ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCrc(crc.getValue());
+                } else {
+                    for (int j = 0; j < data.length; j++) {
+                        data[j] = (byte)('a' + random.nextInt(4));
+                    }
+                }
+                // Extra field makes the local header longer than the name alone
+                entry.setExtra(new byte[] {(byte)0xCA, (byte)0xFE, 4, 0, 1, 2, 3, (byte)i});
+                out.putNextEntry(entry);
+                out.write(data);
+                out.closeEntry();
+                contents[i] = data;
+            }
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        archive.delete();
+    }
+
+    /**
+     * Reads all the entries of the archive from several threads at the same time, twice.
+     */
+    public void testConcurrentRead() throws Exception {
+        final ZipFile zipFile = new ZipFile(FileFactory.getFile(archive.getAbsolutePath()));
+        assert zipFile.getNbEntries() == ENTRIES_COUNT;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int pass = 0; pass < 2; pass++) {
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < ENTRIES_COUNT; i++) {
+                    final int index = i;
+                    results.add(executor.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            return Arrays.equals(contents[index], readEntry(zipFile, "dir/entry" + index));
+                        }
+                    }));
+                }
+                for (Future<Boolean> result : results) {
+                    assert result.get();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Reads the same entry with two streams opened at the same time, closing one of them first.
+     */
+    public void testInterleavedStreams() throws IOException {
+        ZipFile zipFile = new ZipFile(FileFactory.getFile(archive.getAbsolutePath()));
+        ZipEntry entry = zipFile.getEntry("dir/entry1");
+        InputStream in1 = zipFile.getInputStream(entry);
+        InputStream in2 = zipFile.getInputStream(entry);
+        in1.read();
+        in1.close();
+        // The shared source must remain open for the second stream
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamUtils.copyStream(in2, out);
+        in2.close();
+        assert Arrays.equals(contents[1], out.toByteArray());
+        assert Arrays.equals(contents[2], readEntry(zipFile, "dir/entry2"));
+    }
+
+    /**
+     * Interrupts a thread reading an entry, which closes the channel shared by the streams of the archive. The other
+     * streams, and the ones opened afterwards, must still be readable.
+     */
+    public void testInterruptedRead() throws IOException {
+        ZipFile zipFile = new ZipFile(FileFactory.getFile(archive.getAbsolutePath()));
+        InputStream in1 = zipFile.getInputStream(zipFile.getEntry("dir/entry0"));
+        InputStream in2 = zipFile.getInputStream(zipFile.getEntry("dir/entry2"));
+        try {
+            Thread.currentThread().interrupt();
+            in1.read(new byte[1000]);
+            fail();
+        } catch (ClosedByInterruptException e) {
+            // Expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamUtils.copyStream(in2, out);
+        assert Arrays.equals(contents[2], out.toByteArray());
+        assert Arrays.equals(contents[4], readEntry(zipFile, "dir/entry4"));
+        in1.close();
+        in2.close();
+        assert Arrays.equals(contents[0], readEntry(zipFile, "dir/entry0"));
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+            StreamUtils.copyStream(in, out);
+        }
+        return out.toByteArray();
+    }
+}
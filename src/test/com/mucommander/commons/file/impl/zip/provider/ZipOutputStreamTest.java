@@ -0,0 +1,123 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.zip.provider;
+
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Tests the Zip files written by {@link ZipOutputStream}.
+ *
+ * @author Oleg Trifonov
+ */
+@Test
+public class ZipOutputStreamTest {
+
+    /** Sizes of the entries, around the chunk size of {@link ParallelDeflatedOutputStream} */
+    private static final int[] SIZES = {
+            0, 1, 1000,
+            ParallelDeflatedOutputStream.CHUNK_SIZE - 1,
+            ParallelDeflatedOutputStream.CHUNK_SIZE,
+            ParallelDeflatedOutputStream.CHUNK_SIZE + 1,
+            3 * ParallelDeflatedOutputStream.CHUNK_SIZE + 17,
+            4 * 1024 * 1024
+    };
+
+    private static byte[][] createContents() {
+        Random random = new Random(0);
+        byte[][] contents = new byte[SIZES.length][];
+        for (int i = 0; i < SIZES.length; i++) {
+            contents[i] = new byte[SIZES[i]];
+            // Repeated random words, so that the data is compressible and has back-references across chunks
+            byte[] word = new byte[50];
+            for (int j = 0; j < contents[i].length; j++) {
+                if (j % 1000 == 0) {
+                    random.nextBytes(word);
+                }
+                contents[i][j] = word[random.nextInt(word.length)];
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Writes the entries with several threads and reads them back with <code>java.util.zip</code>, which checks the
+     * CRCs and sizes.
+     *
+     * @param setSizes true to set the size of the entries before writing them, as ZipArchiver does
+     */
+    private static void testParallelDeflate(boolean setSizes) throws IOException {
+        byte[][] contents = createContents();
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(archive);
+        zos.setThreads(4);
+        for (int i = 0; i < SIZES.length; i++) {
+            ZipEntry entry = new ZipEntry("entry" + i);
+            if (setSizes) {
+                entry.setSize(SIZES[i]);
+            }
+            zos.putNextEntry(entry);
+            if (SIZES[i] < 100) {
+                // Byte by byte
+                for (byte b : contents[i]) {
+                    zos.write(b);
+                }
+                continue;
+            }
+            // Write in pieces that are not aligned on the chunks
+            for (int offset = 0; offset < contents[i].length; offset += 10000) {
+                zos.write(contents[i], offset, Math.min(10000, contents[i].length - offset));
+            }
+        }
+        zos.close();
+
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()));
+        for (int i = 0; i < SIZES.length; i++) {
+            java.util.zip.ZipEntry entry = zis.getNextEntry();
+            assert ("entry" + i).equals(entry.getName());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamUtils.copyStream(zis, out);
+            assert Arrays.equals(contents[i], out.toByteArray());
+            assert entry.getSize() == SIZES[i];
+        }
+        assert zis.getNextEntry() == null;
+    }
+
+    /**
+     * Tests entries whose size is unknown when they are added, all of them are written by the parallel stream.
+     */
+    public void testParallelDeflate() throws IOException {
+        testParallelDeflate(false);
+    }
+
+    /**
+     * Tests entries whose size is known when they are added, the ones smaller than a chunk are written by the serial
+     * stream.
+     */
+    public void testParallelDeflateWithSizes() throws IOException {
+        testParallelDeflate(true);
+    }
+}
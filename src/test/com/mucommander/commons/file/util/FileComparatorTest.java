@@ -7,6 +7,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * A test case for {@link FileComparator}.
@@ -178,5 +179,46 @@ public class FileComparatorTest {
         assert B.equals(files[2]);
         assert A.equals(files[3]);
     }
-    
+
+    /**
+     * Tests that {@link FileComparator#sort(AbstractFile[], int[])} sorts files the same way as the comparator does,
+     * for all criteria and orders.
+     */
+    @Test
+    public void testSortIndexes() throws Exception {
+        Random random = new Random(0);
+        String[] parts = {"a", "A", "b", "file", "File", "0", "1", "01", "10", "2", ".", "e", "E", "_", "\u00e9", "\u00c9", " "};
+        AbstractFile[] randomFiles = new AbstractFile[500];
+        for (int i = 0; i < randomFiles.length; i++) {
+            StringBuilder name = new StringBuilder();
+            int nbParts = 1 + random.nextInt(4);
+            for (int j = 0; j < nbParts; j++) {
+                name.append(parts[random.nextInt(parts.length)]);
+            }
+            name.append('_').append(i);
+            boolean directory = random.nextInt(4) == 0;
+            long size = random.nextInt(5) == 0 ? -1 : random.nextInt(10);
+            randomFiles[i] = new TestFile(FileFactory.getTemporaryFolder() + name.toString(), directory, size, random.nextInt(10), null);
+        }
+
+        int[] criteria = {FileComparator.NAME_CRITERION, FileComparator.SIZE_CRITERION, FileComparator.DATE_CRITERION,
+                FileComparator.EXTENSION_CRITERION};
+        for (int criterion : criteria) {
+            for (int flags = 0; flags < 8; flags++) {
+                FileComparator comparator = new FileComparator(criterion, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+                AbstractFile[] expected = randomFiles.clone();
+                Arrays.sort(expected, comparator);
+
+                int[] indexes = new int[randomFiles.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = i;
+                }
+                comparator.sort(randomFiles, indexes);
+                for (int i = 0; i < indexes.length; i++) {
+                    assert expected[i] == randomFiles[indexes[i]] : "criterion=" + criterion + " flags=" + flags + " index=" + i;
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,103 @@
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileURL;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+/**
+ * This class is a TestNG test case for {@link FilePool}.
+ *
+ * @author Oleg Trifonov
+ */
+public class FilePoolTest {
+
+    /**
+     * Tests that files are retrieved with their URL, regardless of trailing separators, and that lookups are counted.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testGetPut() throws Exception {
+        FilePool pool = new FilePool();
+        AbstractFile file = FileFactory.getTemporaryFolder();
+
+        assertNull(pool.get(FileURL.getFileURL("/pool/test")));
+        assertNull(pool.put(FileURL.getFileURL("/pool/test"), file));
+        assertSame(pool.get(FileURL.getFileURL("/pool/test/")), file);
+        assertTrue(pool.containsKey(FileURL.getFileURL("/pool/test")));
+        assertTrue(pool.containsValue(file));
+        assertEquals(pool.size(), 1);
+
+        assertEquals(pool.getHitCount(), 1);
+        assertEquals(pool.getMissCount(), 1);
+        assertEquals(pool.getHitRate(), 0.5, 0.0001);
+
+        pool.clear();
+        assertEquals(pool.size(), 0);
+        assertEquals(pool.getHitCount(), 0);
+        assertFalse(pool.containsKey(FileURL.getFileURL("/pool/test")));
+    }
+
+    /**
+     * Tests that the mappings of garbage collected files are removed.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCollectedFiles() throws Exception {
+        FilePool pool = new FilePool();
+        FileURL url = FileURL.getFileURL("/pool/collected");
+        // A file that is not referenced anywhere else
+        pool.put(url, FileFactory.getFile(FileFactory.getTemporaryFolder().getAbsolutePath() + "/pool-" + System.nanoTime(), true));
+        for (int i = 0; i < 100 && pool.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(pool.size(), 0);
+        assertNull(pool.get(url));
+    }
+
+    /**
+     * Tests that files added and retrieved by several threads are all pooled.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final FilePool pool = new FilePool();
+        final AbstractFile file = FileFactory.getTemporaryFolder();
+        final int nbThreads = 8;
+        final int nbFiles = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < nbThreads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < nbFiles; i++) {
+                        FileURL url = FileURL.getFileURL("/pool/" + i);
+                        if (pool.get(url) == null) {
+                            pool.put(url, file);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(pool.size(), nbFiles);
+        assertEquals(pool.getHitCount() + pool.getMissCount(), nbThreads * nbFiles);
+    }
+}
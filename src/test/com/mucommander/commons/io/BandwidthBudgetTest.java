@@ -0,0 +1,112 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests {@link BandwidthBudget} shared by several {@link ThroughputLimitInputStream}s.
+ *
+ * @author Oleg Trifonov
+ */
+@Test
+public class BandwidthBudgetTest {
+
+    private final static long LIMIT = 256 * 1024;
+
+    private final static long DURATION = 1000;
+
+    /**
+     * An endless stream of zeros.
+     */
+    private static class ZeroInputStream extends InputStream {
+        @Override
+        public int read() {
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return len;
+        }
+    }
+
+    /**
+     * Reads from the given stream for {@link #DURATION} milliseconds on a new thread.
+     */
+    private static Thread startReading(InputStream in, AtomicLong nbRead) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[64 * 1024];
+            long end = System.currentTimeMillis() + DURATION;
+            try {
+                while (System.currentTimeMillis() < end) {
+                    nbRead.addAndGet(in.read(buffer));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Concurrent streams must not exceed the shared limit together and must get even shares of it.
+     */
+    public void testSharedLimit() throws InterruptedException {
+        BandwidthBudget budget = new BandwidthBudget("test", LIMIT);
+        ThroughputLimitInputStream in1 = new ThroughputLimitInputStream(new ZeroInputStream());
+        in1.setBandwidthBudgets(1, budget);
+        ThroughputLimitInputStream in2 = new ThroughputLimitInputStream(new ZeroInputStream());
+        in2.setBandwidthBudgets(1, budget);
+
+        AtomicLong nbRead1 = new AtomicLong();
+        AtomicLong nbRead2 = new AtomicLong();
+        Thread thread1 = startReading(in1, nbRead1);
+        Thread thread2 = startReading(in2, nbRead2);
+        thread1.join();
+        thread2.join();
+
+        long total = nbRead1.get() + nbRead2.get();
+        assert total <= LIMIT * 1.5 : total;
+        assert total >= LIMIT / 2 : total;
+        assert Math.abs(nbRead1.get() - nbRead2.get()) <= total / 4 : nbRead1 + " " + nbRead2;
+        assert budget.getTransferredBytes() == total;
+    }
+
+    /**
+     * Removing the limit must release the waiting streams.
+     */
+    public void testRemoveLimit() throws InterruptedException {
+        BandwidthBudget budget = new BandwidthBudget("test", 1024);
+        ThroughputLimitInputStream in = new ThroughputLimitInputStream(new ZeroInputStream());
+        in.setBandwidthBudgets(1, budget);
+
+        AtomicLong nbRead = new AtomicLong();
+        Thread thread = startReading(in, nbRead);
+        Thread.sleep(DURATION / 2);
+        budget.setThroughputLimit(-1);
+        thread.join();
+
+        assert nbRead.get() > LIMIT : nbRead;
+    }
+}
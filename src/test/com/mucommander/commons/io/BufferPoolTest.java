@@ -22,6 +22,11 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * This class is a TestNG test case for {@link BufferPool}.
  *
@@ -81,6 +86,106 @@ public class BufferPoolTest {
         testBuffer(new BufferPool.CharBufferFactory());
     }
 
+    /**
+     * Asserts that pool hits and misses are counted, and that buffers released by other threads are accounted for.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testStatistics() throws InterruptedException {
+        BufferPool.resetStatistics();
+
+        byte[] buffer = BufferPool.getByteArray(TEST_BUFFER_SIZE_1);
+        Assert.assertEquals(BufferPool.getMissCount(), 1);
+        Assert.assertEquals(BufferPool.getHitCount(), 0);
+
+        BufferPool.releaseByteArray(buffer);
+        Assert.assertSame(BufferPool.getByteArray(TEST_BUFFER_SIZE_1), buffer);
+        Assert.assertEquals(BufferPool.getHitCount(), 1);
+
+        // Buffers cached by another thread are still part of the pool
+        Thread thread = new Thread(() -> BufferPool.releaseByteArray(buffer));
+        thread.start();
+        thread.join();
+        Assert.assertTrue(BufferPool.containsBuffer(buffer, new BufferPool.ByteArrayFactory()));
+        BufferPool.releaseByteArray(new byte[TEST_BUFFER_SIZE_1]);
+        Assert.assertEquals(BufferPool.getBufferCount(), 2);
+
+        BufferPool.releaseAll();
+        Assert.assertEquals(BufferPool.getBufferCount(), 0);
+        Assert.assertEquals(BufferPool.getPoolSize(), 0);
+    }
+
+    /**
+     * Asserts that the buffers cached by a thread that has died are removed from the pool when another thread starts
+     * using the pool.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testDeadThreadCacheReclaimed() throws InterruptedException {
+        BufferPool.releaseAll();
+
+        byte[] buffer = new byte[TEST_BUFFER_SIZE_2];
+        Thread thread = new Thread(() -> BufferPool.releaseByteArray(buffer));
+        thread.start();
+        thread.join();
+        Assert.assertTrue(BufferPool.containsBuffer(buffer, new BufferPool.ByteArrayFactory()));
+
+        // A new thread registering its cache reclaims the dead thread's one
+        thread = new Thread(() -> BufferPool.getByteArray(TEST_BUFFER_SIZE_1));
+        thread.start();
+        thread.join();
+        Assert.assertFalse(BufferPool.containsBuffer(buffer, new BufferPool.ByteArrayFactory()));
+        Assert.assertEquals(BufferPool.getBufferCount(), 0);
+        Assert.assertEquals(BufferPool.getPoolSize(), 0);
+    }
+
+    /**
+     * Has several threads get and release buffers concurrently, and asserts that a buffer is never handed to two
+     * threads at the same time and that the pool size is consistent afterwards.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final int nbThreads = 8;
+        final int nbIterations = 10000;
+        final Set<byte[]> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        Thread[] threads = new Thread[nbThreads];
+        for (int t = 0; t < nbThreads; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < nbIterations; i++) {
+                    byte[] buffer = BufferPool.getByteArray(i % 2 == 0 ? TEST_BUFFER_SIZE_1 : TEST_BUFFER_SIZE_2);
+                    synchronized (inUse) {
+                        if (!inUse.add(buffer))
+                            failed.set(true);
+                    }
+                    Thread.yield();
+                    synchronized (inUse) {
+                        inUse.remove(buffer);
+                    }
+                    if (!BufferPool.releaseByteArray(buffer))
+                        failed.set(true);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        Assert.assertFalse(failed.get());
+        // Every pooled buffer is either TEST_BUFFER_SIZE_1 or TEST_BUFFER_SIZE_2 bytes long
+        long count = BufferPool.getBufferCount(new BufferPool.ByteArrayFactory());
+        Assert.assertTrue(BufferPool.getPoolSize() >= count * TEST_BUFFER_SIZE_1);
+        Assert.assertTrue(BufferPool.getPoolSize() <= count * TEST_BUFFER_SIZE_2);
+
+        BufferPool.releaseAll();
+        Assert.assertEquals(BufferPool.getPoolSize(), 0);
+    }
+
     /**
      * Tests <code>BufferPool</code> with <code>ByteBuffer</code> buffers.
      *
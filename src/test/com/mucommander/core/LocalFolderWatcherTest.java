@@ -0,0 +1,102 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.core;
+
+import com.mucommander.commons.file.FileFactory;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the notifications of {@link LocalFolderWatcher} and the forced refreshes of {@link FolderChangeMonitor}.
+ *
+ * @author Oleg Trifonov
+ */
+@Test
+public class LocalFolderWatcherTest {
+
+    private static LocalFolderWatcher getWatcher() {
+        LocalFolderWatcher watcher = LocalFolderWatcher.getInstance();
+        if (watcher == null) {
+            throw new SkipException("No native folder change notification on this platform");
+        }
+        return watcher;
+    }
+
+    public void testChildChanges() throws IOException, InterruptedException {
+        LocalFolderWatcher watcher = getWatcher();
+        File folder = Files.createTempDirectory("watched").toFile();
+        BlockingQueue<LocalFolderWatcher.Changes> notifications = new LinkedBlockingQueue<>();
+        LocalFolderWatcher.Listener listener = notifications::add;
+        try {
+            assert watcher.register(FileFactory.getFile(folder.getAbsolutePath()), listener);
+            File child = new File(folder, "child");
+            assert child.createNewFile();
+
+            LocalFolderWatcher.Changes changes = notifications.poll(5, TimeUnit.SECONDS);
+            assert changes != null;
+            assert changes.getCreated().contains("child");
+            assert !changes.isWatchLost();
+            assert child.delete();
+        } finally {
+            watcher.unregister(listener);
+            folder.delete();
+        }
+    }
+
+    /**
+     * The deletion of a watched folder must be delivered, and tell the listeners they have to poll the folder.
+     */
+    public void testFolderDeleted() throws IOException, InterruptedException {
+        LocalFolderWatcher watcher = getWatcher();
+        File folder = Files.createTempDirectory("watched").toFile();
+        BlockingQueue<LocalFolderWatcher.Changes> notifications = new LinkedBlockingQueue<>();
+        LocalFolderWatcher.Listener listener = notifications::add;
+        try {
+            assert watcher.register(FileFactory.getFile(folder.getAbsolutePath()), listener);
+            assert folder.delete();
+
+            LocalFolderWatcher.Changes changes;
+            do {
+                changes = notifications.poll(5, TimeUnit.SECONDS);
+                assert changes != null : "folder deletion not delivered";
+            } while (!changes.isWatchLost());
+            assert changes.isOverflow();
+
+            // Nothing is delivered after the watch has been lost
+            assert notifications.poll(500, TimeUnit.MILLISECONDS) == null;
+        } finally {
+            watcher.unregister(listener);
+            folder.delete();
+        }
+    }
+
+    public void testFileToRefresh() {
+        FolderChangeMonitor.addFileToRefresh("/watched/folder/file");
+        assert !FolderChangeMonitor.consumeFileToRefresh("/other");
+        assert FolderChangeMonitor.consumeFileToRefresh("/watched/folder");
+        // A file is refreshed only once
+        assert !FolderChangeMonitor.consumeFileToRefresh("/watched/folder");
+    }
+}
@@ -0,0 +1,77 @@
+package com.mucommander.profiler;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+/**
+ * A test case for {@link Histogram}.
+ *
+ * @author Oleg Trifonov
+ */
+public class HistogramTest {
+
+    /**
+     * Tests that every value falls into a bucket whose upper bound is within the expected precision.
+     */
+    @Test
+    public void testBuckets() {
+        Random random = new Random(0);
+        int previousIndex = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = Histogram.getBucketIndex(value);
+            assertTrue(index >= previousIndex);
+            previousIndex = index;
+            checkBucket(value);
+        }
+        for (int i = 0; i < 100000; i++) {
+            checkBucket(random.nextLong() & Long.MAX_VALUE);
+        }
+        checkBucket(Long.MAX_VALUE);
+    }
+
+    private static void checkBucket(long value) {
+        int index = Histogram.getBucketIndex(value);
+        long upperBound = Histogram.getBucketUpperBound(index);
+        assertTrue(upperBound >= value, "value=" + value);
+        assertTrue(upperBound - value <= value / 16, "value=" + value);
+        if (index > 0) {
+            assertTrue(Histogram.getBucketUpperBound(index - 1) < value, "value=" + value);
+        }
+    }
+
+    /**
+     * Tests the statistics of recorded values against exact ones.
+     */
+    @Test
+    public void testStatistics() {
+        Histogram histogram = new Histogram();
+        Random random = new Random(0);
+        long[] values = new long[10000];
+        long total = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + random.nextInt(1000000);
+            total += values[i];
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(histogram.getCount(), values.length);
+        assertEquals(histogram.getTotal(), total);
+        assertEquals(histogram.getMin(), values[0]);
+        assertEquals(histogram.getMax(), values[values.length - 1]);
+        for (double percentile : new double[] {50, 90, 99}) {
+            long expected = values[(int)Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(actual >= expected && actual - expected <= expected / 16, percentile + ": " + actual + " " + expected);
+        }
+        assertEquals(histogram.getValueAtPercentile(100), values[values.length - 1]);
+
+        histogram.reset();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getValueAtPercentile(50), 0);
+    }
+}
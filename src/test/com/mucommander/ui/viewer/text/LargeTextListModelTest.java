@@ -0,0 +1,178 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests the line index, the block decoding and the search of {@link LargeTextListModel}.
+ *
+ * @author Oleg Trifonov
+ */
+@Test
+public class LargeTextListModelTest {
+
+    /** Enough lines for a few index blocks and scan buffers */
+    private static final int NB_LINES = 10000;
+
+    private static String getLine(int i) {
+        return i % 10 == 0 ? "" : "\tline " + i + " ж" + (i % 7 == 0 ? "\r" : "");
+    }
+
+    private static AbstractFile createFile(byte[] data) throws IOException {
+        File tmp = File.createTempFile("largetext", ".txt");
+        tmp.deleteOnExit();
+        Files.write(tmp.toPath(), data);
+        return FileFactory.getFile(tmp.getAbsolutePath());
+    }
+
+    private static LargeTextListModel createModel(byte[] data, String encoding) throws IOException {
+        return createModel(createFile(data), encoding);
+    }
+
+    private static LargeTextListModel createModel(AbstractFile file, String encoding) throws IOException {
+        LargeTextListModel model = new LargeTextListModel(file.getRandomAccessInputStream(), encoding);
+        model.buildIndex(file.getRandomAccessInputStream());
+        model.update();
+        return model;
+    }
+
+    private static void checkLines(LargeTextListModel model) {
+        assertEquals(model.getSize(), NB_LINES);
+        // Read the blocks out of order
+        for (int i = NB_LINES - 1; i >= 0; i -= 3) {
+            assertEquals(model.getElementAt(i), getLine(i).replace("\r", "").replace("\t", "    "));
+        }
+    }
+
+    private static byte[] createData(String encoding, byte[] bom, boolean lastLineFeed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bom);
+        for (int i = 0; i < NB_LINES; i++) {
+            out.write(getLine(i).getBytes(encoding));
+            if (i < NB_LINES - 1 || lastLineFeed) {
+                out.write("\n".getBytes(encoding));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public void testUtf8() throws IOException {
+        LargeTextListModel model = createModel(createData("UTF-8", new byte[0], true), "UTF-8");
+        assert model.isIndexComplete();
+        checkLines(model);
+        model.close();
+
+        model = createModel(createData("UTF-8", new byte[] {(byte)0xEF, (byte)0xBB, (byte)0xBF}, false), "UTF-8");
+        checkLines(model);
+        model.close();
+    }
+
+    public void testUtf16() throws IOException {
+        LargeTextListModel model = createModel(createData("UTF-16LE", new byte[] {(byte)0xFF, (byte)0xFE}, false), "UTF-16");
+        checkLines(model);
+        model.close();
+
+        model = createModel(createData("UTF-16BE", new byte[0], true), "UTF-16BE");
+        checkLines(model);
+        model.close();
+    }
+
+    public void testEmpty() throws IOException {
+        LargeTextListModel model = createModel(new byte[0], "UTF-8");
+        assertEquals(model.getSize(), 0);
+        model.close();
+    }
+
+    public void testFind() throws IOException {
+        AbstractFile file = createFile(createData("UTF-8", new byte[0], true));
+        LargeTextListModel model = createModel(file, "UTF-8");
+        Pattern pattern = Pattern.compile("line 1234 ");
+        try (RandomAccessInputStream searchIn = file.getRandomAccessInputStream()) {
+            assertEquals(model.find(searchIn, pattern, 0, NB_LINES, true), 1234);
+            assertEquals(model.find(searchIn, pattern, 1235, NB_LINES, true), -1);
+            assertEquals(model.find(searchIn, pattern, NB_LINES - 1, NB_LINES, false), 1234);
+            assertEquals(model.find(searchIn, pattern, 1233, NB_LINES, false), -1);
+        }
+        model.close();
+    }
+
+    /**
+     * Interrupting a search may close the stream it reads, the displayed lines must remain readable afterwards.
+     * The lines are read only once the searches are cancelled as they're cached.
+     */
+    public void testCancelledFind() throws Exception {
+        final AbstractFile file = createFile(createData("UTF-8", new byte[0], true));
+        final LargeTextListModel model = createModel(file, "UTF-8");
+        final Pattern pattern = Pattern.compile("not found");
+
+        // Interrupted while searching, as a cancelled search task is
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        for (int i = 0; i < 10; i++) {
+            Future<Integer> search = executor.submit(() -> {
+                int line = -1;
+                try (RandomAccessInputStream searchIn = file.getRandomAccessInputStream()) {
+                    while (line < 0 && !Thread.currentThread().isInterrupted()) {
+                        line = model.find(searchIn, pattern, 0, NB_LINES, true);
+                    }
+                }
+                return line;
+            });
+            Thread.sleep(5);
+            search.cancel(true);
+            try {
+                search.get();
+            } catch (CancellationException | ExecutionException e) {
+                // Cancelled, possibly interrupted while reading
+            }
+        }
+        executor.shutdownNow();
+
+        // Interrupted before reading a block
+        try (RandomAccessInputStream searchIn = file.getRandomAccessInputStream()) {
+            Thread.currentThread().interrupt();
+            model.find(searchIn, pattern, 0, NB_LINES, true);
+            fail();
+        } catch (InterruptedIOException e) {
+            // Expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        checkLines(model);
+        model.close();
+    }
+}
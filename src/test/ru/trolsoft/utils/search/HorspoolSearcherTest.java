@@ -0,0 +1,124 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * A test case for {@link HorspoolSearcher}.
+ *
+ * @author Oleg Trifonov
+ */
+public class HorspoolSearcherTest {
+
+    /**
+     * Compares the offsets found in arrays with a naive search.
+     */
+    @Test
+    public void testArray() {
+        Random random = new Random(0);
+        for (int n = 0; n < 1000; n++) {
+            // Small alphabet so that the pattern occurs
+            byte[] data = randomBytes(random, random.nextInt(200), 3);
+            byte[] pattern = randomBytes(random, 1 + random.nextInt(5), 3);
+            HorspoolSearcher searcher = new HorspoolSearcher(new BytesSearchPattern(pattern));
+            assertEquals(searcher.indexOf(data, 0, data.length), naiveIndexOf(data, pattern));
+        }
+    }
+
+    /**
+     * Tests that a case insensitive pattern matches any case.
+     */
+    @Test
+    public void testCaseInsensitive() throws Exception {
+        HorspoolSearcher searcher = new HorspoolSearcher(new StringCaseInsensitiveSearchPattern("Hello", "UTF-8"));
+        byte[] data = "say hELLo".getBytes(StandardCharsets.UTF_8);
+        assertEquals(searcher.indexOf(data, 0, data.length), 4);
+        data = "say hell".getBytes(StandardCharsets.UTF_8);
+        assertEquals(searcher.indexOf(data, 0, data.length), -1);
+    }
+
+    /**
+     * Tests that occurrences crossing the blocks a stream is read into are found.
+     */
+    @Test
+    public void testStream() throws IOException {
+        Random random = new Random(1);
+        byte[] pattern = "pattern".getBytes(StandardCharsets.US_ASCII);
+        HorspoolSearcher searcher = new HorspoolSearcher(new BytesSearchPattern(pattern));
+        for (int offset = 0; offset < 40; offset++) {
+            byte[] data = randomBytes(random, 100, 10);
+            System.arraycopy(pattern, 0, data, offset, pattern.length);
+            long expected = naiveIndexOf(data, pattern);
+            assertEquals(searcher.indexOf(new ByteArrayInputStream(data), new byte[16]), expected);
+        }
+        assertEquals(searcher.indexOf(new ByteArrayInputStream(new byte[100]), new byte[16]), -1);
+    }
+
+    /**
+     * Tests the search in a file mapped in memory.
+     */
+    @Test
+    public void testFileChannel() throws IOException {
+        byte[] pattern = "pattern".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[100000];
+        System.arraycopy(pattern, 0, data, 99990, pattern.length);
+        File file = File.createTempFile("horspool", null);
+        try {
+            Files.write(file.toPath(), data);
+            HorspoolSearcher searcher = new HorspoolSearcher(new BytesSearchPattern(pattern));
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                assertEquals(searcher.indexOf(channel), 99990);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] randomBytes(Random random, int length, int alphabetSize) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte)('a' + random.nextInt(alphabetSize));
+        }
+        return bytes;
+    }
+
+    private static int naiveIndexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}